@@ -57,6 +57,9 @@ public class AVRDudeActionTest {
 
 		action = new AVRDudeAction(MemType.efuse, Action.write, 255);
 		assertEquals("-Uefuse:w:0xff:m", action.getArgument());
+
+		action = new AVRDudeAction(MemType.lfuse, Action.read, AVRDudeAction.STDOUT, FileType.hex);
+		assertEquals("-Ulfuse:r:-:h", action.getArgument());
 	}
 
 	/**
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+
+package de.innot.avreclipse.core.avrdude;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.eclipse.jface.preference.IPreferenceStore;
+
+import de.innot.avreclipse.core.paths.AVRPath;
+import de.innot.avreclipse.core.paths.AVRPathManager;
+import de.innot.avreclipse.core.paths.AVRPathManager.SourceType;
+import de.innot.avreclipse.core.preferences.AVRPathsPreferences;
+
+/**
+ * A stub avrdude for the tests.
+ * <p>
+ * The stub is a shell script in a temporary folder. While the stub is installed the avrdude path
+ * preference points to this folder, so all avrdude calls run the script instead of avrdude.
+ * </p>
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ *
+ */
+public class AVRDudeStub {
+
+	private final File		fFolder;
+
+	private final String	fOldPath;
+
+	/**
+	 * @return <code>true</code> if the stub script can be executed on this system.
+	 */
+	public static boolean isSupported() {
+		return new File("/bin/sh").canExecute();
+	}
+
+	/**
+	 * Install a new stub avrdude.
+	 *
+	 * @param script
+	 *            The content of the shell script run instead of avrdude.
+	 * @throws IOException
+	 *             if the script could not be written.
+	 */
+	public AVRDudeStub(String script) throws IOException {
+		fFolder = File.createTempFile("avrdudestub", "");
+		fFolder.delete();
+		fFolder.mkdirs();
+		File stub = new File(fFolder, "avrdude");
+		FileWriter writer = new FileWriter(stub);
+		writer.write(script);
+		writer.close();
+		stub.setExecutable(true);
+
+		IPreferenceStore store = AVRPathsPreferences.getPreferenceStore();
+		fOldPath = store.getString(AVRPath.AVRDUDE.name());
+		AVRPathManager avrdudepath = new AVRPathManager(store, AVRPath.AVRDUDE);
+		avrdudepath.setPath(fFolder.getAbsolutePath(), SourceType.Custom);
+		avrdudepath.store();
+	}
+
+	/**
+	 * Restore the previous avrdude path and delete the stub.
+	 */
+	public void dispose() {
+		AVRPathsPreferences.getPreferenceStore().setValue(AVRPath.AVRDUDE.name(), fOldPath);
+		new File(fFolder, "avrdude").delete();
+		fFolder.delete();
+	}
+}
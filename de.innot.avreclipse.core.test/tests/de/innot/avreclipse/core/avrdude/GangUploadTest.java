@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+
+package de.innot.avreclipse.core.avrdude;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.innot.avreclipse.core.avrdude.AVRDudeException.Reason;
+import de.innot.avreclipse.core.avrdude.GangUploadReport.BoardResult;
+import de.innot.avreclipse.core.avrdude.GangUploadReport.Result;
+
+/**
+ * Tests for the {@link GangUpload}.
+ * <p>
+ * The boards are "programmed" by the default {@link GangUpload#AVRDUDE_UPLOADER}. The avrdude
+ * path is set to a stub avrdude shell script, which takes one second per board. It fails to sync
+ * on the port <code>/dev/broken</code> and fails with an error message unknown to the plugin on
+ * the port <code>/dev/mismatch</code>.
+ * </p>
+ */
+public class GangUploadTest {
+
+	private final static String	STUB_SCRIPT	= "#!/bin/sh\n" //
+													+ "sleep 1\n" //
+													+ "for arg in \"$@\"; do\n" //
+													+ "  if [ \"$arg\" = \"-P/dev/broken\" ]; then\n" //
+													+ "    echo \"avrdude: stk500_getsync(): not in sync\"\n" //
+													+ "    echo \"avrdude: failed to sync with programmer\"\n" //
+													+ "    exit 1\n" //
+													+ "  fi\n" //
+													+ "  if [ \"$arg\" = \"-P/dev/mismatch\" ]; then\n" //
+													+ "    echo \"avrdude: verification error, first mismatch at byte 0x0000\"\n" //
+													+ "    exit 1\n" //
+													+ "  fi\n" //
+													+ "done\n" //
+													+ "echo \"avrdude: 1024 bytes of flash verified\"\n" //
+													+ "exit 0\n";
+
+	private AVRDudeStub			fStub;
+
+	@Before
+	public void setUp() throws IOException {
+		Assume.assumeTrue(AVRDudeStub.isSupported());
+		fStub = new AVRDudeStub(STUB_SCRIPT);
+	}
+
+	@After
+	public void tearDown() {
+		if (fStub != null) {
+			fStub.dispose();
+		}
+	}
+
+	/**
+	 * Test that boards on different ports are programmed in parallel and that failures are
+	 * reported per board.
+	 */
+	@Test
+	public void testParallelUpload() {
+		GangUpload gang = new GangUpload("Gang Upload", null);
+		String[] ports = { "/dev/ttyUSB0", "/dev/ttyUSB1", "/dev/broken", "/dev/ttyUSB2" };
+		for (int i = 0; i < ports.length; i++) {
+			ProgrammerConfig config = createConfig("board" + i, ports[i]);
+			gang.addBoard(config, config.getArguments());
+		}
+
+		GangUploadReport report = gang.run(new NullProgressMonitor());
+
+		assertEquals(4, report.getBoards().size());
+		assertEquals(3, report.getCount(Result.PASSED));
+		assertEquals(1, report.getCount(Result.FAILED));
+		assertFalse(report.isSuccess());
+
+		BoardResult broken = report.getBoards().get(2);
+		assertEquals("board2", broken.getProgrammer().getName());
+		assertEquals(Result.FAILED, broken.getResult());
+		assertEquals(Reason.SYNC_FAIL, broken.getReason());
+
+		// Boards on different ports are programmed at the same time, so each board must overlap
+		// with at least one of the other boards
+		List<BoardResult> boards = report.getBoards();
+		for (BoardResult board : boards) {
+			boolean overlaps = false;
+			for (BoardResult other : boards) {
+				if (other != board && other.getStartTime() < board.getEndTime()
+						&& board.getStartTime() < other.getEndTime()) {
+					overlaps = true;
+				}
+			}
+			assertTrue(board.getProgrammer().getName() + " was programmed alone", overlaps);
+		}
+		assertTrue(report.getTotalBoardTime() >= 4000);
+		assertTrue(report.getThroughput() > 0);
+		assertTrue(report.toString().contains("SYNC_FAIL"));
+	}
+
+	/**
+	 * Test that a board is failed if avrdude exits with an error code, even if the error message is
+	 * not known to the plugin.
+	 */
+	@Test
+	public void testUnknownError() {
+		GangUpload gang = new GangUpload("Gang Upload", null);
+		String[] ports = { "/dev/ttyUSB0", "/dev/mismatch" };
+		for (int i = 0; i < ports.length; i++) {
+			ProgrammerConfig config = createConfig("board" + i, ports[i]);
+			gang.addBoard(config, config.getArguments());
+		}
+
+		GangUploadReport report = gang.run(new NullProgressMonitor());
+
+		assertFalse(report.isSuccess());
+		assertEquals(1, report.getCount(Result.PASSED));
+		assertEquals(1, report.getCount(Result.FAILED));
+		assertEquals(Result.PASSED, report.getBoards().get(0).getResult());
+
+		BoardResult mismatch = report.getBoards().get(1);
+		assertEquals(Result.FAILED, mismatch.getResult());
+		assertEquals(Reason.EXIT_CODE, mismatch.getReason());
+		assertTrue(report.toString().contains("EXIT_CODE"));
+	}
+
+	/**
+	 * Test that boards on the same port are programmed one after the other.
+	 */
+	@Test
+	public void testSamePort() {
+		GangUpload gang = new GangUpload("Gang Upload", null);
+		for (int i = 0; i < 3; i++) {
+			ProgrammerConfig config = createConfig("board" + i, "/dev/ttyUSB0");
+			gang.addBoard(config, config.getArguments());
+		}
+
+		GangUploadReport report = gang.run(new NullProgressMonitor());
+
+		assertTrue(report.isSuccess());
+
+		// No board may start before the previous board on the port has finished
+		List<BoardResult> boards = new ArrayList<BoardResult>(report.getBoards());
+		Collections.sort(boards, new Comparator<BoardResult>() {
+			public int compare(BoardResult o1, BoardResult o2) {
+				return o1.getStartTime() < o2.getStartTime() ? -1 : o1.getStartTime() == o2
+						.getStartTime() ? 0 : 1;
+			}
+		});
+		for (int i = 1; i < boards.size(); i++) {
+			assertTrue(boards.get(i).getStartTime() >= boards.get(i - 1).getEndTime());
+		}
+	}
+
+	/**
+	 * Test that cancelling the gang upload cancels all boards.
+	 */
+	@Test
+	public void testCancel() {
+		GangUpload gang = new GangUpload("Gang Upload", null);
+		for (int i = 0; i < 3; i++) {
+			// All on the same port, so that two boards are still waiting
+			ProgrammerConfig config = createConfig("board" + i, "/dev/ttyUSB0");
+			gang.addBoard(config, config.getArguments());
+		}
+
+		NullProgressMonitor monitor = new NullProgressMonitor() {
+			private final long	fStart	= System.currentTimeMillis();
+
+			@Override
+			public boolean isCanceled() {
+				return System.currentTimeMillis() - fStart > 300;
+			}
+		};
+		GangUploadReport report = gang.run(monitor);
+
+		// The running board has been stopped, the others were never started
+		assertEquals(0, report.getCount(Result.PASSED));
+		assertEquals(3, report.getCount(Result.CANCELLED));
+		int started = 0;
+		for (BoardResult board : report.getBoards()) {
+			if (board.getStartTime() != 0) {
+				started++;
+			}
+		}
+		assertTrue(started <= 1);
+	}
+
+	private ProgrammerConfig createConfig(String name, String port) {
+		ProgrammerConfig config = new ProgrammerConfig("test." + name);
+		config.setName(name);
+		config.setPort(port);
+		return config;
+	}
+}
@@ -0,0 +1,443 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+
+package de.innot.avreclipse.core.avrdude;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.innot.avreclipse.core.avrdude.AVRDudeAction.Action;
+import de.innot.avreclipse.core.avrdude.AVRDudeAction.FileType;
+import de.innot.avreclipse.core.avrdude.AVRDudeAction.MemType;
+import de.innot.avreclipse.core.avrdude.AVRDudeException.Reason;
+import de.innot.avreclipse.core.avrdude.IncrementalUpload.Mode;
+import de.innot.avreclipse.core.toolinfo.AVRDude;
+import de.innot.avreclipse.core.toolinfo.ExternalCommandLauncher;
+import de.innot.avreclipse.core.util.IntelHexImage;
+
+/**
+ * Tests for the {@link IncrementalUpload}, the {@link FlashImageCache} and the
+ * {@link UploadHistory}.
+ * <p>
+ * The images and the history are in a temporary folder. Except for the tests with a failing
+ * {@link AVRDudeStub} avrdude is not run.
+ * </p>
+ */
+public class IncrementalUploadTest {
+
+	private final static String		SIGNATURE		= "0x1e950f";
+
+	private final static String		FLASHACTION		= "-Uflash:w:test.hex:a";
+
+	private final static String		EEPROMACTION	= "-Ueeprom:w:test.eep:a";
+
+	private final static String		LFUSEACTION		= "-Ulfuse:w:0xff:m";
+
+	private final static String		HFUSEACTION		= "-Uhfuse:w:0xd9:m";
+
+	private File					fFolder;
+
+	private FlashImageCache			fCache;
+
+	private UploadHistory			fHistory;
+
+	private ProgrammerConfig		fProgrammer;
+
+	private final List<String>		fOptions		= Arrays.asList("-carduino", "-pm328p");
+
+	@Before
+	public void setUp() throws IOException {
+		fFolder = File.createTempFile("flashtest", "");
+		fFolder.delete();
+		fFolder.mkdirs();
+		fCache = new FlashImageCache(new File(fFolder, "cache"));
+		fHistory = new UploadHistory(new File(fFolder, "history"));
+		fProgrammer = new ProgrammerConfig("test.incremental");
+		writeEEPROM("eeprom content");
+	}
+
+	@After
+	public void tearDown() {
+		for (String name : new String[] { "cache", "history" }) {
+			File[] files = new File(fFolder, name).listFiles();
+			if (files != null) {
+				for (File file : files) {
+					file.delete();
+				}
+			}
+			new File(fFolder, name).delete();
+		}
+		new File(fFolder, "test.hex").delete();
+		new File(fFolder, "test.eep").delete();
+		fFolder.delete();
+	}
+
+	@Test
+	public void testFirstUpload() throws IOException {
+		writeImage(createImage(0));
+
+		IncrementalUpload upload = createUpload(128);
+		List<String> args = upload.prepare(fOptions, Arrays.asList(FLASHACTION, LFUSEACTION));
+		assertEquals(Mode.FULL, upload.getFlashMode());
+		assertEquals(Arrays.asList("-carduino", "-pm328p", FLASHACTION, LFUSEACTION), args);
+		assertNull(upload.getSummary());
+
+		assertNull(fCache.get(fProgrammer, SIGNATURE));
+		upload.finished(true);
+		assertTrue(createImage(0).hasSameContent(fCache.get(fProgrammer, SIGNATURE)));
+		assertTrue(fHistory.getHashes(fProgrammer, SIGNATURE).containsKey(MemType.lfuse));
+	}
+
+	@Test
+	public void testUnchanged() throws IOException {
+		writeImage(createImage(0));
+		upload(createUpload(128), FLASHACTION, EEPROMACTION, LFUSEACTION);
+
+		// Nothing has changed: nothing to do
+		IncrementalUpload upload = createUpload(128);
+		assertNull(upload.prepare(fOptions, Arrays.asList(FLASHACTION, EEPROMACTION,
+				LFUSEACTION)));
+		assertEquals(Mode.SKIPPED, upload.getFlashMode());
+		assertEquals(Arrays.asList(MemType.flash, MemType.eeprom, MemType.lfuse), upload
+				.getSkipped());
+		assertEquals(0, upload.getWrittenBytes());
+		assertEquals(1000 + 14 + 1, upload.getSavedBytes());
+		upload.finished(true);
+
+		// Changed EEPROM and new fuse: only those, without chip erase
+		writeEEPROM("new eeprom content");
+		upload = createUpload(-1);
+		List<String> args = upload.prepare(fOptions, Arrays.asList(FLASHACTION, EEPROMACTION,
+				LFUSEACTION, HFUSEACTION));
+		assertEquals(Arrays.asList("-carduino", "-pm328p", "-D", EEPROMACTION, HFUSEACTION), args);
+		assertEquals(Arrays.asList(MemType.flash, MemType.lfuse), upload.getSkipped());
+		assertNotNull(upload.getSummary());
+	}
+
+	@Test
+	public void testChipErase() throws IOException {
+		writeImage(createImage(0));
+		upload(createUpload(-1), FLASHACTION, EEPROMACTION, LFUSEACTION);
+
+		// The complete flash is written with a chip erase, which also erases the EEPROM
+		writeImage(createImage(1));
+		IncrementalUpload upload = createUpload(-1);
+		List<String> args = upload.prepare(fOptions, Arrays.asList(FLASHACTION, EEPROMACTION,
+				LFUSEACTION));
+		assertEquals(Mode.FULL, upload.getFlashMode());
+		assertEquals(Arrays.asList("-carduino", "-pm328p", FLASHACTION, EEPROMACTION), args);
+		upload.finished(true);
+
+		// An explicit chip erase without flash write erases the flash as well
+		upload = createUpload(-1);
+		List<String> options = new ArrayList<String>(fOptions);
+		options.add("-e");
+		args = upload.prepare(options, Arrays.asList(EEPROMACTION, LFUSEACTION));
+		assertEquals(Arrays.asList("-carduino", "-pm328p", "-e", EEPROMACTION), args);
+		upload.finished(true);
+		assertNull(fCache.get(fProgrammer, SIGNATURE));
+	}
+
+	@Test
+	public void testPartial() throws IOException {
+		fCache.put(fProgrammer, SIGNATURE, createImage(0));
+		IntelHexImage newimage = createImage(0);
+		newimage.setByte(300, 0x55);
+		writeImage(newimage);
+
+		IncrementalUpload upload = createUpload(128);
+		List<String> args = upload.prepare(fOptions, Arrays.asList(FLASHACTION, EEPROMACTION));
+		assertEquals(Mode.PARTIAL, upload.getFlashMode());
+		assertEquals(128 + 14, upload.getWrittenBytes());
+		assertEquals(1000 - 128, upload.getSavedBytes());
+		assertEquals(5, args.size());
+		assertEquals("-D", args.get(2));
+		assertEquals(EEPROMACTION, args.get(4));
+
+		// The flash action writes only the page with the change
+		AVRDudeAction action = AVRDudeAction.getActionForArgument(args.get(3));
+		assertEquals(MemType.flash, action.getMemType());
+		assertEquals(Action.write, action.getAction());
+		assertEquals(FileType.iHex, action.getFileType());
+		File partial = new File(action.getFilename());
+		IntelHexImage written = IntelHexImage.read(partial);
+		assertEquals(128, written.getUsedCount());
+		assertEquals(0x55, written.getByte(300));
+		assertEquals(-1, written.getByte(0));
+
+		upload.finished(true);
+		assertFalse(partial.exists());
+		assertTrue(newimage.hasSameContent(fCache.get(fProgrammer, SIGNATURE)));
+	}
+
+	@Test
+	public void testChangedWithoutPages() throws IOException {
+		fCache.put(fProgrammer, SIGNATURE, createImage(0));
+		writeImage(createImage(1));
+
+		IncrementalUpload upload = createUpload(-1);
+		List<String> args = upload.prepare(fOptions, Arrays.asList(FLASHACTION));
+		assertEquals(Mode.FULL, upload.getFlashMode());
+		assertEquals(Arrays.asList("-carduino", "-pm328p", FLASHACTION), args);
+	}
+
+	@Test
+	public void testFailedUpload() throws IOException {
+		writeImage(createImage(0));
+		upload(createUpload(128), FLASHACTION, LFUSEACTION);
+
+		writeImage(createImage(1));
+		IncrementalUpload upload = createUpload(128);
+		assertNotNull(upload.prepare(fOptions, Arrays.asList(FLASHACTION, LFUSEACTION)));
+		upload.finished(false);
+
+		// The device content is unknown, so the next upload writes everything
+		assertNull(fCache.get(fProgrammer, SIGNATURE));
+		assertNull(new FlashImageCache(new File(fFolder, "cache")).get(fProgrammer, SIGNATURE));
+		assertTrue(fHistory.getHashes(fProgrammer, SIGNATURE).isEmpty());
+	}
+
+	@Test
+	public void testFailedAVRDude() throws IOException {
+		writeImage(createImage(0));
+		upload(createUpload(128), FLASHACTION);
+
+		// avrdude fails with a message unknown to the plugin
+		writeImage(createImage(1));
+		IncrementalUpload upload = createUpload(128);
+		List<String> args = upload.prepare(fOptions, Arrays.asList(FLASHACTION));
+		assertNotNull(args);
+		AVRDudeException failure = runAVRDude(upload, args, "avrdude: verification error, "
+				+ "first mismatch at byte 0x0000", 1);
+		assertNotNull(failure);
+		assertEquals(Reason.EXIT_CODE, failure.getReason());
+		assertTrue(failure.getMessage(), failure.getMessage().contains("verification error"));
+
+		// The flash content is unknown, so the image must be written completely again
+		assertNull(fCache.get(fProgrammer, SIGNATURE));
+		upload = createUpload(128);
+		upload.prepare(fOptions, Arrays.asList(FLASHACTION));
+		assertEquals(Mode.FULL, upload.getFlashMode());
+
+		// A clean exit is still a successful upload
+		assertNull(runAVRDude(upload, args, "avrdude done.  Thank you.", 0));
+		assertTrue(createImage(1).hasSameContent(fCache.get(fProgrammer, SIGNATURE)));
+	}
+
+	@Test
+	public void testFailedFuseWrite() throws IOException {
+		writeImage(createImage(0));
+		upload(createUpload(-1), FLASHACTION, EEPROMACTION, LFUSEACTION);
+
+		// Only the changed fuse is written, but avrdude fails with an unknown message
+		IncrementalUpload upload = createUpload(-1);
+		List<String> args = upload.prepare(fOptions, Arrays.asList(FLASHACTION, EEPROMACTION,
+				LFUSEACTION, HFUSEACTION));
+		assertEquals(Arrays.asList("-carduino", "-pm328p", "-D", HFUSEACTION), args);
+		AVRDudeException failure = runAVRDude(upload, args,
+				"avrdude: error writing hfuse: programmer is not responding", 1);
+		assertNotNull(failure);
+		assertEquals(Reason.EXIT_CODE, failure.getReason());
+
+		// No hashes are kept, so the fuse is retried and nothing is skipped
+		assertTrue(fHistory.getHashes(fProgrammer, SIGNATURE).isEmpty());
+		upload = createUpload(-1);
+		args = upload.prepare(fOptions, Arrays.asList(FLASHACTION, EEPROMACTION, LFUSEACTION,
+				HFUSEACTION));
+		assertEquals(Arrays.asList("-carduino", "-pm328p", FLASHACTION, EEPROMACTION,
+				LFUSEACTION, HFUSEACTION), args);
+		assertTrue(upload.getSkipped().isEmpty());
+		assertEquals(0, upload.getSavedBytes());
+	}
+
+	@Test
+	public void testNoWrite() throws IOException {
+		fCache.put(fProgrammer, SIGNATURE, createImage(0));
+		writeImage(createImage(0));
+
+		List<String> options = new ArrayList<String>(fOptions);
+		options.add("-n");
+		IncrementalUpload upload = createUpload(128);
+		List<String> args = upload.prepare(options, Arrays.asList(FLASHACTION));
+		assertEquals(Mode.NONE, upload.getFlashMode());
+		assertEquals(4, args.size());
+		upload.finished(true);
+		// Not handled by the incremental upload, so the cached image is dropped
+		assertNull(fCache.get(fProgrammer, SIGNATURE));
+	}
+
+	@Test
+	public void testNonIncrementalBetween() throws IOException {
+		writeImage(createImage(0));
+		upload(createUpload(128), FLASHACTION);
+		assertNotNull(fCache.get(fProgrammer, SIGNATURE));
+
+		// Another image is uploaded with the incremental upload disabled
+		IncrementalUpload.invalidate(fCache, fHistory, fProgrammer);
+
+		// The original image must be written completely again
+		IncrementalUpload upload = createUpload(128);
+		List<String> args = upload.prepare(fOptions, Arrays.asList(FLASHACTION));
+		assertEquals(Mode.FULL, upload.getFlashMode());
+		assertEquals(Arrays.asList("-carduino", "-pm328p", FLASHACTION), args);
+		upload.finished(true);
+
+		// The same with an upload to a MCU without a known signature
+		upload = new IncrementalUpload(fCache, fHistory, fProgrammer, null, 128, new Path(fFolder
+				.getAbsolutePath()));
+		upload.prepare(fOptions, Arrays.asList(FLASHACTION));
+		upload.finished(true);
+		upload = createUpload(128);
+		upload.prepare(fOptions, Arrays.asList(FLASHACTION));
+		assertEquals(Mode.FULL, upload.getFlashMode());
+	}
+
+	@Test
+	public void testHistoryAfterNonIncremental() throws IOException {
+		writeImage(createImage(0));
+		upload(createUpload(-1), FLASHACTION, EEPROMACTION, LFUSEACTION);
+
+		// The EEPROM and the fuse are written by an upload with the incremental upload disabled
+		IncrementalUpload.invalidate(fCache, fHistory, fProgrammer);
+		assertTrue(fHistory.getHashes(fProgrammer, SIGNATURE).isEmpty());
+		IncrementalUpload upload = createUpload(-1);
+		List<String> args = upload.prepare(fOptions, Arrays.asList(EEPROMACTION, LFUSEACTION));
+		assertEquals(Arrays.asList("-carduino", "-pm328p", "-D", EEPROMACTION, LFUSEACTION), args);
+		assertEquals(0, upload.getSavedBytes());
+		upload.finished(true);
+
+		// The same with an upload with "-n", which is not handled by the incremental upload
+		List<String> options = new ArrayList<String>(fOptions);
+		options.add("-n");
+		upload = createUpload(-1);
+		upload.prepare(options, Arrays.asList(EEPROMACTION, LFUSEACTION));
+		upload.finished(true);
+		assertTrue(fHistory.getHashes(fProgrammer, SIGNATURE).isEmpty());
+		upload = createUpload(-1);
+		args = upload.prepare(fOptions, Arrays.asList(EEPROMACTION, LFUSEACTION));
+		assertEquals(Arrays.asList("-carduino", "-pm328p", "-D", EEPROMACTION, LFUSEACTION), args);
+		assertTrue(upload.getSkipped().isEmpty());
+	}
+
+	@Test
+	public void testSavedSeconds() throws IOException {
+		Map<MemType, String> hashes = new EnumMap<MemType, String>(MemType.class);
+		fHistory.put(fProgrammer, SIGNATURE, hashes, 500);
+		fCache.put(fProgrammer, SIGNATURE, createImage(0));
+		writeImage(createImage(0));
+
+		IncrementalUpload upload = createUpload(128);
+		assertNull(upload.prepare(fOptions, Arrays.asList(FLASHACTION)));
+		assertEquals(2.0, upload.getSavedSeconds(), 0.001);
+		assertTrue(upload.getSummary(), upload.getSummary().contains("2.0 s"));
+	}
+
+	@Test
+	public void testPersistentHistory() throws IOException {
+		IntelHexImage image = createImage(3);
+		fCache.put(fProgrammer, SIGNATURE, image);
+		Map<MemType, String> hashes = new EnumMap<MemType, String>(MemType.class);
+		hashes.put(MemType.eeprom, "1234");
+		fHistory.put(fProgrammer, SIGNATURE, hashes, 1000);
+
+		FlashImageCache cache = new FlashImageCache(new File(fFolder, "cache"));
+		assertTrue(image.hasSameContent(cache.get(fProgrammer, SIGNATURE)));
+		assertNull(cache.get(fProgrammer, "0x1e9587"));
+		UploadHistory history = new UploadHistory(new File(fFolder, "history"));
+		assertEquals(hashes, history.getHashes(fProgrammer, SIGNATURE));
+		assertEquals(1000, history.getThroughput(fProgrammer, SIGNATURE));
+
+		cache.remove(fProgrammer);
+		history.remove(fProgrammer);
+		assertNull(cache.get(fProgrammer, SIGNATURE));
+		assertTrue(history.getHashes(fProgrammer, SIGNATURE).isEmpty());
+	}
+
+	private IncrementalUpload createUpload(int pagesize) {
+		return new IncrementalUpload(fCache, fHistory, fProgrammer, SIGNATURE, pagesize,
+				new Path(fFolder.getAbsolutePath()));
+	}
+
+	/** Run a successful upload with the given actions */
+	private void upload(IncrementalUpload upload, String... actions) {
+		upload.prepare(fOptions, Arrays.asList(actions));
+		upload.finished(true);
+	}
+
+	/**
+	 * Run the arguments with a stub avrdude and finish the upload like the UploadJob of the
+	 * plugin.
+	 *
+	 * @param message
+	 *            The output of the stub.
+	 * @param exitcode
+	 *            The exit code of the stub.
+	 * @return The exception thrown by avrdude, or <code>null</code> if the upload was successful.
+	 */
+	private AVRDudeException runAVRDude(IncrementalUpload upload, List<String> args,
+			String message, int exitcode) throws IOException {
+		Assume.assumeTrue(AVRDudeStub.isSupported());
+		AVRDudeStub stub = new AVRDudeStub("#!/bin/sh\necho \"" + message + "\"\nexit "
+				+ exitcode + "\n");
+		boolean success = false;
+		try {
+			AVRDude.getDefault().runCommand(new ArrayList<String>(args),
+					new NullProgressMonitor(), false, new Path(fFolder.getAbsolutePath()),
+					fProgrammer, ExternalCommandLauncher.BUFFER_NONE);
+			success = true;
+			return null;
+		} catch (AVRDudeException ade) {
+			return ade;
+		} finally {
+			upload.finished(success);
+			stub.dispose();
+		}
+	}
+
+	/** An image of 1000 bytes with a pattern depending on the seed */
+	private IntelHexImage createImage(int seed) {
+		IntelHexImage image = new IntelHexImage();
+		for (int i = 0; i < 1000; i++) {
+			image.setByte(i, (i * 7 + seed) & 0xFF);
+		}
+		return image;
+	}
+
+	private void writeImage(IntelHexImage image) throws IOException {
+		image.write(new File(fFolder, "test.hex"));
+	}
+
+	/** The EEPROM "image" is a raw file */
+	private void writeEEPROM(String content) throws IOException {
+		FileWriter writer = new FileWriter(new File(fFolder, "test.eep"));
+		writer.write(content);
+		writer.close();
+	}
+}
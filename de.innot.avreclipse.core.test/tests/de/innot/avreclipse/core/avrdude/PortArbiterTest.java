@@ -0,0 +1,276 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+
+package de.innot.avreclipse.core.avrdude;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.innot.avreclipse.core.avrdude.AVRDudeException.Reason;
+import de.innot.avreclipse.core.avrdude.PortArbiter.PortLease;
+import de.innot.avreclipse.core.avrdude.PortArbiter.PortStatistics;
+
+/**
+ * Tests for the {@link PortArbiter}.
+ */
+public class PortArbiterTest {
+
+	private final static String	PORT1	= "/dev/ttyUSB0";
+	private final static String	PORT2	= "/dev/ttyUSB1";
+
+	private PortArbiter			fArbiter;
+
+	@Before
+	public void setUp() {
+		fArbiter = new PortArbiter();
+	}
+
+	/**
+	 * Test that waiting requests for the same port are granted in the order they were made.
+	 */
+	@Test
+	public void testFifo() throws Exception {
+		PortLease first = fArbiter.acquire(PORT1, 0, null);
+
+		final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 5; i++) {
+			final int id = i;
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					try {
+						PortLease lease = fArbiter.acquire(PORT1, 0, null);
+						order.add(id);
+						lease.release();
+					} catch (AVRDudeException e) {
+						fail(e.getMessage());
+					}
+				}
+			};
+			thread.start();
+			threads.add(thread);
+			// Make sure that the thread is queued before the next one is started
+			waitForQueue(PORT1, i + 1);
+		}
+
+		first.release();
+		for (Thread thread : threads) {
+			thread.join(5000);
+		}
+
+		assertEquals(5, order.size());
+		for (int i = 0; i < 5; i++) {
+			assertEquals(Integer.valueOf(i), order.get(i));
+		}
+	}
+
+	/**
+	 * Test that different ports can be used at the same time.
+	 */
+	@Test
+	public void testParallelPorts() throws Exception {
+		PortLease lease1 = fArbiter.acquire(PORT1, 0, null);
+
+		final CountDownLatch acquired = new CountDownLatch(1);
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					PortLease lease2 = fArbiter.acquire(PORT2, 0, null);
+					acquired.countDown();
+					lease2.release();
+				} catch (AVRDudeException e) {
+					// the latch won't count down
+				}
+			}
+		};
+		thread.start();
+
+		assertTrue(acquired.await(5, TimeUnit.SECONDS));
+		lease1.release();
+	}
+
+	/**
+	 * Test that the default port is exclusive against all other ports, as it may be the same
+	 * device as any of them.
+	 */
+	@Test
+	public void testDefaultPort() throws Exception {
+		PortLease lease1 = fArbiter.acquire(PORT1, 0, null);
+
+		// The default port has to wait for the named port
+		final CountDownLatch defaultacquired = new CountDownLatch(1);
+		final CountDownLatch defaultrelease = new CountDownLatch(1);
+		Thread defaultthread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					PortLease lease = fArbiter.acquire(null, 0, null);
+					defaultacquired.countDown();
+					defaultrelease.await(5, TimeUnit.SECONDS);
+					lease.release();
+				} catch (Exception e) {
+					// the latch won't count down
+				}
+			}
+		};
+		defaultthread.start();
+		waitForQueue("", 1);
+
+		// A later request for another named port has to wait for the default port
+		final CountDownLatch port2acquired = new CountDownLatch(1);
+		Thread port2thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					fArbiter.acquire(PORT2, 0, null).release();
+					port2acquired.countDown();
+				} catch (AVRDudeException e) {
+					// the latch won't count down
+				}
+			}
+		};
+		port2thread.start();
+		waitForQueue(PORT2, 1);
+
+		assertFalse(defaultacquired.await(200, TimeUnit.MILLISECONDS));
+		lease1.release();
+		assertTrue(defaultacquired.await(5, TimeUnit.SECONDS));
+		assertFalse(port2acquired.await(200, TimeUnit.MILLISECONDS));
+
+		defaultrelease.countDown();
+		assertTrue(port2acquired.await(5, TimeUnit.SECONDS));
+		defaultthread.join(5000);
+		port2thread.join(5000);
+
+		// Without waiting requests the ports are free again
+		fArbiter.acquire(PORT1, 0, null).release();
+		fArbiter.acquire("", 0, null).release();
+	}
+
+	/**
+	 * Test that the next lease is only granted after the delay since the last release.
+	 */
+	@Test
+	public void testDelay() throws Exception {
+		final long delay = 200;
+
+		PortLease lease = fArbiter.acquire(PORT1, delay, null);
+		lease.release();
+		long released = fArbiter.getLastRelease(PORT1);
+
+		lease = fArbiter.acquire(PORT1, delay, null);
+		long granted = System.currentTimeMillis();
+		lease.release();
+
+		assertTrue(granted - released >= delay);
+		assertTrue(lease.getWaitTime() > 0);
+
+		// A second release has no effect
+		long lastrelease = fArbiter.getLastRelease(PORT1);
+		Thread.sleep(10);
+		lease.release();
+		assertEquals(lastrelease, fArbiter.getLastRelease(PORT1));
+	}
+
+	/**
+	 * Test that a waiting request can be cancelled and does not block the requests behind it.
+	 */
+	@Test
+	public void testCancel() throws Exception {
+		PortLease lease = fArbiter.acquire(PORT1, 0, null);
+
+		final NullProgressMonitor monitor = new NullProgressMonitor();
+		final Reason[] reason = new Reason[1];
+		Thread cancelled = new Thread() {
+			@Override
+			public void run() {
+				try {
+					fArbiter.acquire(PORT1, 0, monitor).release();
+				} catch (AVRDudeException e) {
+					reason[0] = e.getReason();
+				}
+			}
+		};
+		cancelled.start();
+		waitForQueue(PORT1, 1);
+
+		final CountDownLatch acquired = new CountDownLatch(1);
+		Thread next = new Thread() {
+			@Override
+			public void run() {
+				try {
+					fArbiter.acquire(PORT1, 0, null).release();
+					acquired.countDown();
+				} catch (AVRDudeException e) {
+					// the latch won't count down
+				}
+			}
+		};
+		next.start();
+		waitForQueue(PORT1, 2);
+
+		monitor.setCanceled(true);
+		cancelled.join(5000);
+		assertFalse(cancelled.isAlive());
+		assertEquals(Reason.USER_CANCEL, reason[0]);
+
+		lease.release();
+		assertTrue(acquired.await(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Test method for {@link PortArbiter#getStatistics(String)}.
+	 */
+	@Test
+	public void testStatistics() throws Exception {
+		fArbiter.acquire(PORT1, 0, null).release();
+		fArbiter.acquire(PORT1, 100, null).release();
+		fArbiter.acquire(null, 0, null).release();
+
+		PortStatistics stats = fArbiter.getStatistics(PORT1);
+		assertEquals(PORT1, stats.getPort());
+		assertEquals(2, stats.getLeaseCount());
+		assertTrue(stats.getMaxWaitTime() >= 90);
+		assertTrue(stats.getTotalWaitTime() >= stats.getMaxWaitTime());
+		assertEquals(0, stats.getWaitingCount());
+
+		// null is the default port
+		assertEquals(1, fArbiter.getStatistics("").getLeaseCount());
+		assertEquals(2, fArbiter.getAllStatistics().size());
+
+		fArbiter.resetStatistics();
+		assertEquals(0, fArbiter.getStatistics(PORT1).getLeaseCount());
+	}
+
+	private void waitForQueue(String port, int length) throws InterruptedException {
+		for (int i = 0; i < 500; i++) {
+			if (fArbiter.getStatistics(port).getWaitingCount() >= length) {
+				return;
+			}
+			Thread.sleep(10);
+		}
+		fail("Request not queued");
+	}
+}
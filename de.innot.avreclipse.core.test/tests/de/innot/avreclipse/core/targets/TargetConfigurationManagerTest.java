@@ -19,6 +19,7 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
@@ -180,4 +181,73 @@ public class TargetConfigurationManagerTest implements ITargetConfigConstants {
 
 	}
 
+	/**
+	 * Test that the id of a deleted configuration is not used again.
+	 */
+	@Test
+	public void testIdNotReused() throws IOException {
+		ITargetConfiguration tc1 = manager.createNewConfig();
+		manager.deleteConfig(tc1.getId());
+
+		ITargetConfiguration tc2 = manager.createNewConfig();
+		assertFalse("Deleted id reused", tc1.getId().equals(tc2.getId()));
+		assertFalse(manager.getConfigurationIDs().contains(tc1.getId()));
+		assertTrue(manager.getConfigurationIDs().contains(tc2.getId()));
+	}
+
+	/**
+	 * Test method for
+	 * {@link de.innot.avreclipse.core.targets.TargetConfigurationManager#exportConfigs(java.util.Collection, File)}
+	 * and
+	 * {@link de.innot.avreclipse.core.targets.TargetConfigurationManager#importConfigs(File)}.
+	 */
+	@Test
+	public void testExportImport() throws IOException {
+		ITargetConfigurationWorkingCopy tc1 = manager.getWorkingCopy(manager.createNewConfig()
+				.getId());
+		tc1.setName("Export 1");
+		tc1.doSave();
+		ITargetConfigurationWorkingCopy tc2 = manager.getWorkingCopy(manager.createNewConfig()
+				.getId());
+		tc2.setName("Export 2");
+		tc2.setMCU("attiny13");
+		tc2.doSave();
+
+		File folder = File.createTempFile("targetconfigs", "");
+		folder.delete();
+		try {
+			manager.exportConfigs(Arrays.asList(tc1.getId(), tc2.getId(), "foobar"), folder);
+			assertEquals(2, folder.listFiles().length);
+
+			List<ITargetConfiguration> imported = manager.importConfigs(folder);
+			assertEquals(2, imported.size());
+			for (ITargetConfiguration tc : imported) {
+				assertTrue(manager.exists(tc.getId()));
+				assertFalse(tc.getId().equals(tc1.getId()));
+				assertFalse(tc.getId().equals(tc2.getId()));
+			}
+			assertEquals("Export 1", imported.get(0).getName());
+			assertEquals("Export 2", imported.get(1).getName());
+			assertEquals("attiny13", imported.get(1).getMCU());
+		} finally {
+			for (File file : folder.listFiles()) {
+				file.delete();
+			}
+			folder.delete();
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link de.innot.avreclipse.core.targets.TargetConfigurationManager#getConfigs()}.
+	 */
+	@Test
+	public void testGetConfigs() throws IOException {
+		ITargetConfiguration tc = manager.createNewConfig();
+
+		List<ITargetConfiguration> allconfigs = manager.getConfigs();
+		assertEquals(manager.getConfigurationIDs().size(), allconfigs.size());
+		assertTrue(allconfigs.contains(tc));
+	}
+
 }
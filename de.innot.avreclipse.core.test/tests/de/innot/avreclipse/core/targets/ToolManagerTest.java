@@ -128,9 +128,11 @@ public class ToolManagerTest {
 
 	/**
 	 * Test Method for {@link ToolManager#setLastAccess(String, long)} and
-	 * {@link ToolManager#getLastAccess(String)}
+	 * {@link ToolManager#getLastAccess(String)}, which are deprecated but still delegate to the
+	 * {@link de.innot.avreclipse.core.avrdude.PortArbiter}.
 	 */
 	@Test
+	@SuppressWarnings("deprecation")
 	public void testAccessTimes() {
 
 		final String testport = "/foo/bar";
@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+
+package de.innot.avreclipse.core.targets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import de.innot.avreclipse.core.avrdude.AVRDudeException;
+import de.innot.avreclipse.core.avrdude.AVRDudeException.Reason;
+import de.innot.avreclipse.core.targets.ITargetConfiguration.ValidationResult;
+import de.innot.avreclipse.core.targets.ToolQueryExecutor.CombinedFuture;
+import de.innot.avreclipse.core.targets.ToolQueryExecutor.IToolQuery;
+
+/**
+ * Tests for the {@link ToolQueryExecutor}. The queries go to stub tools, so no external programs
+ * are required.
+ */
+public class ToolQueryExecutorTest {
+
+	private final static IToolQuery<Set<String>>	MCUS	= new IToolQuery<Set<String>>() {
+		public Set<String> query(ITargetConfigurationTool tool) throws AVRDudeException {
+			return tool.getMCUs();
+		}
+	};
+
+	/**
+	 * Test that a slow tool does not delay the answer of a fast one.
+	 */
+	@Test
+	public void testPartialResults() throws Exception {
+		StubTool slow = new StubTool("slow", "atmega16");
+		StubTool fast = new StubTool("fast", "attiny13");
+		fast.fRelease.countDown();
+
+		final CountDownLatch fastanswered = new CountDownLatch(1);
+		IToolQueryListener<Set<String>> listener = new IToolQueryListener<Set<String>>() {
+			public void toolAnswered(ITargetConfigurationTool tool, Set<String> result) {
+				if (tool.getId().equals("fast")) {
+					fastanswered.countDown();
+				}
+			}
+		};
+
+		final Future<Set<String>> slowresult = ToolQueryExecutor.submit(slow, MCUS, listener);
+		final Future<Set<String>> fastresult = ToolQueryExecutor.submit(fast, MCUS, listener);
+
+		// The fast tool answers while the slow one is still blocked
+		assertTrue(fastanswered.await(5, TimeUnit.SECONDS));
+		assertTrue(fastresult.get().contains("attiny13"));
+		assertFalse(slowresult.isDone());
+
+		Future<Set<String>> combined = new CombinedFuture<Set<String>>(slowresult, fastresult) {
+			@Override
+			protected Set<String> combine() throws InterruptedException, ExecutionException {
+				Set<String> all = new HashSet<String>(slowresult.get());
+				all.addAll(fastresult.get());
+				return all;
+			}
+		};
+		assertFalse(combined.isDone());
+
+		slow.fRelease.countDown();
+		assertEquals(2, combined.get(5, TimeUnit.SECONDS).size());
+		assertTrue(combined.isDone());
+	}
+
+	/**
+	 * Test that a failing tool returns <code>null</code>, like the synchronous queries.
+	 */
+	@Test
+	public void testFailure() throws Exception {
+		StubTool failing = new StubTool("failing", "atmega16");
+		failing.fFail = true;
+		failing.fRelease.countDown();
+
+		final Object[] answer = new Object[] { "not called" };
+		final CountDownLatch answered = new CountDownLatch(1);
+		Future<Set<String>> result = ToolQueryExecutor.submit(failing, MCUS,
+				new IToolQueryListener<Set<String>>() {
+					public void toolAnswered(ITargetConfigurationTool tool, Set<String> mcus) {
+						answer[0] = mcus;
+						answered.countDown();
+					}
+				});
+
+		assertNull(result.get(5, TimeUnit.SECONDS));
+		assertTrue(answered.await(5, TimeUnit.SECONDS));
+		assertNull(answer[0]);
+	}
+
+	/**
+	 * Test that cancelling a combined future cancels all parts.
+	 */
+	@Test
+	public void testCancel() throws Exception {
+		StubTool slow = new StubTool("slow", "atmega16");
+		final Future<Set<String>> part = ToolQueryExecutor.submit(slow, MCUS, null);
+		Future<Set<String>> combined = new CombinedFuture<Set<String>>(part) {
+			@Override
+			protected Set<String> combine() throws InterruptedException, ExecutionException {
+				return part.get();
+			}
+		};
+
+		assertTrue(combined.cancel(true));
+		assertTrue(combined.isCancelled());
+		assertTrue(part.isCancelled());
+		slow.fRelease.countDown();
+	}
+
+	/**
+	 * Test that the result of the first tool is used without waiting for the others.
+	 */
+	@Test
+	public void testFirstResult() throws Exception {
+		StubTool first = new StubTool("first", "atmega16");
+		first.fRelease.countDown();
+		StubTool second = new StubTool("second", "atmega16");
+
+		final Future<Set<String>> firstresult = ToolQueryExecutor.submit(first, MCUS, null);
+		final Future<Set<String>> secondresult = ToolQueryExecutor.submit(second, MCUS, null);
+		Future<Set<String>> combined = new CombinedFuture<Set<String>>(firstresult, secondresult) {
+			@Override
+			protected Set<String> combine() throws InterruptedException, ExecutionException {
+				Set<String> result = firstresult.get();
+				return result != null ? result : secondresult.get();
+			}
+		};
+
+		assertSame(first.fMCUs, combined.get());
+		second.fRelease.countDown();
+	}
+
+	private static class StubTool implements ITargetConfigurationTool {
+
+		final String			fId;
+		final Set<String>		fMCUs;
+		final CountDownLatch	fRelease	= new CountDownLatch(1);
+		volatile boolean		fFail		= false;
+
+		StubTool(String id, String mcu) {
+			fId = id;
+			fMCUs = Collections.singleton(mcu);
+		}
+
+		public String getId() {
+			return fId;
+		}
+
+		public String getName() {
+			return fId;
+		}
+
+		public String getVersion() {
+			return "1.0";
+		}
+
+		public Set<String> getMCUs() throws AVRDudeException {
+			try {
+				fRelease.await();
+			} catch (InterruptedException e) {
+				throw new AVRDudeException(Reason.USER_CANCEL, "interrupted");
+			}
+			if (fFail) {
+				throw new AVRDudeException(Reason.NO_AVRDUDE_FOUND, "Stub failure");
+			}
+			return fMCUs;
+		}
+
+		public Set<String> getProgrammers() {
+			return null;
+		}
+
+		public IProgrammer getProgrammer(String id) {
+			return null;
+		}
+
+		public String[] getAttributes() {
+			return new String[0];
+		}
+
+		public String getDefaultValue(String attribute) {
+			return null;
+		}
+
+		public ValidationResult validate(String attribute) {
+			return ValidationResult.OK_RESULT;
+		}
+	}
+}
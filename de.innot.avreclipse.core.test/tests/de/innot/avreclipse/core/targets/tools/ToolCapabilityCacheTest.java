@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+
+package de.innot.avreclipse.core.targets.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.innot.avreclipse.core.avrdude.AVRDudeException;
+import de.innot.avreclipse.core.avrdude.AVRDudeException.Reason;
+
+/**
+ * Tests for the {@link ToolCapabilityCache}. The values are created by counting loaders, so no
+ * external tools are required.
+ */
+public class ToolCapabilityCacheTest {
+
+	private final static String	TOOLID	= "test.tool";
+
+	private ToolCapabilityCache	fCache;
+
+	private File				fExecutable;
+
+	@Before
+	public void setUp() throws IOException {
+		fCache = new ToolCapabilityCache();
+		fExecutable = File.createTempFile("testtool", "");
+		writeExecutable("1.0");
+	}
+
+	@After
+	public void tearDown() {
+		fExecutable.delete();
+	}
+
+	/**
+	 * Test method for
+	 * {@link de.innot.avreclipse.core.targets.tools.ToolCapabilityCache#getVersion(String, String, ToolCapabilityCache.ILoader)}
+	 * .
+	 */
+	@Test
+	public void testGetVersion() throws Exception {
+		CountingLoader<String> loader = new CountingLoader<String>("1.0");
+		String cmd = fExecutable.getAbsolutePath();
+
+		assertEquals("1.0", fCache.getVersion(TOOLID, cmd, loader));
+		assertEquals("1.0", fCache.getVersion(TOOLID, cmd, loader));
+		assertEquals(1, loader.fCount.get());
+
+		// Other tools using the same executable have their own version
+		fCache.getVersion("other.tool", cmd, loader);
+		assertEquals(2, loader.fCount.get());
+
+		// A replaced executable is asked again
+		writeExecutable("version 2.0");
+		loader.fValue = "2.0";
+		assertEquals("2.0", fCache.getVersion(TOOLID, cmd, loader));
+		assertEquals(3, loader.fCount.get());
+	}
+
+	/**
+	 * Test method for
+	 * {@link de.innot.avreclipse.core.targets.tools.ToolCapabilityCache#getCapability(String, String, String, String, ToolCapabilityCache.ILoader)}
+	 * .
+	 */
+	@Test
+	public void testGetCapability() throws Exception {
+		Object mcus = new Object();
+		CountingLoader<Object> loader = new CountingLoader<Object>(mcus);
+		String cmd = fExecutable.getAbsolutePath();
+
+		assertSame(mcus, fCache.getCapability(TOOLID, cmd, "1.0", ToolCapabilityCache.MCUS, loader));
+		assertSame(mcus, fCache.getCapability(TOOLID, cmd, "1.0", ToolCapabilityCache.MCUS, loader));
+		assertEquals(1, loader.fCount.get());
+
+		// Different versions have different capabilities
+		fCache.getCapability(TOOLID, cmd, "2.0", ToolCapabilityCache.MCUS, loader);
+		assertEquals(2, loader.fCount.get());
+
+		// Changing the command attribute removes all values for the command
+		fCache.attributeChanged(TOOLID + ToolCapabilityCache.COMMAND_SUFFIX, cmd, "othercommand");
+		fCache.getCapability(TOOLID, cmd, "1.0", ToolCapabilityCache.MCUS, loader);
+		assertEquals(3, loader.fCount.get());
+
+		// but other attributes don't
+		fCache.attributeChanged(TOOLID + ".useconsole", "true", "false");
+		fCache.getCapability(TOOLID, cmd, "1.0", ToolCapabilityCache.MCUS, loader);
+		assertEquals(3, loader.fCount.get());
+	}
+
+	/**
+	 * Test that failures are passed to the caller and are not cached.
+	 */
+	@Test
+	public void testLoadFailure() throws Exception {
+		CountingLoader<String> loader = new CountingLoader<String>("1.0");
+		loader.fFail = true;
+		String cmd = fExecutable.getAbsolutePath();
+
+		try {
+			fCache.getVersion(TOOLID, cmd, loader);
+			fail("AVRDudeException expected");
+		} catch (AVRDudeException ade) {
+			assertEquals(Reason.NO_AVRDUDE_FOUND, ade.getReason());
+		}
+
+		loader.fFail = false;
+		assertEquals("1.0", fCache.getVersion(TOOLID, cmd, loader));
+		assertEquals(2, loader.fCount.get());
+	}
+
+	/**
+	 * Test that concurrent requests run the loader only once.
+	 */
+	@Test
+	public void testConcurrentRequests() throws Exception {
+		final int threads = 8;
+		final CountingLoader<String> loader = new CountingLoader<String>("1.0");
+		loader.fDelay = 100;
+		final String cmd = fExecutable.getAbsolutePath();
+		final CountDownLatch start = new CountDownLatch(1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<String>> results = new ArrayList<Future<String>>();
+		for (int i = 0; i < threads; i++) {
+			results.add(executor.submit(new Callable<String>() {
+				public String call() throws Exception {
+					start.await();
+					return fCache.getVersion(TOOLID, cmd, loader);
+				}
+			}));
+		}
+		start.countDown();
+
+		for (Future<String> result : results) {
+			assertEquals("1.0", result.get());
+		}
+		executor.shutdown();
+
+		assertEquals(1, loader.fCount.get());
+	}
+
+	/**
+	 * Test method for
+	 * {@link de.innot.avreclipse.core.targets.tools.ToolCapabilityCache#resolveCommand(String)}.
+	 */
+	@Test
+	public void testResolveCommand() {
+		String cmd = fExecutable.getAbsolutePath();
+		assertEquals(cmd, ToolCapabilityCache.resolveCommand(cmd));
+
+		// Unknown commands are returned unchanged
+		assertEquals("nosuchcommand4711", ToolCapabilityCache.resolveCommand("nosuchcommand4711"));
+	}
+
+	private void writeExecutable(String content) throws IOException {
+		FileWriter writer = new FileWriter(fExecutable);
+		writer.write(content);
+		writer.close();
+	}
+
+	private static class CountingLoader<T> implements ToolCapabilityCache.ILoader<T> {
+
+		final AtomicInteger	fCount	= new AtomicInteger();
+		volatile T			fValue;
+		volatile boolean	fFail	= false;
+		volatile long		fDelay	= 0;
+
+		CountingLoader(T value) {
+			fValue = value;
+		}
+
+		public T load() throws AVRDudeException {
+			fCount.incrementAndGet();
+			if (fFail) {
+				throw new AVRDudeException(Reason.NO_AVRDUDE_FOUND, "Stub failure");
+			}
+			if (fDelay > 0) {
+				try {
+					Thread.sleep(fDelay);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return fValue;
+		}
+	}
+}
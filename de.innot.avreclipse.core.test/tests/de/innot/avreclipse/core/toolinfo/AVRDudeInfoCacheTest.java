@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.toolinfo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.innot.avreclipse.core.toolinfo.AVRDude.ConfigEntry;
+import de.innot.avreclipse.core.toolinfo.AVRDude.ConfigProgrammerEntry;
+
+/**
+ * @author Thomas Holland
+ *
+ */
+public class AVRDudeInfoCacheTest {
+
+	private File	fCacheFile;
+	private File	fTool;
+	private File	fConfig;
+
+	@Before
+	public void setUp() throws Exception {
+		fCacheFile = File.createTempFile("avrdudecache", ".properties");
+		fCacheFile.delete();
+		fTool = File.createTempFile("avrdude", "");
+		fConfig = File.createTempFile("avrdude", ".conf");
+		writeFile(fTool, "dummy executable");
+		writeFile(fConfig, "# dummy config");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		fCacheFile.delete();
+		fTool.delete();
+		fConfig.delete();
+	}
+
+	/**
+	 * Test method for
+	 * {@link de.innot.avreclipse.core.toolinfo.AVRDudeInfoCache#getMCUEntries(IPath, String)}.
+	 */
+	@Test
+	public void testMCUEntries() {
+		IPath toolpath = new Path(fTool.getAbsolutePath());
+
+		AVRDudeInfoCache cache = new AVRDudeInfoCache(fCacheFile);
+		assertNull("Empty cache returned a list", cache.getMCUEntries(toolpath, ""));
+
+		Map<String, ConfigEntry> entries = new HashMap<String, ConfigEntry>();
+		ConfigEntry entry = new ConfigEntry();
+		entry.fAvrdudeId = "m16";
+		entry.fDescription = "ATMEGA16";
+		entry.fConfigfile = new Path(fConfig.getAbsolutePath());
+		entry.fLinenumber = 1234;
+		entries.put(entry.fAvrdudeId, entry);
+		cache.putMCUEntries(toolpath, "", entries);
+
+		// A new cache instance must read the list from the file
+		cache = new AVRDudeInfoCache(fCacheFile);
+		Map<String, ConfigEntry> cached = cache.getMCUEntries(toolpath, "");
+		assertNotNull("List not cached", cached);
+		assertEquals(1, cached.size());
+		ConfigEntry cachedentry = cached.get("m16");
+		assertEquals("ATMEGA16", cachedentry.fDescription);
+		assertEquals(1234, cachedentry.fLinenumber);
+		assertEquals(entry.fConfigfile, cachedentry.fConfigfile);
+
+		// A different custom config invalidates the list
+		assertNull(cache.getMCUEntries(toolpath, fConfig.getAbsolutePath()));
+
+		// A modified config file invalidates the list
+		fConfig.setLastModified(fConfig.lastModified() - 10000);
+		assertNull(cache.getMCUEntries(toolpath, ""));
+	}
+
+	/**
+	 * Test method for
+	 * {@link de.innot.avreclipse.core.toolinfo.AVRDudeInfoCache#getProgrammerEntries(IPath, String)}
+	 * .
+	 */
+	@Test
+	public void testProgrammerEntries() throws IOException {
+		IPath toolpath = new Path(fTool.getAbsolutePath());
+		IPath configpath = new Path(fConfig.getAbsolutePath());
+
+		Map<String, ConfigProgrammerEntry> entries = new HashMap<String, ConfigProgrammerEntry>();
+		ConfigProgrammerEntry parent = new ConfigProgrammerEntry();
+		parent.fAvrdudeId = "stk500v2";
+		parent.fDescription = "Atmel STK500 Version 2.x firmware";
+		parent.fType = "stk500v2";
+		parent.fConnectionType = "serial";
+		parent.fConfigfile = configpath;
+		parent.fLinenumber = 10;
+		parent.fConfigLines.add("  id    = \"stk500v2\";");
+		parent.fConfigLines.add(";");
+		entries.put(parent.fAvrdudeId, parent);
+
+		ConfigProgrammerEntry child = new ConfigProgrammerEntry();
+		child.fAvrdudeId = "avrisp2";
+		child.fDescription = "Atmel AVR ISP mkII";
+		child.fParent = parent;
+		child.fConfigfile = configpath;
+		child.fLinenumber = 20;
+		entries.put(child.fAvrdudeId, child);
+
+		AVRDudeInfoCache cache = new AVRDudeInfoCache(fCacheFile);
+		cache.putProgrammerEntries(toolpath, "", entries);
+
+		cache = new AVRDudeInfoCache(fCacheFile);
+		Map<String, ConfigProgrammerEntry> cached = cache.getProgrammerEntries(toolpath, "");
+		assertNotNull("List not cached", cached);
+		assertEquals(2, cached.size());
+		ConfigProgrammerEntry cachedchild = cached.get("avrisp2");
+		assertSame(cached.get("stk500v2"), cachedchild.fParent);
+		assertEquals("stk500v2", cachedchild.getType());
+		assertEquals("serial", cachedchild.getConnectionType());
+		assertEquals(parent.fConfigLines, cached.get("stk500v2").fConfigLines);
+
+		// A modified executable invalidates the list
+		writeFile(fTool, "a new version of the dummy executable");
+		assertNull(cache.getProgrammerEntries(toolpath, ""));
+
+		cache.clear();
+		assertNull(cache.getProgrammerEntries(toolpath, ""));
+	}
+
+	private static void writeFile(File file, String content) throws IOException {
+		FileWriter writer = new FileWriter(file);
+		writer.write(content);
+		writer.close();
+	}
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.toolinfo;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Microbenchmark for the {@link ExternalCommandLauncher}.
+ * <p>
+ * Measures how many launches per second the launcher can do with a small stub executable, which
+ * writes a few lines to stdout and stderr, similar to a tool version query. The result is printed
+ * to stdout.
+ * </p>
+ * <p>
+ * This is not a unit test and is not run with the normal tests (the test runner only picks up
+ * classes ending with "Test"). Run it manually as a JUnit test. It requires a POSIX shell.
+ * </p>
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ */
+public class ExternalCommandLauncherBenchmark {
+
+	private final static int	WARMUP_LAUNCHES	= 50;
+	private final static int	LAUNCHES		= 500;
+
+	private File				fStub;
+
+	@Before
+	public void setUp() throws Exception {
+		fStub = File.createTempFile("stubtool", ".sh");
+		FileWriter writer = new FileWriter(fStub);
+		writer.write("#!/bin/sh\n");
+		writer.write("echo \"stubtool version 1.0\"\n");
+		writer.write("echo \"Copyright (c) nobody\"\n");
+		writer.write("echo \"stubtool: some message\" 1>&2\n");
+		writer.close();
+		fStub.setExecutable(true);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		fStub.delete();
+	}
+
+	@Test
+	public void benchmarkLaunch() throws IOException {
+
+		for (int i = 0; i < WARMUP_LAUNCHES; i++) {
+			launch();
+		}
+
+		long starttime = System.nanoTime();
+		for (int i = 0; i < LAUNCHES; i++) {
+			launch();
+		}
+		long duration = System.nanoTime() - starttime;
+
+		double rate = LAUNCHES / (duration / 1e9);
+		System.out.println("ExternalCommandLauncher: " + LAUNCHES + " launches in "
+				+ (duration / 1000000) + " ms (" + Math.round(rate) + " launches/sec)");
+	}
+
+	private void launch() throws IOException {
+		List<String> arguments = new ArrayList<String>(0);
+		ExternalCommandLauncher launcher = new ExternalCommandLauncher(fStub.getAbsolutePath(),
+				arguments);
+		assertEquals("Launcher return code", 0, launcher.launch());
+		assertEquals("Wrong stdout", 2, launcher.getStdOut().size());
+		assertEquals("Wrong stderr", 1, launcher.getStdErr().size());
+	}
+}
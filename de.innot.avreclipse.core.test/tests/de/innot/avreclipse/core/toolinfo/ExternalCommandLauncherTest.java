@@ -71,4 +71,44 @@ public class ExternalCommandLauncherTest {
 
 	}
 
+	@Test
+	public void testOutputBufferSize() throws IOException {
+		List<String> arguments = new ArrayList<String>(2);
+		arguments.add("-c");
+		arguments.add("for i in 1 2 3 4 5; do echo line$i; done");
+
+		// Only the last lines are kept, but the listener gets all of them
+		final List<String> lines = new ArrayList<String>();
+		ExternalCommandLauncher testlauncher = new ExternalCommandLauncher("sh", arguments);
+		testlauncher.setOutputBufferSize(2);
+		testlauncher.setCommandOutputListener(new ICommandOutputListener() {
+			public synchronized void handleLine(String line, StreamSource source) {
+				lines.add(line);
+			}
+
+			public void init(IProgressMonitor monitor) {
+			}
+
+			public Reason getAbortReason() {
+				return null;
+			}
+
+			public String getAbortLine() {
+				return null;
+			}
+		});
+		assertEquals("Launcher return code", 0, testlauncher.launch());
+		assertEquals("Listener missed lines", 5, lines.size());
+		List<String> stdout = testlauncher.getStdOut();
+		assertEquals("Wrong number of buffered lines", 2, stdout.size());
+		assertEquals("line4", stdout.get(0));
+		assertEquals("line5", stdout.get(1));
+
+		// No buffering at all
+		testlauncher = new ExternalCommandLauncher("sh", arguments);
+		testlauncher.setOutputBufferSize(ExternalCommandLauncher.BUFFER_NONE);
+		assertEquals("Launcher return code", 0, testlauncher.launch());
+		assertEquals("Lines buffered", 0, testlauncher.getStdOut().size());
+	}
+
 }
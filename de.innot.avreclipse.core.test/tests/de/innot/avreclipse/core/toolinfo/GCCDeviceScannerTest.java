@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+
+package de.innot.avreclipse.core.toolinfo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link GCCDeviceScanner} and the {@link GCCInfoCache}.
+ */
+public class GCCDeviceScannerTest {
+
+	private final static String	IO_H	= "#ifndef _AVR_IO_H_\n" //
+												+ "#define _AVR_IO_H_\n" //
+												+ "#include <avr/sfr_defs.h>\n" //
+												+ "#if defined (__AVR_AT94K__)\n" //
+												+ "#  include <avr/ioat94k.h>\n" //
+												+ "#elif defined (__AVR_ATmega328P__)\n" //
+												+ "#  include <avr/iom328p.h>\n" //
+												+ "#elif defined (__AVR_ATtiny85__)\n" //
+												+ "#  include <avr/iotn85.h>\n" //
+												+ "#elif defined (__AVR_ATmega16HVA__) \\\n" //
+												+ "   || defined (__AVR_ATmega8HVA__)\n" //
+												+ "#  include <avr/iom8hva.h>\n" //
+												+ "#else\n" //
+												+ "#  warning \"device type not defined\"\n" //
+												+ "#endif\n" //
+												+ "#include <avr/portpins.h>\n" //
+												+ "#endif\n";
+
+	private File				fRoot;
+
+	private File				fExecutable;
+
+	@Before
+	public void setUp() throws IOException {
+		fRoot = File.createTempFile("gcctoolchain", "");
+		fRoot.delete();
+		fExecutable = createFile("bin/avr-gcc", "");
+	}
+
+	@After
+	public void tearDown() {
+		delete(fRoot);
+	}
+
+	@Test
+	public void testDeviceSpecs() throws IOException {
+		createFile("lib/gcc/avr/5.4.0/device-specs/specs-atmega328p", "");
+		createFile("lib/gcc/avr/5.4.0/device-specs/specs-attiny85", "");
+		createFile("lib/gcc/avr/5.4.0/device-specs/specs-avr5", "");
+		// avr-libc is ignored if there are device-specs
+		createFile("avr/lib/avr5/libatmega8.a", "");
+
+		Set<String> mcus = new GCCDeviceScanner(fExecutable).scan();
+		assertEquals(new TreeSet<String>(Arrays.asList("atmega328p", "attiny85")), mcus);
+	}
+
+	@Test
+	public void testSeveralVersions() throws IOException {
+		createFile("lib/gcc/avr/5.4.0/device-specs/specs-atmega328p", "");
+		createFile("lib/gcc/avr/7.3.0/device-specs/specs-atmega328p", "");
+		createFile("lib/gcc/avr/7.3.0/device-specs/specs-atmega328pb", "");
+		createFile("avr/lib/avr5/libatmega8.a", "");
+
+		// The version is unknown: let avr-gcc tell
+		assertTrue(new GCCDeviceScanner(fExecutable).scan().isEmpty());
+
+		// avr-gcc is a copy of avr-gcc-7.3.0
+		createFile("bin/avr-gcc", "gcc 7.3.0");
+		createFile("bin/avr-gcc-7.3.0", "gcc 7.3.0");
+		createFile("bin/avr-gcc-5.4.0", "gcc 5.4");
+		Set<String> mcus = new GCCDeviceScanner(fExecutable).scan();
+		assertEquals(new TreeSet<String>(Arrays.asList("atmega328p", "atmega328pb")), mcus);
+
+		// A versioned executable
+		mcus = new GCCDeviceScanner(new File(fRoot, "bin/avr-gcc-5.4.0")).scan();
+		assertEquals(new TreeSet<String>(Arrays.asList("atmega328p")), mcus);
+	}
+
+	@Test
+	public void testAVRLibc() throws IOException {
+		createFile("avr/include/avr/io.h", IO_H);
+		createFile("avr/include/avr/ioat94k.h", "");
+		createFile("avr/include/avr/iom328p.h", "");
+		createFile("avr/include/avr/iom8hva.h", "");
+		// no iotn85.h
+		createFile("avr/lib/avr4/libatmega8.a", "");
+		createFile("avr/lib/avr5/libc.a", "");
+		createFile("avr/lib/libavr5.a", "");
+
+		Set<String> mcus = new GCCDeviceScanner(fExecutable).scan();
+		assertEquals(new TreeSet<String>(Arrays.asList("at94k", "atmega16hva", "atmega328p",
+				"atmega8", "atmega8hva")), mcus);
+	}
+
+	@Test
+	public void testUnknownLayout() {
+		assertTrue(new GCCDeviceScanner(fExecutable).scan().isEmpty());
+		assertNull(new GCCDeviceScanner(new File(fRoot, "bin/avr-g++")).getToolKey());
+	}
+
+	@Test
+	public void testCache() throws IOException {
+		File iofile = createFile("avr/include/avr/io.h", IO_H);
+		GCCDeviceScanner scanner = new GCCDeviceScanner(fExecutable);
+		String toolkey = scanner.getToolKey();
+		assertNotNull(toolkey);
+
+		File cachefile = new File(fRoot, "gcccache.properties");
+		GCCInfoCache cache = new GCCInfoCache(cachefile);
+		assertNull(cache.getMCUs(toolkey));
+		cache.putMCUs(toolkey, new TreeSet<String>(Arrays.asList("atmega8", "attiny85")));
+
+		cache = new GCCInfoCache(cachefile);
+		assertEquals(new TreeSet<String>(Arrays.asList("atmega8", "attiny85")), cache
+				.getMCUs(toolkey));
+
+		// an updated avr-libc invalidates the key
+		iofile.setLastModified(iofile.lastModified() - 10000);
+		String newkey = scanner.getToolKey();
+		assertFalse(toolkey.equals(newkey));
+		assertNull(cache.getMCUs(newkey));
+
+		cache.clear();
+		assertFalse(cachefile.exists());
+	}
+
+	@Test
+	public void testDeviceLibraryKey() throws IOException {
+		File library = createFile("avr/lib/avr5/libatmega16.a", "");
+		File archdir = library.getParentFile();
+		archdir.setLastModified(archdir.lastModified() - 10000);
+		GCCDeviceScanner scanner = new GCCDeviceScanner(fExecutable);
+		String toolkey = scanner.getToolKey();
+
+		// A new device library only changes the architecture folder
+		createFile("avr/lib/avr5/libatmega32.a", "");
+		archdir.setLastModified(archdir.lastModified() + 10000);
+		assertFalse(toolkey.equals(scanner.getToolKey()));
+	}
+
+	private File createFile(String path, String content) throws IOException {
+		File file = new File(fRoot, path);
+		file.getParentFile().mkdirs();
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+		return file;
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.toolinfo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import de.innot.avreclipse.core.toolinfo.partdescriptionfiles.BaseReader;
+import de.innot.avreclipse.core.toolinfo.partdescriptionfiles.IPDFreader;
+
+public class PartDescriptionFilesReaderTest {
+
+	private File	fFolder;
+
+	@Before
+	public void setUp() throws Exception {
+		fFolder = File.createTempFile("pdftest", "");
+		fFolder.delete();
+		fFolder.mkdir();
+		writeFile("ATmega16.xml", "<avr-tools-device-file><devices><device name=\"ATmega16\"/>"
+				+ "</devices></avr-tools-device-file>");
+		writeFile("ATtiny13.xml", "<avr-tools-device-file><devices><device name=\"ATtiny13\"/>"
+				+ "</devices></avr-tools-device-file>");
+		writeFile("broken.xml", "<avr-tools-device-file><devices>");
+		writeFile("readme.txt", "not a part description file");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for (File file : fFolder.listFiles()) {
+			file.delete();
+		}
+		fFolder.delete();
+	}
+
+	/**
+	 * Test method for
+	 * {@link de.innot.avreclipse.core.toolinfo.PartDescriptionFilesReader#parseAllFiles(org.eclipse.core.runtime.IProgressMonitor)}
+	 * .
+	 */
+	@Test
+	public void testParseAllFiles() {
+		TestReader reader1 = new TestReader();
+		TestReader reader2 = new TestReader();
+		List<IPDFreader> readers = new ArrayList<IPDFreader>();
+		readers.add(reader1);
+		readers.add(reader2);
+
+		PartDescriptionFilesReader pdfreader = new PartDescriptionFilesReader(readers);
+		pdfreader.setDevicesFolder(new Path(fFolder.getAbsolutePath()));
+		pdfreader.parseAllFiles(new NullProgressMonitor());
+
+		// The broken file and the non-xml file are skipped
+		assertEquals(2, reader1.fMCUs.size());
+		assertTrue(reader1.fMCUs.contains("atmega16"));
+		assertTrue(reader1.fMCUs.contains("attiny13"));
+		assertTrue(reader1.fFinished);
+
+		// Both readers got the same documents
+		assertEquals(reader1.fMCUs, reader2.fMCUs);
+		for (int i = 0; i < reader1.fDocuments.size(); i++) {
+			assertSame(reader1.fDocuments.get(i), reader2.fDocuments.get(i));
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link de.innot.avreclipse.core.toolinfo.PartDescriptionFilesReader#setParserThreads(int)}.
+	 */
+	@Test
+	public void testParserThreads() throws IOException {
+		for (int i = 0; i < 20; i++) {
+			writeFile("ATxmega" + i + "A1.xml", "<avr-tools-device-file><devices><device name=\"ATxmega"
+					+ i + "A1\"/></devices></avr-tools-device-file>");
+		}
+
+		TestReader sequential = new TestReader();
+		PartDescriptionFilesReader pdfreader = new PartDescriptionFilesReader(
+				Arrays.asList(new IPDFreader[] { sequential }));
+		pdfreader.setDevicesFolder(new Path(fFolder.getAbsolutePath()));
+		pdfreader.parseAllFiles(new NullProgressMonitor());
+
+		TestReader concurrent = new TestReader();
+		pdfreader = new PartDescriptionFilesReader(Arrays.asList(new IPDFreader[] { concurrent }));
+		pdfreader.setDevicesFolder(new Path(fFolder.getAbsolutePath()));
+		pdfreader.setParserThreads(4);
+		pdfreader.parseAllFiles(new NullProgressMonitor());
+
+		// Same documents in the same order
+		assertEquals(22, concurrent.fMCUs.size());
+		assertEquals(sequential.fMCUs, concurrent.fMCUs);
+		assertTrue(concurrent.fFinished);
+	}
+
+	private static class TestReader extends BaseReader {
+
+		List<String>	fMCUs		= new ArrayList<String>();
+		List<Document>	fDocuments	= new ArrayList<Document>();
+		boolean			fFinished	= false;
+
+		public void start() {
+		}
+
+		@Override
+		protected void parse(Document document, File sourcefile) {
+			fMCUs.add(fMCUid);
+			fDocuments.add(document);
+		}
+
+		public void finish() {
+			fFinished = true;
+		}
+	}
+
+	private void writeFile(String name, String content) throws IOException {
+		FileWriter writer = new FileWriter(new File(fFolder, name));
+		writer.write(content);
+		writer.close();
+	}
+}
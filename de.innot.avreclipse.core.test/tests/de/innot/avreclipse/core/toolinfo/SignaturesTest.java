@@ -13,14 +13,19 @@
  */
 package de.innot.avreclipse.core.toolinfo;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
@@ -106,6 +111,27 @@ public class SignaturesTest {
 				.equals("atmega32hvb"));
 	}
 
+	/**
+	 * Test method for
+	 * {@link de.innot.avreclipse.core.toolinfo.Signatures#getMCUs(java.util.Collection)}.
+	 */
+	@Test
+	public void testGetMCUs() {
+		List<String> signatures = Arrays.asList(new String[] { "0x1E9781", "0x1e9405", "0x1E9510",
+				"0xFFFFFF", "foo" });
+		Map<String, String> mcus = fSigs.getMCUs(signatures);
+		assertEquals(5, mcus.size());
+		assertEquals("at90can128", mcus.get("0x1E9781"));
+		assertEquals("atmega169", mcus.get("0x1e9405"));
+		assertEquals("atmega32hvb", mcus.get("0x1E9510"));
+		assertNull(mcus.get("0xFFFFFF"));
+		assertNull(mcus.get("foo"));
+
+		// The index is updated when a signature is added
+		fSigs.addSignature("test1", "0xFFFFFF");
+		assertEquals("test1", fSigs.getMCUs(signatures).get("0xFFFFFF"));
+	}
+
 	private final static IPath	INSTANCEPROPSFILE	= new Path("signatures.properties");
 
 	/**
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+
+package de.innot.avreclipse.core.toolinfo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.innot.avreclipse.core.toolinfo.SizeReport.Memory;
+import de.innot.avreclipse.core.util.ElfFile;
+import de.innot.avreclipse.core.util.ElfFileBuilder;
+
+/**
+ * Tests for the {@link SizeReport}.
+ */
+public class SizeReportTest {
+
+	private File	fFile;
+
+	@Before
+	public void setUp() throws IOException {
+		fFile = File.createTempFile("sizereporttest", ".elf");
+	}
+
+	@After
+	public void tearDown() {
+		fFile.delete();
+	}
+
+	private ElfFileBuilder getProgram() {
+		ElfFileBuilder builder = new ElfFileBuilder();
+		builder.addSection(".text", 1, ElfFile.SHF_ALLOC | 0x4, 0, new byte[1000]);
+		builder.addSection(".data", 1, ElfFile.SHF_ALLOC | 0x1, 0x800100, new byte[24]);
+		builder.addNoBitsSection(".bss", 0x800118, 100);
+		builder.addSection(".eeprom", 1, ElfFile.SHF_ALLOC | 0x1, 0x810000, new byte[10]);
+		builder.addSection(".comment", 1, 0, 0, new byte[40]);
+		return builder;
+	}
+
+	@Test
+	public void testUsage() throws IOException {
+		getProgram().write(fFile);
+
+		SizeReport report = SizeReport.create(fFile, null);
+		assertEquals(1024, report.getUsed(Memory.PROGRAM));
+		assertEquals(124, report.getUsed(Memory.DATA));
+		assertEquals(10, report.getUsed(Memory.EEPROM));
+		assertEquals(0, report.getUsed(Memory.FUSE));
+
+		// no device info and no MCU
+		assertEquals(-1, report.getCapacity(Memory.PROGRAM));
+		assertEquals(-1, report.getPercentage(Memory.PROGRAM), 0.0);
+	}
+
+	@Test
+	public void testDeviceInfo() throws IOException {
+		ElfFileBuilder builder = getProgram();
+		builder.addSection(".note.gnu.avr.deviceinfo", ElfFile.SHT_NOTE, 0, 0, ElfFileBuilder
+				.deviceInfo(32768, 2048, 1024));
+		builder.write(fFile);
+
+		SizeReport report = SizeReport.create(fFile, null);
+		assertEquals(32768, report.getCapacity(Memory.PROGRAM));
+		assertEquals(2048, report.getCapacity(Memory.DATA));
+		assertEquals(1024, report.getCapacity(Memory.EEPROM));
+		assertEquals(3.125, report.getPercentage(Memory.PROGRAM), 0.0001);
+
+		String text = report.toString();
+		String percentage = String.format("%.1f", 3.125);
+		assertTrue(text, text.contains("1024 bytes (" + percentage + "% Full)"));
+		assertTrue(text, text.contains("(.data + .bss + .noinit)"));
+		assertTrue(text, text.contains("EEPROM:"));
+		assertTrue(text, !text.contains("Fuse:"));
+	}
+
+	@Test
+	public void testIOHeader() throws IOException {
+		File header = File.createTempFile("iom328p", ".h");
+		try {
+			FileWriter writer = new FileWriter(header);
+			writer.write("/* Constants */\n" //
+					+ "#define SPM_PAGESIZE 128\n" //
+					+ "#define RAMSTART     (0x100)\n" //
+					+ "#define RAMEND       0x8FF     /* Last On-Chip SRAM Location */\n" //
+					+ "#define XRAMSIZE     0\n" //
+					+ "#define XRAMEND      RAMEND\n" //
+					+ "#define E2END        0x3FF\n" //
+					+ "#define E2PAGESIZE   4\n" //
+					+ "#define FLASHEND     0x7FFF\n");
+			writer.close();
+
+			Map<Memory, Long> capacity = new EnumMap<Memory, Long>(Memory.class);
+			SizeReport.readIOHeader(header, capacity);
+			assertEquals(Long.valueOf(32768), capacity.get(Memory.PROGRAM));
+			assertEquals(Long.valueOf(2048), capacity.get(Memory.DATA));
+			assertEquals(Long.valueOf(1024), capacity.get(Memory.EEPROM));
+
+			// The device info of the ELF file has priority
+			capacity.clear();
+			capacity.put(Memory.DATA, 1000L);
+			SizeReport.readIOHeader(header, capacity);
+			assertEquals(Long.valueOf(1000), capacity.get(Memory.DATA));
+		} finally {
+			header.delete();
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+
+package de.innot.avreclipse.core.toolinfo;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.innot.avreclipse.core.toolinfo.SizeReport.Memory;
+import de.innot.avreclipse.core.toolinfo.SymbolSizeTable.Delta;
+import de.innot.avreclipse.core.toolinfo.SymbolSizeTable.Entry;
+import de.innot.avreclipse.core.util.ElfFile;
+import de.innot.avreclipse.core.util.ElfFileBuilder;
+
+/**
+ * Tests for the {@link SymbolSizeTable} and the {@link SymbolSizeHistory}.
+ */
+public class SymbolSizeTableTest {
+
+	@Test
+	public void testCreate() throws IOException {
+		ElfFileBuilder builder = new ElfFileBuilder();
+		int text = builder.addSection(".text", 1, ElfFile.SHF_ALLOC | 0x4, 0, new byte[200]);
+		int data = builder.addSection(".data", 1, ElfFile.SHF_ALLOC | 0x1, 0x800100,
+				new byte[10]);
+		int bss = builder.addNoBitsSection(".bss", 0x80010a, 66);
+		builder.addSymbol("main.c", 0, 0, ElfFile.STT_FILE, ElfFile.STB_LOCAL, 0xfff1);
+		builder.addSymbol("counter", 0x80010a, 2, ElfFile.STT_OBJECT, ElfFile.STB_LOCAL, bss);
+		builder.addSymbol("main", 0x68, 100, ElfFile.STT_FUNC, 1, text);
+		builder.addSymbol("buffer", 0x80010c, 64, ElfFile.STT_OBJECT, 1, bss);
+		builder.addSymbol("table", 0x800100, 10, ElfFile.STT_OBJECT, 1, data);
+		builder.addSymbol("__vectors", 0, 0, 0, 1, text);
+
+		File file = File.createTempFile("symbolsizetest", ".elf");
+		try {
+			builder.write(file);
+			SymbolSizeTable table = SymbolSizeTable.create(file);
+
+			assertEquals(4, table.getEntries().size());
+			assertEquals(2, table.getSize("main.c:counter", Memory.DATA));
+			assertEquals(100, table.getSize("main", Memory.PROGRAM));
+			assertEquals(64, table.getSize("buffer", Memory.DATA));
+			assertEquals(10, table.getSize("table", Memory.DATA));
+			assertEquals(0, table.getSize("__vectors", Memory.PROGRAM));
+			assertEquals(100, table.getTotal(Memory.PROGRAM));
+			assertEquals(76, table.getTotal(Memory.DATA));
+			assertEquals(file.lastModified(), table.getTimestamp());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testDeltas() {
+		SymbolSizeTable older = createTable(1, "main", 100, "buffer", 64, "old", 8);
+		SymbolSizeTable newer = createTable(2, "main", 120, "buffer", 64, "new", 30);
+
+		List<Delta> deltas = newer.getDeltas(older);
+		assertEquals(3, deltas.size());
+		assertEquals("new", deltas.get(0).getName());
+		assertEquals(30, deltas.get(0).getDelta());
+		assertEquals("main", deltas.get(1).getName());
+		assertEquals(100, deltas.get(1).getOldSize());
+		assertEquals(20, deltas.get(1).getDelta());
+		assertEquals("old", deltas.get(2).getName());
+		assertEquals(-8, deltas.get(2).getDelta());
+
+		assertEquals(4, newer.getDeltas(older, true).size());
+		assertEquals(42, newer.getTotalDeltas(older).get(Memory.PROGRAM).longValue());
+	}
+
+	@Test
+	public void testHistory() throws IOException {
+		File file = File.createTempFile("symbolsizehistory", ".gz");
+		file.delete();
+		try {
+			SymbolSizeHistory history = new SymbolSizeHistory(file, 2);
+			assertEquals(null, history.getLatest());
+
+			history.add(createTable(1, "main", 100));
+			history.add(createTable(2, "main", 110, "new function", 4));
+			history.add(createTable(3, "main", 120));
+			// same build again
+			assertEquals(false, history.add(createTable(3, "main", 130)));
+
+			// reload from the file
+			history = new SymbolSizeHistory(file, 2);
+			List<SymbolSizeTable> tables = history.getTables();
+			assertEquals(2, tables.size());
+			assertEquals(2, tables.get(0).getTimestamp());
+			assertEquals(4, tables.get(0).getSize("new function", Memory.PROGRAM));
+			assertEquals(120, history.getLatest().getSize("main", Memory.PROGRAM));
+
+			history.clear();
+			assertEquals(0, new SymbolSizeHistory(file, 2).getTables().size());
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Create a table with the given names and sizes, all in program memory.
+	 */
+	private static SymbolSizeTable createTable(long timestamp, Object... namesandsizes) {
+		List<Entry> entries = new ArrayList<Entry>();
+		for (int i = 0; i < namesandsizes.length; i += 2) {
+			entries.add(new Entry((String) namesandsizes[i], Memory.PROGRAM,
+					(Integer) namesandsizes[i + 1]));
+		}
+		return new SymbolSizeTable(timestamp, entries);
+	}
+}
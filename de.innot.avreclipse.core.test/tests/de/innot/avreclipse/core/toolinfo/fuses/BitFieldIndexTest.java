@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.toolinfo.fuses;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link BitFieldIndex}. The MCU description is built by hand, so no plugin is
+ * required.
+ */
+public class BitFieldIndexTest {
+
+	private MCUDescription	fDescription;
+
+	@Before
+	public void setUp() throws Exception {
+		fDescription = new MCUDescription("atstub");
+
+		ByteDescription low = new ByteDescription(FuseType.FUSE, "Low Byte", "LOW", 0, 1, 0xE1);
+		low.addBitFieldDescription(createBitField(0, "CKSEL", 0x0F));
+		low.addBitFieldDescription(createBitField(0, "SUT", 0x30));
+		fDescription.addByteDescription(FuseType.FUSE, low);
+
+		ByteDescription high = new ByteDescription(FuseType.FUSE, "High Byte", "HIGH", 1, 1, 0x99);
+		high.addBitFieldDescription(createBitField(1, "BOOTRST", 0x01));
+		fDescription.addByteDescription(FuseType.FUSE, high);
+
+		ByteDescription lock = new ByteDescription(FuseType.LOCKBITS, "Lock Byte", "LOCKBIT", 0,
+				1, 0xFF);
+		lock.addBitFieldDescription(createBitField(0, "LB", 0x03));
+		fDescription.addByteDescription(FuseType.LOCKBITS, lock);
+	}
+
+	/**
+	 * Test method for {@link BitFieldIndex#getIndex(IMCUDescription, FuseType)}.
+	 */
+	@Test
+	public void testShared() {
+		BitFieldIndex fuses = BitFieldIndex.getIndex(fDescription, FuseType.FUSE);
+		assertSame(fuses, BitFieldIndex.getIndex(fDescription, FuseType.FUSE));
+
+		BitFieldIndex lockbits = BitFieldIndex.getIndex(fDescription, FuseType.LOCKBITS);
+		assertNotSame(fuses, lockbits);
+		assertSame(lockbits, BitFieldIndex.getIndex(fDescription, FuseType.LOCKBITS));
+
+		// Another description of the same MCU has its own index
+		MCUDescription other = new MCUDescription("atstub");
+		assertNotSame(fuses, BitFieldIndex.getIndex(other, FuseType.FUSE));
+	}
+
+	/**
+	 * Test method for {@link BitFieldIndex#get(String)}.
+	 */
+	@Test
+	public void testLookup() {
+		BitFieldIndex index = BitFieldIndex.getIndex(fDescription, FuseType.FUSE);
+		assertEquals(2, index.getByteCount());
+		assertEquals(3, index.getBitFields().size());
+		assertEquals(0x30, index.get("SUT").getMask());
+		assertEquals(1, index.get("BOOTRST").getIndex());
+		assertNull(index.get("LB"));
+		assertNull(index.get("FOO"));
+
+		try {
+			index.getNameMap().put("FOO", index.get("SUT"));
+			fail("The index must not be modifiable");
+		} catch (UnsupportedOperationException e) {
+			// OK
+		}
+	}
+
+	/**
+	 * Test method for {@link BitFieldIndex#getBitFields(int)}.
+	 */
+	@Test
+	public void testBytes() {
+		BitFieldIndex index = BitFieldIndex.getIndex(fDescription, FuseType.FUSE);
+		BitFieldDescription[] low = index.getBitFields(0);
+		assertEquals(2, low.length);
+		assertEquals("CKSEL", low[0].getName());
+		assertEquals("SUT", low[1].getName());
+		assertEquals(1, index.getBitFields(1).length);
+		assertEquals(0, index.getBitFields(2).length);
+		assertEquals(0, index.getBitFields(-1).length);
+	}
+
+	/**
+	 * Test the index used for MCUs without a description.
+	 */
+	@Test
+	public void testEmpty() {
+		BitFieldIndex index = BitFieldIndex.EMPTY;
+		assertEquals(0, index.getByteCount());
+		assertEquals(0, index.getBitFields().size());
+		assertNull(index.get("SUT"));
+		assertEquals(0, index.getBitFields(0).length);
+	}
+
+	private BitFieldDescription createBitField(int byteindex, String name, int mask) {
+		return new BitFieldDescription(byteindex, name, name + " description", mask, -1,
+				new ArrayList<BitFieldValueDescription>());
+	}
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.toolinfo.fuses;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Microbenchmark for the named accessors and the conversion of {@link ByteValues}.
+ * <p>
+ * Measures the calls per second of {@link ByteValues#setNamedValue(String, int)},
+ * {@link ByteValues#getNamedValue(String)} and {@link ByteValues#convertTo(String,
+ * ConversionResults)}, which the fuse editors call on every change. The result is printed to
+ * stdout.
+ * </p>
+ * <p>
+ * This is not a unit test and is not run with the normal tests (the test runner only picks up
+ * classes ending with "Test"). Run it manually as a JUnit Plug-in test, as it requires the part
+ * descriptions from the plugin.
+ * </p>
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ */
+public class ByteValuesBenchmark {
+
+	private final static int	WARMUP_CALLS		= 100000;
+	private final static int	CALLS				= 1000000;
+
+	private final static int	WARMUP_CONVERSIONS	= 1000;
+	private final static int	CONVERSIONS			= 10000;
+
+	private ByteValues			fValues;
+	private String[]			fNames;
+
+	@Before
+	public void setUp() throws Exception {
+		fValues = new ByteValues(FuseType.FUSE, "atmega16");
+		fValues.setDefaultValues();
+		List<String> names = fValues.getBitfieldNames();
+		fNames = names.toArray(new String[names.size()]);
+	}
+
+	@Test
+	public void benchmarkSetNamedValue() {
+		runSetNamedValue(WARMUP_CALLS);
+
+		long starttime = System.nanoTime();
+		runSetNamedValue(CALLS);
+		long duration = System.nanoTime() - starttime;
+
+		print("setNamedValue", CALLS, "calls", duration);
+	}
+
+	@Test
+	public void benchmarkGetNamedValue() {
+		long sum = runGetNamedValue(WARMUP_CALLS);
+
+		long starttime = System.nanoTime();
+		sum += runGetNamedValue(CALLS);
+		long duration = System.nanoTime() - starttime;
+
+		// use the sum, so that the calls are not optimized away
+		print("getNamedValue (" + sum + ")", CALLS, "calls", duration);
+	}
+
+	@Test
+	public void benchmarkConvertTo() {
+		runConvertTo(WARMUP_CONVERSIONS);
+
+		long starttime = System.nanoTime();
+		runConvertTo(CONVERSIONS);
+		long duration = System.nanoTime() - starttime;
+
+		print("convertTo", CONVERSIONS, "conversions", duration);
+	}
+
+	private void runSetNamedValue(int count) {
+		for (int i = 0; i < count; i++) {
+			String name = fNames[i % fNames.length];
+			fValues.setNamedValue(name, 0);
+		}
+	}
+
+	private long runGetNamedValue(int count) {
+		long sum = 0;
+		for (int i = 0; i < count; i++) {
+			sum += fValues.getNamedValue(fNames[i % fNames.length]);
+		}
+		return sum;
+	}
+
+	private void runConvertTo(int count) {
+		for (int i = 0; i < count; i++) {
+			ByteValues target = fValues.convertTo("atmega32", new ConversionResults());
+			assertEquals(2, target.getByteCount());
+		}
+	}
+
+	private void print(String name, int count, String unit, long duration) {
+		double rate = count / (duration / 1e9);
+		System.out.println("ByteValues." + name + ": " + count + " " + unit + " in "
+				+ (duration / 1000000) + " ms (" + Math.round(rate) + " " + unit + "/sec)");
+	}
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.toolinfo.fuses;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.innot.avreclipse.core.toolinfo.fuses.ConversionResults.ConversionStatus;
+
+/**
+ * Tests for the {@link ConversionPlan}. The MCU descriptions are built by hand, so no plugin is
+ * required.
+ */
+public class ConversionPlanTest {
+
+	private MCUDescription	fSource;
+	private MCUDescription	fTarget;
+
+	@Before
+	public void setUp() throws Exception {
+		// Source: CKSEL[3:0] and SUT[5:4] in the low byte, BOOTRST in the high byte
+		fSource = new MCUDescription("atsource");
+		ByteDescription low = new ByteDescription(FuseType.FUSE, "Low Byte", "LOW", 0, 1, 0xE1);
+		low.addBitFieldDescription(createBitField(0, "CKSEL", 0x0F, -1));
+		low.addBitFieldDescription(createBitField(0, "SUT", 0x30, -1));
+		fSource.addByteDescription(FuseType.FUSE, low);
+		ByteDescription high = new ByteDescription(FuseType.FUSE, "High Byte", "HIGH", 1, 1, 0x99);
+		high.addBitFieldDescription(createBitField(1, "BOOTRST", 0x01, -1));
+		fSource.addByteDescription(FuseType.FUSE, high);
+
+		// Target: SUT moved to [7:6], CKSEL in the high byte, a new WDTON and no BOOTRST
+		fTarget = new MCUDescription("attarget");
+		low = new ByteDescription(FuseType.FUSE, "Low Byte", "LOW", 0, 1, 0xFF);
+		low.addBitFieldDescription(createBitField(0, "SUT", 0xC0, -1));
+		low.addBitFieldDescription(createBitField(0, "WDTON", 0x01, 0));
+		fTarget.addByteDescription(FuseType.FUSE, low);
+		high = new ByteDescription(FuseType.FUSE, "High Byte", "HIGH", 1, 1, 0xFF);
+		high.addBitFieldDescription(createBitField(1, "CKSEL", 0xF0, -1));
+		fTarget.addByteDescription(FuseType.FUSE, high);
+	}
+
+	/**
+	 * Test method for {@link ConversionPlan#getPlan(IMCUDescription, IMCUDescription, FuseType)}.
+	 */
+	@Test
+	public void testCache() {
+		ConversionPlan plan = ConversionPlan.getPlan(fSource, fTarget, FuseType.FUSE);
+		assertSame(plan, ConversionPlan.getPlan(fSource, fTarget, FuseType.FUSE));
+		assertNotSame(plan, ConversionPlan.getPlan(fTarget, fSource, FuseType.FUSE));
+		assertNotSame(plan, ConversionPlan.getPlan(fSource, fTarget, FuseType.LOCKBITS));
+
+		assertFalse(plan.isCompatible());
+		assertTrue(ConversionPlan.getPlan(fSource, fSource, FuseType.FUSE).isCompatible());
+		assertFalse(ConversionPlan.getPlan(fSource, null, FuseType.FUSE).isCompatible());
+	}
+
+	/**
+	 * Test method for {@link ConversionPlan#convert(int[], int[], ConversionResults)}.
+	 */
+	@Test
+	public void testConvert() {
+		ConversionPlan plan = ConversionPlan.getPlan(fSource, fTarget, FuseType.FUSE);
+		assertEquals(2, plan.getTargetByteCount());
+
+		// CKSEL = 0x5, SUT = 0x2, BOOTRST = 0
+		int[] target = new int[2];
+		ConversionResults results = new ConversionResults();
+		plan.convert(new int[] { 0xE5, 0xFE }, target, results);
+
+		// SUT at [7:6], WDTON default 0, the rest 1s
+		assertEquals(0xBE, target[0]);
+		// CKSEL at [7:4]
+		assertEquals(0x5F, target[1]);
+
+		assertEquals(ConversionStatus.NOT_IN_TARGET, results.getStatusForName("BOOTRST"));
+		assertEquals(ConversionStatus.NOT_IN_SOURCE, results.getStatusForName("WDTON"));
+		// 2 of 4 BitFields converted
+		assertEquals(50, results.getSuccessRate());
+	}
+
+	/**
+	 * Test that unset source bytes are not copied.
+	 */
+	@Test
+	public void testConvertUnset() {
+		ConversionPlan plan = ConversionPlan.getPlan(fSource, fTarget, FuseType.FUSE);
+
+		int[] target = new int[2];
+		ConversionResults results = new ConversionResults();
+		plan.convert(new int[] { -1, -1 }, target, results);
+
+		// Only the default of WDTON is set
+		assertArrayEquals(new int[] { 0xFE, -1 }, target);
+		assertEquals(ConversionStatus.NOT_IN_TARGET, results.getStatusForName("CKSEL"));
+		assertEquals(0, results.getSuccessRate());
+	}
+
+	/**
+	 * Test the conversion from an unknown MCU.
+	 */
+	@Test
+	public void testUnknownSource() {
+		ConversionPlan plan = ConversionPlan.getPlan(null, fTarget, FuseType.FUSE);
+
+		int[] target = new int[2];
+		plan.convert(new int[0], target, null);
+
+		// All BitFields are set to their defaults or all 1s
+		assertArrayEquals(new int[] { 0xFE, 0xFF }, target);
+	}
+
+	private BitFieldDescription createBitField(int byteindex, String name, int mask,
+			int defaultvalue) {
+		return new BitFieldDescription(byteindex, name, name + " description", mask,
+				defaultvalue, new ArrayList<BitFieldValueDescription>());
+	}
+}
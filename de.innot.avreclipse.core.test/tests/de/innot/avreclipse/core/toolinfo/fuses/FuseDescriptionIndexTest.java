@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.toolinfo.fuses;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public class FuseDescriptionIndexTest {
+
+	private File	fFolder;
+
+	@Before
+	public void setUp() throws Exception {
+		fFolder = File.createTempFile("fusedesc", "");
+		fFolder.delete();
+		fFolder.mkdir();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for (File file : fFolder.listFiles()) {
+			file.delete();
+		}
+		fFolder.delete();
+	}
+
+	/**
+	 * Test method for
+	 * {@link de.innot.avreclipse.core.toolinfo.fuses.FuseDescriptionIndex#createIndex(File, java.util.Collection)}
+	 * and {@link de.innot.avreclipse.core.toolinfo.fuses.FuseDescriptionIndex#getDescription(String)}
+	 * .
+	 */
+	@Test
+	public void testRoundtrip() throws Exception {
+		List<MCUDescription> descriptions = new ArrayList<MCUDescription>();
+		descriptions.add(createDescription("atmega16"));
+		descriptions.add(createDescription("attiny13"));
+		for (MCUDescription desc : descriptions) {
+			writeFile(desc.getMCUId() + ".desc", toXML(desc));
+		}
+
+		FuseDescriptionIndex.createIndex(fFolder, descriptions);
+		FuseDescriptionIndex index = FuseDescriptionIndex.open(fFolder);
+		assertNotNull(index);
+
+		assertEquals(2, index.getMCUIds().size());
+		assertTrue(index.getMCUIds().contains("atmega16"));
+		assertNull(index.getDescription("atmega8"));
+
+		for (MCUDescription desc : descriptions) {
+			MCUDescription indexed = index.getDescription(desc.getMCUId());
+			assertNotNull(indexed);
+			assertEquals(toXML(desc), toXML(indexed));
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link de.innot.avreclipse.core.toolinfo.fuses.FuseDescriptionIndex#open(File)}.
+	 */
+	@Test
+	public void testStaleIndex() throws Exception {
+		assertNull("No index", FuseDescriptionIndex.open(fFolder));
+
+		List<MCUDescription> descriptions = new ArrayList<MCUDescription>();
+		descriptions.add(createDescription("atmega16"));
+		writeFile("atmega16.desc", toXML(descriptions.get(0)));
+		FuseDescriptionIndex.createIndex(fFolder, descriptions);
+		assertNotNull(FuseDescriptionIndex.open(fFolder));
+
+		// Adding a description file invalidates the index
+		writeFile("attiny13.desc", toXML(createDescription("attiny13")));
+		assertNull("Stale index", FuseDescriptionIndex.open(fFolder));
+	}
+
+	/**
+	 * Test that an edit of a description file that keeps the file size invalidates the index.
+	 */
+	@Test
+	public void testSameSizeEdit() throws Exception {
+		List<MCUDescription> descriptions = new ArrayList<MCUDescription>();
+		descriptions.add(createDescription("atmega16"));
+		String xml = toXML(descriptions.get(0));
+		writeFile("atmega16.desc", xml);
+		FuseDescriptionIndex.createIndex(fFolder, descriptions);
+		assertNotNull(FuseDescriptionIndex.open(fFolder));
+
+		String edited = xml.replace("Low fuse byte", "Low fuse BYTE");
+		assertEquals(xml.length(), edited.length());
+		assertFalse(xml.equals(edited));
+		writeFile("atmega16.desc", edited);
+		assertNull("Stale index", FuseDescriptionIndex.open(fFolder));
+	}
+
+	private static MCUDescription createDescription(String mcuid) {
+		MCUDescription desc = new MCUDescription(mcuid);
+		desc.setVersion(20110101);
+
+		ByteDescription low = new ByteDescription(FuseType.FUSE, "Low fuse byte", "LOW", 0, 1,
+				0x62);
+		List<BitFieldValueDescription> values = new ArrayList<BitFieldValueDescription>();
+		values.add(new BitFieldValueDescription(0x00, "Ext. Clock", "EXTCLK"));
+		values.add(new BitFieldValueDescription(0x22, null, "INTRCOSC"));
+		low.addBitFieldDescription(new BitFieldDescription(0, "SUT_CKSEL", "Select Clock Source",
+				0x3F, 0x22, values));
+		low.addBitFieldDescription(new BitFieldDescription(0, "CKDIV8", null, 0x80, -1, null));
+		desc.addByteDescription(FuseType.FUSE, low);
+
+		ByteDescription lock = new ByteDescription(FuseType.LOCKBITS, "Lockbits", "LOCKBIT", 0, 1,
+				0xFF);
+		lock.addBitFieldDescription(new BitFieldDescription(0, "LB", "Memory Lock", 0x03, 0x03,
+				null));
+		desc.addByteDescription(FuseType.LOCKBITS, lock);
+
+		return desc;
+	}
+
+	private static String toXML(MCUDescription desc) throws Exception {
+		Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+				.newDocument();
+		desc.toXML(document);
+
+		Transformer transformer = TransformerFactory.newInstance().newTransformer();
+		StringWriter writer = new StringWriter();
+		transformer.transform(new DOMSource(document), new StreamResult(writer));
+		return writer.toString();
+	}
+
+	private void writeFile(String name, String content) throws IOException {
+		FileWriter writer = new FileWriter(new File(fFolder, name));
+		writer.write(content);
+		writer.close();
+	}
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.toolinfo.fuses;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the description cache of {@link Fuses}. The descriptions are created by a stub loader,
+ * so no plugin storage locations are required.
+ */
+public class FusesCacheTest {
+
+	private StubFuses	fFuses;
+
+	@Before
+	public void setUp() throws Exception {
+		fFuses = new StubFuses();
+	}
+
+	/**
+	 * Test method for {@link de.innot.avreclipse.core.toolinfo.fuses.Fuses#getDescription(String)}.
+	 */
+	@Test
+	public void testCacheHit() throws IOException {
+		IMCUDescription desc = fFuses.getDescription("atmega16");
+		assertSame(desc, fFuses.getDescription("atmega16"));
+		assertEquals(1, fFuses.fLoadCount.get());
+		assertEquals(1, fFuses.getCacheHits());
+		assertEquals(1, fFuses.getCacheMisses());
+		assertEquals(1, fFuses.getLoadCount());
+
+		// Unknown MCUs are not cached
+		assertNull(fFuses.getDescription("unknown"));
+		assertNull(fFuses.getDescription("unknown"));
+		assertEquals(3, fFuses.getLoadCount());
+
+		fFuses.resetCacheStatistics();
+		assertEquals(0, fFuses.getCacheHits());
+		assertEquals(0, fFuses.getCacheMisses());
+	}
+
+	/**
+	 * Test method for {@link de.innot.avreclipse.core.toolinfo.fuses.Fuses#setCacheSize(int)}.
+	 */
+	@Test
+	public void testEviction() throws IOException {
+		fFuses.setCacheSize(2);
+		IMCUDescription mega16 = fFuses.getDescription("atmega16");
+		fFuses.getDescription("atmega32");
+
+		// Use atmega16 so that atmega32 is the least recently used description
+		assertSame(mega16, fFuses.getDescription("atmega16"));
+		fFuses.getDescription("atmega64");
+		assertEquals(3, fFuses.getLoadCount());
+
+		assertSame(mega16, fFuses.getDescription("atmega16"));
+		fFuses.getDescription("atmega32");
+		assertEquals(4, fFuses.getLoadCount());
+
+		// Shrinking the cache removes entries
+		fFuses.setCacheSize(0);
+		assertNotSame(mega16, fFuses.getDescription("atmega16"));
+		assertEquals(5, fFuses.getLoadCount());
+	}
+
+	/**
+	 * Test that concurrent requests for the same MCU load the description only once.
+	 */
+	@Test
+	public void testConcurrentMisses() throws Exception {
+		final int threads = 8;
+		fFuses.fLoadDelay = 100;
+		final CountDownLatch start = new CountDownLatch(1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<IMCUDescription>> results = new ArrayList<Future<IMCUDescription>>();
+		for (int i = 0; i < threads; i++) {
+			results.add(executor.submit(new Callable<IMCUDescription>() {
+				public IMCUDescription call() throws Exception {
+					start.await();
+					return fFuses.getDescription("atmega16");
+				}
+			}));
+		}
+		start.countDown();
+
+		IMCUDescription first = results.get(0).get();
+		for (Future<IMCUDescription> result : results) {
+			assertSame(first, result.get());
+		}
+		executor.shutdown();
+
+		assertEquals(1, fFuses.fLoadCount.get());
+		assertEquals(threads, fFuses.getCacheHits() + fFuses.getCacheMisses());
+	}
+
+	/**
+	 * Test that a failed load is reported to the caller and is not cached.
+	 */
+	@Test
+	public void testLoadFailure() throws IOException {
+		fFuses.fFail = true;
+		try {
+			fFuses.getDescription("atmega16");
+			fail("IOException expected");
+		} catch (IOException ioe) {
+			// expected
+		}
+
+		fFuses.fFail = false;
+		assertNotNull(fFuses.getDescription("atmega16"));
+		assertEquals(2, fFuses.getLoadCount());
+	}
+
+	private static class StubFuses extends Fuses {
+
+		final AtomicInteger	fLoadCount	= new AtomicInteger();
+		volatile long		fLoadDelay	= 0;
+		volatile boolean	fFail		= false;
+
+		@Override
+		protected IMCUDescription loadDescription(String mcuid) throws IOException {
+			fLoadCount.incrementAndGet();
+			if (fFail) {
+				throw new IOException("Stub failure");
+			}
+			if (fLoadDelay > 0) {
+				try {
+					Thread.sleep(fLoadDelay);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			if (!mcuid.startsWith("at")) {
+				return null;
+			}
+			return new MCUDescription(mcuid);
+		}
+	}
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.toolinfo.partdescriptionfiles;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.StringWriter;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import de.innot.avreclipse.core.toolinfo.fuses.FuseType;
+import de.innot.avreclipse.core.toolinfo.fuses.MCUDescription;
+
+public class FusesStreamReaderTest {
+
+	private final static String	ATDF	= "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+												+ "<avr-tools-device-file>\n"
+												+ " <devices>\n"
+												+ "  <device name=\"ATtest88\" architecture=\"AVR8\">\n"
+												+ "   <peripherals><module name=\"FUSE\"><instance name=\"FUSE\">\n"
+												+ "    <register-group name=\"FUSE\" name-in-module=\"FUSE\" offset=\"0\"/>\n"
+												+ "   </instance></module></peripherals>\n"
+												+ "  </device>\n"
+												+ " </devices>\n"
+												+ " <modules>\n"
+												+ "  <module name=\"PORT\">\n"
+												+ "   <register-group name=\"PORTB\">\n"
+												+ "    <register caption=\"Port B\" name=\"PORTB\" offset=\"0x25\" size=\"1\">\n"
+												+ "     <bitfield name=\"PB0\" mask=\"0x01\" values=\"LOW_VALUES\"/>\n"
+												+ "    </register>\n"
+												+ "   </register-group>\n"
+												+ "  </module>\n"
+												+ "  <module name=\"FUSE\">\n"
+												+ "   <register-group name=\"FUSE\">\n"
+												+ "    <register caption=\"\" name=\"EXTENDED\" offset=\"0x02\" size=\"1\">\n"
+												+ "     <bitfield caption=\"Brown-out Detector trigger level\" mask=\"0x07\" name=\"BODLEVEL\" values=\"ENUM_BODLEVEL\"/>\n"
+												+ "    </register>\n"
+												+ "    <register caption=\"\" name=\"HIGH\" offset=\"0x01\" size=\"1\">\n"
+												+ "     <bitfield caption=\"Reset Disabled\" mask=\"0x80\" name=\"RSTDISBL\"/>\n"
+												+ "     <bitfield caption=\"Watch-Dog Timer always on\" mask=\"0x10\" name=\"WTDON\"/>\n"
+												+ "     <bitfield mask=\"0x08\" name=\"EESAVE\" values=\"MISSING\"/>\n"
+												+ "    </register>\n"
+												+ "    <register caption=\"\" name=\"LOW\" offset=\"0x00\" size=\"1\">\n"
+												+ "     <bitfield caption=\"Select Clock Source\" mask=\"0x3F\" name=\"SUT_CKSEL\" values=\"ENUM_SUT_CKSEL\"/>\n"
+												+ "    </register>\n"
+												+ "   </register-group>\n"
+												+ "   <value-group name=\"ENUM_SUT_CKSEL\">\n"
+												+ "    <value caption=\"Ext. Clock\" name=\"EXTCLK\" value=\"0x00\"/>\n"
+												+ "    <value name=\"INTRCOSC\" value=\"0x22\"/>\n"
+												+ "   </value-group>\n"
+												+ "   <value-group name=\"ENUM_BODLEVEL\">\n"
+												+ "    <value caption=\"Brown-out at 4.3V\" name=\"4V3\" value=\"0x04\"/>\n"
+												+ "    <value text=\"Brown-out disabled\" name=\"DISABLED\" value=\"0x07\"/>\n"
+												+ "   </value-group>\n"
+												+ "  </module>\n"
+												+ "  <module name=\"LOCKBIT\">\n"
+												+ "   <register-group name=\"LOCKBIT\">\n"
+												+ "    <register caption=\"\" name=\"LOCKBIT\" offset=\"0x00\" size=\"1\">\n"
+												+ "     <bitfield caption=\"Memory Lock\" mask=\"0x03\" name=\"LB\" values=\"ENUM_LB\"/>\n"
+												+ "    </register>\n"
+												+ "   </register-group>\n"
+												+ "   <value-group name=\"ENUM_LB\">\n"
+												+ "    <value caption=\"Further programming disabled\" name=\"PROG_DISABLED\" value=\"0x02\"/>\n"
+												+ "    <value caption=\"No memory lock features enabled\" name=\"NO_LOCK\" value=\"0x03\"/>\n"
+												+ "   </value-group>\n"
+												+ "  </module>\n"
+												+ " </modules>\n"
+												+ "</avr-tools-device-file>\n";
+
+	private File				fFile;
+
+	@Before
+	public void setUp() throws Exception {
+		fFile = File.createTempFile("ATtest88", ".xml");
+		FileWriter writer = new FileWriter(fFile);
+		writer.write(ATDF);
+		writer.close();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		fFile.delete();
+	}
+
+	/**
+	 * Test method for
+	 * {@link de.innot.avreclipse.core.toolinfo.partdescriptionfiles.FusesStreamReader#read(java.io.File)}
+	 * .
+	 */
+	@Test
+	public void testRead() throws Exception {
+
+		// Read the file with the DOM based reader
+		TestFusesReader domreader = new TestFusesReader();
+		domreader.start();
+		DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		domreader.read(builder.parse(fFile), fFile);
+		assertNotNull(domreader.fDescription);
+
+		// and with the streaming reader
+		TestFusesStreamReader streamreader = new TestFusesStreamReader();
+		streamreader.start();
+		streamreader.read(fFile);
+		assertNotNull(streamreader.fDescription);
+
+		MCUDescription desc = streamreader.fDescription;
+		assertEquals("attest88", desc.getMCUId());
+		assertEquals(3, desc.getByteCount(FuseType.FUSE));
+		assertEquals(1, desc.getByteCount(FuseType.LOCKBITS));
+
+		// Both must produce the same description
+		assertEquals(toXML(domreader.fDescription), toXML(desc));
+	}
+
+	private static String toXML(MCUDescription desc) throws Exception {
+		DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		Document document = builder.newDocument();
+		desc.toXML(document);
+
+		Transformer transformer = TransformerFactory.newInstance().newTransformer();
+		StringWriter writer = new StringWriter();
+		transformer.transform(new DOMSource(document), new StreamResult(writer));
+		return writer.toString();
+	}
+
+	private static class TestFusesReader extends FusesReader {
+		MCUDescription	fDescription;
+
+		@Override
+		protected void storeDescription(String mcuid, MCUDescription desc) {
+			fDescription = desc;
+		}
+	}
+
+	private static class TestFusesStreamReader extends FusesStreamReader {
+		MCUDescription	fDescription;
+
+		@Override
+		protected void storeDescription(String mcuid, MCUDescription desc) {
+			fDescription = desc;
+		}
+	}
+}
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds small AVR ELF files for the tests.
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ *
+ */
+public class ElfFileBuilder {
+
+	private static class SectionData {
+		String	name;
+		int		type;
+		int		flags;
+		int		address;
+		byte[]	data;
+		int		size;
+		int		link;
+	}
+
+	private final List<SectionData>	fSections	= new ArrayList<SectionData>();
+
+	private final ByteArrayOutputStream	fSymbols	= new ByteArrayOutputStream();
+
+	private final ByteArrayOutputStream	fSymbolNames	= new ByteArrayOutputStream();
+
+	/**
+	 * Add a symbol. The symbol table is written after all sections.
+	 *
+	 * @param section
+	 *            The index of the section of the symbol as returned by <code>addSection()</code>.
+	 */
+	public void addSymbol(String name, int value, int size, int type, int binding, int section)
+			throws IOException {
+		if (fSymbols.size() == 0) {
+			// null symbol and empty name
+			fSymbols.write(new byte[16]);
+			fSymbolNames.write(0);
+		}
+		ByteBuffer symbol = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+		symbol.putInt(fSymbolNames.size()).putInt(value).putInt(size);
+		symbol.put((byte) ((binding << 4) | type)).put((byte) 0).putShort((short) section);
+		fSymbols.write(symbol.array());
+		fSymbolNames.write(name.getBytes("ISO-8859-1"));
+		fSymbolNames.write(0);
+	}
+
+	/**
+	 * Add a section with content.
+	 *
+	 * @return The index of the new section in the section header table.
+	 */
+	public int addSection(String name, int type, int flags, int address, byte[] data) {
+		return addSection(name, type, flags, address, data, data.length, 0);
+	}
+
+	/**
+	 * Add a section with content, linked to another section.
+	 *
+	 * @return The index of the new section in the section header table.
+	 */
+	public int addSection(String name, int type, int flags, int address, byte[] data, int link) {
+		return addSection(name, type, flags, address, data, data.length, link);
+	}
+
+	/**
+	 * Add a <code>SHT_NOBITS</code> section.
+	 *
+	 * @return The index of the new section in the section header table.
+	 */
+	public int addNoBitsSection(String name, int address, int size) {
+		return addSection(name, ElfFile.SHT_NOBITS, ElfFile.SHF_ALLOC | 0x1, address, new byte[0],
+				size, 0);
+	}
+
+	private int addSection(String name, int type, int flags, int address, byte[] data, int size,
+			int link) {
+		SectionData section = new SectionData();
+		section.name = name;
+		section.type = type;
+		section.flags = flags;
+		section.address = address;
+		section.data = data;
+		section.size = size;
+		section.link = link;
+		fSections.add(section);
+		// index 0 is the null section
+		return fSections.size();
+	}
+
+	/**
+	 * Build a AVR device info note with the given memory sizes.
+	 */
+	public static byte[] deviceInfo(int flashsize, int ramsize, int eepromsize) {
+		ByteBuffer note = ByteBuffer.allocate(12 + 4 + 32).order(ByteOrder.LITTLE_ENDIAN);
+		note.putInt(4).putInt(32).putInt(1);
+		note.put(new byte[] { 'A', 'V', 'R', 0 });
+		note.putInt(0).putInt(flashsize);
+		note.putInt(0x800100).putInt(ramsize);
+		note.putInt(0x810000).putInt(eepromsize);
+		note.putInt(4).putInt(0);
+		return note.array();
+	}
+
+	/**
+	 * Write the ELF file.
+	 */
+	public void write(File file) throws IOException {
+
+		if (fSymbols.size() > 0) {
+			int strtab = fSections.size() + 2;
+			addSection(".symtab", ElfFile.SHT_SYMTAB, 0, 0, fSymbols.toByteArray(), strtab);
+			addSection(".strtab", ElfFile.SHT_STRTAB, 0, 0, fSymbolNames.toByteArray());
+		}
+
+		ByteArrayOutputStream names = new ByteArrayOutputStream();
+		names.write(0);
+		int[] nameoffsets = new int[fSections.size() + 1];
+		for (int i = 0; i <= fSections.size(); i++) {
+			nameoffsets[i] = names.size();
+			String name = i < fSections.size() ? fSections.get(i).name : ".shstrtab";
+			names.write(name.getBytes("ISO-8859-1"));
+			names.write(0);
+		}
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		int[] offsets = new int[fSections.size()];
+		for (int i = 0; i < fSections.size(); i++) {
+			offsets[i] = 52 + body.size();
+			body.write(fSections.get(i).data);
+		}
+		int namesoffset = 52 + body.size();
+		body.write(names.toByteArray());
+		int shoff = 52 + body.size();
+		int shnum = fSections.size() + 2;
+
+		ByteBuffer elf = ByteBuffer.allocate(shoff + shnum * 40).order(ByteOrder.LITTLE_ENDIAN);
+		elf.put(new byte[] { 0x7f, 'E', 'L', 'F', 1, 1, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0 });
+		elf.putShort((short) 2).putShort((short) 83).putInt(1).putInt(0).putInt(0).putInt(shoff);
+		elf.putInt(0).putShort((short) 52).putShort((short) 32).putShort((short) 0);
+		elf.putShort((short) 40).putShort((short) shnum).putShort((short) (shnum - 1));
+		elf.put(body.toByteArray());
+
+		elf.put(new byte[40]);
+		for (int i = 0; i < fSections.size(); i++) {
+			SectionData s = fSections.get(i);
+			elf.putInt(nameoffsets[i]).putInt(s.type).putInt(s.flags).putInt(s.address);
+			elf.putInt(offsets[i]).putInt(s.size).putInt(s.link).putInt(0).putInt(1).putInt(
+					s.type == ElfFile.SHT_SYMTAB ? 16 : 0);
+		}
+		elf.putInt(nameoffsets[fSections.size()]).putInt(ElfFile.SHT_STRTAB).putInt(0).putInt(0);
+		elf.putInt(namesoffset).putInt(names.size()).putInt(0).putInt(0).putInt(1).putInt(0);
+
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(elf.array());
+		} finally {
+			out.close();
+		}
+	}
+}
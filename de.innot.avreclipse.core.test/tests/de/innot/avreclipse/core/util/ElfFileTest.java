@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+
+package de.innot.avreclipse.core.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.innot.avreclipse.core.util.ElfFile.Section;
+
+/**
+ * Tests for the {@link ElfFile}.
+ */
+public class ElfFileTest {
+
+	private File	fFile;
+
+	@Before
+	public void setUp() throws IOException {
+		fFile = File.createTempFile("elffiletest", ".elf");
+	}
+
+	@After
+	public void tearDown() {
+		fFile.delete();
+	}
+
+	@Test
+	public void testRead() throws IOException {
+		ElfFileBuilder builder = new ElfFileBuilder();
+		builder.addSection(".text", 1, ElfFile.SHF_ALLOC | 0x4, 0, new byte[] { 1, 2, 3, 4 });
+		builder.addNoBitsSection(".bss", 0x800100, 20);
+		builder.write(fFile);
+
+		ElfFile elf = ElfFile.read(fFile);
+		// null section, .text, .bss and .shstrtab
+		assertEquals(4, elf.getSections().size());
+
+		Section text = elf.getSection(".text");
+		assertNotNull(text);
+		assertEquals(4, text.getSize());
+		assertTrue(text.isAlloc());
+		ByteBuffer contents = elf.getContents(text);
+		assertEquals(4, contents.limit());
+		assertEquals(0x04030201, contents.getInt(0));
+
+		Section bss = elf.getSection(".bss");
+		assertEquals(ElfFile.SHT_NOBITS, bss.getType());
+		assertEquals(0x800100, bss.getAddress());
+		assertEquals(20, bss.getSize());
+		assertEquals(0, elf.getContents(bss).limit());
+
+		assertNull(elf.getSection(".data"));
+	}
+
+	@Test
+	public void testNoElfFile() throws IOException {
+		FileOutputStream out = new FileOutputStream(fFile);
+		out.write(":00000001FF\n".getBytes());
+		out.close();
+		try {
+			ElfFile.read(fFile);
+			fail("no exception for a HEX file");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testCorruptFile() throws IOException {
+		ElfFileBuilder builder = new ElfFileBuilder();
+		builder.addSection(".text", 1, ElfFile.SHF_ALLOC | 0x4, 0, new byte[] { 1, 2, 3, 4 });
+		builder.write(fFile);
+
+		// A section size beyond the end of the file. The section header of .text follows the null
+		// section header.
+		RandomAccessFile raf = new RandomAccessFile(fFile, "rw");
+		long shoff = readInt(raf, 32);
+		writeInt(raf, shoff + 40 + 20, 0xffffffff);
+		raf.close();
+		try {
+			ElfFile elf = ElfFile.read(fFile);
+			elf.getContents(elf.getSection(".text"));
+			fail("no exception for an invalid section size");
+		} catch (IOException e) {
+			// expected
+		}
+
+		// A section header table with 65535 entries of 65535 bytes each
+		raf = new RandomAccessFile(fFile, "rw");
+		writeInt(raf, 46, 0xffffffff);
+		raf.close();
+		try {
+			ElfFile.read(fFile);
+			fail("no exception for an invalid section header table");
+		} catch (IOException e) {
+			// expected
+		}
+
+		// A truncated file
+		builder.write(fFile);
+		raf = new RandomAccessFile(fFile, "rw");
+		raf.setLength(raf.length() - 10);
+		raf.close();
+		try {
+			ElfFile.read(fFile);
+			fail("no exception for a truncated file");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testGetString() {
+		ByteBuffer table = ByteBuffer.wrap(".text\0.data\0".getBytes());
+		assertEquals(".text", ElfFile.getString(table, 0));
+		assertEquals("data", ElfFile.getString(table, 7));
+		assertEquals("", ElfFile.getString(table, 12));
+	}
+
+	private static long readInt(RandomAccessFile raf, long position) throws IOException {
+		raf.seek(position);
+		return Integer.reverseBytes(raf.readInt()) & 0xffffffffL;
+	}
+
+	private static void writeInt(RandomAccessFile raf, long position, int value)
+			throws IOException {
+		raf.seek(position);
+		raf.writeInt(Integer.reverseBytes(value));
+	}
+}
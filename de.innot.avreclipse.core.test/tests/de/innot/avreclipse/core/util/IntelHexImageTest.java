@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+
+package de.innot.avreclipse.core.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.BitSet;
+
+import org.junit.Test;
+
+/**
+ * Tests for the {@link IntelHexImage}.
+ */
+public class IntelHexImageTest {
+
+	/** 16 bytes at 0x0000, 4 bytes at 0x0100 and 2 bytes at 0x10000 */
+	private final static String	HEXFILE	= ":100000000C9434000C943E000C943E000C943E0082\n"
+												+ ":0401000001020304F1\n"
+												+ ":020000040001F9\n"
+												+ ":02000000AABB99\n"
+												+ ":00000001FF\n";
+
+	@Test
+	public void testRead() throws IOException {
+		IntelHexImage image = IntelHexImage.read(new StringReader(HEXFILE));
+
+		assertEquals(22, image.getUsedCount());
+		assertEquals(0x0C, image.getByte(0x0000));
+		assertEquals(0x94, image.getByte(0x0001));
+		assertEquals(0x00, image.getByte(0x000F));
+		assertEquals(-1, image.getByte(0x0010));
+		assertEquals(0xFF, image.getEffectiveByte(0x0010));
+		assertEquals(0x04, image.getByte(0x0103));
+		assertEquals(0xAA, image.getByte(0x10000));
+		assertEquals(0xBB, image.getByte(0x10001));
+		assertEquals(0x10002, image.getEndAddress());
+	}
+
+	@Test
+	public void testReadErrors() {
+		String[] broken = { ":0400000001020304F1\n", // checksum
+				":04000000010203F2\n", // length
+				":0400000001020304GG\n", // hex digit
+				"0400000001020304F2\n" }; // no colon
+		for (String content : broken) {
+			try {
+				IntelHexImage.read(new StringReader(content));
+				fail("No exception for " + content);
+			} catch (IOException ioe) {
+				assertTrue(ioe.getMessage(), ioe.getMessage().startsWith("Line 1"));
+			}
+		}
+	}
+
+	@Test
+	public void testWriteRead() throws IOException {
+		IntelHexImage image = IntelHexImage.read(new StringReader(HEXFILE));
+
+		StringWriter writer = new StringWriter();
+		image.write(writer);
+		assertEquals(HEXFILE, writer.toString());
+
+		IntelHexImage copy = IntelHexImage.read(new StringReader(writer.toString()));
+		assertEquals(image.getUsedCount(), copy.getUsedCount());
+		assertTrue(image.hasSameContent(copy));
+	}
+
+	@Test
+	public void testChangedPages() throws IOException {
+		IntelHexImage image = IntelHexImage.read(new StringReader(HEXFILE));
+		IntelHexImage other = IntelHexImage.read(new StringReader(HEXFILE));
+
+		assertTrue(image.getChangedPages(other, 128).isEmpty());
+
+		// Erased bytes are the same as unused bytes
+		other.setByte(0x0200, 0xFF);
+		assertTrue(image.hasSameContent(other));
+
+		other.setByte(0x0101, 0x55);
+		other.setByte(0x10001, -1);
+		BitSet pages = image.getChangedPages(other, 128);
+		assertEquals(2, pages.cardinality());
+		assertTrue(pages.get(0x0100 / 128));
+		assertTrue(pages.get(0x10000 / 128));
+		assertFalse(image.hasSameContent(other));
+
+		// The changed pages are complete and padded with 0xFF
+		IntelHexImage changed = image.getPages(pages, 128);
+		assertEquals(2 * 128, changed.getUsedCount());
+		assertEquals(0x02, changed.getByte(0x0101));
+		assertEquals(0xFF, changed.getByte(0x0104));
+		assertEquals(0xBB, changed.getByte(0x10001));
+		assertEquals(-1, changed.getByte(0x0000));
+	}
+}
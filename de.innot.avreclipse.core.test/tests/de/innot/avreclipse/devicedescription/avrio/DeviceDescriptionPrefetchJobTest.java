@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.devicedescription.avrio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.innot.avreclipse.devicedescription.ICategory;
+import de.innot.avreclipse.devicedescription.IDeviceDescription;
+import de.innot.avreclipse.devicedescription.IEntry;
+
+/**
+ * Tests the {@link DeviceDescriptionPrefetchJob} and the concurrent use of the
+ * {@link AVRiohDeviceDescriptionProvider}.
+ * <p>
+ * Like the other provider tests this requires an installed avr-libc.
+ * </p>
+ */
+public class DeviceDescriptionPrefetchJobTest {
+
+	private AVRiohDeviceDescriptionProvider	fProvider;
+
+	@Before
+	public void setUp() {
+		fProvider = AVRiohDeviceDescriptionProvider.getDefault();
+		fProvider.reset();
+	}
+
+	@After
+	public void tearDown() {
+		fProvider.reset();
+	}
+
+	@Test
+	public void testPrefetchMatchesSerial() {
+		Set<String> mcus = fProvider.getMCUList();
+		assertNotNull(mcus);
+		assertFalse(mcus.isEmpty());
+
+		// Warm all MCUs on a pool of workers
+		DeviceDescriptionPrefetchJob job = new DeviceDescriptionPrefetchJob(fProvider, 4);
+		IStatus status = job.run(new NullProgressMonitor());
+		assertEquals(IStatus.OK, status.getSeverity());
+
+		Map<String, String> parallel = new HashMap<String, String>();
+		for (String mcuid : mcus) {
+			assertTrue(mcuid, fProvider.isCached(mcuid));
+			IDeviceDescription dd = fProvider.getDeviceDescription(mcuid);
+			assertSame(dd, fProvider.getDeviceDescription(mcuid));
+			parallel.put(mcuid, describe(dd));
+		}
+
+		// Build them again one after the other and compare
+		fProvider.reset();
+		for (String mcuid : mcus) {
+			assertFalse(mcuid, fProvider.isCached(mcuid));
+			assertEquals(mcuid, describe(fProvider.getDeviceDescription(mcuid)), parallel
+					.get(mcuid));
+		}
+	}
+
+	@Test
+	public void testReset() {
+		Set<String> mcus = fProvider.getMCUList();
+		assertNotNull(mcus);
+		String mcuid = mcus.iterator().next();
+		IDeviceDescription dd = fProvider.getDeviceDescription(mcuid);
+		assertNotNull(dd);
+		assertTrue(fProvider.isCached(mcuid));
+
+		fProvider.reset();
+		assertFalse(fProvider.isCached(mcuid));
+		assertEquals(describe(dd), describe(fProvider.getDeviceDescription(mcuid)));
+	}
+
+	/**
+	 * @return A String with all categories, entries and their column data of the description.
+	 */
+	private static String describe(IDeviceDescription dd) {
+		assertNotNull(dd);
+		StringBuilder sb = new StringBuilder(dd.getName()).append('\n');
+		sb.append(dd.getSourcesList()).append('\n');
+		for (ICategory category : dd.getCategories()) {
+			sb.append(category.getName()).append('\n');
+			describe(category, category.getColumnCount(), sb, 1);
+		}
+		return sb.toString();
+	}
+
+	private static void describe(IEntry parent, int columns, StringBuilder sb, int level) {
+		if (!parent.hasChildren()) {
+			return;
+		}
+		for (IEntry entry : parent.getChildren()) {
+			for (int i = 0; i < level; i++) {
+				sb.append(' ');
+			}
+			sb.append(entry.getName());
+			for (int i = 1; i < columns; i++) {
+				sb.append('|').append(entry.getColumnData(i));
+			}
+			sb.append('\n');
+			describe(entry, columns, sb, level + 1);
+		}
+	}
+}
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.devicedescription.avrio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.innot.avreclipse.devicedescription.ICategory;
+import de.innot.avreclipse.devicedescription.IEntry;
+
+public class HeaderFragmentTest {
+
+	private final static String	IOTEST		= "#include <avr/sfr_defs.h>\n"
+													+ "#include <avr/common.h>\n"
+													+ "\n"
+													+ "/* Port B */\n"
+													+ "#define PINB    _SFR_IO8(0x03)\n"
+													+ "#define PORTB   _SFR_IO8(0x05)\n"
+													+ "\n"
+													+ "/* Timer Control */\n"
+													+ "#define TCCR0A  _SFR_IO8(0x24)\n"
+													+ "#define OCR1A   _SFR_MEM16(0x88)\n"
+													+ "\n"
+													+ "/* External Interrupt Request 0 */\n"
+													+ "#define INT0_vect   _VECTOR(1)\n"
+													+ "#define SIG_INTERRUPT0   _VECTOR(1)\n"
+													+ "\n"
+													+ "/* Timer Overflow */\n"
+													+ "#define SIG_OVERFLOW0   _VECTOR(16)\n";
+
+	private final static String	COMMON		= "/* Status Register */\n"
+													+ "#define SREG  _SFR_IO8(0x3F)\n";
+
+	private File				fFolder;
+
+	private HeaderFragment.IResolver	fResolver;
+
+	/** Parses each header only once, like the AVRiohDeviceDescriptionProvider */
+	private class TestResolver implements HeaderFragment.IResolver {
+		private final Map<String, HeaderFragment>	fFragments	= new HashMap<String, HeaderFragment>();
+
+		public HeaderFragment getFragment(String headerfile) throws IOException {
+			HeaderFragment fragment = fFragments.get(headerfile);
+			if (fragment == null) {
+				fragment = HeaderFragment.parse(headerfile, new File(fFolder, headerfile));
+				fFragments.put(headerfile, fragment);
+			}
+			return fragment;
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		fFolder = File.createTempFile("avrinclude", "");
+		fFolder.delete();
+		new File(fFolder, "avr").mkdirs();
+		writeFile("avr/iotest.h", IOTEST);
+		writeFile("avr/common.h", COMMON);
+		fResolver = new TestResolver();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for (File file : new File(fFolder, "avr").listFiles()) {
+			file.delete();
+		}
+		new File(fFolder, "avr").delete();
+		fFolder.delete();
+	}
+
+	/**
+	 * Test method for
+	 * {@link de.innot.avreclipse.devicedescription.avrio.HeaderFragment#addTo(DeviceDescription, HeaderFragment.IResolver)}
+	 * .
+	 */
+	@Test
+	public void testAddTo() throws IOException {
+		DeviceDescription device = new DeviceDescription("attest");
+		fResolver.getFragment("avr/iotest.h").addTo(device, fResolver);
+
+		List<String> sources = device.getSourcesList();
+		assertEquals(2, sources.size());
+		assertEquals("avr/iotest.h", sources.get(0));
+		assertEquals("avr/common.h", sources.get(1));
+
+		List<ICategory> categories = device.getCategories();
+		List<IEntry> registers = categories.get(0).getChildren();
+		// The registers are sorted by name
+		assertEquals(3, registers.size());
+		assertEquals("OCR1A", registers.get(0).getName());
+		assertEquals("MEM", registers.get(0).getColumnData(RegisterCategory.IDX_ADDRTYPE));
+		assertEquals("16", registers.get(0).getColumnData(RegisterCategory.IDX_BITS));
+		assertEquals("SREG", registers.get(1).getName());
+		assertEquals("Status Register", registers.get(1).getColumnData(
+				RegisterCategory.IDX_DESCRIPTION));
+
+		List<IEntry> ports = categories.get(1).getChildren();
+		assertEquals(2, ports.size());
+		assertEquals("PINB", ports.get(0).getName());
+		assertEquals("0x03", ports.get(0).getColumnData(RegisterCategory.IDX_ADDR));
+
+		// The old and new style names of vector 1 are merged
+		List<IEntry> ivecs = categories.get(2).getChildren();
+		// (sorted by name, the vector with only an old style name comes first)
+		assertEquals(2, ivecs.size());
+		assertEquals("SIG_OVERFLOW0", ivecs.get(0).getColumnData(IVecsCategory.IDX_SIGNAME));
+		assertEquals("INT0_vect", ivecs.get(1).getName());
+		assertEquals("SIG_INTERRUPT0", ivecs.get(1).getColumnData(IVecsCategory.IDX_SIGNAME));
+		assertEquals("1", ivecs.get(1).getColumnData(IVecsCategory.IDX_VECTOR));
+	}
+
+	/**
+	 * Test method for
+	 * {@link de.innot.avreclipse.devicedescription.avrio.HeaderFragment#write(java.io.DataOutput)}
+	 * and {@link de.innot.avreclipse.devicedescription.avrio.HeaderFragment#read(java.io.DataInput)}
+	 * .
+	 */
+	@Test
+	public void testReadWrite() throws IOException {
+		HeaderFragment fragment = fResolver.getFragment("avr/iotest.h");
+
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(buffer);
+		fragment.write(out);
+		out.close();
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+		HeaderFragment copy = HeaderFragment.read(in);
+		assertEquals("avr/iotest.h", copy.getHeaderFile());
+
+		DeviceDescription device1 = new DeviceDescription("attest");
+		fragment.addTo(device1, fResolver);
+		DeviceDescription device2 = new DeviceDescription("attest");
+		copy.addTo(device2, fResolver);
+		assertEquals(dump(device1), dump(device2));
+	}
+
+	/**
+	 * Test method for
+	 * {@link de.innot.avreclipse.devicedescription.avrio.HeaderFragment#isCurrent(File)}.
+	 */
+	@Test
+	public void testIsCurrent() throws IOException {
+		File file = new File(fFolder, "avr/common.h");
+		HeaderFragment fragment = HeaderFragment.parse("avr/common.h", file);
+		assertTrue(fragment.isCurrent(file));
+
+		writeFile("avr/common.h", COMMON + "#define SPL  _SFR_IO8(0x3D)\n");
+		assertFalse(fragment.isCurrent(file));
+	}
+
+	private static String dump(DeviceDescription device) {
+		StringBuilder sb = new StringBuilder();
+		for (ICategory category : device.getCategories()) {
+			for (IEntry entry : category.getChildren()) {
+				for (int i = 0; i < category.getColumnCount(); i++) {
+					sb.append(entry.getColumnData(i)).append(';');
+				}
+				sb.append('\n');
+			}
+		}
+		return sb.toString();
+	}
+
+	private void writeFile(String name, String content) throws IOException {
+		FileWriter writer = new FileWriter(new File(fFolder, name));
+		writer.write(content);
+		writer.close();
+	}
+}
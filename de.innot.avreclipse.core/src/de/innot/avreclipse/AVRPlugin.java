@@ -20,6 +20,8 @@
 
 package de.innot.avreclipse;
 
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.ILog;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Platform;
@@ -34,6 +36,7 @@ import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 
 import de.innot.avreclipse.core.targets.ToolManager;
+import de.innot.avreclipse.mbs.SymbolSizeRecorder;
 
 /**
  * The activator class controls the plug-in life cycle
@@ -47,6 +50,9 @@ public class AVRPlugin extends Plugin {
 	// The shared instance
 	private static AVRPlugin	plugin;
 
+	// Records the symbol sizes after each build
+	private SymbolSizeRecorder	fSymbolSizeRecorder;
+
 	/**
 	 * The constructor
 	 */
@@ -71,6 +77,10 @@ public class AVRPlugin extends Plugin {
 			Platform.getExtensionRegistry().addListener(toolmanager, ext);
 		}
 
+		fSymbolSizeRecorder = new SymbolSizeRecorder();
+		ResourcesPlugin.getWorkspace().addResourceChangeListener(fSymbolSizeRecorder,
+				IResourceChangeEvent.POST_BUILD);
+
 	}
 
 	/*
@@ -82,6 +92,8 @@ public class AVRPlugin extends Plugin {
 		ToolManager toolmanager = ToolManager.getDefault();
 		Platform.getExtensionRegistry().removeListener(toolmanager);
 
+		ResourcesPlugin.getWorkspace().removeResourceChangeListener(fSymbolSizeRecorder);
+
 		plugin = null;
 		super.stop(context);
 	}
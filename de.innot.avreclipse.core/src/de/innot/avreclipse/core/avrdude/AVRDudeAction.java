@@ -87,6 +87,15 @@ public class AVRDudeAction {
 		}
 	}
 
+	/**
+	 * The special filename to read memory to stdout instead of a file.
+	 * <p>
+	 * Only useful for read actions with a text format like {@link FileType#hex}, as avrdude will
+	 * write the memory content to its stdout, which can then be parsed from the output.
+	 * </p>
+	 */
+	public final static String	STDOUT	= "-";
+
 	private final MemType	fMemType;
 	private final Action	fAction;
 	private String			fFilename;
@@ -132,6 +141,24 @@ public class AVRDudeAction {
 		return fMemType;
 	}
 
+	/**
+	 * Get the action (read, write or verify) of this action.
+	 * 
+	 * @return <code>Action</code> enum value
+	 */
+	public Action getAction() {
+		return fAction;
+	}
+
+	/**
+	 * Get the file type of this action.
+	 * 
+	 * @return <code>FileType</code> enum value, {@link FileType#immediate} for immediate actions.
+	 */
+	public FileType getFileType() {
+		return fFileType;
+	}
+
 	/**
 	 * Get the avrdude action option without resolving the filename.
 	 * 
@@ -307,9 +334,13 @@ public class AVRDudeAction {
 			case read:
 				sb.append("Reading ");
 				sb.append(fMemType);
-				sb.append(" to file \"");
-				sb.append(fFilename);
-				sb.append("\" in ");
+				if (STDOUT.equals(fFilename)) {
+					sb.append(" to stdout in ");
+				} else {
+					sb.append(" to file \"");
+					sb.append(fFilename);
+					sb.append("\" in ");
+				}
 				sb.append(fFileType);
 				sb.append(" format");
 				break;
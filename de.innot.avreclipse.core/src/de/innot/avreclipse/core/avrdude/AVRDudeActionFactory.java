@@ -12,7 +12,9 @@ package de.innot.avreclipse.core.avrdude;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.cdt.managedbuilder.core.IConfiguration;
 import org.eclipse.cdt.managedbuilder.core.IOption;
@@ -27,6 +29,8 @@ import de.innot.avreclipse.PluginIDs;
 import de.innot.avreclipse.core.avrdude.AVRDudeAction.Action;
 import de.innot.avreclipse.core.avrdude.AVRDudeAction.FileType;
 import de.innot.avreclipse.core.avrdude.AVRDudeAction.MemType;
+import de.innot.avreclipse.core.toolinfo.fuses.ByteValues;
+import de.innot.avreclipse.core.toolinfo.fuses.FuseType;
 import de.innot.avreclipse.core.toolinfo.fuses.Fuses;
 
 /**
@@ -450,4 +454,52 @@ public class AVRDudeActionFactory {
 
 	}
 
+	/**
+	 * Create {@link AVRDudeAction} objects to read all bytes of the given <code>ByteValues</code>
+	 * from the MCU.
+	 * <p>
+	 * The MCU and the type (fuses or lockbits) are taken from the given <code>ByteValues</code>.
+	 * Bytes without a name in the part description (e.g. the undefined fusebyte 3 of the ATXmega
+	 * MCUs) are skipped, because avrdude would fail to read them.
+	 * </p>
+	 * <p>
+	 * If a folder is given, each action will read one byte to the file <code>fuse<em>n</em>.hex</code>
+	 * or <code>lock<em>n</em>.hex</code> in the folder, with <em>n</em> being the byte index. If
+	 * the folder is <code>null</code>, all actions will write their byte to stdout instead (see
+	 * {@link AVRDudeAction#STDOUT}), one line per action in the order of the returned map.
+	 * </p>
+	 * 
+	 * @param values
+	 *            <code>ByteValues</code> for which to create the read actions.
+	 * @param folder
+	 *            <code>IPath</code> to the folder for the generated files, or <code>null</code> to
+	 *            read to stdout.
+	 * @return <code>Map&lt;Integer, AVRDudeAction&gt;</code> with the byte index as the key and
+	 *         the action as value, ordered by the byte index. Map may be empty if the MCU has no
+	 *         bytes of the given type.
+	 */
+	public static Map<Integer, AVRDudeAction> readByteValues(ByteValues values, IPath folder) {
+
+		Map<Integer, AVRDudeAction> actions = new LinkedHashMap<Integer, AVRDudeAction>();
+
+		String mcuid = values.getMCUId();
+		boolean isfuse = values.getType() == FuseType.FUSE;
+		String prefix = isfuse ? "fuse" : "lock";
+
+		for (int i = 0; i < values.getByteCount(); i++) {
+			if (values.getByteName(i) == null) {
+				continue;
+			}
+			String filename = folder != null ? folder.append(prefix + i + ".hex").toOSString()
+					: AVRDudeAction.STDOUT;
+			AVRDudeAction action = isfuse ? readFuseByte(mcuid, i, filename) : readLockbitByte(
+					mcuid, i, filename);
+			if (action != null) {
+				actions.put(i, action);
+			}
+		}
+
+		return actions;
+	}
+
 }
@@ -20,9 +20,14 @@ import org.eclipse.core.runtime.jobs.ISchedulingRule;
  * access to a programmer.
  * </p>
  * <p>
- * The rule will try to determine conflicts by comparing the ProgrammerConfig of this Rule with that
- * of an conflicting rule. If there is a chance that both configs use the same port, this rule will
- * report a conflict.
+ * The rule will try to determine conflicts by comparing the port of the ProgrammerConfig of this
+ * Rule with that of an conflicting rule. Jobs on the same port, or where one of the ports is
+ * unknown (the default port of the programmer), are run one after the other. Jobs on different
+ * ports can run in parallel.
+ * </p>
+ * <p>
+ * The rule only orders complete jobs. The exclusive access to a port for each single avrdude call
+ * is guaranteed by the {@link PortArbiter}.
  * </p>
  * 
  * @author Thomas Holland
@@ -80,29 +85,18 @@ public class AVRDudeSchedulingRule implements ISchedulingRule {
 			return false;
 		}
 
-		// We only have no conflict for sure, if the Programmers are the same...
-		if (fProgrammerConfig.getProgrammer().equals(testcfg.getProgrammer())) {
-			// ... but on different, non-empty ports
-			String myport = fProgrammerConfig.getPort();
-			String testport = testcfg.getPort();
-			if (myport.length() > 0 && testport.length() > 0 && !myport.equals(testport)) {
-				return false;
-			}
+		// We have no conflict for sure if both ports are known and different, regardless of the
+		// programmer type.
+		// If one of the ports is empty, the programmer uses its default port, which might be the
+		// same as the other port. And we can't ask avrdude about the port, because it is already
+		// running. So we report a conflict in this case. The worst thing is that the user has to
+		// wait for a short moment longer after he has started multiple parallel uploads.
+		String myport = fProgrammerConfig.getPort();
+		String testport = testcfg.getPort();
+		if (myport.length() > 0 && testport.length() > 0 && !myport.equals(testport)) {
+			return false;
 		}
 
 		return true;
-
-		// Even if the Programmers are different, they may still use the same
-		// port.
-		// And because they might use default ports (not set in the config), we
-		// can't really tell if they work on the same port.
-		// And we can't ask avrdude about the port, because it is already
-		// running :-(
-		// Maybe at some point we will have the ProgrammerConfig call avrdude to
-		// get the real port. But this is currently not worth the effort for
-		// just a stupid SchedulingRule. The worst thing is that the user has to
-		// wait for a short moment longer after he has started multiple parallel
-		// uploads.
-
 	}
 }
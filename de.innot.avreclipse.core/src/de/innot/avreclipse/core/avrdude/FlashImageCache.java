@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.avrdude;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+
+import de.innot.avreclipse.AVRPlugin;
+import de.innot.avreclipse.core.util.IntelHexImage;
+
+/**
+ * Cache of the flash images last written to the devices.
+ * <p>
+ * For each {@link ProgrammerConfig} and MCU signature the cache remembers the image that was
+ * last written successfully. This is what is currently in the flash memory of the device, as long
+ * as the device has not been programmed by other means or replaced with another device of the
+ * same type.
+ * </p>
+ * <p>
+ * The images are stored as Intel HEX files in the plugin state area (<code>.metadata/.plugins/de.innot.avreclipse.core/flashimages/</code>),
+ * so they survive a restart of Eclipse.
+ * </p>
+ *
+ * @see IncrementalUpload
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ *
+ */
+public class FlashImageCache {
+
+	private final static String		FOLDERNAME	= "flashimages";
+
+	private static FlashImageCache	fInstance	= null;
+
+	/** The folder for the image files */
+	private final File				fFolder;
+
+	/** Images already loaded from or written to the folder */
+	private final Map<String, IntelHexImage>	fImages		= new HashMap<String, IntelHexImage>();
+
+	/**
+	 * Get the default instance of the cache, which is backed by the plugin state area.
+	 */
+	public static synchronized FlashImageCache getDefault() {
+		if (fInstance == null) {
+			File folder = AVRPlugin.getDefault().getStateLocation().append(FOLDERNAME).toFile();
+			fInstance = new FlashImageCache(folder);
+		}
+		return fInstance;
+	}
+
+	/**
+	 * Create a new cache that is backed by the given folder.
+	 * <p>
+	 * The folder does not need to exist. It is created when the first image is stored.
+	 * </p>
+	 *
+	 * @param folder
+	 *            <code>File</code> for the folder of the image files.
+	 */
+	FlashImageCache(File folder) {
+		fFolder = folder;
+	}
+
+	/**
+	 * Get the image last written to the device.
+	 *
+	 * @param programmer
+	 *            The <code>ProgrammerConfig</code> used to write the image.
+	 * @param signature
+	 *            The signature of the MCU, e.g. "0x1e950f".
+	 * @return The image, or <code>null</code> if no image is known for the programmer and MCU.
+	 */
+	public synchronized IntelHexImage get(ProgrammerConfig programmer, String signature) {
+
+		String key = getKey(programmer, signature);
+		IntelHexImage image = fImages.get(key);
+		if (image == null) {
+			File file = new File(fFolder, key + ".hex");
+			if (!file.isFile()) {
+				return null;
+			}
+			try {
+				image = IntelHexImage.read(file);
+			} catch (IOException ioe) {
+				// A damaged cache file is just removed. The next upload writes the complete image.
+				file.delete();
+				return null;
+			}
+			fImages.put(key, image);
+		}
+		return image;
+	}
+
+	/**
+	 * Remember the image written to the device.
+	 *
+	 * @param programmer
+	 *            The <code>ProgrammerConfig</code> used to write the image.
+	 * @param signature
+	 *            The signature of the MCU.
+	 * @param image
+	 *            The complete image now in the flash memory. The image must not be modified
+	 *            afterwards.
+	 */
+	public synchronized void put(ProgrammerConfig programmer, String signature, IntelHexImage image) {
+
+		String key = getKey(programmer, signature);
+		fImages.put(key, image);
+		try {
+			if (!fFolder.isDirectory() && !fFolder.mkdirs()) {
+				throw new IOException("Could not create folder " + fFolder);
+			}
+			image.write(new File(fFolder, key + ".hex"));
+		} catch (IOException ioe) {
+			// The image is still cached in memory for this session.
+			IStatus status = new Status(IStatus.WARNING, AVRPlugin.PLUGIN_ID,
+					"Could not store the flash image cache file", ioe);
+			AVRPlugin.getDefault().log(status);
+		}
+	}
+
+	/**
+	 * Forget the image of the given programmer and MCU.
+	 * <p>
+	 * This is used when the content of the device is unknown, e.g. after a failed upload.
+	 * </p>
+	 *
+	 * @param programmer
+	 *            The <code>ProgrammerConfig</code>.
+	 * @param signature
+	 *            The signature of the MCU.
+	 */
+	public synchronized void remove(ProgrammerConfig programmer, String signature) {
+		String key = getKey(programmer, signature);
+		fImages.remove(key);
+		new File(fFolder, key + ".hex").delete();
+	}
+
+	/**
+	 * Forget the images of all MCUs for the given programmer.
+	 * <p>
+	 * This is used when the device has been programmed without the cache, e.g. by a
+	 * {@link GangUpload}.
+	 * </p>
+	 *
+	 * @param programmer
+	 *            The <code>ProgrammerConfig</code>.
+	 */
+	public synchronized void remove(ProgrammerConfig programmer) {
+		String prefix = getKey(programmer, "");
+		for (String key : fImages.keySet().toArray(new String[fImages.size()])) {
+			if (key.startsWith(prefix)) {
+				fImages.remove(key);
+			}
+		}
+		File[] files = fFolder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.getName().startsWith(prefix)) {
+					file.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the name of the cache file for a programmer and MCU, without the extension.
+	 * <p>
+	 * All characters that might not be valid in a file name are replaced.
+	 * </p>
+	 */
+	static String getKey(ProgrammerConfig programmer, String signature) {
+		return programmer.getId().replaceAll("[^\\w\\.-]", "_") + "@"
+				+ signature.replaceAll("[^\\w]", "_");
+	}
+}
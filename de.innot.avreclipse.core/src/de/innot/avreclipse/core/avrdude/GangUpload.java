@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.avrdude;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
+
+import de.innot.avreclipse.core.avrdude.AVRDudeException.Reason;
+import de.innot.avreclipse.core.avrdude.GangUploadReport.BoardResult;
+import de.innot.avreclipse.core.avrdude.GangUploadReport.Result;
+import de.innot.avreclipse.core.toolinfo.AVRDude;
+import de.innot.avreclipse.core.toolinfo.ExternalCommandLauncher;
+
+/**
+ * Uploads to multiple boards at the same time (gang programming).
+ * <p>
+ * Each board is connected to its own programmer, described by a {@link ProgrammerConfig}. For
+ * each board a separate Job is scheduled with an {@link AVRDudeSchedulingRule}, so boards on
+ * different ports are programmed in parallel while boards sharing a port are programmed one after
+ * the other.
+ * </p>
+ * <p>
+ * The failure of one board does not stop the other boards. Once all boards are finished a
+ * {@link GangUploadReport} with the result of each board is returned.
+ * </p>
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ *
+ */
+public class GangUpload {
+
+	/**
+	 * Runs the upload to a single board.
+	 */
+	public interface IUploader {
+
+		/**
+		 * Upload to the board connected to the given programmer.
+		 *
+		 * @param programmer
+		 *            The <code>ProgrammerConfig</code> of the board.
+		 * @param arguments
+		 *            The complete avrdude arguments for the board.
+		 * @param cwd
+		 *            The working directory, may be <code>null</code>.
+		 * @param monitor
+		 *            To report the progress and to check for cancel requests.
+		 * @throws AVRDudeException
+		 *             if the upload has failed. This includes uploads where the uploader did not
+		 *             recognize the error, e.g. avrdude exiting with a nonzero exit code.
+		 */
+		public void upload(ProgrammerConfig programmer, List<String> arguments, IPath cwd,
+				IProgressMonitor monitor) throws AVRDudeException;
+	}
+
+	/** The default uploader, which runs avrdude */
+	public final static IUploader	AVRDUDE_UPLOADER	= new IUploader() {
+		public void upload(ProgrammerConfig programmer, List<String> arguments, IPath cwd,
+				IProgressMonitor monitor) throws AVRDudeException {
+			// The device is written without the upload history, which is no longer valid.
+			IncrementalUpload.invalidate(programmer);
+			// The output is not buffered, see UploadProjectAction. With an output limit
+			// runCommand() also fails for any nonzero exit code of avrdude.
+			AVRDude.getDefault().runCommand(arguments, monitor, false, cwd, programmer,
+					ExternalCommandLauncher.BUFFER_NONE);
+		}
+	};
+
+	/** Interval in milliseconds to check the monitor for cancel requests */
+	private final static long		CANCEL_POLL			= 100;
+
+	private final String			fName;
+
+	private final IPath				fCwd;
+
+	private final List<BoardJob>	fBoards				= new ArrayList<BoardJob>();
+
+	private IUploader				fUploader			= AVRDUDE_UPLOADER;
+
+	/**
+	 * Create a new gang upload.
+	 *
+	 * @param name
+	 *            Name of the upload, used for the names of the Jobs.
+	 * @param cwd
+	 *            The working directory for all uploads, may be <code>null</code>.
+	 */
+	public GangUpload(String name, IPath cwd) {
+		fName = name;
+		fCwd = cwd;
+	}
+
+	/**
+	 * Add a board to the gang.
+	 *
+	 * @param programmer
+	 *            The <code>ProgrammerConfig</code> of the programmer connected to the board.
+	 * @param arguments
+	 *            The complete avrdude arguments for the board, including the options of the
+	 *            programmer.
+	 */
+	public void addBoard(ProgrammerConfig programmer, List<String> arguments) {
+		fBoards.add(new BoardJob(programmer, new ArrayList<String>(arguments)));
+	}
+
+	/**
+	 * Set the uploader to use for each board.
+	 * <p>
+	 * This is only required for testing. The default is {@link #AVRDUDE_UPLOADER}.
+	 * </p>
+	 *
+	 * @param uploader
+	 */
+	public void setUploader(IUploader uploader) {
+		fUploader = uploader;
+	}
+
+	/**
+	 * Upload to all boards and wait until they are finished.
+	 * <p>
+	 * If the monitor is cancelled, all boards still waiting or running are cancelled. The method
+	 * still waits for the running boards to terminate, so that the report is complete.
+	 * </p>
+	 *
+	 * @param monitor
+	 *            To report the progress and to check for cancel requests.
+	 * @return The report with the results of all boards.
+	 */
+	public GangUploadReport run(IProgressMonitor monitor) {
+
+		int total = fBoards.size();
+		final CountDownLatch finished = new CountDownLatch(total);
+		JobChangeAdapter listener = new JobChangeAdapter() {
+			@Override
+			public void done(IJobChangeEvent event) {
+				finished.countDown();
+			}
+		};
+
+		try {
+			monitor.beginTask(fName, total);
+			long start = System.currentTimeMillis();
+
+			for (BoardJob job : fBoards) {
+				job.addJobChangeListener(listener);
+				job.schedule();
+			}
+
+			int reported = 0;
+			boolean cancelled = false;
+			while (reported < total) {
+				try {
+					finished.await(CANCEL_POLL, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					monitor.setCanceled(true);
+				}
+				if (monitor.isCanceled() && !cancelled) {
+					cancelled = true;
+					for (BoardJob job : fBoards) {
+						job.cancel();
+					}
+				}
+				int done = total - (int) finished.getCount();
+				if (done > reported) {
+					monitor.worked(done - reported);
+					reported = done;
+					monitor.subTask(done + " of " + total + " boards finished");
+				}
+			}
+
+			long elapsed = System.currentTimeMillis() - start;
+
+			List<BoardResult> results = new ArrayList<BoardResult>(total);
+			for (BoardJob job : fBoards) {
+				results.add(job.getBoardResult());
+			}
+			return new GangUploadReport(results, elapsed);
+
+		} finally {
+			for (BoardJob job : fBoards) {
+				job.removeJobChangeListener(listener);
+			}
+			monitor.done();
+		}
+	}
+
+	/**
+	 * The Job uploading to a single board.
+	 */
+	private class BoardJob extends Job {
+
+		private final ProgrammerConfig		fProgrammer;
+		private final List<String>			fArguments;
+
+		private volatile BoardResult		fResult;
+
+		BoardJob(ProgrammerConfig programmer, List<String> arguments) {
+			super(fName + " (" + programmer.getName() + ")");
+			fProgrammer = programmer;
+			fArguments = arguments;
+			setRule(new AVRDudeSchedulingRule(programmer));
+			setPriority(Job.LONG);
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			long start = System.currentTimeMillis();
+			try {
+				// runCommand() may add to the arguments, so each run gets a copy
+				fUploader.upload(fProgrammer, new ArrayList<String>(fArguments), fCwd, monitor);
+				fResult = new BoardResult(fProgrammer, Result.PASSED, null, start, System
+						.currentTimeMillis());
+			} catch (AVRDudeException ade) {
+				Result result = ade.getReason() == Reason.USER_CANCEL ? Result.CANCELLED
+						: Result.FAILED;
+				fResult = new BoardResult(fProgrammer, result, ade, start, System
+						.currentTimeMillis());
+			}
+			// Failures are reported in the GangUploadReport, not as a Job error
+			return Status.OK_STATUS;
+		}
+
+		/**
+		 * @return The result of the upload. If the Job has been cancelled before it was run, the
+		 *         result is {@link Result#CANCELLED}.
+		 */
+		BoardResult getBoardResult() {
+			BoardResult result = fResult;
+			if (result == null) {
+				result = new BoardResult(fProgrammer, Result.CANCELLED, null, 0, 0);
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.avrdude;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import de.innot.avreclipse.core.avrdude.AVRDudeException.Reason;
+
+/**
+ * The consolidated result of a {@link GangUpload}.
+ * <p>
+ * The report contains the result of each board and some throughput figures for the complete gang
+ * upload.
+ * </p>
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ *
+ */
+public class GangUploadReport {
+
+	/** The possible results of a single board */
+	public enum Result {
+		PASSED, FAILED, CANCELLED;
+	}
+
+	/**
+	 * The result of the upload to a single board.
+	 */
+	public static class BoardResult {
+
+		private final ProgrammerConfig	fProgrammer;
+		private final Result			fResult;
+		private final Reason			fReason;
+		private final String			fMessage;
+		private final long				fStartTime;
+		private final long				fEndTime;
+		private final long				fDuration;
+
+		BoardResult(ProgrammerConfig programmer, Result result, AVRDudeException error,
+				long starttime, long endtime) {
+			fProgrammer = programmer;
+			fResult = result;
+			fReason = error != null ? error.getReason() : null;
+			fMessage = error != null ? error.getMessage() : null;
+			fStartTime = starttime;
+			fEndTime = endtime;
+			fDuration = endtime - starttime;
+		}
+
+		/**
+		 * @return The <code>ProgrammerConfig</code> used for the board.
+		 */
+		public ProgrammerConfig getProgrammer() {
+			return fProgrammer;
+		}
+
+		/**
+		 * @return The result of the upload.
+		 */
+		public Result getResult() {
+			return fResult;
+		}
+
+		/**
+		 * @return The reason of a failed upload, or <code>null</code> if the upload has passed or
+		 *         has not been started.
+		 */
+		public Reason getReason() {
+			return fReason;
+		}
+
+		/**
+		 * @return The error message of a failed upload, or <code>null</code>.
+		 */
+		public String getMessage() {
+			return fMessage;
+		}
+
+		/**
+		 * @return The time in milliseconds (as in {@link System#currentTimeMillis()}) the upload to
+		 *         the board was started, or <code>0</code> if it has not been started.
+		 */
+		public long getStartTime() {
+			return fStartTime;
+		}
+
+		/**
+		 * @return The time in milliseconds (as in {@link System#currentTimeMillis()}) the upload to
+		 *         the board has finished, or <code>0</code> if it has not been started.
+		 */
+		public long getEndTime() {
+			return fEndTime;
+		}
+
+		/**
+		 * @return The time in milliseconds the upload to the board has taken.
+		 */
+		public long getDuration() {
+			return fDuration;
+		}
+	}
+
+	private final List<BoardResult>	fBoards;
+	private final long				fElapsed;
+
+	GangUploadReport(List<BoardResult> boards, long elapsed) {
+		fBoards = Collections.unmodifiableList(new ArrayList<BoardResult>(boards));
+		fElapsed = elapsed;
+	}
+
+	/**
+	 * @return The results of all boards, in the order the boards were added to the gang upload.
+	 */
+	public List<BoardResult> getBoards() {
+		return fBoards;
+	}
+
+	/**
+	 * Get the number of boards with the given result.
+	 *
+	 * @param result
+	 *            The <code>Result</code> to count.
+	 * @return Number of boards.
+	 */
+	public int getCount(Result result) {
+		int count = 0;
+		for (BoardResult board : fBoards) {
+			if (board.fResult == result) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return <code>true</code> if the upload to all boards has passed.
+	 */
+	public boolean isSuccess() {
+		return getCount(Result.PASSED) == fBoards.size();
+	}
+
+	/**
+	 * @return The wall clock time in milliseconds of the complete gang upload.
+	 */
+	public long getElapsedTime() {
+		return fElapsed;
+	}
+
+	/**
+	 * Get the sum of the upload times of all boards.
+	 * <p>
+	 * Compared with {@link #getElapsedTime()} this shows how much time was saved by uploading the
+	 * boards concurrently.
+	 * </p>
+	 *
+	 * @return Time in milliseconds.
+	 */
+	public long getTotalBoardTime() {
+		long total = 0;
+		for (BoardResult board : fBoards) {
+			total += board.fDuration;
+		}
+		return total;
+	}
+
+	/**
+	 * @return The number of successfully programmed boards per minute.
+	 */
+	public double getThroughput() {
+		if (fElapsed <= 0) {
+			return 0.0;
+		}
+		return getCount(Result.PASSED) * 60000.0 / fElapsed;
+	}
+
+	/**
+	 * Returns the report as a human readable text, with one line per board.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("Gang upload: %d boards, %d passed, %d failed, %d cancelled\n",
+				fBoards.size(), getCount(Result.PASSED), getCount(Result.FAILED),
+				getCount(Result.CANCELLED)));
+		sb.append(String.format(
+				"Elapsed time %.1f s, sum of upload times %.1f s, throughput %.1f boards/min\n",
+				fElapsed / 1000.0, getTotalBoardTime() / 1000.0, getThroughput()));
+
+		for (BoardResult board : fBoards) {
+			ProgrammerConfig programmer = board.fProgrammer;
+			String port = programmer.getPort();
+			sb.append(String.format("  %-9s %-24s %-16s %6.1f s", board.fResult,
+					programmer.getName(), port.length() > 0 ? port : "(default)",
+					board.fDuration / 1000.0));
+			if (board.fReason != null) {
+				sb.append("  ").append(board.fReason);
+				if (board.fMessage != null && board.fMessage.length() > 0) {
+					sb.append(": ").append(board.fMessage);
+				}
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,609 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.avrdude;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+
+import de.innot.avreclipse.core.avrdude.AVRDudeAction.Action;
+import de.innot.avreclipse.core.avrdude.AVRDudeAction.FileType;
+import de.innot.avreclipse.core.avrdude.AVRDudeAction.MemType;
+import de.innot.avreclipse.core.toolinfo.AVRDude;
+import de.innot.avreclipse.core.toolinfo.Signatures;
+import de.innot.avreclipse.core.util.IntelHexImage;
+
+/**
+ * Reduces an upload to the memories that have changed since the last upload.
+ * <p>
+ * The payload of every write action is compared with what was last written with the same
+ * {@link ProgrammerConfig} to a MCU with the same signature.
+ * <ul>
+ * <li>Flash images in the Intel HEX format are compared with the image remembered by the
+ * {@link FlashImageCache}. If only some pages have changed and the programmer can write single
+ * pages, the flash write action is replaced with one for a temporary file with only the changed
+ * pages.</li>
+ * <li>All other payloads (EEPROM images, fuse bytes, lockbits, ...) are compared by their content
+ * hash as remembered by the {@link UploadHistory}.</li>
+ * </ul>
+ * Write actions with an unchanged payload are removed. If no actions are left avrdude does not
+ * need to be run at all.
+ * </p>
+ * <p>
+ * If the flash is not written completely, the automatic chip erase is disabled. If the chip is
+ * erased, the EEPROM and the lockbits are always written, as the erase may have changed them.
+ * </p>
+ * <p>
+ * Only bootloader programmers erase each page before writing it, so only they can write single
+ * pages without a chip erase. Also avrdude must be version 6.1 or later, which only writes the
+ * pages contained in the file and only erases the chip if the flash is written.
+ * </p>
+ * <p>
+ * Usage: call {@link #prepare(List, List)} to get the avrdude arguments, run avrdude and then
+ * call {@link #finished(boolean)} with the result, so that the history can be updated. Uploads
+ * not using this class must call {@link #invalidate(ProgrammerConfig)} instead.
+ * </p>
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ *
+ */
+public class IncrementalUpload {
+
+	/** What has been done with the flash upload */
+	public enum Mode {
+		/** No flash write action or the upload can not be handled, arguments unchanged */
+		NONE,
+		/** The complete image is written */
+		FULL,
+		/** Only the changed pages are written */
+		PARTIAL,
+		/** The image has not changed, the flash write action has been removed */
+		SKIPPED;
+	}
+
+	/** The avrdude programmer ids of bootloaders, which can write single flash pages. */
+	private final static Set<String>	PAGED_PROGRAMMERS	= new HashSet<String>(Arrays.asList(
+																	"arduino", "avr109", "avr911",
+																	"butterfly", "wiring"));
+
+	/** Minimum avrdude version for partial uploads: 6.1 */
+	private final static int			MIN_VERSION			= 601;
+
+	/** Uploads with less bytes are too short to measure the upload speed. */
+	private final static int			MIN_MEASURE_BYTES	= 256;
+
+	private final static String			OPTION_NOERASE		= "-D";
+	private final static String			OPTION_ERASE		= "-e";
+	private final static String			OPTION_NOWRITE		= "-n";
+
+	private final FlashImageCache		fImageCache;
+	private final UploadHistory			fHistory;
+	private final ProgrammerConfig		fProgrammer;
+	private final String				fSignature;
+	private final int					fPageSize;
+	private final IPath					fCwd;
+
+	/** <code>true</code> if the upload is handled by this class */
+	private boolean						fActive;
+
+	private Mode						fFlashMode			= Mode.NONE;
+
+	/** The complete new flash image, or <code>null</code> if there is none. */
+	private IntelHexImage				fImage;
+
+	/** The temporary file with the changed pages. */
+	private File						fTempFile;
+
+	/** The number of flash pages and bytes written by a partial upload */
+	private int							fWrittenPages;
+	private int							fWrittenPageBytes;
+
+	/** The hashes of all payloads of this upload, whether written or not. */
+	private final Map<MemType, String>	fNewHashes			= new EnumMap<MemType, String>(
+																	MemType.class);
+
+	/** The memories not written because they have not changed. */
+	private final List<MemType>			fSkipped			= new ArrayList<MemType>();
+
+	private int							fWrittenBytes;
+	private int							fSavedBytes;
+
+	/** <code>true</code> if avrdude erases the chip */
+	private boolean						fChipErase;
+
+	/** The upload speed known before this upload, in bytes per second */
+	private int							fThroughput;
+
+	private long						fStartTime;
+
+	/**
+	 * Create a new incremental upload for the given programmer and MCU.
+	 * <p>
+	 * This will run avrdude to get its version and the flash page size of the MCU, if required.
+	 * </p>
+	 *
+	 * @param programmer
+	 *            The <code>ProgrammerConfig</code> used for the upload.
+	 * @param mcuid
+	 *            The id of the target MCU.
+	 * @param cwd
+	 *            The working directory of avrdude, to resolve relative file names. May be
+	 *            <code>null</code>.
+	 * @return New <code>IncrementalUpload</code>.
+	 */
+	public static IncrementalUpload create(ProgrammerConfig programmer, String mcuid, IPath cwd) {
+
+		String signature = Signatures.getDefault().getSignature(mcuid);
+
+		int pagesize = -1;
+		if (PAGED_PROGRAMMERS.contains(programmer.getProgrammer())) {
+			try {
+				AVRDude avrdude = AVRDude.getDefault();
+				if (avrdude.getVersion() >= MIN_VERSION) {
+					pagesize = avrdude.getFlashPageSize(mcuid);
+				}
+			} catch (AVRDudeException ade) {
+				// Ignore. Changed images are uploaded completely.
+			}
+		}
+
+		return new IncrementalUpload(FlashImageCache.getDefault(), UploadHistory.getDefault(),
+				programmer, signature, pagesize, cwd);
+	}
+
+	/**
+	 * Forget everything known about the devices programmed with the given programmer.
+	 * <p>
+	 * This must be called whenever a device is programmed without this class, e.g. by a
+	 * {@link GangUpload} or by an upload with the incremental upload disabled. Otherwise the next
+	 * incremental upload would compare with an image that is no longer on the device.
+	 * </p>
+	 *
+	 * @param programmer
+	 *            The <code>ProgrammerConfig</code>.
+	 */
+	public static void invalidate(ProgrammerConfig programmer) {
+		invalidate(FlashImageCache.getDefault(), UploadHistory.getDefault(), programmer);
+	}
+
+	/**
+	 * Forget everything the given cache and history know about the devices programmed with the
+	 * given programmer.
+	 */
+	static void invalidate(FlashImageCache imagecache, UploadHistory history,
+			ProgrammerConfig programmer) {
+		imagecache.remove(programmer);
+		history.remove(programmer);
+	}
+
+	/**
+	 * Create a new incremental upload.
+	 *
+	 * @param imagecache
+	 *            The cache of the last written flash images.
+	 * @param history
+	 *            The hashes of the last written memories.
+	 * @param programmer
+	 *            The <code>ProgrammerConfig</code> used for the upload.
+	 * @param signature
+	 *            The signature of the target MCU, or <code>null</code> if unknown.
+	 * @param pagesize
+	 *            The flash page size of the target MCU, or <code>-1</code> if single pages can not
+	 *            be written.
+	 * @param cwd
+	 *            The working directory of avrdude. May be <code>null</code>.
+	 */
+	IncrementalUpload(FlashImageCache imagecache, UploadHistory history,
+			ProgrammerConfig programmer, String signature, int pagesize, IPath cwd) {
+		fImageCache = imagecache;
+		fHistory = history;
+		fProgrammer = programmer;
+		fSignature = signature;
+		fPageSize = pagesize;
+		fCwd = cwd;
+	}
+
+	/**
+	 * Get the avrdude arguments for the upload.
+	 * <p>
+	 * All write actions with unchanged payloads are removed and the flash write action may be
+	 * replaced with a partial one. If the flash is not written completely, the "-D" option is
+	 * added to disable the automatic chip erase.
+	 * </p>
+	 *
+	 * @param options
+	 *            The avrdude options, without the actions.
+	 * @param actions
+	 *            The avrdude actions.
+	 * @return The complete list of arguments for avrdude, or <code>null</code> if there is nothing
+	 *         left to do.
+	 */
+	public List<String> prepare(List<String> options, List<String> actions) {
+
+		List<String> newoptions = new ArrayList<String>(options);
+		String[] newactions = actions.toArray(new String[actions.size()]);
+
+		fActive = fSignature != null && !options.contains(OPTION_NOWRITE);
+		if (!fActive) {
+			// The upload is not handled by this class, so the cached image and the hashes may
+			// become outdated
+			invalidate(fImageCache, fHistory, fProgrammer);
+			newoptions.addAll(actions);
+			return newoptions;
+		}
+
+		fStartTime = System.currentTimeMillis();
+		fThroughput = fHistory.getThroughput(fProgrammer, fSignature);
+		Map<MemType, String> oldhashes = fHistory.getHashes(fProgrammer, fSignature);
+		boolean erase = options.contains(OPTION_ERASE);
+
+		// Parse all write actions
+		AVRDudeAction[] writeactions = new AVRDudeAction[newactions.length];
+		int flashindex = -1;
+		for (int i = 0; i < newactions.length; i++) {
+			try {
+				AVRDudeAction action = AVRDudeAction.getActionForArgument(newactions[i]);
+				if (action.getAction() == Action.write) {
+					writeactions[i] = action;
+					if (flashindex == -1 && action.getMemType() == MemType.flash) {
+						flashindex = i;
+					}
+				}
+			} catch (IllegalArgumentException iae) {
+				// not an action we know about. Ignore it.
+			}
+		}
+
+		// The flash first, as it determines whether the chip is erased
+		if (flashindex != -1) {
+			prepareFlash(writeactions[flashindex], oldhashes, erase, newactions, flashindex);
+		}
+		fChipErase = erase
+				|| (fFlashMode == Mode.FULL && !options.contains(OPTION_NOERASE));
+
+		// Now all other memories. A chip erase also erases the EEPROM and the lockbits.
+		for (int i = 0; i < newactions.length; i++) {
+			AVRDudeAction action = writeactions[i];
+			if (action == null || i == flashindex) {
+				continue;
+			}
+			MemType memtype = action.getMemType();
+			String hash = getPayloadHash(action);
+			int size = getPayloadSize(action);
+			if (hash != null) {
+				fNewHashes.put(memtype, hash);
+			}
+			boolean erased = fChipErase && (memtype == MemType.eeprom || memtype == MemType.lock);
+			if (!erased && hash != null && hash.equals(oldhashes.get(memtype))) {
+				newactions[i] = null;
+				fSkipped.add(memtype);
+				fSavedBytes += size;
+			} else {
+				fWrittenBytes += size;
+			}
+		}
+
+		List<String> remaining = new ArrayList<String>();
+		for (String action : newactions) {
+			if (action != null) {
+				remaining.add(action);
+			}
+		}
+		if (remaining.size() == 0) {
+			return null;
+		}
+
+		// Without a complete flash write a chip erase would destroy the flash content.
+		if (!fChipErase && !newoptions.contains(OPTION_NOERASE)) {
+			newoptions.add(OPTION_NOERASE);
+		}
+		newoptions.addAll(remaining);
+		return newoptions;
+	}
+
+	/**
+	 * Compare the flash payload and change the flash write action as required.
+	 */
+	private void prepareFlash(AVRDudeAction action, Map<MemType, String> oldhashes, boolean erase,
+			String[] newactions, int index) {
+
+		fFlashMode = Mode.FULL;
+		fImage = readImage(action);
+
+		if (fImage == null) {
+			// Not an Intel HEX image. Compare the hash of the file.
+			String hash = getPayloadHash(action);
+			int size = getPayloadSize(action);
+			if (hash != null) {
+				fNewHashes.put(MemType.flash, hash);
+			}
+			if (!erase && hash != null && hash.equals(oldhashes.get(MemType.flash))) {
+				newactions[index] = null;
+				fFlashMode = Mode.SKIPPED;
+				fSkipped.add(MemType.flash);
+				fSavedBytes += size;
+			} else {
+				fWrittenBytes += size;
+			}
+			return;
+		}
+
+		int total = fImage.getUsedCount();
+		IntelHexImage previous = fImageCache.get(fProgrammer, fSignature);
+		if (previous != null && !erase) {
+			if (fImage.hasSameContent(previous)) {
+				newactions[index] = null;
+				fFlashMode = Mode.SKIPPED;
+				fSkipped.add(MemType.flash);
+				fSavedBytes += total;
+				return;
+			}
+			if (fPageSize > 0) {
+				BitSet pages = fImage.getChangedPages(previous, fPageSize);
+				IntelHexImage changed = fImage.getPages(pages, fPageSize);
+				try {
+					fTempFile = File.createTempFile("avrflash", ".hex");
+					changed.write(fTempFile);
+					AVRDudeAction partialaction = new AVRDudeAction(MemType.flash, Action.write,
+							fTempFile.getAbsolutePath(), FileType.iHex);
+					newactions[index] = partialaction.getArgument();
+					fFlashMode = Mode.PARTIAL;
+					fWrittenPages = pages.cardinality();
+					fWrittenPageBytes = changed.getUsedCount();
+					fWrittenBytes += fWrittenPageBytes;
+					fSavedBytes += Math.max(0, total - fWrittenPageBytes);
+					return;
+				} catch (IOException ioe) {
+					// Could not write the temporary file. Upload the complete image instead.
+					if (fTempFile != null) {
+						fTempFile.delete();
+						fTempFile = null;
+					}
+				}
+			}
+		}
+		fWrittenBytes += total;
+	}
+
+	/**
+	 * Update the history with the result of the upload.
+	 * <p>
+	 * After a successful upload the new payloads are remembered. After a failed upload the content
+	 * of the device is unknown and the next upload will write everything.
+	 * </p>
+	 *
+	 * @param success
+	 *            <code>true</code> if avrdude has finished with exit code <code>0</code> or has
+	 *            not been run at all. Any other result, including an avrdude error not known to
+	 *            the plugin, must be reported as a failure.
+	 */
+	public void finished(boolean success) {
+
+		if (fTempFile != null) {
+			fTempFile.delete();
+			fTempFile = null;
+		}
+
+		if (!fActive) {
+			return;
+		}
+		if (!success) {
+			fImageCache.remove(fProgrammer, fSignature);
+			fHistory.remove(fProgrammer, fSignature);
+			return;
+		}
+
+		// The flash image
+		if (fImage != null) {
+			fImageCache.put(fProgrammer, fSignature, fImage);
+		} else if (fFlashMode == Mode.FULL || fChipErase) {
+			// Either written in another format or erased
+			fImageCache.remove(fProgrammer, fSignature);
+		}
+
+		// The hashes of all other memories
+		Map<MemType, String> hashes = fHistory.getHashes(fProgrammer, fSignature);
+		if (fChipErase || fImage != null) {
+			hashes.remove(MemType.flash);
+		}
+		if (fChipErase) {
+			hashes.remove(MemType.eeprom);
+			hashes.remove(MemType.lock);
+		}
+		hashes.putAll(fNewHashes);
+
+		int throughput = fThroughput;
+		long elapsed = System.currentTimeMillis() - fStartTime;
+		if (fWrittenBytes >= MIN_MEASURE_BYTES && elapsed > 0) {
+			throughput = (int) (fWrittenBytes * 1000L / elapsed);
+		}
+
+		fHistory.put(fProgrammer, fSignature, hashes, throughput);
+	}
+
+	/**
+	 * @return What has been done with the flash upload by {@link #prepare(List, List)}.
+	 */
+	public Mode getFlashMode() {
+		return fFlashMode;
+	}
+
+	/**
+	 * @return The memories not written because they have not changed.
+	 */
+	public List<MemType> getSkipped() {
+		return fSkipped;
+	}
+
+	/**
+	 * @return The number of bytes written by the upload.
+	 */
+	public int getWrittenBytes() {
+		return fWrittenBytes;
+	}
+
+	/**
+	 * @return The number of bytes not written because they have not changed.
+	 */
+	public int getSavedBytes() {
+		return fSavedBytes;
+	}
+
+	/**
+	 * Get an estimate of the time saved by not writing the unchanged bytes.
+	 * <p>
+	 * The estimate is based on the upload speed measured at previous uploads to the device.
+	 * </p>
+	 *
+	 * @return The time in seconds, or <code>-1.0</code> if the upload speed is not known yet.
+	 */
+	public double getSavedSeconds() {
+		if (fThroughput <= 0) {
+			return -1.0;
+		}
+		return (double) fSavedBytes / fThroughput;
+	}
+
+	/**
+	 * Get a short description of what has been saved, for the console.
+	 * <p>
+	 * The savings are only real if the upload has been successful, so the summary should not be
+	 * shown before avrdude has finished.
+	 * </p>
+	 *
+	 * @return Human readable summary, or <code>null</code> if nothing has been saved.
+	 */
+	public String getSummary() {
+		if (!fActive || (fSkipped.size() == 0 && fFlashMode != Mode.PARTIAL)) {
+			return null;
+		}
+
+		StringBuilder sb = new StringBuilder();
+		if (fFlashMode == Mode.PARTIAL) {
+			sb.append(String.format("Flash partially changed, writing %d pages (%d bytes).\n",
+					fWrittenPages, fWrittenPageBytes));
+		}
+		if (fSkipped.size() > 0) {
+			sb.append("Unchanged since the last upload, not written:");
+			for (MemType memtype : fSkipped) {
+				sb.append(' ').append(memtype.name());
+			}
+			sb.append('\n');
+		}
+		sb.append(String.format("Saved %d bytes", fSavedBytes));
+		double seconds = getSavedSeconds();
+		if (seconds >= 0) {
+			sb.append(String.format(" (about %.1f s)", seconds));
+		}
+		sb.append('.');
+		return sb.toString();
+	}
+
+	/**
+	 * Read the flash image of a write action.
+	 *
+	 * @return The image, or <code>null</code> if the file is not an Intel HEX file or could not be
+	 *         read.
+	 */
+	private IntelHexImage readImage(AVRDudeAction action) {
+
+		FileType type = action.getFileType();
+		if (type != FileType.iHex && type != FileType.auto) {
+			return null;
+		}
+		try {
+			return IntelHexImage.read(getFile(action));
+		} catch (IOException ioe) {
+			// Probably another file format.
+			return null;
+		}
+	}
+
+	/**
+	 * Get the hash of the payload of a write action.
+	 *
+	 * @return The hash as a hex string, or <code>null</code> if the payload file could not be
+	 *         read.
+	 */
+	private String getPayloadHash(AVRDudeAction action) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			if (action.getFileType() == FileType.immediate) {
+				digest.update(action.getArgument().getBytes("UTF-8"));
+			} else {
+				InputStream in = new FileInputStream(getFile(action));
+				try {
+					byte[] buffer = new byte[8192];
+					int count;
+					while ((count = in.read(buffer)) != -1) {
+						digest.update(buffer, 0, count);
+					}
+				} finally {
+					in.close();
+				}
+			}
+			StringBuilder sb = new StringBuilder();
+			for (byte b : digest.digest()) {
+				sb.append(String.format("%02x", b & 0xFF));
+			}
+			return sb.toString();
+		} catch (IOException ioe) {
+			// Let avrdude complain about the file
+			return null;
+		} catch (NoSuchAlgorithmException nsae) {
+			// SHA-1 is always available
+			return null;
+		}
+	}
+
+	/**
+	 * Get the number of bytes written by a write action.
+	 *
+	 * @return The number of bytes in the image, the file size for files in other formats or
+	 *         <code>1</code> for immediate values.
+	 */
+	private int getPayloadSize(AVRDudeAction action) {
+		if (action.getFileType() == FileType.immediate) {
+			return 1;
+		}
+		IntelHexImage image = readImage(action);
+		if (image != null) {
+			return image.getUsedCount();
+		}
+		return (int) getFile(action).length();
+	}
+
+	/**
+	 * @return The payload file of the action, resolved against the working directory.
+	 */
+	private File getFile(AVRDudeAction action) {
+		IPath path = new Path(action.getFilename());
+		if (!path.isAbsolute() && fCwd != null) {
+			path = fCwd.append(path);
+		}
+		return path.toFile();
+	}
+}
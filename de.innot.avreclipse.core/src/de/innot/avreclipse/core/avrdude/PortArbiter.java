@@ -0,0 +1,463 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.avrdude;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+import de.innot.avreclipse.core.avrdude.AVRDudeException.Reason;
+
+/**
+ * Arbitrates the access of the external tools to the programmer ports.
+ * <p>
+ * Only one tool may access a programmer port at any time. Before running a tool that accesses a
+ * programmer, a {@link PortLease} for the port has to be acquired with
+ * {@link #acquire(String, long, IProgressMonitor)}, and released once the tool has finished.
+ * </p>
+ * <p>
+ * Requests for the same port are served in the order they were made. A request is granted as soon
+ * as the previous lease has been released and the optional invocation delay has passed, without
+ * polling. Requests for different ports are independent of each other, so tools on different
+ * ports can run in parallel.
+ * </p>
+ * <p>
+ * The default port of a programmer (<code>null</code> or an empty port name) may be the same
+ * device as any of the named ports. Like the {@link AVRDudeSchedulingRule} a lease for the default
+ * port is therefore exclusive against all ports: it is only granted when no other port is leased,
+ * and requests for named ports made after it wait until it has been released.
+ * </p>
+ * <p>
+ * Some programmers, especially USB devices, need some time after the end of one tool invocation
+ * before they can be used again. This is handled by the delay argument of
+ * {@link #acquire(String, long, IProgressMonitor)}, which is measured from the release of the
+ * previous lease of the port.
+ * </p>
+ * <p>
+ * For each port the number of leases and the time spent waiting for them are recorded. They are
+ * available with {@link #getStatistics(String)}.
+ * </p>
+ * <p>
+ * This class implements the singleton pattern and can be accessed with the static
+ * {@link #getDefault()} method.
+ * </p>
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ *
+ */
+public class PortArbiter {
+
+	/**
+	 * Interval in milliseconds to check the progress monitor for cancel requests while waiting.
+	 * Waiters are woken up directly when the port becomes free; this is only the upper limit for
+	 * the reaction to a cancel request.
+	 */
+	private final static long		CANCEL_POLL		= 100;
+
+	/** The name used for the default port of the programmer */
+	private final static String		DEFAULT_PORT	= "";
+
+	private static PortArbiter		fInstance		= null;
+
+	/** Lock for all port states */
+	private final ReentrantLock		fLock			= new ReentrantLock();
+
+	/** The state of all ports used so far */
+	private final Map<String, Port>	fPorts			= new HashMap<String, Port>();
+
+	/** The number of the next request, to order the requests across all ports */
+	private long					fNextTicket		= 0;
+
+	/** The number of currently leased ports other than the default port */
+	private int						fNamedLeases	= 0;
+
+	/**
+	 * A lease for a single port.
+	 * <p>
+	 * The port may be accessed until the lease is released. Each lease must be released exactly
+	 * once, usually in a <code>finally</code> block.
+	 * </p>
+	 */
+	public class PortLease {
+
+		private final Port	fPort;
+		private final long	fWaitTime;
+		private boolean		fReleased	= false;
+
+		private PortLease(Port port, long waittime) {
+			fPort = port;
+			fWaitTime = waittime;
+		}
+
+		/**
+		 * @return The name of the leased port.
+		 */
+		public String getPort() {
+			return fPort.fName;
+		}
+
+		/**
+		 * @return The time in milliseconds spent waiting for this lease.
+		 */
+		public long getWaitTime() {
+			return fWaitTime;
+		}
+
+		/**
+		 * Release the port, so that the next waiting request can be granted.
+		 * <p>
+		 * Further calls of this method are ignored.
+		 * </p>
+		 */
+		public void release() {
+			fLock.lock();
+			try {
+				if (fReleased) {
+					return;
+				}
+				fReleased = true;
+				fPort.fLeased = false;
+				fPort.fLastRelease = System.currentTimeMillis();
+				fPort.fFree.signalAll();
+				if (fPort.isDefault()) {
+					signalAllPorts();
+				} else {
+					fNamedLeases--;
+					Port defaultport = fPorts.get(DEFAULT_PORT);
+					if (defaultport != null) {
+						defaultport.fFree.signalAll();
+					}
+				}
+			} finally {
+				fLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Snapshot of the usage statistics of a single port.
+	 */
+	public static class PortStatistics {
+
+		private final String	fPortName;
+		private final long		fLeases;
+		private final long		fTotalWait;
+		private final long		fMaxWait;
+		private final int		fWaiting;
+
+		private PortStatistics(Port port) {
+			fPortName = port.fName;
+			fLeases = port.fLeases;
+			fTotalWait = port.fTotalWait;
+			fMaxWait = port.fMaxWait;
+			fWaiting = port.fQueue.size();
+		}
+
+		/** @return The name of the port. */
+		public String getPort() {
+			return fPortName;
+		}
+
+		/** @return The number of leases granted for the port. */
+		public long getLeaseCount() {
+			return fLeases;
+		}
+
+		/** @return The total time in milliseconds all granted requests have waited for the port. */
+		public long getTotalWaitTime() {
+			return fTotalWait;
+		}
+
+		/** @return The longest time in milliseconds a granted request has waited for the port. */
+		public long getMaxWaitTime() {
+			return fMaxWait;
+		}
+
+		/** @return The average time in milliseconds a granted request has waited for the port. */
+		public long getAverageWaitTime() {
+			return fLeases > 0 ? fTotalWait / fLeases : 0;
+		}
+
+		/** @return The number of requests currently waiting for the port. */
+		public int getWaitingCount() {
+			return fWaiting;
+		}
+
+		@Override
+		public String toString() {
+			return fPortName + ": " + fLeases + " leases, wait avg " + getAverageWaitTime()
+					+ " ms, max " + fMaxWait + " ms, " + fWaiting + " waiting";
+		}
+	}
+
+	/** The state of a single port. All access must be guarded by {@link PortArbiter#fLock}. */
+	private class Port {
+		final String				fName;
+		final Condition				fFree		= fLock.newCondition();
+		final LinkedList<Long>		fQueue		= new LinkedList<Long>();
+		boolean						fLeased		= false;
+		long						fLastRelease	= 0L;
+
+		// Statistics
+		long						fLeases		= 0;
+		long						fTotalWait	= 0;
+		long						fMaxWait	= 0;
+
+		Port(String name) {
+			fName = name;
+		}
+
+		boolean isDefault() {
+			return fName.equals(DEFAULT_PORT);
+		}
+	}
+
+	/**
+	 * Get the default port arbiter.
+	 *
+	 * @return Default port arbiter instance.
+	 */
+	public static synchronized PortArbiter getDefault() {
+		if (fInstance == null) {
+			fInstance = new PortArbiter();
+		}
+		return fInstance;
+	}
+
+	// package private to allow independent instances for the tests
+	PortArbiter() {
+	}
+
+	/**
+	 * Acquire a lease for the given port.
+	 * <p>
+	 * This method blocks until all earlier requests for the same port have been served, the port
+	 * has been released and the given delay since the last release has passed.
+	 * </p>
+	 * <p>
+	 * A request for the default port additionally waits until all other ports have been
+	 * released, and a request for a named port waits for all earlier requests for the default
+	 * port.
+	 * </p>
+	 *
+	 * @param port
+	 *            The name of the port, e.g. <code>/dev/ttyUSB0</code>. <code>null</code> or an
+	 *            empty String stand for the default port of the programmer.
+	 * @param delay
+	 *            Time in milliseconds that has to pass between the release of the previous lease
+	 *            and this one. <code>0</code> for no delay.
+	 * @param monitor
+	 *            Checked for cancel requests while waiting. May be <code>null</code>.
+	 * @return The lease, which must be released once the port is no longer used.
+	 * @throws AVRDudeException
+	 *             with the reason {@link Reason#USER_CANCEL} if the request was cancelled or the
+	 *             thread has been interrupted while waiting.
+	 */
+	public PortLease acquire(String port, long delay, IProgressMonitor monitor)
+			throws AVRDudeException {
+
+		long start = System.currentTimeMillis();
+
+		fLock.lock();
+		try {
+			Port state = getPort(port);
+			Long ticket = Long.valueOf(fNextTicket++);
+			state.fQueue.addLast(ticket);
+			try {
+				while (true) {
+					if (monitor != null && monitor.isCanceled()) {
+						throw new AVRDudeException(Reason.USER_CANCEL, "User cancelled");
+					}
+
+					long wait = CANCEL_POLL;
+					if (state.fQueue.getFirst().equals(ticket) && !state.fLeased
+							&& !isBlockedByOtherPorts(state, ticket)) {
+						long remaining = state.fLastRelease + delay - System.currentTimeMillis();
+						if (remaining <= 0) {
+							break;
+						}
+						wait = Math.min(wait, remaining);
+					}
+					state.fFree.await(wait, TimeUnit.MILLISECONDS);
+				}
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new AVRDudeException(Reason.USER_CANCEL, "System interrupt");
+			} finally {
+				state.fQueue.remove(ticket);
+				// The next in line may now be allowed to proceed (or has to re-check if this
+				// request has been cancelled)
+				state.fFree.signalAll();
+				if (state.isDefault()) {
+					// Requests for named ports may have been waiting for this one
+					signalAllPorts();
+				}
+			}
+
+			state.fLeased = true;
+			if (!state.isDefault()) {
+				fNamedLeases++;
+			}
+			long waittime = System.currentTimeMillis() - start;
+			state.fLeases++;
+			state.fTotalWait += waittime;
+			state.fMaxWait = Math.max(state.fMaxWait, waittime);
+
+			return new PortLease(state, waittime);
+		} finally {
+			fLock.unlock();
+		}
+	}
+
+	/**
+	 * Get the system time the given port was last released.
+	 *
+	 * @param port
+	 *            The name of the port.
+	 * @return the system time (in millis) of the last release, or <code>0</code> if the port has
+	 *         not been used before.
+	 */
+	public long getLastRelease(String port) {
+		fLock.lock();
+		try {
+			return getPort(port).fLastRelease;
+		} finally {
+			fLock.unlock();
+		}
+	}
+
+	/**
+	 * Set the system time the given port was last released.
+	 * <p>
+	 * This is only required for tools which access a port without a lease.
+	 * </p>
+	 *
+	 * @param port
+	 *            The name of the port.
+	 * @param time
+	 *            The system time in milliseconds (from <code>System.currentTimeMillis()</code>).
+	 */
+	public void setLastRelease(String port, long time) {
+		fLock.lock();
+		try {
+			Port state = getPort(port);
+			state.fLastRelease = time;
+			state.fFree.signalAll();
+		} finally {
+			fLock.unlock();
+		}
+	}
+
+	/**
+	 * Get the usage statistics of a port.
+	 *
+	 * @param port
+	 *            The name of the port.
+	 * @return A snapshot of the current statistics.
+	 */
+	public PortStatistics getStatistics(String port) {
+		fLock.lock();
+		try {
+			return new PortStatistics(getPort(port));
+		} finally {
+			fLock.unlock();
+		}
+	}
+
+	/**
+	 * Get the usage statistics of all ports used so far.
+	 *
+	 * @return Map of the port names to a snapshot of their current statistics.
+	 */
+	public Map<String, PortStatistics> getAllStatistics() {
+		fLock.lock();
+		try {
+			Map<String, PortStatistics> allstats = new HashMap<String, PortStatistics>();
+			for (Port state : fPorts.values()) {
+				allstats.put(state.fName, new PortStatistics(state));
+			}
+			return allstats;
+		} finally {
+			fLock.unlock();
+		}
+	}
+
+	/**
+	 * Reset the usage statistics of all ports.
+	 */
+	public void resetStatistics() {
+		fLock.lock();
+		try {
+			for (Port state : fPorts.values()) {
+				state.fLeases = 0;
+				state.fTotalWait = 0;
+				state.fMaxWait = 0;
+			}
+		} finally {
+			fLock.unlock();
+		}
+	}
+
+	/**
+	 * Check if a request that is first in line for its port has to wait for other ports. Must be
+	 * called with the lock held.
+	 *
+	 * @param state
+	 *            The port of the request.
+	 * @param ticket
+	 *            The number of the request.
+	 * @return <code>true</code> if the default port is requested and any named port is leased,
+	 *         or if a named port is requested and the default port is leased or has an earlier
+	 *         request waiting.
+	 */
+	private boolean isBlockedByOtherPorts(Port state, Long ticket) {
+		if (state.isDefault()) {
+			return fNamedLeases > 0;
+		}
+		Port defaultport = fPorts.get(DEFAULT_PORT);
+		if (defaultport == null) {
+			return false;
+		}
+		if (defaultport.fLeased) {
+			return true;
+		}
+		return !defaultport.fQueue.isEmpty()
+				&& defaultport.fQueue.getFirst().longValue() < ticket.longValue();
+	}
+
+	/**
+	 * Wake up the requests of all ports. Must be called with the lock held.
+	 */
+	private void signalAllPorts() {
+		for (Port state : fPorts.values()) {
+			state.fFree.signalAll();
+		}
+	}
+
+	/**
+	 * Get the state of a port, creating it if required. Must be called with the lock held.
+	 */
+	private Port getPort(String port) {
+		String name = port != null ? port : DEFAULT_PORT;
+		Port state = fPorts.get(name);
+		if (state == null) {
+			state = new Port(name);
+			fPorts.put(name, state);
+		}
+		return state;
+	}
+}
@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.avrdude;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+
+import de.innot.avreclipse.AVRPlugin;
+import de.innot.avreclipse.core.avrdude.AVRDudeAction.MemType;
+
+/**
+ * The content hashes of the memories last written to the devices.
+ * <p>
+ * For each {@link ProgrammerConfig} and MCU signature the history has a hash of the payload of
+ * every memory (EEPROM, fuse bytes, lockbits, ...) that was last written successfully, and the
+ * upload speed measured for the device. The flash images themselves are in the
+ * {@link FlashImageCache}.
+ * </p>
+ * <p>
+ * The history is stored as one properties file per programmer and MCU in the plugin state area (<code>.metadata/.plugins/de.innot.avreclipse.core/uploadhistory/</code>).
+ * </p>
+ *
+ * @see IncrementalUpload
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ *
+ */
+public class UploadHistory {
+
+	private final static String		FOLDERNAME		= "uploadhistory";
+
+	private final static String		KEY_HASH		= "hash.";
+	private final static String		KEY_THROUGHPUT	= "throughput";
+
+	private static UploadHistory	fInstance		= null;
+
+	/** The folder for the history files */
+	private final File				fFolder;
+
+	/** History files already loaded */
+	private final Map<String, Properties>	fEntries		= new HashMap<String, Properties>();
+
+	/**
+	 * Get the default instance of the history, which is backed by the plugin state area.
+	 */
+	public static synchronized UploadHistory getDefault() {
+		if (fInstance == null) {
+			File folder = AVRPlugin.getDefault().getStateLocation().append(FOLDERNAME).toFile();
+			fInstance = new UploadHistory(folder);
+		}
+		return fInstance;
+	}
+
+	/**
+	 * Create a new history that is backed by the given folder.
+	 * <p>
+	 * The folder does not need to exist. It is created when the first entry is stored.
+	 * </p>
+	 *
+	 * @param folder
+	 *            <code>File</code> for the folder of the history files.
+	 */
+	UploadHistory(File folder) {
+		fFolder = folder;
+	}
+
+	/**
+	 * Get the hashes of the memories last written to the device.
+	 *
+	 * @param programmer
+	 *            The <code>ProgrammerConfig</code> used to write the memories.
+	 * @param signature
+	 *            The signature of the MCU.
+	 * @return A new map of the memory types to the hashes of their content. Empty if nothing is
+	 *         known about the device.
+	 */
+	public synchronized Map<MemType, String> getHashes(ProgrammerConfig programmer, String signature) {
+		Properties props = getEntry(FlashImageCache.getKey(programmer, signature));
+		Map<MemType, String> hashes = new EnumMap<MemType, String>(MemType.class);
+		for (MemType memtype : MemType.values()) {
+			String hash = props.getProperty(KEY_HASH + memtype.name());
+			if (hash != null) {
+				hashes.put(memtype, hash);
+			}
+		}
+		return hashes;
+	}
+
+	/**
+	 * Get the upload speed last measured for the device.
+	 *
+	 * @param programmer
+	 *            The <code>ProgrammerConfig</code>.
+	 * @param signature
+	 *            The signature of the MCU.
+	 * @return Bytes per second, or <code>0</code> if not known.
+	 */
+	public synchronized int getThroughput(ProgrammerConfig programmer, String signature) {
+		Properties props = getEntry(FlashImageCache.getKey(programmer, signature));
+		try {
+			return Integer.parseInt(props.getProperty(KEY_THROUGHPUT, "0"));
+		} catch (NumberFormatException nfe) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Store the history of the device.
+	 *
+	 * @param programmer
+	 *            The <code>ProgrammerConfig</code>.
+	 * @param signature
+	 *            The signature of the MCU.
+	 * @param hashes
+	 *            The hashes of all memories now on the device. Replaces all previous hashes.
+	 * @param throughput
+	 *            The upload speed in bytes per second, or <code>0</code> if not known.
+	 */
+	public synchronized void put(ProgrammerConfig programmer, String signature,
+			Map<MemType, String> hashes, int throughput) {
+
+		String key = FlashImageCache.getKey(programmer, signature);
+		Properties props = new Properties();
+		for (Map.Entry<MemType, String> entry : hashes.entrySet()) {
+			props.setProperty(KEY_HASH + entry.getKey().name(), entry.getValue());
+		}
+		if (throughput > 0) {
+			props.setProperty(KEY_THROUGHPUT, Integer.toString(throughput));
+		}
+		fEntries.put(key, props);
+
+		OutputStream out = null;
+		try {
+			if (!fFolder.isDirectory() && !fFolder.mkdirs()) {
+				throw new IOException("Could not create folder " + fFolder);
+			}
+			out = new FileOutputStream(new File(fFolder, key + ".properties"));
+			props.store(out, "AVR Eclipse upload history");
+		} catch (IOException ioe) {
+			// The entry is still cached in memory for this session.
+			IStatus status = new Status(IStatus.WARNING, AVRPlugin.PLUGIN_ID,
+					"Could not store the upload history file", ioe);
+			AVRPlugin.getDefault().log(status);
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	/**
+	 * Forget the history of the given programmer and MCU.
+	 *
+	 * @param programmer
+	 *            The <code>ProgrammerConfig</code>.
+	 * @param signature
+	 *            The signature of the MCU.
+	 */
+	public synchronized void remove(ProgrammerConfig programmer, String signature) {
+		String key = FlashImageCache.getKey(programmer, signature);
+		fEntries.remove(key);
+		new File(fFolder, key + ".properties").delete();
+	}
+
+	/**
+	 * Forget the history of all MCUs for the given programmer.
+	 *
+	 * @param programmer
+	 *            The <code>ProgrammerConfig</code>.
+	 */
+	public synchronized void remove(ProgrammerConfig programmer) {
+		String prefix = FlashImageCache.getKey(programmer, "");
+		for (String key : fEntries.keySet().toArray(new String[fEntries.size()])) {
+			if (key.startsWith(prefix)) {
+				fEntries.remove(key);
+			}
+		}
+		File[] files = fFolder.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.getName().startsWith(prefix)) {
+					file.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the entry with the given key, loading it from its file if required.
+	 *
+	 * @return The <code>Properties</code> of the entry, empty if there is no entry.
+	 */
+	private Properties getEntry(String key) {
+		Properties props = fEntries.get(key);
+		if (props == null) {
+			props = new Properties();
+			File file = new File(fFolder, key + ".properties");
+			if (file.isFile()) {
+				InputStream in = null;
+				try {
+					in = new FileInputStream(file);
+					props.load(in);
+				} catch (IOException ioe) {
+					// A damaged history file is just ignored. All memories are written again.
+					props.clear();
+				} finally {
+					if (in != null) {
+						try {
+							in.close();
+						} catch (IOException e) {
+							// ignore
+						}
+					}
+				}
+			}
+			fEntries.put(key, props);
+		}
+		return props;
+	}
+}
@@ -84,6 +84,14 @@ public class AVRDudeProperties {
 	private static final String			KEY_NOCHIPERASE				= "NoChipErase";
 	private static final boolean		DEFAULT_NOCHIPERASE			= false;
 
+	/**
+	 * Incremental upload flag. <code>true</code> skips all memories unchanged since the last upload
+	 * and writes only the changed flash pages where possible.
+	 */
+	private boolean						fIncrementalUpload;
+	private static final String			KEY_INCREMENTALUPLOAD		= "IncrementalUpload";
+	private static final boolean		DEFAULT_INCREMENTALUPLOAD	= false;
+
 	/** Use Erase Cycle Counter flags. <code>true</code> enables the counter */
 	private boolean						fUseCounter;
 	private static final String			KEY_USECOUNTER				= "UseCounter";
@@ -204,6 +212,7 @@ public class AVRDudeProperties {
 		fNoVerify = source.fNoVerify;
 		fNoWrite = source.fNoWrite;
 		fNoChipErase = source.fNoChipErase;
+		fIncrementalUpload = source.fIncrementalUpload;
 		fUseCounter = source.fUseCounter;
 
 		fWriteFlash = source.fWriteFlash;
@@ -329,6 +338,17 @@ public class AVRDudeProperties {
 		}
 	}
 
+	public boolean getIncrementalUpload() {
+		return fIncrementalUpload;
+	}
+
+	public void setIncrementalUpload(boolean incremental) {
+		if (fIncrementalUpload != incremental) {
+			fIncrementalUpload = incremental;
+			fDirty = true;
+		}
+	}
+
 	public boolean getUseCounter() {
 		return fUseCounter;
 	}
@@ -474,6 +494,22 @@ public class AVRDudeProperties {
 	 * @return <code>List&lt;String&gt;</code> with the avrdude options, one per list entry.
 	 */
 	public List<String> getArguments() {
+		return getArguments(getProgrammer());
+	}
+
+	/**
+	 * Gets the avrdude command arguments as defined by the properties, but for the given
+	 * programmer configuration instead of the one selected in the properties.
+	 * <p>
+	 * This is used to upload the same project with multiple programmers.
+	 * </p>
+	 * 
+	 * @param progcfg
+	 *            The <code>ProgrammerConfig</code> whose options are used. May be
+	 *            <code>null</code>, in which case no programmer options are added.
+	 * @return <code>List&lt;String&gt;</code> with the avrdude options, one per list entry.
+	 */
+	public List<String> getArguments(ProgrammerConfig progcfg) {
 		List<String> arguments = new ArrayList<String>();
 
 		// Convert the mcu id to the avrdude format and add it
@@ -482,7 +518,6 @@ public class AVRDudeProperties {
 		arguments.add("-p" + avrdudemcuid);
 
 		// Add the options from the programmer configuration
-		ProgrammerConfig progcfg = getProgrammer();
 		if (progcfg != null) {
 			arguments.addAll(progcfg.getArguments());
 		}
@@ -635,6 +670,7 @@ public class AVRDudeProperties {
 		fNoVerify = fPrefs.getBoolean(KEY_NOVERIFY, DEFAULT_NOVERIFY);
 		fNoWrite = fPrefs.getBoolean(KEY_NOWRITE, DEFAULT_NOWRITE);
 		fNoChipErase = fPrefs.getBoolean(KEY_NOCHIPERASE, DEFAULT_NOCHIPERASE);
+		fIncrementalUpload = fPrefs.getBoolean(KEY_INCREMENTALUPLOAD, DEFAULT_INCREMENTALUPLOAD);
 		fUseCounter = fPrefs.getBoolean(KEY_USECOUNTER, DEFAULT_USECOUNTER);
 
 		fWriteFlash = fPrefs.getBoolean(KEY_WRITEFLASH, DEFAULT_WRITEFLASH);
@@ -674,6 +710,7 @@ public class AVRDudeProperties {
 				fPrefs.putBoolean(KEY_NOVERIFY, fNoVerify);
 				fPrefs.putBoolean(KEY_NOWRITE, fNoWrite);
 				fPrefs.putBoolean(KEY_NOCHIPERASE, fNoChipErase);
+				fPrefs.putBoolean(KEY_INCREMENTALUPLOAD, fIncrementalUpload);
 				fPrefs.putBoolean(KEY_USECOUNTER, fUseCounter);
 
 				fPrefs.putBoolean(KEY_WRITEFLASH, fWriteFlash);
@@ -13,6 +13,7 @@ package de.innot.avreclipse.core.targets;
 
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
 
 import org.eclipse.core.runtime.CoreException;
 
@@ -115,6 +116,24 @@ public interface ITargetConfiguration {
 	 */
 	public Set<String> getSupportedMCUs(boolean filtered);
 
+	/**
+	 * Get the list of all supported MCUs without waiting for the tools.
+	 * <p>
+	 * The programmer tool and the gdbserver are queried concurrently in the background. The
+	 * returned <code>Future</code> has the same result as {@link #getSupportedMCUs(boolean)}.
+	 * </p>
+	 * 
+	 * @param filtered
+	 *            Restrict the list to the MCUs that are actually supported by the current
+	 *            configuration.
+	 * @param listener
+	 *            Informed about the MCUs supported by each tool as soon as the tool has answered.
+	 *            May be <code>null</code>.
+	 * @return <code>Future</code> for the Set of mcu id values in avr-gcc format
+	 */
+	public Future<Set<String>> getSupportedMCUs(boolean filtered,
+			IToolQueryListener<Set<String>> listener);
+
 	/**
 	 * Get the set of IDs for all supported Programmers.
 	 * <p>
@@ -129,6 +148,24 @@ public interface ITargetConfiguration {
 	 */
 	public Set<String> getAllProgrammers(boolean supported);
 
+	/**
+	 * Get the set of IDs for all supported Programmers without waiting for the tools.
+	 * <p>
+	 * The programmer tool and the gdbserver are queried concurrently in the background. The
+	 * returned <code>Future</code> has the same result as {@link #getAllProgrammers(boolean)}.
+	 * </p>
+	 * 
+	 * @param supported
+	 *            If <code>true</code> then only the Programmers supported by the current
+	 *            configuration are returned. If <code>false</code> then all Programmers are
+	 * @param listener
+	 *            Informed about the Programmers supported by each tool as soon as the tool has
+	 *            answered. May be <code>null</code>.
+	 * @return <code>Future</code> for the Set of programmer id values
+	 */
+	public Future<Set<String>> getAllProgrammers(boolean supported,
+			IToolQueryListener<Set<String>> listener);
+
 	/**
 	 * Get a specific programmer.
 	 * <p>
@@ -145,6 +182,25 @@ public interface ITargetConfiguration {
 	 */
 	public IProgrammer getProgrammer(String programmerid);
 
+	/**
+	 * Get a specific programmer without waiting for the tools.
+	 * <p>
+	 * All target configuration tools are queried concurrently in the background. The returned
+	 * <code>Future</code> has the same result as {@link #getProgrammer(String)}: if more than one
+	 * tool knows the programmer, the answer of the programmer tool is used first, then the answer
+	 * of the gdbserver.
+	 * </p>
+	 * 
+	 * @param programmerid
+	 *            The id value of a specific programmer.
+	 * @param listener
+	 *            Informed about the answer of each tool as soon as the tool has answered. May be
+	 *            <code>null</code>.
+	 * @return <code>Future</code> for the <code>IProgrammer</code> object
+	 */
+	public Future<IProgrammer> getProgrammer(String programmerid,
+			IToolQueryListener<IProgrammer> listener);
+
 	/**
 	 * Checks if this target configuration is capable of debugging.
 	 * <p>
@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+
+package de.innot.avreclipse.core.targets;
+
+import java.util.EventListener;
+
+/**
+ * Listener for the partial results of a query to multiple target configuration tools.
+ * <p>
+ * The tools are queried concurrently. This listener is informed about the answer of each tool as
+ * soon as it is available, so that clients can show partial results while the other tools are still
+ * working.
+ * </p>
+ *
+ * @see ITargetConfiguration#getSupportedMCUs(boolean, IToolQueryListener)
+ * @see ITargetConfiguration#getAllProgrammers(boolean, IToolQueryListener)
+ * @see ITargetConfiguration#getProgrammer(String, IToolQueryListener)
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ *
+ */
+public interface IToolQueryListener<T> extends EventListener {
+
+	/**
+	 * Notification that a tool has answered the query.
+	 * <p>
+	 * This method is called from a background thread. Clients that need to update the user
+	 * interface must do so in the UI thread.
+	 * </p>
+	 *
+	 * @param tool
+	 *            The tool that has answered.
+	 * @param result
+	 *            The answer of the tool, or <code>null</code> if the tool could not be executed.
+	 */
+	public void toolAnswered(ITargetConfigurationTool tool, T result);
+
+}
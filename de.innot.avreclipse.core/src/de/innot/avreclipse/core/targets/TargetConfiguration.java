@@ -12,21 +12,29 @@
 package de.innot.avreclipse.core.targets;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.ListenerList;
 
 import de.innot.avreclipse.core.avrdude.AVRDudeException;
+import de.innot.avreclipse.core.targets.ToolQueryExecutor.CombinedFuture;
+import de.innot.avreclipse.core.targets.ToolQueryExecutor.IToolQuery;
+import de.innot.avreclipse.core.targets.tools.ToolCapabilityCache;
 
 /**
  * Implementation of the ITargetConfiguration API.
@@ -48,6 +56,20 @@ public class TargetConfiguration implements ITargetConfiguration, ITargetConfigu
 
 	private final static String						EMPTY_STRING	= "";
 
+	private final static String						CONFIG_FILE_COMMENT	= "Hardware Configuration File";
+
+	private final static IToolQuery<Set<String>>	MCUS_QUERY		= new IToolQuery<Set<String>>() {
+		public Set<String> query(ITargetConfigurationTool tool) throws AVRDudeException {
+			return tool.getMCUs();
+		}
+	};
+
+	private final static IToolQuery<Set<String>>	PROGRAMMERS_QUERY	= new IToolQuery<Set<String>>() {
+		public Set<String> query(ITargetConfigurationTool tool) throws AVRDudeException {
+			return tool.getProgrammers();
+		}
+	};
+
 	private File									fPropertiesFile;
 
 	private String									fId;
@@ -123,6 +145,34 @@ public class TargetConfiguration implements ITargetConfiguration, ITargetConfigu
 		}
 	}
 
+	/**
+	 * Instantiate a new target configuration with the given attributes.
+	 * <p>
+	 * This is used to import target configurations. The attributes are immediately saved to the
+	 * given file.
+	 * </p>
+	 * 
+	 * @param path
+	 *            handle to the file for the hardware configuration attributes
+	 * @param attributes
+	 *            The attributes of the new configuration. Attributes not included will have their
+	 *            default values.
+	 * @throws IOException
+	 *             thrown if the file can not be written.
+	 */
+	protected TargetConfiguration(IPath path, Properties attributes) throws IOException {
+		this();
+		fPropertiesFile = path.toFile();
+		fId = path.lastSegment();
+
+		getProgrammerTool();
+		getGDBServerTool();
+		restoreDefaults();
+		fAttributes.putAll(attributes);
+
+		save(fPropertiesFile, true);
+	}
+
 	/**
 	 * Make a Working copy of the given <code>TargetConfiguration</code>.
 	 * <p>
@@ -224,40 +274,31 @@ public class TargetConfiguration implements ITargetConfiguration, ITargetConfigu
 	 * @see de.innot.avreclipse.core.targets.ITargetConfiguration#getSupportedMCUs(boolean)
 	 */
 	public Set<String> getSupportedMCUs(boolean filtered) {
-		IProgrammerTool progtool = getProgrammerTool();
-		IGDBServerTool gdbserver = getGDBServerTool();
-
-		Set<String> allmcus = new HashSet<String>();
-		Set<String> progtoolmcus = null;
-		Set<String> gdbservermcus = null;
-
-		try {
-			progtoolmcus = progtool.getMCUs();
-		} catch (AVRDudeException e) {
-			// in case of an exception we just leave the Set at null
-			// so it won't be used
-		}
-		try {
-			gdbservermcus = gdbserver.getMCUs();
-		} catch (AVRDudeException e) {
-			// in case of an exception we just leave the Set at null
-			// so it won't be used
-		}
-
-		if (progtoolmcus != null) {
-			allmcus.addAll(progtoolmcus);
-		}
-
-		if (gdbservermcus != null) {
+		Set<String> allmcus = getResult(getSupportedMCUs(filtered, null));
+		return allmcus != null ? allmcus : new HashSet<String>();
+	}
 
-			if (filtered && progtoolmcus != null) {
-				allmcus.retainAll(gdbservermcus);
-			} else {
-				allmcus.addAll(gdbservermcus);
+	/*
+	 * (non-Javadoc)
+	 * @see de.innot.avreclipse.core.targets.ITargetConfiguration#getSupportedMCUs(boolean,
+	 * de.innot.avreclipse.core.targets.IToolQueryListener)
+	 */
+	public Future<Set<String>> getSupportedMCUs(final boolean filtered,
+			IToolQueryListener<Set<String>> listener) {
+
+		// Query both tools concurrently. In case of an exception the tools will return null, so
+		// the set won't be used.
+		final Future<Set<String>> progtoolmcus = ToolQueryExecutor.submit(getProgrammerTool(),
+				MCUS_QUERY, listener);
+		final Future<Set<String>> gdbservermcus = ToolQueryExecutor.submit(getGDBServerTool(),
+				MCUS_QUERY, listener);
+
+		return new CombinedFuture<Set<String>>(progtoolmcus, gdbservermcus) {
+			@Override
+			protected Set<String> combine() throws InterruptedException, ExecutionException {
+				return combineSets(progtoolmcus.get(), gdbservermcus.get(), filtered);
 			}
-		}
-
-		return allmcus;
+		};
 	}
 
 	/*
@@ -265,39 +306,61 @@ public class TargetConfiguration implements ITargetConfiguration, ITargetConfigu
 	 * @see de.innot.avreclipse.core.targets.ITargetConfiguration#getSupportedProgrammers(boolean)
 	 */
 	public Set<String> getAllProgrammers(boolean supported) {
-		IProgrammerTool progtool = getProgrammerTool();
-		IGDBServerTool gdbserver = getGDBServerTool();
+		Set<String> allprogrammers = getResult(getAllProgrammers(supported, null));
+		return allprogrammers != null ? allprogrammers : new HashSet<String>();
+	}
 
-		Set<String> allprogrammers = new HashSet<String>();
-		Set<String> progtoolprogrammers = null;
-		Set<String> gdbserverprogrammers = null;
+	/*
+	 * (non-Javadoc)
+	 * @see de.innot.avreclipse.core.targets.ITargetConfiguration#getAllProgrammers(boolean,
+	 * de.innot.avreclipse.core.targets.IToolQueryListener)
+	 */
+	public Future<Set<String>> getAllProgrammers(final boolean supported,
+			IToolQueryListener<Set<String>> listener) {
+
+		final Future<Set<String>> progtoolprogrammers = ToolQueryExecutor.submit(
+				getProgrammerTool(), PROGRAMMERS_QUERY, listener);
+		final Future<Set<String>> gdbserverprogrammers = ToolQueryExecutor.submit(
+				getGDBServerTool(), PROGRAMMERS_QUERY, listener);
+
+		return new CombinedFuture<Set<String>>(progtoolprogrammers, gdbserverprogrammers) {
+			@Override
+			protected Set<String> combine() throws InterruptedException, ExecutionException {
+				return combineSets(progtoolprogrammers.get(), gdbserverprogrammers.get(),
+						supported);
+			}
+		};
+	}
 
-		try {
-			progtoolprogrammers = progtool.getProgrammers();
-		} catch (AVRDudeException e) {
-			// in case of an exception we just leave the Set at null
-			// so it won't be used
-		}
-		try {
-			gdbserverprogrammers = gdbserver.getProgrammers();
-		} catch (AVRDudeException e) {
-			// in case of an exception we just leave the Set at null
-			// so it won't be used
-		}
+	/**
+	 * Combine the results of the programmer tool and the gdbserver.
+	 * 
+	 * @param progtoolset
+	 *            Result of the programmer tool, may be <code>null</code>
+	 * @param gdbserverset
+	 *            Result of the gdbserver, may be <code>null</code>
+	 * @param intersection
+	 *            If <code>true</code> the intersection of both sets is returned, otherwise the
+	 *            union.
+	 * @return New set with the combined results.
+	 */
+	private static Set<String> combineSets(Set<String> progtoolset, Set<String> gdbserverset,
+			boolean intersection) {
+		Set<String> result = new HashSet<String>();
 
-		if (progtoolprogrammers != null) {
-			allprogrammers.addAll(progtoolprogrammers);
+		if (progtoolset != null) {
+			result.addAll(progtoolset);
 		}
 
-		if (gdbserverprogrammers != null) {
+		if (gdbserverset != null) {
 
-			if (supported && progtoolprogrammers != null) {
-				allprogrammers.retainAll(gdbserverprogrammers);
+			if (intersection && progtoolset != null) {
+				result.retainAll(gdbserverset);
 			} else {
-				allprogrammers.addAll(gdbserverprogrammers);
+				result.addAll(gdbserverset);
 			}
 		}
-		return allprogrammers;
+		return result;
 	}
 
 	/*
@@ -305,46 +368,78 @@ public class TargetConfiguration implements ITargetConfiguration, ITargetConfigu
 	 * @see de.innot.avreclipse.core.targets.ITargetConfiguration#getProgrammer(java.lang.String)
 	 */
 	public IProgrammer getProgrammer(String programmerid) {
+		return getResult(getProgrammer(programmerid, null));
+	}
 
-		// first check if the currently selected programmer tool knows the id
-		// As this will usually be avrdude the chances are high that it knows
-		// the programmer.
-		try {
-			IProgrammer progger = getProgrammerTool().getProgrammer(programmerid);
-			if (progger != null) {
-				return progger;
+	/*
+	 * (non-Javadoc)
+	 * @see de.innot.avreclipse.core.targets.ITargetConfiguration#getProgrammer(java.lang.String,
+	 * de.innot.avreclipse.core.targets.IToolQueryListener)
+	 */
+	public Future<IProgrammer> getProgrammer(final String programmerid,
+			IToolQueryListener<IProgrammer> listener) {
+
+		// First the currently selected programmer tool and the gdbserver, as these will usually
+		// know the programmer. Then all other known tools to find one that knows this id.
+		List<ITargetConfigurationTool> alltools = new ArrayList<ITargetConfigurationTool>();
+		alltools.add(getProgrammerTool());
+		alltools.add(getGDBServerTool());
+		for (String toolid : ToolManager.getDefault().getAllTools(null)) {
+			if (!toolid.equals(alltools.get(0).getId()) && !toolid.equals(alltools.get(1).getId())) {
+				alltools.add(ToolManager.getDefault().getTool(this, toolid));
 			}
-		} catch (AVRDudeException ade) {
-			// continue with the gdbserver
 		}
 
-		// The programmer tool didn't know the id. Maybe the gdbserver knows it.
-		try {
-			IProgrammer progger = getGDBServerTool().getProgrammer(programmerid);
-			if (progger != null) {
-				return progger;
+		IToolQuery<IProgrammer> query = new IToolQuery<IProgrammer>() {
+			public IProgrammer query(ITargetConfigurationTool tool) throws AVRDudeException {
+				return tool.getProgrammer(programmerid);
 			}
-		} catch (AVRDudeException ade) {
-			// continue with the other tools
-		}
-
-		// Nope. Lets go through all known tools to find one that knows this id.
-		List<String> alltools = ToolManager.getDefault().getAllTools(null);
-		for (String toolid : alltools) {
-			try {
-				ITargetConfigurationTool tool = ToolManager.getDefault().getTool(this, toolid);
-				IProgrammer progger = tool.getProgrammer(programmerid);
-				if (progger != null) {
-					return progger;
+		};
+
+		// All tools are queried concurrently
+		final List<Future<IProgrammer>> results = new ArrayList<Future<IProgrammer>>();
+		for (ITargetConfigurationTool tool : alltools) {
+			results.add(ToolQueryExecutor.submit(tool, query, listener));
+		}
+
+		return new CombinedFuture<IProgrammer>(results.toArray(new Future<?>[results.size()])) {
+			@Override
+			protected IProgrammer combine() throws InterruptedException, ExecutionException {
+				// Use the first answer in order of the tools, without waiting for the rest
+				for (Future<IProgrammer> result : results) {
+					IProgrammer progger = result.get();
+					if (progger != null) {
+						return progger;
+					}
 				}
-			} catch (AVRDudeException ade) {
-				// just continue with the next tool
+
+				// Nothing found
+				// TODO: Maybe return a special "unknown" programmer.
+				return null;
 			}
-		}
+		};
+	}
 
-		// Nothing found
-		// TODO: Maybe return a special "unknown" programmer.
-		return null;
+	/**
+	 * Wait for the result of a tool query.
+	 * 
+	 * @return The result, or <code>null</code> if the thread has been interrupted while waiting.
+	 */
+	private static <T> T getResult(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			// The tools only throw AVRDudeExceptions, which are handled by the queries. So this
+			// is some unexpected RuntimeException which is passed on to the caller.
+			Throwable cause = e.getCause();
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw (RuntimeException) cause;
+		}
 	}
 
 	/*
@@ -474,6 +569,8 @@ public class TargetConfiguration implements ITargetConfiguration, ITargetConfigu
 		if (oldvalue == null || !oldvalue.equals(newvalue)) {
 			// only change attribute & fire event if the value is actually changed
 			fAttributes.setProperty(attributeName, newvalue);
+			// A new tool command may point to a different (or updated) executable
+			ToolCapabilityCache.getDefault().attributeChanged(attributeName, oldvalue, newvalue);
 			fireAttributeChangeEvent(attributeName, oldvalue, newvalue);
 			fDirty = true;
 		}
@@ -588,9 +685,7 @@ public class TargetConfiguration implements ITargetConfiguration, ITargetConfigu
 
 		if (fDirty || force) {
 
-			FileWriter reader = new FileWriter(file);
-			fAttributes.store(reader, "Hardware Configuration File");
-			reader.close();
+			store(fAttributes, file, CONFIG_FILE_COMMENT);
 
 			fDirty = false;
 
@@ -610,6 +705,67 @@ public class TargetConfiguration implements ITargetConfiguration, ITargetConfigu
 
 	}
 
+	/**
+	 * Write the attributes of this configuration to the given file.
+	 * <p>
+	 * This is used to export configurations. This configuration is not changed, even if it has
+	 * unsaved modifications.
+	 * </p>
+	 * 
+	 * @param file
+	 *            The target file. An existing file is replaced.
+	 * @throws IOException
+	 *             if the file could not be written.
+	 */
+	void exportTo(File file) throws IOException {
+		store(fAttributes, file, CONFIG_FILE_COMMENT);
+	}
+
+	/**
+	 * Write the given properties to a file.
+	 * <p>
+	 * The properties are first written to a temporary file in the same folder, which is then
+	 * renamed to the target file. So the target file is either the old or the new version, even
+	 * when the write fails half way.
+	 * </p>
+	 * 
+	 * @param properties
+	 *            The properties to write.
+	 * @param file
+	 *            The target file. An existing file is replaced.
+	 * @param comment
+	 *            Comment for the first line of the file.
+	 * @throws IOException
+	 *             if the file could not be written.
+	 */
+	static void store(Properties properties, File file, String comment) throws IOException {
+
+		File tmpfile = new File(file.getParentFile(), "." + file.getName() + ".tmp");
+		FileOutputStream out = new FileOutputStream(tmpfile);
+		try {
+			Writer writer = new OutputStreamWriter(out);
+			properties.store(writer, comment);
+			writer.flush();
+			// Make sure the content is on the disk before the file is renamed
+			out.getFD().sync();
+		} catch (IOException ioe) {
+			out.close();
+			tmpfile.delete();
+			throw ioe;
+		}
+		out.close();
+
+		if (!tmpfile.renameTo(file)) {
+			// Some systems (Windows) can't rename to an existing file
+			file.delete();
+			if (!tmpfile.renameTo(file)) {
+				tmpfile.delete();
+				throw new IOException("Could not write hardware config file '" + file.toString()
+						+ "'");
+			}
+		}
+	}
+
 	/**
 	 * Load the values of this Configuration from the given <code>TargetConfiguration</code>.
 	 * 
@@ -12,14 +12,20 @@
 package de.innot.avreclipse.core.targets;
 
 import java.io.File;
+import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
 
 import org.eclipse.core.runtime.IPath;
-import org.eclipse.core.runtime.Path;
 
 import de.innot.avreclipse.AVRPlugin;
 import de.innot.avreclipse.core.avrdude.ProgrammerConfig;
@@ -40,7 +46,14 @@ import de.innot.avreclipse.core.avrdude.ProgrammerConfig;
  * {@link #getAllConfigIDs()} and {@link #getAllConfigNames()}.
  * </p>
  * <p>
- * To improve access times all retrieved configurations are stored in an internal cache.
+ * The manager also has methods to import and export many configurations at once:
+ * {@link #importConfigs(File)} and {@link #exportConfigs(Collection, File)}.
+ * </p>
+ * <p>
+ * To improve access times all retrieved configurations are stored in an internal cache. The id
+ * values of all configurations are kept in an index, so the storage folder is read only once. New
+ * id values are taken from a counter that is never decremented, so the id of a deleted
+ * configuration is not reused.
  * </p>
  * <p>
  * This class implements the singleton pattern and can be accessed with the static
@@ -64,15 +77,35 @@ public class TargetConfigurationManager {
 	 */
 	private final static String						CONFIG_PREFIX	= "config.";
 
+	/** Name of the file storing the next free id number */
+	private final static String						NEXTID_FILE		= "nextid";
+
+	/** Sorts id values by their number, so that "config.10" follows "config.9" */
+	private final static Comparator<String>			ID_ORDER		= new Comparator<String>() {
+		public int compare(String id1, String id2) {
+			int diff = getIdNumber(id1) - getIdNumber(id2);
+			return diff != 0 ? diff : id1.compareTo(id2);
+		}
+	};
+
 	/** Cache of all Configs that have been used in this session */
 	private final Map<String, TargetConfiguration>	fConfigsCache;
 
+	/**
+	 * Index of the id values of all configurations in the storage folder. <code>null</code> until
+	 * the folder has been read.
+	 */
+	private Set<String>								fConfigIds		= null;
+
+	/** The number for the next new configuration id */
+	private int										fNextId;
+
 	/**
 	 * Gets the session <code>TargetConfigurationManager</code>.
 	 * 
 	 * @return <code>TargetConfigurationManager</code> for the current Eclipse session.
 	 */
-	public static TargetConfigurationManager getDefault() {
+	public static synchronized TargetConfigurationManager getDefault() {
 		if (fInstance == null) {
 			fInstance = new TargetConfigurationManager();
 		}
@@ -96,42 +129,221 @@ public class TargetConfigurationManager {
 	 *             An <code>IOException</code> is thrown when the new config file can not be
 	 *             created.
 	 */
-	public ITargetConfiguration createNewConfig() throws IOException {
+	public synchronized ITargetConfiguration createNewConfig() throws IOException {
 
-		// The id has the form "targetconfig.#" where # is a running
-		// number.
+		TargetConfiguration newconfig = new TargetConfiguration(getNewConfigPath());
+		addConfig(newconfig);
 
-		// Get all files in the folder and find the highest ID.
+		return newconfig;
 
-		IPath folder = getConfigFolder();
-		File[] files = folder.toFile().listFiles();
+	}
 
-		int maxid = 0;
+	/**
+	 * Import all target configurations from the given folder.
+	 * <p>
+	 * Every file in the folder is read as a target configuration file, e.g. as written by
+	 * {@link #exportConfigs(Collection, File)}. Each imported configuration gets a new id, so
+	 * existing configurations are never overwritten. The files are imported in the order of their
+	 * names.
+	 * </p>
+	 * 
+	 * @param folder
+	 *            The folder with the configuration files.
+	 * @return List with the new configurations, in the order of their new id values.
+	 * @throws IOException
+	 *             if the folder or one of the files can not be read, or a new configuration can
+	 *             not be written. The configurations imported before the error remain in the
+	 *             storage area.
+	 */
+	public synchronized List<ITargetConfiguration> importConfigs(File folder) throws IOException {
+
+		File[] files = folder.listFiles();
+		if (files == null) {
+			throw new IOException("Could not read import folder '" + folder.toString() + "'");
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			// Keep the order of exported configurations
+			public int compare(File file1, File file2) {
+				return ID_ORDER.compare(file1.getName(), file2.getName());
+			}
+		});
+
+		List<ITargetConfiguration> newconfigs = new ArrayList<ITargetConfiguration>(files.length);
 		for (File file : files) {
-			if (file.isFile()) {
-				String name = file.getName();
-				if (name.startsWith(CONFIG_PREFIX)) {
-					int dot = name.lastIndexOf('.');
-					if (dot >= 0) {
-						String idstring = name.substring(dot + 1);
-						int id = Integer.parseInt(idstring);
-						if (id >= maxid) {
-							maxid = id + 1;
-						}
-					}
-				}
+			if (!file.isFile() || file.isHidden()) {
+				continue;
 			}
+			Properties attributes = new Properties();
+			FileReader reader = new FileReader(file);
+			try {
+				attributes.load(reader);
+			} finally {
+				reader.close();
+			}
+
+			TargetConfiguration newconfig = new TargetConfiguration(getNewConfigPath(), attributes);
+			addConfig(newconfig);
+			newconfigs.add(newconfig);
+		}
+
+		return newconfigs;
+	}
+
+	/**
+	 * Export the given target configurations to a folder.
+	 * <p>
+	 * Each configuration is written to a file with the name of its id. Existing files are
+	 * replaced. Unsaved changes of working copies are not exported.
+	 * </p>
+	 * 
+	 * @param ids
+	 *            The id values of the configurations to export. Unknown id values are ignored.
+	 * @param folder
+	 *            The target folder. It is created if it does not exist.
+	 * @throws IOException
+	 *             if a configuration can not be read or written.
+	 */
+	public synchronized void exportConfigs(Collection<String> ids, File folder) throws IOException {
+
+		if (!folder.isDirectory() && !folder.mkdirs()) {
+			throw new IOException("Could not create export folder '" + folder.toString() + "'");
 		}
 
-		String filename = CONFIG_PREFIX + Integer.toString(maxid);
+		for (String id : ids) {
+			TargetConfiguration config = internalGetConfig(id);
+			if (config != null) {
+				config.exportTo(new File(folder, id));
+			}
+		}
+	}
 
-		IPath newfile = new Path(folder.toString()).append(filename);
+	/**
+	 * Get all target configurations.
+	 * <p>
+	 * The configurations are loaded from the storage area as required.
+	 * </p>
+	 * 
+	 * @return List with all configurations, in the order of their id values.
+	 * @throws IOException
+	 *             if a config file exists in the storage area, but could not be read.
+	 */
+	public synchronized List<ITargetConfiguration> getConfigs() throws IOException {
 
-		TargetConfiguration newconfig = new TargetConfiguration(newfile);
-		fConfigsCache.put(newconfig.getId(), newconfig);
+		List<ITargetConfiguration> allconfigs = new ArrayList<ITargetConfiguration>();
+		for (String id : getConfigIndex()) {
+			TargetConfiguration config = internalGetConfig(id);
+			if (config != null) {
+				allconfigs.add(config);
+			}
+		}
+		return allconfigs;
+	}
 
-		return newconfig;
+	/**
+	 * Get the path for a new configuration.
+	 * <p>
+	 * The id has the form "config.#" where # is a running number. The number is taken from a
+	 * counter which is stored in the storage folder, so that a number is never used twice, even
+	 * when the configuration with the highest number is deleted.
+	 * </p>
+	 */
+	private IPath getNewConfigPath() throws IOException {
+
+		// make sure the counter has been initialized from the folder
+		getConfigIndex();
+
+		String filename = CONFIG_PREFIX + Integer.toString(fNextId);
+		fNextId++;
+
+		Properties nextid = new Properties();
+		nextid.setProperty(NEXTID_FILE, Integer.toString(fNextId));
+		TargetConfiguration.store(nextid, getConfigFolder().append(NEXTID_FILE).toFile(),
+				"Next target configuration id");
+
+		return getConfigFolder().append(filename);
+	}
+
+	/**
+	 * Add a new configuration to the cache and the index.
+	 */
+	private void addConfig(TargetConfiguration config) throws IOException {
+		fConfigsCache.put(config.getId(), config);
+		getConfigIndex().add(config.getId());
+	}
+
+	/**
+	 * Get the index of all configuration id values.
+	 * <p>
+	 * The first call reads the storage folder to fill the index and to initialize the id counter.
+	 * The index is then kept up to date by all methods creating or deleting configurations.
+	 * </p>
+	 */
+	private Set<String> getConfigIndex() throws IOException {
+		if (fConfigIds == null) {
+			Set<String> ids = new TreeSet<String>(ID_ORDER);
+
+			File folder = getConfigFolder().toFile();
+			File[] allfiles = folder.listFiles();
+			if (allfiles == null) {
+				throw new IOException("Could not read hardware config storage folder '"
+						+ folder.toString() + "'");
+			}
+
+			int nextid = 0;
+			for (File file : allfiles) {
+				String filename = file.getName();
+				int number = getIdNumber(filename);
+				if (number >= 0 && file.isFile()) {
+					ids.add(filename);
+					nextid = Math.max(nextid, number + 1);
+				}
+			}
 
+			// The stored counter may be higher if the last configurations have been deleted
+			File nextidfile = new File(folder, NEXTID_FILE);
+			if (nextidfile.exists()) {
+				Properties props = new Properties();
+				FileReader reader = new FileReader(nextidfile);
+				try {
+					props.load(reader);
+				} finally {
+					reader.close();
+				}
+				try {
+					nextid = Math.max(nextid, Integer.parseInt(props.getProperty(NEXTID_FILE,
+							"0")));
+				} catch (NumberFormatException nfe) {
+					// ignore the invalid counter, the folder content is sufficient
+				}
+			}
+
+			fNextId = nextid;
+			fConfigIds = ids;
+		}
+		return fConfigIds;
+	}
+
+	/**
+	 * Get the number of a configuration id.
+	 * 
+	 * @param id
+	 *            A configuration id of the form "config.#"
+	 * @return The number, or <code>-1</code> if the id is not a valid configuration id.
+	 */
+	private static int getIdNumber(String id) {
+		if (!id.startsWith(CONFIG_PREFIX)) {
+			return -1;
+		}
+		String number = id.substring(CONFIG_PREFIX.length());
+		if (number.length() == 0 || number.length() > 9) {
+			return -1;
+		}
+		for (int i = 0; i < number.length(); i++) {
+			if (!Character.isDigit(number.charAt(i))) {
+				return -1;
+			}
+		}
+		return Integer.parseInt(number);
 	}
 
 	/**
@@ -140,7 +352,7 @@ public class TargetConfigurationManager {
 	 * @param id
 	 *            The id of the target configuration to delete.
 	 */
-	public void deleteConfig(String id) throws IOException {
+	public synchronized void deleteConfig(String id) throws IOException {
 
 		// If the config is in the cache, remove it from the cache
 		if (fConfigsCache.containsKey(id)) {
@@ -158,6 +370,7 @@ public class TargetConfigurationManager {
 						+ "'");
 			}
 		}
+		getConfigIndex().remove(id);
 	}
 
 	/**
@@ -180,7 +393,7 @@ public class TargetConfigurationManager {
 	 * @throws IOException
 	 *             if a config file exists in the storage area, but could not be read.
 	 */
-	public ITargetConfiguration getConfig(String id) throws IOException {
+	public synchronized ITargetConfiguration getConfig(String id) throws IOException {
 
 		return internalGetConfig(id);
 	}
@@ -198,14 +411,13 @@ public class TargetConfigurationManager {
 
 		// The config was not in the cache
 
-		// The file must exist, otherwise return null
-		IPath file = getConfigFolder().append(id);
-		if (!file.toFile().exists()) {
+		// The config must be in the index, otherwise return null
+		if (!getConfigIndex().contains(id)) {
 			return null;
 		}
 
 		// Load the Config from the File
-		TargetConfiguration config = new TargetConfiguration(file);
+		TargetConfiguration config = new TargetConfiguration(getConfigFolder().append(id));
 
 		fConfigsCache.put(id, config);
 
@@ -224,7 +436,8 @@ public class TargetConfigurationManager {
 	 * @return New working copy of an existing configuration, or <code>null</code> if no config with the given id exists.
 	 * @throws IOException when the source config exists, but can not be loaded from the storage area.
 	 */
-	public ITargetConfigurationWorkingCopy getWorkingCopy(String id) throws IOException {
+	public synchronized ITargetConfigurationWorkingCopy getWorkingCopy(String id)
+			throws IOException {
 
 		// Clone the source config
 		TargetConfiguration sourceconfig = internalGetConfig(id);
@@ -243,7 +456,7 @@ public class TargetConfigurationManager {
 	 *            A target configuration id string
 	 * @return <code>true</code> if the configuration exists.
 	 */
-	public boolean exists(String id) {
+	public synchronized boolean exists(String id) {
 		// Test for empty / null id
 		if (id == null)
 			return false;
@@ -255,12 +468,9 @@ public class TargetConfigurationManager {
 			return true;
 		}
 
-		// The config was not in the cache
-
-		// The file must exist, otherwise return null
+		// The config was not in the cache, so check the index
 		try {
-			File file = getConfigFolder().append(id).toFile();
-			return file.exists();
+			return getConfigIndex().contains(id);
 		} catch (IOException ioe) {
 			return false;
 		}
@@ -271,21 +481,13 @@ public class TargetConfigurationManager {
 	 * 
 	 * @return List of all id strings
 	 */
-	public List<String> getConfigurationIDs() {
+	public synchronized List<String> getConfigurationIDs() {
 		final List<String> confignames = new ArrayList<String>();
 
 		try {
-			File folder = getConfigFolder().toFile();
-			File[] allfiles = folder.listFiles();
-
-			for (File file : allfiles) {
-				String filename = file.getName();
-				if (filename.startsWith(CONFIG_PREFIX)) {
-					confignames.add(filename);
-				}
-			}
+			confignames.addAll(getConfigIndex());
 		} catch (IOException ioe) {
-			// In case of errors return what is already in the list
+			// In case of errors return the empty list
 		}
 
 		return confignames;
@@ -24,6 +24,7 @@ import org.eclipse.core.runtime.IRegistryEventListener;
 import org.eclipse.core.runtime.Platform;
 
 import de.innot.avreclipse.AVRPlugin;
+import de.innot.avreclipse.core.avrdude.PortArbiter;
 
 /**
  * Manages the tools for the target configuration.
@@ -52,8 +53,6 @@ public class ToolManager implements IRegistryEventListener {
 
 	private Map<String, IToolFactory>	fFactoryRegistry;
 
-	private Map<String, Long>			fInterfaceLastCallMap;
-
 	/**
 	 * Get the default tool manager.
 	 * 
@@ -159,12 +158,12 @@ public class ToolManager implements IRegistryEventListener {
 	 *            The name of the port, e.g. <code>/dev/usb</code>
 	 * @param lastfinish
 	 *            last access time in ms (from <code>System.currentTimeMillis()</code>)
+	 * @deprecated The port access is managed by the {@link PortArbiter}. Use
+	 *             {@link PortArbiter#setLastRelease(String, long)}.
 	 */
-	public synchronized void setLastAccess(String programmerport, long lastfinish) {
-		if (fInterfaceLastCallMap == null) {
-			fInterfaceLastCallMap = new HashMap<String, Long>();
-		}
-		fInterfaceLastCallMap.put(programmerport, lastfinish);
+	@Deprecated
+	public void setLastAccess(String programmerport, long lastfinish) {
+		PortArbiter.getDefault().setLastRelease(programmerport, lastfinish);
 	}
 
 	/**
@@ -174,16 +173,12 @@ public class ToolManager implements IRegistryEventListener {
 	 *            The name of the port, e.g. <code>/dev/usb</code>
 	 * @return the system time (in millis) of the last access, or <code>0</code> if the port has not
 	 *         been accessed before.
+	 * @deprecated The port access is managed by the {@link PortArbiter}. Use
+	 *             {@link PortArbiter#getLastRelease(String)}.
 	 */
-	public synchronized long getLastAccess(String programmerport) {
-		Long lastfinish = 0L;
-		if (fInterfaceLastCallMap != null) {
-			if (fInterfaceLastCallMap.containsKey(programmerport)) {
-				lastfinish = fInterfaceLastCallMap.get(programmerport);
-			}
-		}
-
-		return lastfinish;
+	@Deprecated
+	public long getLastAccess(String programmerport) {
+		return PortArbiter.getDefault().getLastRelease(programmerport);
 	}
 
 	/**
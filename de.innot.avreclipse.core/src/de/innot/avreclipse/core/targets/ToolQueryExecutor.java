@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+
+package de.innot.avreclipse.core.targets;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import de.innot.avreclipse.core.avrdude.AVRDudeException;
+
+/**
+ * Runs queries to target configuration tools in background threads.
+ * <p>
+ * Most tool queries run an external program, which can take some time. This class allows to query
+ * multiple tools concurrently. The queries share a small pool of daemon threads, which are
+ * terminated when they are not used for some time.
+ * </p>
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ *
+ */
+class ToolQueryExecutor {
+
+	/** Maximum number of concurrently running tool queries */
+	private final static int		MAX_THREADS		= 4;
+
+	/** Time in seconds before an unused thread is terminated */
+	private final static long		KEEP_ALIVE		= 30;
+
+	private static ExecutorService	fExecutor		= null;
+
+	/**
+	 * A single query to a tool.
+	 */
+	interface IToolQuery<T> {
+		public T query(ITargetConfigurationTool tool) throws AVRDudeException;
+	}
+
+	/**
+	 * A <code>Future</code> that combines the results of multiple tool queries.
+	 * <p>
+	 * The result is calculated by {@link #combine()} in the thread calling {@link #get()}, so no
+	 * pool thread is blocked while waiting for the parts.
+	 * </p>
+	 */
+	static abstract class CombinedFuture<R> implements Future<R> {
+
+		private final Future<?>[]	fParts;
+
+		CombinedFuture(Future<?>... parts) {
+			fParts = parts;
+		}
+
+		/**
+		 * Combine the results of the parts. The <code>get()</code> methods of the parts may be
+		 * called to wait for their results.
+		 */
+		protected abstract R combine() throws InterruptedException, ExecutionException;
+
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean cancelled = false;
+			for (Future<?> part : fParts) {
+				cancelled |= part.cancel(mayInterruptIfRunning);
+			}
+			return cancelled;
+		}
+
+		public boolean isCancelled() {
+			for (Future<?> part : fParts) {
+				if (part.isCancelled()) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public boolean isDone() {
+			for (Future<?> part : fParts) {
+				if (!part.isDone()) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		public R get() throws InterruptedException, ExecutionException {
+			return combine();
+		}
+
+		public R get(long timeout, TimeUnit unit) throws InterruptedException,
+				ExecutionException, TimeoutException {
+			long deadline = System.nanoTime() + unit.toNanos(timeout);
+			for (Future<?> part : fParts) {
+				part.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			}
+			return combine();
+		}
+	}
+
+	/**
+	 * Run the query for the given tool in a background thread.
+	 *
+	 * @param tool
+	 *            The tool to query.
+	 * @param query
+	 *            The query.
+	 * @param listener
+	 *            Informed about the result as soon as the query has finished, may be
+	 *            <code>null</code>.
+	 * @return A <code>Future</code> for the result of the query. The result is <code>null</code>
+	 *         if the tool could not be executed.
+	 */
+	static <T> Future<T> submit(final ITargetConfigurationTool tool, final IToolQuery<T> query,
+			final IToolQueryListener<T> listener) {
+
+		FutureTask<T> task = new FutureTask<T>(new Callable<T>() {
+			public T call() {
+				try {
+					return query.query(tool);
+				} catch (AVRDudeException e) {
+					// The tool could not be executed. Like the synchronous queries we just return
+					// null, so the result won't be used.
+					return null;
+				}
+			}
+		}) {
+			@Override
+			protected void done() {
+				if (listener == null || isCancelled()) {
+					return;
+				}
+				try {
+					listener.toolAnswered(tool, get());
+				} catch (InterruptedException e) {
+					// can't happen, the task is done
+				} catch (ExecutionException e) {
+					// The query has failed with a RuntimeException, which is reported by get()
+				}
+			}
+		};
+		getExecutor().execute(task);
+		return task;
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (fExecutor == null) {
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS,
+					KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+					new ThreadFactory() {
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "AVR target tool query");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			executor.allowCoreThreadTimeOut(true);
+			fExecutor = executor;
+		}
+		return fExecutor;
+	}
+
+	// prevent instantiation
+	private ToolQueryExecutor() {
+	}
+}
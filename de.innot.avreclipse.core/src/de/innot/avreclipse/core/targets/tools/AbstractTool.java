@@ -25,9 +25,10 @@ import org.eclipse.ui.console.MessageConsole;
 import de.innot.avreclipse.AVRPlugin;
 import de.innot.avreclipse.core.avrdude.AVRDudeException;
 import de.innot.avreclipse.core.avrdude.AVRDudeException.Reason;
+import de.innot.avreclipse.core.avrdude.PortArbiter;
+import de.innot.avreclipse.core.avrdude.PortArbiter.PortLease;
 import de.innot.avreclipse.core.targets.ITargetConfigConstants;
 import de.innot.avreclipse.core.targets.ITargetConfiguration;
-import de.innot.avreclipse.core.targets.ToolManager;
 import de.innot.avreclipse.core.toolinfo.ExternalCommandLauncher;
 import de.innot.avreclipse.core.toolinfo.ICommandOutputListener;
 
@@ -75,6 +76,12 @@ public abstract class AbstractTool {
 	 * {@link AVRDudeException} with the reason is thrown.
 	 * </p>
 	 * 
+	 * <p>
+	 * This is meant for queries about the tool itself (version, supported MCUs etc.), which do
+	 * not access the programmer. Therefore the programmer port is not acquired and the query is
+	 * not delayed by other tools using the port.
+	 * </p>
+	 * 
 	 * @param arguments
 	 *            Zero or more arguments for avrdude
 	 * @return A list of all output lines, or <code>null</code> if the command could not be
@@ -89,7 +96,7 @@ public abstract class AbstractTool {
 			arglist.add(arg);
 		}
 
-		return runCommand(arglist, new NullProgressMonitor(), false, null);
+		return runCommand(arglist, new NullProgressMonitor(), false, null, false);
 	}
 
 	/**
@@ -103,6 +110,12 @@ public abstract class AbstractTool {
 	 * If the command fails to execute an entry is written to the log and an
 	 * {@link AVRDudeException} with the reason is thrown.
 	 * </p>
+	 * <p>
+	 * The tool is only started once the programmer port is free, i.e. after all other tools
+	 * using the port have finished and the optional USB delay has passed.
+	 * </p>
+	 * 
+	 * @see PortArbiter
 	 * 
 	 * @param arguments
 	 *            <code>List&lt;String&gt;</code> with the arguments
@@ -122,7 +135,13 @@ public abstract class AbstractTool {
 	 */
 	public List<String> runCommand(List<String> arglist, IProgressMonitor monitor,
 			boolean forceconsole, IPath cwd) throws AVRDudeException {
+		return runCommand(arglist, monitor, forceconsole, cwd, true);
+	}
+
+	private List<String> runCommand(List<String> arglist, IProgressMonitor monitor,
+			boolean forceconsole, IPath cwd, boolean useport) throws AVRDudeException {
 
+		PortLease lease = null;
 		try {
 			monitor.beginTask("Running " + getName(), 100);
 
@@ -152,10 +171,14 @@ public abstract class AbstractTool {
 			outputlistener.init(monitor);
 			launcher.setCommandOutputListener(outputlistener);
 
-			// USB devices:
-			// This will delay the actual call if the previous call finished less than the
-			// user provided time in milliseconds
-			avrdudeInvocationDelay(console, new SubProgressMonitor(monitor, 10));
+			// Wait until the programmer port is free.
+			// USB devices: This will also delay the actual call if the previous call finished
+			// less than the user provided time in milliseconds
+			if (useport) {
+				lease = acquirePort(console, new SubProgressMonitor(monitor, 10));
+			} else {
+				monitor.worked(10);
+			}
 
 			// Run avrdude
 			try {
@@ -185,95 +208,81 @@ public abstract class AbstractTool {
 			return stdout;
 		} finally {
 			monitor.done();
-			String progport = fHC.getAttribute(ITargetConfigConstants.ATTR_PROGRAMMER_PORT);
-			ToolManager.getDefault().setLastAccess(progport, System.currentTimeMillis());
+			if (lease != null) {
+				lease.release();
+			}
 		}
 	}
 
 	/**
-	 * Delay for the user specified invocation delay time.
+	 * Acquire the programmer port of the target configuration.
 	 * <p>
-	 * This method will take the user supplied delay value from the given ProgrammerConfig, check
-	 * how much time has passed since the last tool invocation finished and - if actually required -
-	 * wait for the remaining milliseconds.
-	 * </p>
-	 * <p>
-	 * While sleeping this method will wake up every 10 ms to check if the user has cancelled, in
-	 * which case an {@link AVRDudeException} with {@link Reason#USER_CANCEL} is thrown.
+	 * The port is leased from the {@link PortArbiter}, which waits until all other tools using
+	 * the same port have finished and the user supplied USB delay has passed.
 	 * </p>
 	 * 
 	 * @param console
-	 *            If not <code>null</code>, then the start and end of the delay is logged on the
-	 *            console.
+	 *            If not <code>null</code>, then the wait time is logged on the console.
 	 * @param monitor
 	 *            polled for user cancel event.
+	 * @return The lease for the port, which must be released once the tool has finished.
 	 * @throws AVRDudeException
-	 *             when the user cancels the delay.
+	 *             when the user cancels the wait.
 	 */
-	private void avrdudeInvocationDelay(MessageConsole console, IProgressMonitor monitor)
+	private PortLease acquirePort(MessageConsole console, IProgressMonitor monitor)
 			throws AVRDudeException {
 
 		// Get the (optional) invocation delay value
-		String delayattr = ITargetConfigConstants.ATTR_USB_DELAY;
-		String delayvalue = fHC.getAttribute(delayattr);
-		if (delayvalue == null || delayvalue.length() == 0) {
-			return;
-		}
-		final int delay = Integer.decode(delayvalue);
-		if (delay == 0) {
-			return;
+		int delay = 0;
+		String delayvalue = fHC.getAttribute(ITargetConfigConstants.ATTR_USB_DELAY);
+		if (delayvalue != null && delayvalue.length() > 0) {
+			delay = Integer.decode(delayvalue);
 		}
 
-		IOConsoleOutputStream ostream = null;
-		if (console != null) {
-			ostream = console.newOutputStream();
+		String programmerport = fHC.getAttribute(ITargetConfigConstants.ATTR_PROGRAMMER_PORT);
+
+		PortLease lease;
+		try {
+			monitor.beginTask("Waiting for programmer port", 1);
+			lease = PortArbiter.getDefault().acquire(programmerport, delay, monitor);
+		} catch (AVRDudeException ade) {
+			logPortWait(console, ">>> " + getName() + " waiting for programmer port: cancelled\n");
+			throw ade;
+		} finally {
+			monitor.done();
 		}
 
-		String programmerport = fHC.getAttribute(ITargetConfigConstants.ATTR_PROGRAMMER_PORT);
-		long lastaccess = ToolManager.getDefault().getLastAccess(programmerport);
-		final long targetmillis = lastaccess + delay;
+		// Only log noticeable waits
+		if (lease.getWaitTime() > 0) {
+			logPortWait(console, "\n>>> " + getName() + " waited " + lease.getWaitTime()
+					+ " milliseconds for programmer port\n");
+		}
+		return lease;
+	}
 
-		// Quick exit if the delay has already expired
-		long targetdelay = targetmillis - System.currentTimeMillis();
-		if (targetdelay < 1L) {
+	/**
+	 * Write a message about the programmer port wait to the given console.
+	 * 
+	 * @param console
+	 *            The console, may be <code>null</code>.
+	 * @param message
+	 */
+	private void logPortWait(MessageConsole console, String message) {
+		if (console == null) {
 			return;
 		}
-
+		IOConsoleOutputStream ostream = console.newOutputStream();
 		try {
-			monitor.beginTask("delay", (int) (targetdelay / 10));
-
-			writeOutput(ostream, "\n>>> " + getName() + " invocation delay: " + targetdelay
-					+ " milliseconds\n");
-
-			// delay for specified amount of milliseconds
-			// To allow user cancel during long delays we check the monitor every 10
-			// milliseconds.
-			// This is the fix for Bug 2071415
-			while (System.currentTimeMillis() < targetmillis) {
-				if (monitor.isCanceled()) {
-					writeOutput(ostream, ">>> " + getName() + " invocation delay: cancelled\n");
-					throw new AVRDudeException(Reason.USER_CANCEL, "User cancelled");
-				}
-				Thread.sleep(10);
-				monitor.worked(1);
-			}
-			writeOutput(ostream, ">>> " + getName() + " invocation delay: finished\n");
-
-		} catch (InterruptedException e) {
-			throw new AVRDudeException(Reason.USER_CANCEL, "System interrupt");
+			writeOutput(ostream, message);
 		} catch (IOException e) {
 			// ignore exception
 		} finally {
-			if (ostream != null) {
-				try {
-					ostream.close();
-				} catch (IOException e) {
-					// ignore exception
-				}
+			try {
+				ostream.close();
+			} catch (IOException e) {
+				// ignore exception
 			}
-			monitor.done();
 		}
-
 	}
 
 	/**
@@ -12,10 +12,9 @@
 package de.innot.avreclipse.core.targets.tools;
 
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -54,12 +53,6 @@ public class AvariceTool extends AbstractTool implements IProgrammerTool, IGDBSe
 
 	private Set<String>					fProgrammerIds;
 
-	/** Cache of all Name/Version strings, mapped to their respective command name. */
-	private Map<String, String>			fNameVersionMap		= new HashMap<String, String>();
-
-	/** Cache of all MCU Sets, mapped to their respective command name */
-	private Map<String, Set<String>>	fMCUMap				= new HashMap<String, Set<String>>();
-
 	public AvariceTool(ITargetConfiguration hc) {
 		super(hc);
 		// tell the hardware configuration about the avarice attributes and their default values.
@@ -129,12 +122,16 @@ public class AvariceTool extends AbstractTool implements IProgrammerTool, IGDBSe
 	 */
 	public String getVersion() throws AVRDudeException {
 
-		String cmd = getCommand();
+		// The version is cached for all target configurations using the same executable
+		return ToolCapabilityCache.getDefault().getVersion(ID, getCommand(),
+				new ToolCapabilityCache.ILoader<String>() {
+					public String load() throws AVRDudeException {
+						return readVersion();
+					}
+				});
+	}
 
-		// Check if we already have the version in the cache
-		if (fNameVersionMap.containsKey(cmd)) {
-			return fNameVersionMap.get(cmd);
-		}
+	private String readVersion() throws AVRDudeException {
 
 		// Execute avarice without any options
 		// The name / version are in the first full line of the output in the format
@@ -161,7 +158,6 @@ public class AvariceTool extends AbstractTool implements IProgrammerTool, IGDBSe
 			return getName() + " ?.?";
 		}
 
-		fNameVersionMap.put(cmd, name);
 		return name;
 	}
 
@@ -180,11 +176,16 @@ public class AvariceTool extends AbstractTool implements IProgrammerTool, IGDBSe
 	 */
 	public Set<String> getMCUs() throws AVRDudeException {
 
-		String cmd = getCommand();
+		// The list is cached for all target configurations using the same avarice version
+		return ToolCapabilityCache.getDefault().getCapability(ID, getCommand(), getVersion(),
+				ToolCapabilityCache.MCUS, new ToolCapabilityCache.ILoader<Set<String>>() {
+					public Set<String> load() throws AVRDudeException {
+						return readMCUs();
+					}
+				});
+	}
 
-		if (fMCUMap.containsKey(cmd)) {
-			return fMCUMap.get(cmd);
-		}
+	private Set<String> readMCUs() throws AVRDudeException {
 
 		Set<String> allmcus = new HashSet<String>();
 		List<String> stdout;
@@ -204,8 +205,7 @@ public class AvariceTool extends AbstractTool implements IProgrammerTool, IGDBSe
 				allmcus.add(m.group(1));
 			}
 		}
-		fMCUMap.put(cmd, allmcus);
-		return allmcus;
+		return Collections.unmodifiableSet(allmcus);
 	}
 
 	/*
@@ -12,8 +12,8 @@
 package de.innot.avreclipse.core.targets.tools;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -57,12 +57,6 @@ public class AvrdudeTool extends AbstractTool implements IProgrammerTool {
 	private final static String[]		VERBOSITY_LEVELS	= new String[] { "", "-v", "-vv",
 			"-vvvv"										};
 
-	/** Cache of all Name/Version strings, mapped to their respective command name. */
-	private Map<String, String>			fNameVersionMap		= new HashMap<String, String>();
-
-	/** Cache of all MCU Sets, mapped to their respective command name */
-	private Map<String, Set<String>>	fMCUMap				= new HashMap<String, Set<String>>();
-
 	/** Mapping of mcu id values to their AVRDude format counterparts. */
 	private Map<String, String>			fMCUAVRudeFormatMap	= new HashMap<String, String>();
 
@@ -149,12 +143,16 @@ public class AvrdudeTool extends AbstractTool implements IProgrammerTool {
 	 */
 	public String getVersion() throws AVRDudeException {
 
-		String cmd = getCommand();
+		// The version is cached for all target configurations using the same executable
+		return ToolCapabilityCache.getDefault().getVersion(ID, getCommand(),
+				new ToolCapabilityCache.ILoader<String>() {
+					public String load() throws AVRDudeException {
+						return readVersion();
+					}
+				});
+	}
 
-		// Check if we already have the version in the cache
-		if (fNameVersionMap.containsKey(cmd)) {
-			return fNameVersionMap.get(cmd);
-		}
+	private String readVersion() throws AVRDudeException {
 
 		// Execute avrdude in verbose mode with a dummy programmer (to silence the warning that
 		// would cause an AVRDudeException by the output listener)
@@ -182,7 +180,6 @@ public class AvrdudeTool extends AbstractTool implements IProgrammerTool {
 			return getName() + " ?.?";
 		}
 
-		fNameVersionMap.put(cmd, name);
 		return name;
 	}
 
@@ -192,16 +189,23 @@ public class AvrdudeTool extends AbstractTool implements IProgrammerTool {
 	 */
 	public Set<String> getMCUs() throws AVRDudeException {
 
-		// Check if we already have the list in the cache
-		String cmd = getCommand();
+		// The list is cached for all target configurations using the same avrdude version
+		fMCUAVRudeFormatMap = ToolCapabilityCache.getDefault().getCapability(ID, getCommand(),
+				getVersion(), ToolCapabilityCache.MCUS,
+				new ToolCapabilityCache.ILoader<Map<String, String>>() {
+					public Map<String, String> load() throws AVRDudeException {
+						return readMCUs();
+					}
+				});
+		return fMCUAVRudeFormatMap.keySet();
+	}
+
+	private Map<String, String> readMCUs() throws AVRDudeException {
 
-		if (fMCUMap.containsKey(cmd)) {
-			return fMCUMap.get(cmd);
-		}
 		// Execute avrdude with the "-p?" to get a list of all supported mcus.
 		// The parse the all output for lines matching
 		// avrdudeid = mcuid [otherstuff]
-		Set<String> allmcus = new HashSet<String>();
+		Map<String, String> allmcus = new HashMap<String, String>();
 		List<String> stdout;
 
 		stdout = runCommand("-p?");
@@ -216,14 +220,11 @@ public class AvrdudeTool extends AbstractTool implements IProgrammerTool {
 				}
 				String avrdudeid = m.group(1);
 				String mcuid = m.group(2).toLowerCase();
-				fMCUAVRudeFormatMap.put(mcuid, avrdudeid);
-				allmcus.add(mcuid);
+				allmcus.put(mcuid, avrdudeid);
 			}
 		}
 
-		// Save the set in the cache
-		fMCUMap.put(cmd, allmcus);
-		return allmcus;
+		return Collections.unmodifiableMap(allmcus);
 	}
 
 	/*
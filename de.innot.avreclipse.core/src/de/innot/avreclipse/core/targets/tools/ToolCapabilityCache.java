@@ -0,0 +1,300 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+
+package de.innot.avreclipse.core.targets.tools;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import de.innot.avreclipse.core.avrdude.AVRDudeException;
+import de.innot.avreclipse.core.avrdude.AVRDudeException.Reason;
+
+/**
+ * Process wide cache for the capabilities of the external tools.
+ * <p>
+ * Getting the version of a tool or the list of supported MCUs requires running the external
+ * command. The tools are created for each target configuration, so this cache is shared by all
+ * tool instances to run each command only once per executable.
+ * </p>
+ * <p>
+ * The version of a tool is cached by tool id and by the resolved path of the command. It is read
+ * again when the modification time or the size of the executable changes. All other capabilities
+ * are cached by tool id, resolved command path and tool version, so a new version of a tool will
+ * not use the capabilities of the old one.
+ * </p>
+ * <p>
+ * Concurrent requests for the same value will run the external command only once. Failed requests
+ * are not cached.
+ * </p>
+ * <p>
+ * This class implements the singleton pattern. There is only one instance of this class, accessible
+ * with {@link #getDefault()}.
+ * </p>
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ *
+ */
+public class ToolCapabilityCache {
+
+	/**
+	 * Gets a value from the external tool in case of a cache miss.
+	 */
+	public interface ILoader<T> {
+		public T load() throws AVRDudeException;
+	}
+
+	/**
+	 * Suffix of the command attribute of all tools. The attribute name is the tool id followed by
+	 * this suffix, e.g. "avreclipse.avrdude.command".
+	 */
+	public final static String							COMMAND_SUFFIX	= ".command";
+
+	/** Capability name for the Set of MCU id values supported by a tool */
+	public final static String							MCUS			= "mcus";
+
+	private final static String							VERSION			= "version";
+
+	private final static char							SEPARATOR		= '\0';
+
+	private static ToolCapabilityCache					fInstance		= null;
+
+	/** All cached (and currently loading) values, mapped to their key */
+	private final ConcurrentMap<String, CacheEntry>	fEntries		= new ConcurrentHashMap<String, CacheEntry>();
+
+	/** A single value together with the state of the executable it was taken from */
+	private static class CacheEntry {
+		final long					fModified;
+		final long					fLength;
+		final FutureTask<Object>	fTask;
+
+		CacheEntry(File executable, FutureTask<Object> task) {
+			fModified = executable.lastModified();
+			fLength = executable.length();
+			fTask = task;
+		}
+
+		boolean isCurrent(File executable) {
+			return executable.lastModified() == fModified && executable.length() == fLength;
+		}
+	}
+
+	/**
+	 * Get the default tool capability cache.
+	 *
+	 * @return Default cache instance.
+	 */
+	public static synchronized ToolCapabilityCache getDefault() {
+		if (fInstance == null) {
+			fInstance = new ToolCapabilityCache();
+		}
+		return fInstance;
+	}
+
+	// package private to allow independent instances for the tests
+	ToolCapabilityCache() {
+	}
+
+	/**
+	 * Get the version of the given tool.
+	 *
+	 * @param toolid
+	 *            The id of the tool.
+	 * @param command
+	 *            The command used to run the tool, either just the name or an absolute path.
+	 * @param loader
+	 *            Gets the version from the tool if it is not in the cache.
+	 * @return The version string as returned by the loader.
+	 * @throws AVRDudeException
+	 *             if the loader fails.
+	 */
+	public String getVersion(String toolid, String command, ILoader<String> loader)
+			throws AVRDudeException {
+		String path = resolveCommand(command);
+		return (String) get(getKey(toolid, path) + VERSION, path, loader);
+	}
+
+	/**
+	 * Get a capability of the given tool.
+	 *
+	 * @param toolid
+	 *            The id of the tool.
+	 * @param command
+	 *            The command used to run the tool, either just the name or an absolute path.
+	 * @param version
+	 *            The version of the tool, usually from {@link #getVersion(String, String, ILoader)}.
+	 * @param capability
+	 *            The name of the capability, e.g. {@link #MCUS}.
+	 * @param loader
+	 *            Gets the capability from the tool if it is not in the cache.
+	 * @return The capability as returned by the loader. The returned object is shared and must not
+	 *         be modified.
+	 * @throws AVRDudeException
+	 *             if the loader fails.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T getCapability(String toolid, String command, String version, String capability,
+			ILoader<T> loader) throws AVRDudeException {
+		String path = resolveCommand(command);
+		String key = getKey(toolid, path) + version + SEPARATOR + capability;
+		return (T) get(key, path, loader);
+	}
+
+	/**
+	 * Remove all cached values of a tool command.
+	 * <p>
+	 * This should be called whenever the command attribute of a tool is changed, so that a
+	 * replaced executable is run again.
+	 * </p>
+	 *
+	 * @param toolid
+	 *            The id of the tool.
+	 * @param command
+	 *            The command used to run the tool, either just the name or an absolute path.
+	 */
+	public void invalidate(String toolid, String command) {
+		String prefix = getKey(toolid, resolveCommand(command));
+		Iterator<String> iter = fEntries.keySet().iterator();
+		while (iter.hasNext()) {
+			if (iter.next().startsWith(prefix)) {
+				iter.remove();
+			}
+		}
+	}
+
+	/**
+	 * Inform the cache that an attribute of a target configuration has changed.
+	 * <p>
+	 * If the attribute is the command attribute of a tool, all cached values for both the old and
+	 * the new command are removed.
+	 * </p>
+	 *
+	 * @param attribute
+	 *            The name of the changed attribute.
+	 * @param oldvalue
+	 *            The previous value of the attribute, may be <code>null</code>.
+	 * @param newvalue
+	 *            The new value of the attribute.
+	 */
+	public void attributeChanged(String attribute, String oldvalue, String newvalue) {
+		if (!attribute.endsWith(COMMAND_SUFFIX)) {
+			return;
+		}
+		String toolid = attribute.substring(0, attribute.length() - COMMAND_SUFFIX.length());
+		if (oldvalue != null && oldvalue.length() > 0) {
+			invalidate(toolid, oldvalue);
+		}
+		if (newvalue.length() > 0) {
+			invalidate(toolid, newvalue);
+		}
+	}
+
+	/**
+	 * Remove all cached values of all tools.
+	 */
+	public void invalidateAll() {
+		fEntries.clear();
+	}
+
+	/**
+	 * Get the absolute path of the executable for the given command.
+	 * <p>
+	 * If the command is just a name, it is searched in all directories of the <code>PATH</code>
+	 * environment variable, like the operating system will do when the command is run.
+	 * </p>
+	 *
+	 * @param command
+	 *            The command, either just the name or an absolute path.
+	 * @return The absolute path of the executable, or the unchanged command if the executable can
+	 *         not be found.
+	 */
+	public static String resolveCommand(String command) {
+		File file = new File(command);
+		if (file.isAbsolute() || command.indexOf(File.separatorChar) != -1) {
+			return file.getAbsolutePath();
+		}
+
+		String path = System.getenv("PATH");
+		if (path != null) {
+			for (String dir : path.split(File.pathSeparator)) {
+				if (dir.length() == 0) {
+					continue;
+				}
+				// On Windows systems the ".exe" extension is optional
+				File candidate = new File(dir, command);
+				if (!candidate.isFile()) {
+					candidate = new File(dir, command + ".exe");
+				}
+				if (candidate.isFile()) {
+					return candidate.getAbsolutePath();
+				}
+			}
+		}
+		return command;
+	}
+
+	private static String getKey(String toolid, String path) {
+		return toolid + SEPARATOR + path + SEPARATOR;
+	}
+
+	private Object get(String key, String path, final ILoader<?> loader) throws AVRDudeException {
+
+		File executable = new File(path);
+
+		CacheEntry entry = fEntries.get(key);
+		if (entry != null && !entry.isCurrent(executable)) {
+			// The executable has been replaced
+			fEntries.remove(key, entry);
+			entry = null;
+		}
+
+		if (entry == null) {
+			FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+				public Object call() throws AVRDudeException {
+					return loader.load();
+				}
+			});
+			CacheEntry newentry = new CacheEntry(executable, task);
+			entry = fEntries.putIfAbsent(key, newentry);
+			if (entry == null) {
+				// This thread has won the race and has to run the loader
+				entry = newentry;
+				task.run();
+			}
+		}
+
+		try {
+			return entry.fTask.get();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new AVRDudeException(Reason.USER_CANCEL, "System interrupt");
+		} catch (ExecutionException ee) {
+			// Don't cache failures. The next request will run the loader again.
+			fEntries.remove(key, entry);
+			Throwable cause = ee.getCause();
+			if (cause instanceof AVRDudeException) {
+				throw (AVRDudeException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new AVRDudeException(Reason.UNKNOWN, cause.getMessage(), cause);
+		}
+	}
+}
@@ -18,8 +18,10 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -42,7 +44,10 @@ import de.innot.avreclipse.core.IMCUProvider;
 import de.innot.avreclipse.core.avrdude.AVRDudeAction;
 import de.innot.avreclipse.core.avrdude.AVRDudeActionFactory;
 import de.innot.avreclipse.core.avrdude.AVRDudeException;
+import de.innot.avreclipse.core.avrdude.PortArbiter;
+import de.innot.avreclipse.core.avrdude.AVRDudeAction.FileType;
 import de.innot.avreclipse.core.avrdude.ProgrammerConfig;
+import de.innot.avreclipse.core.avrdude.PortArbiter.PortLease;
 import de.innot.avreclipse.core.avrdude.AVRDudeException.Reason;
 import de.innot.avreclipse.core.paths.AVRPath;
 import de.innot.avreclipse.core.paths.AVRPathProvider;
@@ -54,6 +59,7 @@ import de.innot.avreclipse.core.targets.IProgrammer;
 import de.innot.avreclipse.core.targets.TargetInterface;
 import de.innot.avreclipse.core.targets.ClockValuesGenerator.ClockValuesType;
 import de.innot.avreclipse.core.toolinfo.fuses.ByteValues;
+import de.innot.avreclipse.core.toolinfo.fuses.DeviceByteValues;
 import de.innot.avreclipse.core.toolinfo.fuses.FuseType;
 import de.innot.avreclipse.core.util.AVRMCUidConverter;
 
@@ -112,9 +118,56 @@ public class AVRDude implements IMCUProvider {
 																			AVRPath.AVRDUDE);
 
 	/** Bug 3023718: Remember the last MCU connected to a given programmer */
-	private final Map<ProgrammerConfig, String>	fLastMCUtypeMap		= new HashMap<ProgrammerConfig, String>();
+	private final Map<ProgrammerConfig, String>	fLastMCUtypeMap		= Collections
+																			.synchronizedMap(new HashMap<ProgrammerConfig, String>());
 
-	private long							fLastAvrdudeFinish	= 0L;
+	/**
+	 * The MCU used for the first read of an unknown device. If the device is different avrdude will
+	 * still report its signature.
+	 */
+	private final static String				DEFAULT_TESTMCU		= "atmega16";
+
+	/**
+	 * Pattern for the "Device signature = 0x123456" line of the avrdude output, with optionally
+	 * " (probably mcuid)" appended to the line.
+	 */
+	private final static Pattern			fSignaturePattern	= Pattern.compile(
+																		".+ signature .+ (0x[\\da-fA-F]{6})( .+)*",
+																		Pattern.COMMENTS);
+
+	/** Pattern for a single byte value written to stdout by avrdude in the "h" format. */
+	private final static Pattern			fHexValuePattern	= Pattern
+																		.compile("\\s*0x([\\da-fA-F]{1,2})\\s*");
+
+	/**
+	 * The path of an avrdude executable that does not support writing read values to stdout, or
+	 * <code>null</code> if the current avrdude does support it.
+	 */
+	private IPath							fNoStdoutToolPath	= null;
+
+	/** The avrdude executable of the cached version, or <code>null</code> if not read yet. */
+	private IPath							fVersionToolPath	= null;
+
+	/** The version of avrdude as <code>major * 100 + minor</code>, <code>0</code> if unknown. */
+	private int								fVersion			= 0;
+
+	/**
+	 * Cache of the memory sizes and page sizes with "avrdude MCU id/memory type/key" as key, e.g.
+	 * "m328p/flash/page_size".
+	 */
+	private final Map<String, Integer>		fMemoryValues		= new HashMap<String, Integer>();
+
+	/** Pattern for the start of a memory section of a part in avrdude.conf */
+	private final static Pattern			fMemoryPattern		= Pattern
+																		.compile("memory\\s+\"([^\"]+)\"\\s*");
+
+	/** Pattern for a numeric value of a memory section in avrdude.conf */
+	private final static Pattern			fValuePattern		= Pattern
+																		.compile("(\\w+)\\s*=\\s*(0x[\\da-fA-F]+|\\d+)\\s*;");
+
+	/** Pattern for the parent of a part in avrdude.conf (avrdude 6.0 and later) */
+	private final static Pattern			fParentPattern		= Pattern
+																		.compile("part\\s+parent\\s+\"([^\"]+)\".*");
 
 	/**
 	 * A cache of one or more avrdude config files. The config files are stored as
@@ -122,6 +175,15 @@ public class AVRDude implements IMCUProvider {
 	 */
 	private final Map<IPath, List<String>>	fConfigFileCache	= new HashMap<IPath, List<String>>();
 
+	/** Name of the persistent MCU / programmer cache file in the plugin state location */
+	private final static String				CACHEFILENAME		= "avrdudecache.properties";
+
+	/**
+	 * Persistent cache of the MCU and programmer lists, so avrdude does not need to be run at every
+	 * start.
+	 */
+	private final AVRDudeInfoCache			fInfoCache;
+
 	/**
 	 * Get the singleton instance of the AVRDude class.
 	 */
@@ -134,6 +196,8 @@ public class AVRDude implements IMCUProvider {
 	// Prevent Instantiation of the class
 	private AVRDude() {
 		fPrefsStore = AVRDudePreferences.getPreferenceStore();
+		IPath cachefile = AVRPlugin.getDefault().getStateLocation().append(CACHEFILENAME);
+		fInfoCache = new AVRDudeInfoCache(cachefile.toFile());
 	}
 
 	/**
@@ -221,8 +285,8 @@ public class AVRDude implements IMCUProvider {
 	 * @throws AVRDudeException
 	 */
 	public IProgrammer getProgrammer(String programmerid) throws AVRDudeException {
-		loadProgrammersList(); // update the internal list (if required)
-		IProgrammer type = fProgrammerList.get(programmerid);
+		// update the internal list (if required)
+		IProgrammer type = loadProgrammersList().get(programmerid);
 		return type;
 	}
 
@@ -315,6 +379,125 @@ public class AVRDude implements IMCUProvider {
 		return result.toString();
 	}
 
+	/**
+	 * Get the size of a flash page of the given MCU.
+	 * <p>
+	 * The page size is read from the <code>memory "flash"</code> section of the part in the avrdude
+	 * configuration file. Parts derived from a parent part (avrdude 6.0 and later) inherit the page
+	 * size of the parent. The results are cached until the avrdude executable changes.
+	 * </p>
+	 *
+	 * @param mcuid
+	 *            A MCU id as used by the plugin.
+	 * @return The page size in bytes, or <code>-1</code> if the MCU is not supported by avrdude or
+	 *         the flash of the MCU is not paged.
+	 * @throws AVRDudeException
+	 *             if avrdude could not be executed to get the list of MCUs.
+	 */
+	public synchronized int getFlashPageSize(String mcuid) throws AVRDudeException {
+		return getMemoryValue(mcuid, "flash", "page_size");
+	}
+
+	private int getMemoryValue(String mcuid, String memtype, String key) throws AVRDudeException {
+
+		String avrdudeid = loadMCUList().get(mcuid);
+		if (avrdudeid == null) {
+			return -1;
+		}
+
+		String cachekey = avrdudeid + "/" + memtype + "/" + key;
+		Integer value = fMemoryValues.get(cachekey);
+		if (value == null) {
+			value = readMemoryValue(avrdudeid, memtype, key, 0);
+			fMemoryValues.put(cachekey, value);
+		}
+		return value;
+	}
+
+	/**
+	 * Read a value of a memory section of a part from avrdude.conf, following the parent parts.
+	 *
+	 * @param avrdudeid
+	 *            The avrdude id of the part.
+	 * @param memtype
+	 *            The name of the memory section.
+	 * @param key
+	 *            The name of the value, e.g. "size" or "page_size".
+	 * @param depth
+	 *            The number of parents already followed, to stop on circular definitions.
+	 * @return The value, or <code>-1</code>.
+	 */
+	private int readMemoryValue(String avrdudeid, String memtype, String key, int depth) {
+
+		ConfigEntry entry = fMCUList.get(avrdudeid);
+		if (entry == null || depth > 10) {
+			return -1;
+		}
+
+		String parent = null;
+		try {
+			String[] lines = getConfigDetailInfo(entry).split("\n");
+			boolean inmemory = false;
+			for (String line : lines) {
+				if (inmemory) {
+					if (line.startsWith(";")) {
+						// end of the memory section without the value, it may be inherited
+						inmemory = false;
+						continue;
+					}
+					Matcher m = fValuePattern.matcher(line);
+					if (m.lookingAt() && key.equals(m.group(1))) {
+						return Integer.decode(m.group(2));
+					}
+					continue;
+				}
+				Matcher m = fMemoryPattern.matcher(line);
+				if (m.lookingAt()) {
+					inmemory = memtype.equals(m.group(1));
+					continue;
+				}
+				m = fParentPattern.matcher(line);
+				if (m.matches()) {
+					parent = m.group(1);
+				}
+			}
+		} catch (IOException ioe) {
+			IStatus status = new Status(IStatus.WARNING, AVRPlugin.PLUGIN_ID,
+					"Could not read the avrdude configuration of " + avrdudeid, ioe);
+			AVRPlugin.getDefault().log(status);
+			return -1;
+		}
+
+		if (parent != null) {
+			return readMemoryValue(parent, memtype, key, depth + 1);
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the version of the current avrdude executable.
+	 * <p>
+	 * The version is read with {@link #getNameAndVersion()} and cached until the avrdude executable
+	 * changes.
+	 * </p>
+	 *
+	 * @return The version as <code>major * 100 + minor</code>, e.g. <code>601</code> for avrdude
+	 *         6.1, or <code>0</code> if the version could not be determined.
+	 * @throws AVRDudeException
+	 */
+	public synchronized int getVersion() throws AVRDudeException {
+
+		if (!getToolPath().equals(fVersionToolPath)) {
+			fVersion = 0;
+			Matcher m = Pattern.compile(".* (\\d+)\\.(\\d+).*").matcher(getNameAndVersion());
+			if (m.matches()) {
+				fVersion = Integer.parseInt(m.group(1)) * 100 + Integer.parseInt(m.group(2));
+			}
+			fVersionToolPath = getToolPath();
+		}
+		return fVersion;
+	}
+
 	/**
 	 * Return the MCU id value of the device currently attached to the given Programmer.
 	 * 
@@ -355,19 +538,11 @@ public class AVRDude implements IMCUProvider {
 						continue;
 					}
 
-					// Parse the output and look for a line "avrdude: Device signature = 0x123456",
-					// with optionally " (probably mcuid)" appended to the line. This additional
-					// output was added after the avrdude 6.1 release
-					Pattern mcuPat = Pattern.compile(".+ signature .+ (0x[\\da-fA-F]{6})( .+)*", Pattern.COMMENTS);
-					Matcher m;
-
-					for (String line : stdout) {
-						m = mcuPat.matcher(line);
-						if (!m.matches()) {
-							continue;
-						}
-						// pattern matched. Get the Signature and convert it to a mcu id
-						String mcuid = Signatures.getDefault().getMCU(m.group(1));
+					// Parse the output and look for the device signature
+					String signature = getSignature(stdout);
+					if (signature != null) {
+						// Get the Signature and convert it to a mcu id
+						String mcuid = Signatures.getDefault().getMCU(signature);
 						fLastMCUtypeMap.put(config, mcuid);
 						return mcuid;
 					}
@@ -396,9 +571,8 @@ public class AVRDude implements IMCUProvider {
 	/**
 	 * Return the Fuse Bytes of the device currently attached to the given Programmer.
 	 * <p>
-	 * The values are read by calling avrdude with the "-U" option to read all available fusebytes
-	 * and storing them in tempfiles in the system temp directory. These files are read to get the
-	 * values and deleted afterwards.
+	 * This is a convenience method for {@link #getDeviceByteValues(ProgrammerConfig, IProgressMonitor)}
+	 * which returns only the fuse bytes.
 	 * </p>
 	 * 
 	 * @param config
@@ -411,171 +585,334 @@ public class AVRDude implements IMCUProvider {
 	public ByteValues getFuseBytes(ProgrammerConfig config, IProgressMonitor monitor)
 			throws AVRDudeException {
 
-		try {
-			monitor.beginTask("Reading Fuse Bytes", 100);
-			// First get the attached MCU
-			String mcuid = getAttachedMCU(config, new SubProgressMonitor(monitor, 20));
-
-			// Check if the found MCU is actually supported by avrdude
-			if (!hasMCU(mcuid)) {
-				throw new AVRDudeException(
-						Reason.UNKNOWN_MCU,
-						"Found "
-								+ AVRMCUidConverter.id2name(mcuid)
-								+ " MCU signature. This MCU is not supported by the selected version of avrdude.");
-			}
+		DeviceByteValues values = getDeviceByteValues(config, monitor);
+		return values != null ? values.getFuseValues() : null;
+	}
 
-			ByteValues values = new ByteValues(FuseType.FUSE, mcuid);
+	/**
+	 * Return the lockbits of the device currently attached to the given Programmer.
+	 * <p>
+	 * This is a convenience method for {@link #getDeviceByteValues(ProgrammerConfig, IProgressMonitor)}
+	 * which returns only the lockbits.
+	 * </p>
+	 * 
+	 * @param config
+	 *            <code>ProgrammerConfig</code> with the Programmer to query.
+	 * @return <code>LockbitsByteValues</code> with the values and the MCU id of the attached MCU.
+	 * @throws AVRDudeException
+	 */
+	public ByteValues getLockbits(ProgrammerConfig config, IProgressMonitor monitor)
+			throws AVRDudeException {
 
-			int fusebytecount = values.getByteCount();
-			List<String> args = new ArrayList<String>(config.getArguments());
-			args.add("-p" + getMCUInfo(mcuid));
+		DeviceByteValues values = getDeviceByteValues(config, monitor);
+		return values != null ? values.getLockbitValues() : null;
+	}
 
-			IPath tempdir = getTempDir();
+	/**
+	 * Return the fuse bytes and the lockbits of the device currently attached to the given
+	 * Programmer.
+	 * <p>
+	 * The signature, all fuse bytes and all lockbits are read in a single avrdude run. For this
+	 * the MCU type needs to be guessed: the last MCU seen on the given Programmer is used, or
+	 * {@link #DEFAULT_TESTMCU} if this Programmer has not been used yet. Only if the signature read
+	 * by avrdude does not match the guessed MCU avrdude is run a second time with the MCU matching
+	 * the signature. If the guessed MCU fails to initialize (e.g. because it uses a different
+	 * programming interface), the MCU is determined with {@link #getAttachedMCU(ProgrammerConfig,
+	 * IProgressMonitor)} first.
+	 * </p>
+	 * <p>
+	 * The byte values are written by avrdude to stdout and parsed from its output. Only if the
+	 * avrdude version in use does not support this, they are read via tempfiles in the system temp
+	 * directory instead.
+	 * </p>
+	 * 
+	 * @param config
+	 *            <code>ProgrammerConfig</code> with the Programmer to query.
+	 * @param monitor
+	 *            <code>IProgressMonitor to cancel the operation.
+	 * @return <code>DeviceByteValues</code> with the fuses, the lockbits and the MCU id of the
+	 *         attached MCU.
+	 * @throws AVRDudeException
+	 */
+	public DeviceByteValues getDeviceByteValues(ProgrammerConfig config, IProgressMonitor monitor)
+			throws AVRDudeException {
 
-			List<Integer> fuseindices = new ArrayList<Integer>();
+		try {
+			monitor.beginTask("Reading Fuses and Lockbits", 100);
+			if (config == null)
+				throw new AVRDudeException(Reason.NO_PROGRAMMER, "", null);
 
-			for (int i = 0; i < fusebytecount; i++) {
-				String tmpfilename = tempdir.append("fuse" + i + ".hex").toOSString();
-				String bytename = values.getByteName(i);
+			String mcuid = fLastMCUtypeMap.get(config);
+			if (mcuid == null || !hasMCU(mcuid)) {
+				mcuid = DEFAULT_TESTMCU;
+			}
 
-				// Skip the fusebyte if its name is null. This will prevent avrdude from failing to
-				// read the undefined fusebyte 3 of XMega MCUs.
-				if (bytename != null) {
-					AVRDudeAction action = AVRDudeActionFactory.readFuseByte(mcuid, i, tmpfilename);
-					args.add(action.getArgument());
-					fuseindices.add(i);
+			ByteValues fuses = new ByteValues(FuseType.FUSE, mcuid);
+			ByteValues locks = new ByteValues(FuseType.LOCKBITS, mcuid);
+			String foundmcu;
+			try {
+				foundmcu = readDeviceByteValues(config, fuses, locks, new SubProgressMonitor(
+						monitor, 50));
+			} catch (AVRDudeException ade) {
+				if (!ade.getReason().equals(Reason.INIT_FAIL)) {
+					throw ade;
 				}
+				// The guessed MCU could not be initialized. Probe for the actual MCU
+				// like before and use that instead.
+				foundmcu = getAttachedMCU(config, new SubProgressMonitor(monitor, 10));
+				mcuid = null;
 			}
 
-			List<String> stdout = runCommand(args, new SubProgressMonitor(monitor, 80), false,
-					null, config);
-			if (stdout == null) {
-				return null;
+			if (mcuid == null || !mcuid.equals(foundmcu)) {
+				// The signature check failed (or no values have been read yet). Try again (once)
+				// with the MCU matching the signature.
+				if (foundmcu == null) {
+					throw new AVRDudeException(Reason.UNKNOWN_MCU,
+							"The signature of the attached MCU is unknown");
+				}
+				checkMCUSupported(foundmcu);
+				mcuid = foundmcu;
+				fuses = new ByteValues(FuseType.FUSE, mcuid);
+				locks = new ByteValues(FuseType.LOCKBITS, mcuid);
+				foundmcu = readDeviceByteValues(config, fuses, locks, new SubProgressMonitor(
+						monitor, 40));
+				if (!mcuid.equals(foundmcu)) {
+					throw new AVRDudeException(Reason.PARSE_ERROR,
+							"Device signature changed while reading the fuses and lockbits");
+				}
 			}
 
-			// get the temporary files, read and parse them and delete them afterwards
+			return new DeviceByteValues(mcuid, fuses, locks);
+		} finally {
+			monitor.done();
+		}
+	}
 
-			for (int i : fuseindices) {
-				File tmpfile = tempdir.append("fuse" + i + ".hex").toFile();
+	/**
+	 * Run avrdude to read the signature and all fuse and lockbit bytes.
+	 * <p>
+	 * avrdude is run for the MCU of the given <code>ByteValues</code>. If the signature of the
+	 * attached device matches this MCU, the values are read into the given
+	 * <code>ByteValues</code>. Otherwise they are left unchanged and avrdude will have refused to
+	 * read them.
+	 * </p>
+	 * <p>
+	 * The values are written by avrdude to stdout and parsed directly from the output. If the
+	 * avrdude version in use can not write to stdout, the values are read again via tempfiles in
+	 * the system temp directory, and tempfiles are used for all further reads with this avrdude
+	 * executable.
+	 * </p>
+	 * 
+	 * @return The MCU id matching the signature of the attached device.
+	 * @throws AVRDudeException
+	 */
+	private String readDeviceByteValues(ProgrammerConfig config, ByteValues fuses,
+			ByteValues locks, IProgressMonitor monitor) throws AVRDudeException {
 
-				try {
-					BufferedReader in = new BufferedReader(new FileReader(tmpfile));
-					String valueString = in.readLine();
-					in.close();
-					if (valueString == null) {
-						throw new AVRDudeException(Reason.UNKNOWN,
-								"Temporary file generated by avrdude is empty.");
-					}
-					int value = Integer.decode(valueString);
-					values.setValue(i, value);
-					// Delete the temporary file.
-					if (!tmpfile.delete()) {
-						// tmpfile deletion has failed (unlikely). Well, there is not much we
-						// can do about it so we just log it. Especially Windows users are used to a
-						// bazillion stale tempfiles in their temp directory anyway.
-						IStatus status = new Status(IStatus.WARNING, AVRPlugin.PLUGIN_ID,
-								"Could not delete temporary file [" + tmpfile.toString() + "]",
-								null);
-						AVRPlugin.getDefault().log(status);
-					}
-				} catch (FileNotFoundException fnfe) {
-					throw new AVRDudeException(Reason.UNKNOWN, "Can't read temporary file", fnfe);
-				} catch (IOException ioe) {
-					throw new AVRDudeException(Reason.UNKNOWN, "Can't read temporary file", ioe);
+		try {
+			monitor.beginTask("Reading Device", 100);
+
+			if (!getToolPath().equals(fNoStdoutToolPath)) {
+				String foundmcu = readDeviceByteValues(config, fuses, locks, true,
+						new SubProgressMonitor(monitor, 50));
+				if (foundmcu != null) {
+					return foundmcu;
 				}
+				// This avrdude can not write the values to stdout. Remember this so we don't
+				// try again with the same executable.
+				fNoStdoutToolPath = getToolPath();
+				IStatus status = new Status(IStatus.INFO, AVRPlugin.PLUGIN_ID,
+						"avrdude did not write the values to stdout. Using temporary files instead.",
+						null);
+				AVRPlugin.getDefault().log(status);
 			}
-			return values;
+			return readDeviceByteValues(config, fuses, locks, false, new SubProgressMonitor(
+					monitor, 50));
 		} finally {
 			monitor.done();
 		}
-
 	}
 
 	/**
-	 * Return the lockbits of the device currently attached to the given Programmer.
-	 * <p>
-	 * The values are read by calling avrdude with the "-U" option to read all available locks
-	 * (currently only one) and storing them in tempfiles in the system temp directory. These files
-	 * are read to get the values and deleted afterwards.
-	 * </p>
+	 * Run avrdude once to read the signature and all fuse and lockbit bytes.
 	 * 
-	 * @param config
-	 *            <code>ProgrammerConfig</code> with the Programmer to query.
-	 * @return <code>LockbitsByteValues</code> with the values and the MCU id of the attached MCU.
+	 * @param usestdout
+	 *            If <code>true</code> avrdude writes the values to stdout, otherwise to tempfiles.
+	 * @return The MCU id matching the signature of the attached device, or <code>null</code> if
+	 *         <code>usestdout</code> was set but the output did not contain the values.
 	 * @throws AVRDudeException
 	 */
-	public ByteValues getLockbits(ProgrammerConfig config, IProgressMonitor monitor)
+	private String readDeviceByteValues(ProgrammerConfig config, ByteValues fuses,
+			ByteValues locks, boolean usestdout, IProgressMonitor monitor)
 			throws AVRDudeException {
 
-		try {
-			monitor.beginTask("Reading Lockbits", 100);
-			// First get the attached MCU
-			String mcuid = getAttachedMCU(config, new SubProgressMonitor(monitor, 20));
+		String mcuid = fuses.getMCUId();
+		checkMCUSupported(mcuid);
 
-			// Check if the found MCU is actually supported by avrdude
-			if (!hasMCU(mcuid)) {
-				throw new AVRDudeException(
-						Reason.UNKNOWN_MCU,
-						"Found "
-								+ AVRMCUidConverter.id2name(mcuid)
-								+ " MCU signature. This MCU is not supported by the selected version of avrdude.");
-			}
+		IPath folder = usestdout ? null : getTempDir();
 
-			ByteValues values = new ByteValues(FuseType.LOCKBITS, mcuid);
+		Map<Integer, AVRDudeAction> fuseactions = AVRDudeActionFactory.readByteValues(fuses,
+				folder);
+		Map<Integer, AVRDudeAction> lockactions = AVRDudeActionFactory.readByteValues(locks,
+				folder);
 
-			int locksbytecount = values.getByteCount();
-			List<String> args = new ArrayList<String>(config.getArguments());
-			args.add("-p" + getMCUInfo(mcuid));
+		List<String> args = new ArrayList<String>(config.getArguments());
+		args.add("-p" + getMCUInfo(mcuid));
+		for (AVRDudeAction action : fuseactions.values()) {
+			args.add(action.getArgument());
+		}
+		for (AVRDudeAction action : lockactions.values()) {
+			args.add(action.getArgument());
+		}
 
-			IPath tempdir = getTempDir();
+		// When reading to stdout the avrdude messages (including the signature) need to be kept
+		// apart from the values, so stderr is not merged into stdout.
+		ExternalCommandLauncher avrdude = launchCommand(args, monitor, false, null, config,
+				!usestdout, ExternalCommandLauncher.BUFFER_ALL, false);
 
-			for (int i = 0; i < locksbytecount; i++) {
-				String tmpfilename = tempdir.append("lock" + i + ".hex").toOSString();
-				AVRDudeAction action = AVRDudeActionFactory.readLockbitByte(mcuid, i, tmpfilename);
-				args.add(action.getArgument());
-			}
+		List<String> output = new ArrayList<String>(avrdude.getStdOut());
+		output.addAll(avrdude.getStdErr());
 
-			List<String> stdout = runCommand(args, monitor, false, null, config);
-			if (stdout == null) {
+		String signature = getSignature(output);
+		if (signature == null) {
+			// Signature not found. This probably means that our simple parser is
+			// broken
+			throw new AVRDudeException(Reason.PARSE_ERROR,
+					"Could not find a valid Signature in the avrdude output", null);
+		}
+		String foundmcu = Signatures.getDefault().getMCU(signature);
+		if (foundmcu == null) {
+			throw new AVRDudeException(Reason.UNKNOWN_MCU, "Unknown MCU signature " + signature);
+		}
+		fLastMCUtypeMap.put(config, foundmcu);
+
+		if (!foundmcu.equals(mcuid)) {
+			// avrdude has refused to read the values
+			return foundmcu;
+		}
+
+		if (usestdout) {
+			List<Integer> values = getStdoutValues(avrdude.getStdOut());
+			if (values.size() != fuseactions.size() + lockactions.size()) {
 				return null;
 			}
+			// The values are in the same order as the actions
+			Iterator<Integer> valueiter = values.iterator();
+			for (int index : fuseactions.keySet()) {
+				fuses.setValue(index, valueiter.next());
+			}
+			for (int index : lockactions.keySet()) {
+				locks.setValue(index, valueiter.next());
+			}
+		} else {
+			readTempFiles(fuses, fuseactions);
+			readTempFiles(locks, lockactions);
+		}
+		return foundmcu;
+	}
+
+	/**
+	 * Get the signature from the output of avrdude.
+	 * <p>
+	 * Looks for a line "avrdude: Device signature = 0x123456", with optionally " (probably mcuid)"
+	 * appended to the line. This additional output was added after the avrdude 6.1 release
+	 * </p>
+	 * 
+	 * @param stdout
+	 *            The output of avrdude.
+	 * @return The signature in the format "0x123456" or <code>null</code> if no signature was
+	 *         found.
+	 */
+	private String getSignature(List<String> stdout) {
+		Matcher m;
+		for (String line : stdout) {
+			m = fSignaturePattern.matcher(line);
+			if (m.matches()) {
+				return m.group(1);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get all byte values written by avrdude to stdout in the {@link FileType#hex} format.
+	 * <p>
+	 * Each read action with the stdout target writes a single line with a C style hex value
+	 * ("0xff"). All other lines are ignored.
+	 * </p>
+	 * 
+	 * @param stdout
+	 *            The stdout output of avrdude.
+	 * @return <code>List</code> with all values in the order of the output.
+	 */
+	private List<Integer> getStdoutValues(List<String> stdout) {
+		List<Integer> values = new ArrayList<Integer>();
+		for (String line : stdout) {
+			Matcher m = fHexValuePattern.matcher(line);
+			if (m.matches()) {
+				values.add(Integer.parseInt(m.group(1), 16));
+			}
+		}
+		return values;
+	}
 
-			// get the temporary files, read and parse them and delete them afterwards
+	/**
+	 * Read the values created by the given read actions from their tempfiles and delete the files
+	 * afterwards.
+	 * 
+	 * @param values
+	 *            The <code>ByteValues</code> to put the values in.
+	 * @param actions
+	 *            The actions created by
+	 *            {@link AVRDudeActionFactory#readByteValues(ByteValues, IPath)} for the values.
+	 * @throws AVRDudeException
+	 */
+	private void readTempFiles(ByteValues values, Map<Integer, AVRDudeAction> actions)
+			throws AVRDudeException {
 
-			for (int i = 0; i < locksbytecount; i++) {
-				File tmpfile = tempdir.append("lock" + i + ".hex").toFile();
+		for (Map.Entry<Integer, AVRDudeAction> entry : actions.entrySet()) {
+			File tmpfile = new File(entry.getValue().getFilename());
 
-				try {
-					BufferedReader in = new BufferedReader(new FileReader(tmpfile));
-					String valueString = in.readLine();
-					in.close();
-					if (valueString == null) {
-						throw new AVRDudeException(Reason.UNKNOWN,
-								"Temporary file generated by avrdude is empty.");
-					}
-					int value = Integer.decode(valueString);
-					values.setValue(i, value);
-					// Delete the temporary file.
-					if (!tmpfile.delete()) {
-						// tmpfile deletion has failed (unlikely). Well, there is not much we
-						// can do about it so we just log it. Especially Windows users are used to a
-						// bazillion stale tempfiles in their temp directory anyway.
-						IStatus status = new Status(IStatus.WARNING, AVRPlugin.PLUGIN_ID,
-								"Could not delete temporary file [" + tmpfile.toString() + "]",
-								null);
-						AVRPlugin.getDefault().log(status);
-					}
-				} catch (FileNotFoundException fnfe) {
-					throw new AVRDudeException(Reason.UNKNOWN, "Can't read temporary file", fnfe);
-				} catch (IOException ioe) {
-					throw new AVRDudeException(Reason.UNKNOWN, "Can't read temporary file", ioe);
+			try {
+				BufferedReader in = new BufferedReader(new FileReader(tmpfile));
+				String valueString = in.readLine();
+				in.close();
+				if (valueString == null) {
+					throw new AVRDudeException(Reason.UNKNOWN,
+							"Temporary file generated by avrdude is empty.");
 				}
+				int value = Integer.decode(valueString);
+				values.setValue(entry.getKey(), value);
+				// Delete the temporary file.
+				if (!tmpfile.delete()) {
+					// tmpfile deletion has failed (unlikely). Well, there is not much we
+					// can do about it so we just log it. Especially Windows users are used to a
+					// bazillion stale tempfiles in their temp directory anyway.
+					IStatus status = new Status(IStatus.WARNING, AVRPlugin.PLUGIN_ID,
+							"Could not delete temporary file [" + tmpfile.toString() + "]", null);
+					AVRPlugin.getDefault().log(status);
+				}
+			} catch (FileNotFoundException fnfe) {
+				throw new AVRDudeException(Reason.UNKNOWN, "Can't read temporary file", fnfe);
+			} catch (IOException ioe) {
+				throw new AVRDudeException(Reason.UNKNOWN, "Can't read temporary file", ioe);
 			}
+		}
+	}
 
-			return values;
-		} finally {
-			monitor.done();
+	/**
+	 * Check if the given MCU is actually supported by avrdude.
+	 * 
+	 * @throws AVRDudeException
+	 *             with {@link Reason#UNKNOWN_MCU} if the MCU is not supported.
+	 */
+	private void checkMCUSupported(String mcuid) throws AVRDudeException {
+		if (!hasMCU(mcuid)) {
+			throw new AVRDudeException(
+					Reason.UNKNOWN_MCU,
+					"Found "
+							+ AVRMCUidConverter.id2name(mcuid)
+							+ " MCU signature. This MCU is not supported by the selected version of avrdude.");
 		}
 	}
 
@@ -841,12 +1178,13 @@ public class AVRDude implements IMCUProvider {
 	 * @return Map&lt;mcu id, avrdude id&gt; of all supported MCUs
 	 * @throws AVRDudeException
 	 */
-	private Map<String, String> loadMCUList() throws AVRDudeException {
+	private synchronized Map<String, String> loadMCUList() throws AVRDudeException {
 
 		if (!getToolPath().equals(fCurrentPath)) {
 			// toolpath has changed, reload the list
 			fMCUList = null;
 			fMCUIdMap = null;
+			fMemoryValues.clear();
 			fCurrentPath = getToolPath();
 		}
 
@@ -855,9 +1193,15 @@ public class AVRDude implements IMCUProvider {
 			return fMCUIdMap;
 		}
 
-		fMCUList = new HashMap<String, ConfigEntry>();
-		// Execute avrdude with the "-p?" to get a list of all supported mcus.
-		readAVRDudeConfigOutput(fMCUList, "-p?", "-v");
+		// Try the persistent cache first. It is only valid if neither avrdude nor its config
+		// file have changed since the list was stored.
+		fMCUList = fInfoCache.getMCUEntries(fCurrentPath, getCustomConfigFile());
+		if (fMCUList == null) {
+			fMCUList = new HashMap<String, ConfigEntry>();
+			// Execute avrdude with the "-p?" to get a list of all supported mcus.
+			readAVRDudeConfigOutput(fMCUList, "-p?", "-v");
+			fInfoCache.putMCUEntries(fCurrentPath, getCustomConfigFile(), fMCUList);
+		}
 
 		// The returned list has avrdude mcu id values, which are not the same
 		// as the ones used in this Plugin. Instead the returned name is
@@ -876,7 +1220,7 @@ public class AVRDude implements IMCUProvider {
 	 * @return Map&lt;mcu id, avrdude id&gt; of all supported Programmer devices.
 	 * @throws AVRDudeException
 	 */
-	private Map<String, IProgrammer> loadProgrammersList() throws AVRDudeException {
+	private synchronized Map<String, IProgrammer> loadProgrammersList() throws AVRDudeException {
 
 		if (!getToolPath().equals(fCurrentPath)) {
 			// toolpath has changed, reload the list
@@ -885,10 +1229,16 @@ public class AVRDude implements IMCUProvider {
 		}
 
 		if (fProgrammerList == null) {
-			fProgrammerConfigEntries = new HashMap<String, ConfigProgrammerEntry>();
-			// Execute avrdude with the "-c?" to get a list of all supported
-			// programmers.
-			readAVRDudeProgrammerInfo(fProgrammerConfigEntries);
+			fProgrammerConfigEntries = fInfoCache.getProgrammerEntries(fCurrentPath,
+					getCustomConfigFile());
+			if (fProgrammerConfigEntries == null) {
+				fProgrammerConfigEntries = new HashMap<String, ConfigProgrammerEntry>();
+				// Execute avrdude with the "-c?" to get a list of all supported
+				// programmers.
+				readAVRDudeProgrammerInfo(fProgrammerConfigEntries);
+				fInfoCache.putProgrammerEntries(fCurrentPath, getCustomConfigFile(),
+						fProgrammerConfigEntries);
+			}
 
 			// Convert the ConfigEntries to IProgrammerTypes
 			fProgrammerList = new HashMap<String, IProgrammer>();
@@ -900,6 +1250,36 @@ public class AVRDude implements IMCUProvider {
 		return fProgrammerList;
 	}
 
+	/**
+	 * Clears the MCU and programmer lists, including the persistent cache.
+	 * <p>
+	 * The lists are reloaded from avrdude on the next access. Normally this is not required, as the
+	 * cache is invalidated automatically when the avrdude executable or its configuration file
+	 * changes.
+	 * </p>
+	 */
+	public synchronized void clearCache() {
+		fInfoCache.clear();
+		fMCUList = null;
+		fMCUIdMap = null;
+		fProgrammerList = null;
+		fProgrammerConfigEntries = null;
+		fMemoryValues.clear();
+		fCurrentPath = null;
+		fVersionToolPath = null;
+	}
+
+	/**
+	 * @return the name of the custom avrdude configuration file as set in the preferences, or an
+	 *         empty String if the default configuration file is used.
+	 */
+	private String getCustomConfigFile() {
+		if (fPrefsStore.getBoolean(AVRDudePreferences.KEY_USECUSTOMCONFIG)) {
+			return fPrefsStore.getString(AVRDudePreferences.KEY_CONFIGFILE);
+		}
+		return "";
+	}
+
 	/**
 	 * Internal method to execute avrdude and parse the output as ConfigEntries.
 	 * 
@@ -1140,6 +1520,77 @@ public class AVRDude implements IMCUProvider {
 			boolean forceconsole, IPath cwd, ProgrammerConfig programmerconfig)
 			throws AVRDudeException {
 
+		ExternalCommandLauncher avrdude = launchCommand(arglist, monitor, forceconsole, cwd,
+				programmerconfig, true, ExternalCommandLauncher.BUFFER_ALL, false);
+
+		// Everything was fine: get the ooutput from avrdude and return it
+		// to the caller
+		return avrdude.getStdOut();
+	}
+
+	/**
+	 * Runs avrdude with the given arguments, keeping only the last lines of the output.
+	 * <p>
+	 * This is the same as {@link #runCommand(List, IProgressMonitor, boolean, IPath, ProgrammerConfig)},
+	 * but for avrdude runs with a large output, e.g. a verbose flash upload, where the caller is
+	 * not interested in the complete output. All lines are still passed to the console (if
+	 * enabled) and checked for errors.
+	 * </p>
+	 * <p>
+	 * As the caller relies on the upload to have been successful, any exit code other than
+	 * <code>0</code> is an error, even if the avrdude output did not contain a known error
+	 * message (e.g. a verification error). Other avrdude runs, like the queries for the
+	 * attached MCU, still return the output in this case.
+	 * </p>
+	 * 
+	 * @see ExternalCommandLauncher#setOutputBufferSize(int)
+	 * 
+	 * @param maxlines
+	 *            Maximum number of output lines to return, or
+	 *            {@link ExternalCommandLauncher#BUFFER_ALL} for all lines.
+	 * @return A list of the last <code>maxlines</code> output lines.
+	 * @throws AVRDudeException
+	 *             when avrdude cannot be started, when avrdude returned an error or when avrdude
+	 *             exited with an exit code other than <code>0</code> (
+	 *             {@link Reason#EXIT_CODE}).
+	 */
+	public List<String> runCommand(List<String> arglist, IProgressMonitor monitor,
+			boolean forceconsole, IPath cwd, ProgrammerConfig programmerconfig, int maxlines)
+			throws AVRDudeException {
+
+		ExternalCommandLauncher avrdude = launchCommand(arglist, monitor, forceconsole, cwd,
+				programmerconfig, true, maxlines, true);
+
+		// Everything was fine: get the ooutput from avrdude and return it
+		// to the caller
+		return avrdude.getStdOut();
+	}
+
+	/**
+	 * Runs avrdude with the given arguments.
+	 * <p>
+	 * This is the implementation of
+	 * {@link #runCommand(List, IProgressMonitor, boolean, IPath, ProgrammerConfig, int)}, with
+	 * the additional option to keep the stdout and stderr output apart.
+	 * </p>
+	 * 
+	 * @param mergeoutput
+	 *            If <code>true</code> stderr is merged into stdout, otherwise the output is
+	 *            available separately from the returned launcher.
+	 * @param maxlines
+	 *            Maximum number of output lines kept by the launcher.
+	 * @param checkexitcode
+	 *            If <code>true</code> an exit code other than <code>0</code> is an error, even if
+	 *            the output did not contain a known error message.
+	 * @return The <code>ExternalCommandLauncher</code> used to run avrdude, to get the output.
+	 * @throws AVRDudeException
+	 *             when avrdude cannot be started or when avrdude returned an error errors.
+	 */
+	private ExternalCommandLauncher launchCommand(List<String> arglist, IProgressMonitor monitor,
+			boolean forceconsole, IPath cwd, ProgrammerConfig programmerconfig,
+			boolean mergeoutput, int maxlines, boolean checkexitcode) throws AVRDudeException {
+
+		PortLease lease = null;
 		try {
 			monitor.beginTask("Running avrdude", 100);
 
@@ -1162,7 +1613,8 @@ public class AVRDude implements IMCUProvider {
 
 			// Set up the External Command
 			ExternalCommandLauncher avrdude = new ExternalCommandLauncher(command, arglist, cwd);
-			avrdude.redirectErrorStream(true);
+			avrdude.redirectErrorStream(mergeoutput);
+			avrdude.setOutputBufferSize(maxlines);
 
 			MessageConsole console = null;
 			// Set the Console (if requested by the user in the preferences)
@@ -1171,132 +1623,130 @@ public class AVRDude implements IMCUProvider {
 				avrdude.setConsole(console);
 			}
 
-			ICommandOutputListener outputlistener = new OutputListener(monitor);
+			// Each invocation has its own listener, so that concurrent avrdude calls (e.g. gang
+			// programming) don't mix up their abort reasons.
+			OutputListener outputlistener = new OutputListener(monitor);
 			avrdude.setCommandOutputListener(outputlistener);
 
-			// This will delay the actual avrdude call if the previous call finished less than the
-			// user provided time in milliseconds
-			avrdudeInvocationDelay(programmerconfig, console, new SubProgressMonitor(monitor, 10));
+			// Wait until the programmer port is free. This will also delay the actual avrdude call
+			// if the previous call on the port finished less than the user provided time in
+			// milliseconds
+			lease = acquirePort(programmerconfig, console, new SubProgressMonitor(monitor, 10));
 
 			// Run avrdude
 			try {
-				fAbortReason = null;
 				int result = avrdude.launch(new SubProgressMonitor(monitor, 80));
 
 				// Test if avrdude was aborted
-				if (fAbortReason != null) {
-					throw new AVRDudeException(fAbortReason, fAbortLine);
+				Reason abortreason = outputlistener.getAbortReason();
+				if (abortreason != null) {
+					throw new AVRDudeException(abortreason, outputlistener.getAbortLine());
 				}
 
 				if (result == -1) {
 					throw new AVRDudeException(Reason.USER_CANCEL, "");
 				}
+
+				// Not all errors are known to the OutputListener, e.g. verification errors
+				if (checkexitcode && result != 0) {
+					String lastline = outputlistener.getLastLine();
+					throw new AVRDudeException(Reason.EXIT_CODE, "avrdude exited with code "
+							+ result + (lastline != null ? ": " + lastline : ""));
+				}
 			} catch (IOException e) {
 				// Something didn't work while running the external command
 				throw new AVRDudeException(Reason.NO_AVRDUDE_FOUND,
 						"Cannot run AVRDude executable. Please check the AVR path preferences.", e);
 			}
 
-			// Everything was fine: get the ooutput from avrdude and return it
-			// to the caller
-			List<String> stdout = avrdude.getStdOut();
-
 			monitor.worked(10);
 
-			return stdout;
+			return avrdude;
 		} finally {
 			monitor.done();
-			fLastAvrdudeFinish = System.currentTimeMillis();
+			if (lease != null) {
+				lease.release();
+			}
 		}
 	}
 
 	/**
-	 * Delay for the user specified invocation delay time.
-	 * <p>
-	 * This method will take the user supplied delay value from the given ProgrammerConfig, check
-	 * how much time has passed since the last avrdude call finished and - if actually required -
-	 * wait for the remaining milliseconds.
-	 * </p>
+	 * Acquire the programmer port of the given ProgrammerConfig.
 	 * <p>
-	 * While sleeping this method will wake up every 10 ms to check if the user has cancelled, in
-	 * which case an {@link AVRDudeException} with {@link Reason#USER_CANCEL} is thrown.
+	 * The port is leased from the {@link PortArbiter}, which waits until all other avrdude calls
+	 * on the same port have finished and the user supplied invocation delay from the given
+	 * ProgrammerConfig has passed. Calls on different ports are not delayed.
 	 * </p>
 	 * 
 	 * @param programmerconfig
-	 *            contains the delay value. if <code>null</code> this method returns immediatly.
+	 *            contains the port and the delay value. if <code>null</code> this method returns
+	 *            immediatly.
 	 * @param console
-	 *            If not <code>null</code>, then the start and end of the delay is logged on the
-	 *            console.
+	 *            If not <code>null</code>, then the wait time is logged on the console.
 	 * @param monitor
 	 *            polled for user cancel event.
+	 * @return The lease for the port, which must be released once avrdude has finished, or
+	 *         <code>null</code> if no ProgrammerConfig is available.
 	 * @throws AVRDudeException
-	 *             when the user cancelles the delay.
+	 *             when the user cancelles the wait.
 	 */
-	private void avrdudeInvocationDelay(final ProgrammerConfig programmerconfig,
+	private PortLease acquirePort(final ProgrammerConfig programmerconfig,
 			MessageConsole console, IProgressMonitor monitor) throws AVRDudeException {
 
 		// return if no ProgrammerConfig is available
 		if (programmerconfig == null) {
-			return;
+			return null;
 		}
 
 		// Get the optional avrdude invocation delay value
+		int delay = 0;
 		String delayvalue = programmerconfig.getPostAvrdudeDelay();
-		if (delayvalue == null || delayvalue.length() == 0) {
-			return;
-		}
-		final int delay = Integer.decode(delayvalue);
-		if (delay == 0) {
-			return;
+		if (delayvalue != null && delayvalue.length() > 0) {
+			delay = Integer.decode(delayvalue);
 		}
 
-		IOConsoleOutputStream ostream = null;
-		if (console != null) {
-			ostream = console.newOutputStream();
+		PortLease lease;
+		try {
+			monitor.beginTask("Waiting for programmer port", 1);
+			lease = PortArbiter.getDefault().acquire(programmerconfig.getPort(), delay, monitor);
+		} catch (AVRDudeException ade) {
+			logPortWait(console, ">>> waiting for programmer port: cancelled\n");
+			throw ade;
+		} finally {
+			monitor.done();
 		}
 
-		final long targetmillis = fLastAvrdudeFinish + delay;
+		// Only log noticeable waits
+		if (lease.getWaitTime() > 0) {
+			logPortWait(console, "\n>>> waited " + lease.getWaitTime()
+					+ " milliseconds for programmer port\n");
+		}
+		return lease;
+	}
 
-		// Quick exit if the delay has already expired
-		int targetdelay = (int) (targetmillis - System.currentTimeMillis());
-		if (targetdelay < 1) {
+	/**
+	 * Write a message about the programmer port wait to the given console.
+	 * 
+	 * @param console
+	 *            The console, may be <code>null</code>.
+	 * @param message
+	 */
+	private void logPortWait(MessageConsole console, String message) {
+		if (console == null) {
 			return;
 		}
-
+		IOConsoleOutputStream ostream = console.newOutputStream();
 		try {
-			monitor.beginTask("delay", targetdelay);
-
-			writeOutput(ostream, "\n>>> avrdude invocation delay: " + targetdelay
-					+ " milliseconds\n");
-
-			// delay for specified amount of milliseconds
-			// To allow user cancel during long delays we check the monitor every 10
-			// milliseconds.
-			// This is the fix for Bug 2071415
-			while (System.currentTimeMillis() < targetmillis) {
-				if (monitor.isCanceled()) {
-					writeOutput(ostream, ">>> avrdude invocation delay: cancelled\n");
-					throw new AVRDudeException(Reason.USER_CANCEL, "User cancelled");
-				}
-				Thread.sleep(10);
-			}
-			writeOutput(ostream, ">>> avrdude invocation delay: finished\n");
-
-		} catch (InterruptedException e) {
-			throw new AVRDudeException(Reason.USER_CANCEL, "System interrupt");
+			writeOutput(ostream, message);
 		} catch (IOException e) {
 			// ignore exception
 		} finally {
-			if (ostream != null) {
-				try {
-					ostream.close();
-				} catch (IOException e) {
-					// ignore exception
-				}
+			try {
+				ostream.close();
+			} catch (IOException e) {
+				// ignore exception
 			}
-			monitor.done();
 		}
-
 	}
 
 	/**
@@ -1324,14 +1774,6 @@ public class AVRDude implements IMCUProvider {
 		return new Path(tmpdir);
 	}
 
-	/**
-	 * The Reason code why avrdude was aborted (or <code>null</code> if avrdude finished normally)
-	 */
-	protected volatile Reason	fAbortReason;
-
-	/** The line from the avrdude output that caused the abort */
-	protected String			fAbortLine;
-
 	/**
 	 * Internal class to listen to the output of avrdude and cancel avrdude if the certain key
 	 * Strings appears in the output.
@@ -1354,13 +1796,22 @@ public class AVRDude implements IMCUProvider {
 
 		private final IProgressMonitor	fProgressMonitor;
 
+		/**
+		 * The Reason code why avrdude was aborted (or <code>null</code> if avrdude finished
+		 * normally)
+		 */
+		private volatile Reason			fAbortReason;
+
+		/** The line from the avrdude output that caused the abort */
+		private volatile String			fAbortLine;
+
+		/** The last non-empty line of the avrdude output */
+		private volatile String			fLastLine;
+
 		public OutputListener(IProgressMonitor monitor) {
 			fProgressMonitor = monitor;
 		}
 
-		// private Reason fAbortReason;
-		// private String fAbortLine;
-
 		/*
 		 * (non-Javadoc)
 		 * @see
@@ -1369,14 +1820,19 @@ public class AVRDude implements IMCUProvider {
 		 */
 		public void init(IProgressMonitor monitor) {
 			// fProgressMonitor = monitor;
-			// fAbortLine = null;
-			// fAbortReason = null;
+			fAbortLine = null;
+			fAbortReason = null;
+			fLastLine = null;
 		}
 
 		public void handleLine(String line, StreamSource source) {
 
 			boolean abort = false;
 
+			if (line.trim().length() > 0) {
+				fLastLine = line.trim();
+			}
+
 			if (line.contains("timeout")) {
 				abort = true;
 				fAbortReason = Reason.TIMEOUT;
@@ -1446,6 +1902,14 @@ public class AVRDude implements IMCUProvider {
 			return fAbortReason;
 		}
 
+		/**
+		 * @return The last non-empty line of the avrdude output, or <code>null</code> if avrdude
+		 *         had no output.
+		 */
+		public String getLastLine() {
+			return fLastLine;
+		}
+
 	}
 
 	/**
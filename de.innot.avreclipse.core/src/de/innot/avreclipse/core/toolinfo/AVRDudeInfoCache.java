@@ -0,0 +1,468 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.toolinfo;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
+
+import de.innot.avreclipse.AVRPlugin;
+import de.innot.avreclipse.core.toolinfo.AVRDude.ConfigEntry;
+import de.innot.avreclipse.core.toolinfo.AVRDude.ConfigProgrammerEntry;
+
+/**
+ * Persistent cache for the MCU and programmer information gathered from avrdude.
+ * <p>
+ * Getting the list of MCUs and programmers requires avrdude to be executed and the complete
+ * avrdude.conf file to be parsed. This class stores the results in a properties file in the plugin
+ * state area (<code>.metadata/.plugins/de.innot.avreclipse.core/avrdudecache.properties</code>) so
+ * that they are available without running avrdude again after a restart or in a new workspace.
+ * </p>
+ * <p>
+ * Each cached list is only valid as long as
+ * <ul>
+ * <li>the path, size and modification time of the avrdude executable,</li>
+ * <li>the optional user supplied custom configuration file and</li>
+ * <li>the modification time of all avrdude configuration files referenced by the list</li>
+ * </ul>
+ * are the same as when the list was stored. If any of them has changed the list is discarded and
+ * avrdude is run again.
+ * </p>
+ * <p>
+ * This class is used internally by {@link AVRDude} only.
+ * </p>
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ */
+class AVRDudeInfoCache {
+
+	/** Version of the cache file format. Cache files with other versions are ignored. */
+	private final static String	CACHE_VERSION		= "1";
+
+	private final static String	KEY_VERSION			= "cache.version";
+
+	private final static String	SECTION_MCUS		= "mcu";
+	private final static String	SECTION_PROGRAMMERS	= "programmer";
+
+	private final static String	KEY_TOOLKEY			= ".toolkey";
+	private final static String	KEY_CONFIGCOUNT		= ".configfiles";
+	private final static String	KEY_COUNT			= ".count";
+
+	private final File			fCacheFile;
+
+	/** The cache content. Loaded lazily on first access. */
+	private Properties			fProps				= null;
+
+	/**
+	 * Create a new cache that is backed by the given file.
+	 * <p>
+	 * The file does not need to exist. It is created when the first list is stored.
+	 * </p>
+	 *
+	 * @param cachefile
+	 *            <code>File</code> for the persistent cache.
+	 */
+	AVRDudeInfoCache(File cachefile) {
+		fCacheFile = cachefile;
+	}
+
+	/**
+	 * Get the cached list of MCU entries as read from the output of <code>avrdude -p?</code>.
+	 *
+	 * @param toolpath
+	 *            Path to the avrdude executable
+	 * @param customconfig
+	 *            The custom configuration file passed to avrdude or an empty String
+	 * @return Map of avrdude MCU ids to their <code>ConfigEntry</code>, or <code>null</code> if
+	 *         the cache has no valid list for the given avrdude executable.
+	 */
+	synchronized Map<String, ConfigEntry> getMCUEntries(IPath toolpath, String customconfig) {
+
+		if (!isValid(SECTION_MCUS, toolpath, customconfig)) {
+			return null;
+		}
+
+		Properties props = getProperties();
+		int count = getInt(props, SECTION_MCUS + KEY_COUNT);
+		Map<String, ConfigEntry> result = new HashMap<String, ConfigEntry>(count);
+		for (int i = 0; i < count; i++) {
+			String prefix = SECTION_MCUS + "." + i;
+			ConfigEntry entry = new ConfigEntry();
+			if (!readEntry(props, prefix, entry)) {
+				return null;
+			}
+			result.put(entry.fAvrdudeId, entry);
+		}
+		return result;
+	}
+
+	/**
+	 * Store the list of MCU entries for the given avrdude executable.
+	 *
+	 * @param toolpath
+	 *            Path to the avrdude executable
+	 * @param customconfig
+	 *            The custom configuration file passed to avrdude or an empty String
+	 * @param entries
+	 *            Map of avrdude MCU ids to their <code>ConfigEntry</code>
+	 */
+	synchronized void putMCUEntries(IPath toolpath, String customconfig,
+			Map<String, ConfigEntry> entries) {
+
+		String toolkey = getToolKey(toolpath, customconfig);
+		if (toolkey == null || entries.isEmpty()) {
+			// Don't cache anything if avrdude is not at a known location (e.g. taken from the
+			// system path) or if avrdude did not return anything useful.
+			return;
+		}
+
+		Properties props = getProperties();
+		removeSection(props, SECTION_MCUS);
+
+		Set<IPath> configfiles = new LinkedHashSet<IPath>();
+		int index = 0;
+		for (ConfigEntry entry : entries.values()) {
+			writeEntry(props, SECTION_MCUS + "." + index++, entry);
+			configfiles.add(entry.fConfigfile);
+		}
+		props.setProperty(SECTION_MCUS + KEY_COUNT, Integer.toString(index));
+		writeSectionKey(props, SECTION_MCUS, toolkey, configfiles);
+
+		store();
+	}
+
+	/**
+	 * Get the cached list of programmer entries as parsed from the avrdude.conf file.
+	 * <p>
+	 * The parent references of the returned entries are already resolved.
+	 * </p>
+	 *
+	 * @param toolpath
+	 *            Path to the avrdude executable
+	 * @param customconfig
+	 *            The custom configuration file passed to avrdude or an empty String
+	 * @return Map of avrdude programmer ids to their <code>ConfigProgrammerEntry</code>, or
+	 *         <code>null</code> if the cache has no valid list for the given avrdude executable.
+	 */
+	synchronized Map<String, ConfigProgrammerEntry> getProgrammerEntries(IPath toolpath,
+			String customconfig) {
+
+		if (!isValid(SECTION_PROGRAMMERS, toolpath, customconfig)) {
+			return null;
+		}
+
+		Properties props = getProperties();
+		int count = getInt(props, SECTION_PROGRAMMERS + KEY_COUNT);
+		Map<String, ConfigProgrammerEntry> result = new HashMap<String, ConfigProgrammerEntry>(
+				count);
+		Map<ConfigProgrammerEntry, String> parents = new HashMap<ConfigProgrammerEntry, String>();
+
+		for (int i = 0; i < count; i++) {
+			String prefix = SECTION_PROGRAMMERS + "." + i;
+			ConfigProgrammerEntry entry = new ConfigProgrammerEntry();
+			if (!readEntry(props, prefix, entry)) {
+				return null;
+			}
+			entry.fType = props.getProperty(prefix + ".type");
+			entry.fConnectionType = props.getProperty(prefix + ".connectiontype");
+			String lines = props.getProperty(prefix + ".lines");
+			if (lines != null && lines.length() > 0) {
+				entry.fConfigLines.addAll(Arrays.asList(lines.split("\n", -1)));
+			}
+			String parent = props.getProperty(prefix + ".parent");
+			if (parent != null) {
+				parents.put(entry, parent);
+			}
+			result.put(entry.fAvrdudeId, entry);
+		}
+
+		// resolve the parent references
+		for (Map.Entry<ConfigProgrammerEntry, String> parent : parents.entrySet()) {
+			parent.getKey().fParent = result.get(parent.getValue());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Store the list of programmer entries for the given avrdude executable.
+	 *
+	 * @param toolpath
+	 *            Path to the avrdude executable
+	 * @param customconfig
+	 *            The custom configuration file passed to avrdude or an empty String
+	 * @param entries
+	 *            Map of avrdude programmer ids to their <code>ConfigProgrammerEntry</code>
+	 */
+	synchronized void putProgrammerEntries(IPath toolpath, String customconfig,
+			Map<String, ConfigProgrammerEntry> entries) {
+
+		String toolkey = getToolKey(toolpath, customconfig);
+		if (toolkey == null || entries.isEmpty()) {
+			return;
+		}
+
+		Properties props = getProperties();
+		removeSection(props, SECTION_PROGRAMMERS);
+
+		Set<IPath> configfiles = new LinkedHashSet<IPath>();
+		int index = 0;
+		for (ConfigProgrammerEntry entry : entries.values()) {
+			String prefix = SECTION_PROGRAMMERS + "." + index++;
+			writeEntry(props, prefix, entry);
+			setOptional(props, prefix + ".type", entry.fType);
+			setOptional(props, prefix + ".connectiontype", entry.fConnectionType);
+			if (entry.fParent != null) {
+				props.setProperty(prefix + ".parent", entry.fParent.fAvrdudeId);
+			}
+			props.setProperty(prefix + ".lines", join(entry.fConfigLines));
+			configfiles.add(entry.fConfigfile);
+		}
+		props.setProperty(SECTION_PROGRAMMERS + KEY_COUNT, Integer.toString(index));
+		writeSectionKey(props, SECTION_PROGRAMMERS, toolkey, configfiles);
+
+		store();
+	}
+
+	/**
+	 * Remove all cached lists, including the backing file.
+	 */
+	synchronized void clear() {
+		fProps = new Properties();
+		if (fCacheFile.exists() && !fCacheFile.delete()) {
+			log(IStatus.WARNING, "Could not delete avrdude cache file [" + fCacheFile + "]", null);
+		}
+	}
+
+	/**
+	 * Check if the given section has been stored for the given avrdude executable and if all
+	 * configuration files are still unchanged.
+	 */
+	private boolean isValid(String section, IPath toolpath, String customconfig) {
+
+		String toolkey = getToolKey(toolpath, customconfig);
+		if (toolkey == null) {
+			return false;
+		}
+
+		Properties props = getProperties();
+		if (!toolkey.equals(props.getProperty(section + KEY_TOOLKEY))) {
+			return false;
+		}
+
+		int configcount = getInt(props, section + KEY_CONFIGCOUNT);
+		for (int i = 0; i < configcount; i++) {
+			String prefix = section + KEY_CONFIGCOUNT + "." + i;
+			String path = props.getProperty(prefix + ".path");
+			String mtime = props.getProperty(prefix + ".mtime");
+			if (path == null || mtime == null) {
+				return false;
+			}
+			File configfile = new File(path);
+			if (!Long.toString(configfile.lastModified()).equals(mtime)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Get the key for the given avrdude executable.
+	 * <p>
+	 * The key consists of the path, the size and the modification date of the executable plus the
+	 * name of the custom configuration file (if any).
+	 * </p>
+	 *
+	 * @return String with the key or <code>null</code> if the executable is not a readable file.
+	 */
+	private String getToolKey(IPath toolpath, String customconfig) {
+
+		File executable = toolpath.toFile();
+		if (!executable.isFile()) {
+			// On Windows the path does not include the extension.
+			File exefile = toolpath.addFileExtension("exe").toFile();
+			if (!exefile.isFile()) {
+				return null;
+			}
+			executable = exefile;
+		}
+
+		StringBuilder key = new StringBuilder();
+		key.append(executable.getAbsolutePath());
+		key.append('|').append(executable.length());
+		key.append('|').append(executable.lastModified());
+		if (customconfig != null && customconfig.length() > 0) {
+			File configfile = new File(customconfig);
+			key.append('|').append(customconfig);
+			key.append('|').append(configfile.lastModified());
+		}
+		return key.toString();
+	}
+
+	private void writeSectionKey(Properties props, String section, String toolkey,
+			Collection<IPath> configfiles) {
+		props.setProperty(section + KEY_TOOLKEY, toolkey);
+		int index = 0;
+		for (IPath configpath : configfiles) {
+			if (configpath == null) {
+				continue;
+			}
+			String prefix = section + KEY_CONFIGCOUNT + "." + index++;
+			File configfile = configpath.toFile();
+			props.setProperty(prefix + ".path", configfile.getPath());
+			props.setProperty(prefix + ".mtime", Long.toString(configfile.lastModified()));
+		}
+		props.setProperty(section + KEY_CONFIGCOUNT, Integer.toString(index));
+	}
+
+	private boolean readEntry(Properties props, String prefix, ConfigEntry entry) {
+		entry.fAvrdudeId = props.getProperty(prefix + ".id");
+		if (entry.fAvrdudeId == null) {
+			return false;
+		}
+		entry.fDescription = props.getProperty(prefix + ".description");
+		String configfile = props.getProperty(prefix + ".configfile");
+		if (configfile != null) {
+			entry.fConfigfile = new Path(configfile);
+		}
+		entry.fLinenumber = getInt(props, prefix + ".line");
+		return true;
+	}
+
+	private void writeEntry(Properties props, String prefix, ConfigEntry entry) {
+		props.setProperty(prefix + ".id", entry.fAvrdudeId);
+		setOptional(props, prefix + ".description", entry.fDescription);
+		if (entry.fConfigfile != null) {
+			props.setProperty(prefix + ".configfile", entry.fConfigfile.toOSString());
+		}
+		props.setProperty(prefix + ".line", Integer.toString(entry.fLinenumber));
+	}
+
+	private void removeSection(Properties props, String section) {
+		List<Object> keys = new ArrayList<Object>(props.keySet());
+		for (Object key : keys) {
+			if (((String) key).startsWith(section + ".")) {
+				props.remove(key);
+			}
+		}
+	}
+
+	private Properties getProperties() {
+		if (fProps != null) {
+			return fProps;
+		}
+
+		fProps = new Properties();
+		if (fCacheFile.canRead()) {
+			InputStream is = null;
+			try {
+				is = new FileInputStream(fCacheFile);
+				fProps.load(is);
+			} catch (IOException e) {
+				log(IStatus.WARNING, "Can't read avrdude cache file [" + fCacheFile + "]", e);
+				fProps.clear();
+			} finally {
+				if (is != null) {
+					try {
+						is.close();
+					} catch (IOException e) {
+						// ignore exception
+					}
+				}
+			}
+			if (!CACHE_VERSION.equals(fProps.getProperty(KEY_VERSION))) {
+				// Old or unknown format: start with an empty cache
+				fProps.clear();
+			}
+		}
+		return fProps;
+	}
+
+	private void store() {
+		fProps.setProperty(KEY_VERSION, CACHE_VERSION);
+
+		File parent = fCacheFile.getParentFile();
+		if (parent != null && !parent.exists()) {
+			parent.mkdirs();
+		}
+
+		OutputStream os = null;
+		try {
+			os = new FileOutputStream(fCacheFile);
+			fProps.store(os, "avrdude MCU and programmer cache. Do not edit.");
+		} catch (IOException e) {
+			// Not fatal. The information will be read from avrdude again at the next start.
+			log(IStatus.WARNING, "Can't write avrdude cache file [" + fCacheFile + "]", e);
+		} finally {
+			if (os != null) {
+				try {
+					os.close();
+				} catch (IOException e) {
+					// ignore exception
+				}
+			}
+		}
+	}
+
+	private static void setOptional(Properties props, String key, String value) {
+		if (value != null) {
+			props.setProperty(key, value);
+		}
+	}
+
+	private static int getInt(Properties props, String key) {
+		String value = props.getProperty(key);
+		if (value == null) {
+			return 0;
+		}
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException nfe) {
+			return 0;
+		}
+	}
+
+	private static String join(List<String> lines) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < lines.size(); i++) {
+			if (i > 0) {
+				sb.append('\n');
+			}
+			sb.append(lines.get(i));
+		}
+		return sb.toString();
+	}
+
+	private static void log(int severity, String message, Throwable exc) {
+		AVRPlugin plugin = AVRPlugin.getDefault();
+		if (plugin != null) {
+			plugin.log(new Status(severity, AVRPlugin.PLUGIN_ID, message, exc));
+		}
+	}
+}
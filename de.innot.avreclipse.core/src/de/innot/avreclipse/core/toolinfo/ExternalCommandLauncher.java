@@ -16,7 +16,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.IPath;
@@ -45,9 +53,19 @@ import de.innot.avreclipse.core.toolinfo.ICommandOutputListener.StreamSource;
  * to get the output line by line while it is generated, for example to update the user interface.
  * </p>
  * <p>
+ * For long running programs with lots of output the buffering can be limited with
+ * {@link #setOutputBufferSize(int)}. Then only the last lines are kept in the lists (or none at
+ * all), while the listener and the console still get every line.
+ * </p>
+ * <p>
  * Optionally an <code>IProgressMonitor</code> can be passed to the launch method to cancel
  * running commands
  * </p>
+ * <p>
+ * The output streams are read by daemon threads from a pool shared by all launchers, so the many
+ * short tool invocations (e.g. while a property page is loading) do not need to start new threads
+ * each time.
+ * </p>
  * 
  * @author Thomas Holland
  * @since 2.2
@@ -55,14 +73,32 @@ import de.innot.avreclipse.core.toolinfo.ICommandOutputListener.StreamSource;
  */
 public class ExternalCommandLauncher {
 
-	/** Lock for internal synchronization */
-	private final Object			fRunLock;
+	/** Output buffer size to keep all lines of the output. This is the default. */
+	public final static int			BUFFER_ALL			= -1;
+
+	/** Output buffer size to keep no output at all. */
+	public final static int			BUFFER_NONE			= 0;
+
+	/** Maximum number of pooled threads reading the output of external programs */
+	private final static int		MAX_POOLED_READERS	= 8;
+
+	/** Time in milliseconds after which an idle pooled reader thread is stopped */
+	private final static long		READER_KEEPALIVE	= 30000;
+
+	/** Interval in milliseconds in which the progress monitor is checked for a cancel request */
+	private final static long		CANCEL_POLL_INTERVAL	= 100;
+
+	/** The thread pool shared by all launchers to read the program output */
+	private final static ThreadPoolExecutor	fReaderPool	= createReaderPool();
 
 	private final ProcessBuilder	fProcessBuilder;
 
 	private List<String>			fStdOut;
 	private List<String>			fStdErr;
 
+	/** Maximum number of lines kept per output stream, or {@link #BUFFER_ALL} */
+	private int						fBufferSize			= BUFFER_ALL;
+
 	/** The listener to be informed about each new line of output */
 	private ICommandOutputListener	fLogEventListener	= null;
 
@@ -74,6 +110,12 @@ public class ExternalCommandLauncher {
 	/**
 	 * A runnable class that will read a Stream until EOF, storing each line in a List and also
 	 * calling a listener for each line.
+	 * <p>
+	 * If the output buffer size is limited, only the last lines are kept in the List.
+	 * </p>
+	 * <p>
+	 * When EOF is reached the given latch is counted down.
+	 * </p>
 	 */
 	private class LogStreamRunner implements Runnable {
 
@@ -81,6 +123,7 @@ public class ExternalCommandLauncher {
 		private final List<String>		fLog;
 		private final StreamSource		fSource;
 		private MessageConsoleStream	fConsoleOutput	= null;
+		private final CountDownLatch	fFinished;
 
 		/**
 		 * Construct a Streamrunner that will read the given InputStream and log all lines in the
@@ -96,13 +139,16 @@ public class ExternalCommandLauncher {
 		 * @param consolestream
 		 *            <code>OutputStream</code> for secondary console output, or <code>null</code>
 		 *            for no console output.
+		 * @param finished
+		 *            <code>CountDownLatch</code> counted down when the stream has been read.
 		 */
 		public LogStreamRunner(InputStream instream, StreamSource source, List<String> log,
-				MessageConsoleStream consolestream) {
+				MessageConsoleStream consolestream, CountDownLatch finished) {
 			fReader = new BufferedReader(new InputStreamReader(instream));
 			fSource = source;
 			fLog = log;
 			fConsoleOutput = consolestream;
+			fFinished = finished;
 		}
 
 		/*
@@ -122,8 +168,14 @@ public class ExternalCommandLauncher {
 								fLogEventListener.handleLine(line, fSource);
 							}
 						}
-						// Add the line to the total output
-						fLog.add(line);
+						// Add the line to the total output, dropping the oldest line if the
+						// buffer is limited
+						if (fBufferSize != BUFFER_NONE) {
+							fLog.add(line);
+							if (fBufferSize != BUFFER_ALL && fLog.size() > fBufferSize) {
+								fLog.remove(0);
+							}
+						}
 
 						// And print to the console (if active)
 						if (fConsoleOutput != null) {
@@ -144,14 +196,46 @@ public class ExternalCommandLauncher {
 				} catch (IOException e) {
 					// can't do anything
 				}
-			}
-			synchronized (fRunLock) {
-				// Notify the caller that this thread is finished
-				fRunLock.notifyAll();
+				// Notify the caller that this stream is finished
+				fFinished.countDown();
 			}
 		}
 	}
 
+	/**
+	 * Create the thread pool for the output readers.
+	 * <p>
+	 * The pool has up to {@link #MAX_POOLED_READERS} daemon threads, which are stopped after being
+	 * idle for some time. Readers are never queued, as a queued reader could block the external
+	 * program (and with it the reader of the other stream, which holds a pool thread). If all pooled
+	 * threads are busy, a reader gets a new thread of its own instead.
+	 * </p>
+	 * 
+	 * @return new <code>ThreadPoolExecutor</code>
+	 */
+	private static ThreadPoolExecutor createReaderPool() {
+
+		final ThreadFactory factory = new ThreadFactory() {
+			private final AtomicInteger	fCount	= new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "ExternalCommandLauncher Reader "
+						+ fCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+
+		RejectedExecutionHandler overflow = new RejectedExecutionHandler() {
+			public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+				factory.newThread(r).start();
+			}
+		};
+
+		return new ThreadPoolExecutor(0, MAX_POOLED_READERS, READER_KEEPALIVE,
+				TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>(), factory, overflow);
+	}
+
 	/**
 	 * Creates a new ExternalCommandLauncher for the given command and a list of arguments.
 	 * 
@@ -181,7 +265,6 @@ public class ExternalCommandLauncher {
 	 */
 	public ExternalCommandLauncher(String command, List<String> arguments, IPath cwd) {
 		Assert.isNotNull(command);
-		fRunLock = this;
 		// make a new list suitable for ProcessBuilder, where
 		// the command is the first entry and all other
 		// arguments follow
@@ -303,37 +386,38 @@ public class ExternalCommandLauncher {
 		try {
 			monitor.beginTask("Launching " + fProcessBuilder.command().get(0), 100);
 
-			fStdOut = new ArrayList<String>();
-			fStdErr = new ArrayList<String>();
+			if (fBufferSize == BUFFER_ALL) {
+				fStdOut = new ArrayList<String>();
+				fStdErr = new ArrayList<String>();
+			} else {
+				// Limited buffers drop their first line, which is cheap for a LinkedList
+				fStdOut = new LinkedList<String>();
+				fStdErr = new LinkedList<String>();
+			}
 
 			process = fProcessBuilder.start();
 
-			Thread stdoutRunner = new Thread(new LogStreamRunner(process.getInputStream(),
-					StreamSource.STDOUT, fStdOut, stdoutConsoleStream));
-			Thread stderrRunner = new Thread(new LogStreamRunner(process.getErrorStream(),
-					StreamSource.STDERR, fStdErr, stderrConsoleStream));
-
-			synchronized (fRunLock) {
-				// Wait either for the logrunners to terminate or the user to
-				// cancel the job.
-				// The monitor is polled 10 times / sec.
-				stdoutRunner.start();
-				stderrRunner.start();
-
-				monitor.worked(5);
-
-				while (stdoutRunner.isAlive() || stderrRunner.isAlive()) {
-					fRunLock.wait(100);
-					if (monitor.isCanceled() == true) {
-						process.destroy();
-						process.waitFor();
-
-						if (defaultConsoleStream != null) {
-							// Write an Abort Message to the console (if active)
-							defaultConsoleStream.println(commandname + " execution aborted");
-						}
-						return -1;
+			CountDownLatch finished = new CountDownLatch(2);
+			fReaderPool.execute(new LogStreamRunner(process.getInputStream(), StreamSource.STDOUT,
+					fStdOut, stdoutConsoleStream, finished));
+			fReaderPool.execute(new LogStreamRunner(process.getErrorStream(), StreamSource.STDERR,
+					fStdErr, stderrConsoleStream, finished));
+
+			monitor.worked(5);
+
+			// Wait either for the logrunners to reach the end of the output or the user to
+			// cancel the job. The latch returns as soon as both are finished, the timeout is only
+			// used to check the monitor 10 times / sec.
+			while (!finished.await(CANCEL_POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+				if (monitor.isCanceled() == true) {
+					process.destroy();
+					process.waitFor();
+
+					if (defaultConsoleStream != null) {
+						// Write an Abort Message to the console (if active)
+						defaultConsoleStream.println(commandname + " execution aborted");
 					}
+					return -1;
 				}
 			}
 
@@ -373,6 +457,11 @@ public class ExternalCommandLauncher {
 
 	/**
 	 * Returns the <code>stdout</code> output from the last external Program launch.
+	 * <p>
+	 * If the output buffer size has been limited, only the last lines of the output are returned.
+	 * </p>
+	 * 
+	 * @see #setOutputBufferSize(int)
 	 * 
 	 * @return <code>List&lt;String&gt;</code> with all lines or <code>null</code> if the
 	 *         external program has never been launched
@@ -383,6 +472,11 @@ public class ExternalCommandLauncher {
 
 	/**
 	 * Returns the <code>stderr</code> output from the last external Program launch.
+	 * <p>
+	 * If the output buffer size has been limited, only the last lines of the output are returned.
+	 * </p>
+	 * 
+	 * @see #setOutputBufferSize(int)
 	 * 
 	 * @return <code>List&lt;String&gt;</code> with all lines or <code>null</code> if the
 	 *         external program has never been launched
@@ -391,6 +485,29 @@ public class ExternalCommandLauncher {
 		return fStdErr;
 	}
 
+	/**
+	 * Sets the maximum number of output lines kept for each of <code>stdout</code> and
+	 * <code>stderr</code>.
+	 * <p>
+	 * By default all lines are kept, which for programs with a very verbose output (like avrdude
+	 * with <code>-vvvv</code> while uploading a large flash image) can use a lot of memory. With a
+	 * limited buffer only the last <code>lines</code> lines are kept, e.g. for error reports. With
+	 * {@link #BUFFER_NONE} the output is only passed to the command output listener and the
+	 * console, if set.
+	 * </p>
+	 * <p>
+	 * This method must be called before the {@link #launch()} method.
+	 * </p>
+	 * 
+	 * @param lines
+	 *            Number of lines to keep, {@link #BUFFER_NONE} for no lines or {@link #BUFFER_ALL}
+	 *            to keep the complete output.
+	 */
+	public void setOutputBufferSize(int lines) {
+		Assert.isLegal(lines >= BUFFER_ALL);
+		fBufferSize = lines;
+	}
+
 	/**
 	 * Sets a listener that will receive all lines from the external program output as they are
 	 * read.
@@ -10,18 +10,22 @@
  *******************************************************************************/
 package de.innot.avreclipse.core.toolinfo;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.eclipse.core.runtime.IPath;
 
+import de.innot.avreclipse.AVRPlugin;
 import de.innot.avreclipse.PluginIDs;
 import de.innot.avreclipse.core.IMCUProvider;
 import de.innot.avreclipse.core.paths.AVRPath;
@@ -34,6 +38,11 @@ import de.innot.avreclipse.core.util.AVRMCUidConverter;
  * <p>
  * It can return a list of all supported target mcus.
  * </p>
+ * <p>
+ * The list of mcus is taken from the files of the toolchain (see {@link GCCDeviceScanner}) and
+ * stored in a persistent cache. avr-gcc is only run to get the list if the toolchain does not have
+ * the expected layout.
+ * </p>
  * 
  * @author Thomas Holland
  * @since 2.1
@@ -50,10 +59,16 @@ public class GCC extends BaseToolInfo implements IMCUProvider {
 
 	private final IPathProvider	fPathProvider	= new AVRPathProvider(AVRPath.AVRGCC);
 
+	/** Name of the persistent MCU cache file in the plugin state location */
+	private final static String	CACHEFILENAME	= "gcccache.properties";
+
+	/** The persistent MCU cache */
+	private GCCInfoCache		fInfoCache		= null;
+
 	/**
 	 * Get an instance of this Tool.
 	 */
-	public static GCC getDefault() {
+	public static synchronized GCC getDefault() {
 		if (instance == null)
 			instance = new GCC();
 		return instance;
@@ -114,15 +129,26 @@ public class GCC extends BaseToolInfo implements IMCUProvider {
 		}
 	}
 
+	/**
+	 * Remove the list of MCUs from the memory and the persistent cache, so that it is read from
+	 * the toolchain again.
+	 */
+	public synchronized void clearCache() {
+		fMCUmap = null;
+		fCurrentPath = null;
+		getInfoCache().clear();
+	}
+
 	/**
 	 * @return Map &lt;mcu id, UI name&gt; of all supported MCUs
 	 */
-	private Map<String, String> loadMCUList() throws IOException {
+	private synchronized Map<String, String> loadMCUList() throws IOException {
 
-		if (!getToolPath().equals(fCurrentPath)) {
+		IPath toolpath = getToolPath();
+		if (!toolpath.equals(fCurrentPath)) {
 			// toolpath has changed, reload the list
 			fMCUmap = null;
-			fCurrentPath = getToolPath();
+			fCurrentPath = toolpath;
 		}
 
 		if (fMCUmap != null) {
@@ -130,7 +156,62 @@ public class GCC extends BaseToolInfo implements IMCUProvider {
 			return fMCUmap;
 		}
 
-		fMCUmap = new HashMap<String, String>();
+		File executable = toolpath.toFile();
+		if (!executable.isFile()) {
+			// On Windows the path does not include the extension.
+			File exefile = toolpath.addFileExtension("exe").toFile();
+			if (exefile.isFile()) {
+				executable = exefile;
+			}
+		}
+		GCCDeviceScanner scanner = new GCCDeviceScanner(executable);
+		String toolkey = scanner.getToolKey();
+
+		Set<String> mcuids = null;
+		if (toolkey != null) {
+			mcuids = getInfoCache().getMCUs(toolkey);
+			if (mcuids == null) {
+				mcuids = scanner.scan();
+			}
+		}
+		if (mcuids == null || mcuids.isEmpty()) {
+			// avr-gcc not at a known location or an unknown toolchain layout
+			try {
+				mcuids = readMCUList();
+			} catch (IOException e) {
+				// Don't try again until the toolpath changes
+				fMCUmap = Collections.emptyMap();
+				throw e;
+			}
+		}
+		if (toolkey != null) {
+			getInfoCache().putMCUs(toolkey, mcuids);
+		}
+
+		Map<String, String> mcumap = new HashMap<String, String>();
+		for (String mcuid : mcuids) {
+			mcumap.put(mcuid, AVRMCUidConverter.id2name(mcuid));
+		}
+		fMCUmap = Collections.unmodifiableMap(mcumap);
+		return fMCUmap;
+	}
+
+	private GCCInfoCache getInfoCache() {
+		if (fInfoCache == null) {
+			IPath cachefile = AVRPlugin.getDefault().getStateLocation().append(CACHEFILENAME);
+			fInfoCache = new GCCInfoCache(cachefile.toFile());
+		}
+		return fInfoCache;
+	}
+
+	/**
+	 * Get the list of supported MCUs from the output of avr-gcc.
+	 * 
+	 * @return Set of the mcu ids, empty if avr-gcc could not be run.
+	 */
+	private Set<String> readMCUList() throws IOException {
+
+		Set<String> mcuids = new TreeSet<String>();
 
 		// Execute avr-gcc with the "--target-help" option and parse the
 		// output
@@ -138,8 +219,8 @@ public class GCC extends BaseToolInfo implements IMCUProvider {
 		// Of GCC and AVR CrossPack in Mac OS X
 		List<String> stdout = runCommand("-Wa,-mlist-devices", "--target-help");
 		if (stdout == null) {
-			// Return empty map on failures
-			return fMCUmap;
+			// Return empty list on failures
+			return mcuids;
 		}
 
 		// The parsing, if you can call it that, it done by looking at all the
@@ -159,12 +240,12 @@ public class GCC extends BaseToolInfo implements IMCUProvider {
 						// included
 						continue;
 					}
-					fMCUmap.put(mcuid, mcuname);
+					mcuids.add(mcuid);
 				}
 			}
 		}
 
-		return fMCUmap;
+		return mcuids;
 	}
 
 	/**
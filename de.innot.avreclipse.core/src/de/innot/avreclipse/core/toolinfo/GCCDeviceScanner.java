@@ -0,0 +1,328 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.toolinfo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import de.innot.avreclipse.core.util.AVRMCUidConverter;
+
+/**
+ * Finds the MCUs supported by an avr-gcc toolchain by looking at the files of the toolchain,
+ * without running avr-gcc.
+ * <p>
+ * The toolchain is expected in the usual layout, with the avr-gcc executable in the
+ * <code>bin</code> folder of the toolchain. The supported MCUs are taken from
+ * <ul>
+ * <li>the <code>lib/gcc/avr/<em>version</em>/device-specs/specs-<em>mcu</em></code> files of
+ * avr-gcc 5 and later, or, if there are none,</li>
+ * <li>the MCUs of the avr-libc <code>avr/io.h</code> header which have their own
+ * <code>avr/io*.h</code> header, and the <code>lib<em>mcu</em>.a</code> device libraries of
+ * avr-libc.</li>
+ * </ul>
+ * avr-libc is searched in <code>avr</code> and in <code>lib/avr</code> of the toolchain, the
+ * latter being used by some Linux distributions.
+ * </p>
+ * <p>
+ * If several gcc versions are installed side by side, only the device-specs of the version of the
+ * executable are used. The version is taken from the name of the executable or of its
+ * <code>bin/avr-gcc-<em>version</em></code> sibling. If the version can not be determined, no
+ * MCUs are returned, so that avr-gcc itself is asked.
+ * </p>
+ * <p>
+ * This class is used internally by {@link GCC} only.
+ * </p>
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ */
+class GCCDeviceScanner {
+
+	private final static String		SPECS_PREFIX	= "specs-";
+
+	private final static Pattern	fDefinedPattern	= Pattern
+															.compile("defined\\s*\\(?\\s*__AVR_(\\w+?)__");
+
+	private final static Pattern	fIncludePattern	= Pattern
+															.compile("#\\s*include\\s*<avr/(io\\w+\\.h)>");
+
+	private final static Pattern	fLibraryPattern	= Pattern.compile("lib(\\w+)\\.a");
+
+	private final static Pattern	fVersionPattern	= Pattern.compile(
+															"avr-gcc-(\\d[\\w.]*?)(\\.exe)?",
+															Pattern.CASE_INSENSITIVE);
+
+	private final File				fExecutable;
+
+	private final File				fRoot;
+
+	/**
+	 * Create a scanner for the toolchain of the given avr-gcc executable.
+	 *
+	 * @param executable
+	 *            The avr-gcc executable.
+	 */
+	GCCDeviceScanner(File executable) {
+		fExecutable = executable;
+		File bin = executable.getAbsoluteFile().getParentFile();
+		fRoot = bin != null ? bin.getParentFile() : null;
+	}
+
+	/**
+	 * Get the key of the toolchain for the persistent cache.
+	 * <p>
+	 * The key consists of the path, size and modification time of the executable and the
+	 * modification times of all files and folders used by {@link #scan()}, so that it changes
+	 * when either avr-gcc or avr-libc is updated.
+	 * </p>
+	 *
+	 * @return The key, or <code>null</code> if the executable is not a file.
+	 */
+	String getToolKey() {
+		if (!fExecutable.isFile()) {
+			return null;
+		}
+		StringBuilder key = new StringBuilder();
+		key.append(fExecutable.getAbsolutePath());
+		key.append('|').append(fExecutable.length());
+		key.append('|').append(fExecutable.lastModified());
+		for (File source : getSources()) {
+			key.append('|').append(source.lastModified());
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Scan the toolchain for the supported MCUs.
+	 *
+	 * @return Set of the MCU ids, sorted. Empty if the toolchain does not have the expected
+	 *         layout.
+	 */
+	Set<String> scan() {
+
+		Set<String> mcus = new TreeSet<String>();
+
+		List<File> specsdirs = getDeviceSpecsFolders();
+		if (!specsdirs.isEmpty()) {
+			// the device-specs are authoritative for gcc 5 and later
+			File specsdir = selectDeviceSpecsFolder(specsdirs);
+			String[] names = specsdir != null ? specsdir.list() : null;
+			if (names != null) {
+				for (String name : names) {
+					if (name.startsWith(SPECS_PREFIX)) {
+						addMCU(mcus, name.substring(SPECS_PREFIX.length()));
+					}
+				}
+			}
+			return mcus;
+		}
+
+		for (File avrlibc : getAVRLibcFolders()) {
+			File includedir = new File(avrlibc, "include" + File.separator + "avr");
+			try {
+				readIOHeader(new File(includedir, "io.h"), mcus);
+			} catch (IOException ioe) {
+				// no or unreadable io.h, try the device libraries
+			}
+
+			File[] archdirs = new File(avrlibc, "lib").listFiles();
+			if (archdirs == null) {
+				continue;
+			}
+			for (File archdir : archdirs) {
+				String[] names = archdir.list();
+				if (names == null) {
+					continue;
+				}
+				for (String name : names) {
+					Matcher m = fLibraryPattern.matcher(name);
+					if (m.matches()) {
+						addMCU(mcus, m.group(1));
+					}
+				}
+			}
+		}
+		return mcus;
+	}
+
+	/**
+	 * Add all MCUs of the avr-libc <code>io.h</code> header which have their own header file.
+	 * <p>
+	 * The header selects the device specific header with
+	 *
+	 * <pre>
+	 * #elif defined (__AVR_ATmega328P__)
+	 * #  include &lt;avr/iom328p.h&gt;
+	 * </pre>
+	 *
+	 * </p>
+	 */
+	static void readIOHeader(File iofile, Set<String> mcus) throws IOException {
+
+		BufferedReader reader = new BufferedReader(new FileReader(iofile));
+		try {
+			List<String> defined = new ArrayList<String>();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String trimmed = line.trim();
+				if (trimmed.startsWith("#if") || trimmed.startsWith("#elif")) {
+					defined.clear();
+				}
+				Matcher m = fDefinedPattern.matcher(line);
+				while (m.find()) {
+					defined.add(m.group(1));
+				}
+				m = fIncludePattern.matcher(line);
+				if (m.find()) {
+					if (new File(iofile.getParentFile(), m.group(1)).isFile()) {
+						for (String macro : defined) {
+							addMCU(mcus, macro.toLowerCase());
+						}
+					}
+					defined.clear();
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static void addMCU(Set<String> mcus, String mcuid) {
+		// generic family names like "avr5" are not included
+		if (AVRMCUidConverter.id2name(mcuid) != null) {
+			mcus.add(mcuid);
+		}
+	}
+
+	/**
+	 * @return All files and folders the result of {@link #scan()} depends on.
+	 */
+	private List<File> getSources() {
+		List<File> sources = new ArrayList<File>();
+		if (fRoot != null) {
+			// new gcc versions or executables change the selected device-specs
+			sources.add(new File(fRoot, "bin"));
+			sources.add(new File(fRoot, "lib" + File.separator + "gcc" + File.separator + "avr"));
+		}
+		sources.addAll(getDeviceSpecsFolders());
+		for (File avrlibc : getAVRLibcFolders()) {
+			sources.add(new File(avrlibc, "include" + File.separator + "avr" + File.separator
+					+ "io.h"));
+			File libdir = new File(avrlibc, "lib");
+			sources.add(libdir);
+			// The device libraries are in the architecture folders, whose modification times
+			// change when a library is added or removed
+			File[] archdirs = libdir.listFiles();
+			if (archdirs != null) {
+				Arrays.sort(archdirs);
+				for (File archdir : archdirs) {
+					if (archdir.isDirectory()) {
+						sources.add(archdir);
+					}
+				}
+			}
+		}
+		return sources;
+	}
+
+	/**
+	 * Select the device-specs folder of the gcc version of the executable.
+	 * 
+	 * @param specsdirs
+	 *            The device-specs folders of all installed gcc versions.
+	 * @return The folder, or <code>null</code> if the version of the executable is unknown.
+	 */
+	private File selectDeviceSpecsFolder(List<File> specsdirs) {
+		if (specsdirs.size() == 1) {
+			return specsdirs.get(0);
+		}
+
+		// The version is either in the name of the executable, or the executable is a copy of
+		// (or link to) its versioned sibling.
+		String version = getVersion(fExecutable.getName());
+		if (version == null) {
+			File[] siblings = fExecutable.getAbsoluteFile().getParentFile().listFiles();
+			if (siblings == null) {
+				return null;
+			}
+			for (File sibling : siblings) {
+				String siblingversion = getVersion(sibling.getName());
+				if (siblingversion == null || sibling.length() != fExecutable.length()) {
+					continue;
+				}
+				if (version != null && !version.equals(siblingversion)) {
+					// several versions with the same size
+					return null;
+				}
+				version = siblingversion;
+			}
+		}
+
+		for (File specsdir : specsdirs) {
+			if (specsdir.getParentFile().getName().equals(version)) {
+				return specsdir;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return The version from the name of a versioned executable like "avr-gcc-5.4.0", or
+	 *         <code>null</code>.
+	 */
+	private static String getVersion(String filename) {
+		Matcher m = fVersionPattern.matcher(filename);
+		return m.matches() ? m.group(1) : null;
+	}
+
+	private List<File> getDeviceSpecsFolders() {
+		List<File> folders = new ArrayList<File>();
+		if (fRoot == null) {
+			return folders;
+		}
+		File[] versions = new File(fRoot, "lib" + File.separator + "gcc" + File.separator + "avr")
+				.listFiles();
+		if (versions != null) {
+			for (File version : versions) {
+				File specsdir = new File(version, "device-specs");
+				if (specsdir.isDirectory()) {
+					folders.add(specsdir);
+				}
+			}
+		}
+		return folders;
+	}
+
+	private List<File> getAVRLibcFolders() {
+		List<File> folders = new ArrayList<File>();
+		if (fRoot == null) {
+			return folders;
+		}
+		File avr = new File(fRoot, "avr");
+		if (avr.isDirectory()) {
+			folders.add(avr);
+		}
+		File libavr = new File(fRoot, "lib" + File.separator + "avr");
+		if (libavr.isDirectory()) {
+			folders.add(libavr);
+		}
+		return folders;
+	}
+}
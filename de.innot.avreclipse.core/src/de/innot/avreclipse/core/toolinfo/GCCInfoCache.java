@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.toolinfo;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+
+import de.innot.avreclipse.AVRPlugin;
+
+/**
+ * Persistent cache for the list of MCUs supported by avr-gcc.
+ * <p>
+ * The list is stored in a properties file in the plugin state area (<code>.metadata/.plugins/de.innot.avreclipse.core/gcccache.properties</code>)
+ * together with the key of the toolchain it was read from. The list is only valid as long as the
+ * key is the same, see {@link GCCDeviceScanner#getToolKey()}.
+ * </p>
+ * <p>
+ * This class is used internally by {@link GCC} only.
+ * </p>
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ */
+class GCCInfoCache {
+
+	/** Version of the cache file format. Cache files with other versions are ignored. */
+	private final static String	CACHE_VERSION	= "1";
+
+	private final static String	KEY_VERSION		= "cache.version";
+	private final static String	KEY_TOOLKEY		= "toolkey";
+	private final static String	KEY_MCUS		= "mcus";
+
+	private final File			fCacheFile;
+
+	/** The cache content. Loaded lazily on first access. */
+	private Properties			fProps			= null;
+
+	/**
+	 * Create a new cache that is backed by the given file.
+	 * <p>
+	 * The file does not need to exist. It is created when the first list is stored.
+	 * </p>
+	 *
+	 * @param cachefile
+	 *            <code>File</code> for the persistent cache.
+	 */
+	GCCInfoCache(File cachefile) {
+		fCacheFile = cachefile;
+	}
+
+	/**
+	 * Get the cached list of MCUs.
+	 *
+	 * @param toolkey
+	 *            The key of the current toolchain.
+	 * @return Set of MCU ids, or <code>null</code> if the cache has no list for the toolchain.
+	 */
+	synchronized Set<String> getMCUs(String toolkey) {
+		Properties props = getProperties();
+		String mcus = props.getProperty(KEY_MCUS);
+		if (!toolkey.equals(props.getProperty(KEY_TOOLKEY)) || mcus == null) {
+			return null;
+		}
+		return new TreeSet<String>(Arrays.asList(mcus.split(",")));
+	}
+
+	/**
+	 * Store the list of MCUs of a toolchain.
+	 * <p>
+	 * Only the list of one toolchain is cached, as the toolchain does not change very often.
+	 * </p>
+	 *
+	 * @param toolkey
+	 *            The key of the toolchain.
+	 * @param mcus
+	 *            The MCU ids supported by the toolchain. Empty lists are not stored.
+	 */
+	synchronized void putMCUs(String toolkey, Set<String> mcus) {
+		if (mcus.isEmpty()) {
+			return;
+		}
+		StringBuilder list = new StringBuilder();
+		for (String mcu : mcus) {
+			if (list.length() > 0) {
+				list.append(',');
+			}
+			list.append(mcu);
+		}
+		Properties props = getProperties();
+		props.setProperty(KEY_TOOLKEY, toolkey);
+		props.setProperty(KEY_MCUS, list.toString());
+		store();
+	}
+
+	/**
+	 * Remove the cached list, including the backing file.
+	 */
+	synchronized void clear() {
+		fProps = new Properties();
+		if (fCacheFile.exists() && !fCacheFile.delete()) {
+			log("Could not delete avr-gcc cache file [" + fCacheFile + "]", null);
+		}
+	}
+
+	private Properties getProperties() {
+		if (fProps != null) {
+			return fProps;
+		}
+
+		fProps = new Properties();
+		if (fCacheFile.canRead()) {
+			InputStream is = null;
+			try {
+				is = new FileInputStream(fCacheFile);
+				fProps.load(is);
+			} catch (IOException e) {
+				log("Can't read avr-gcc cache file [" + fCacheFile + "]", e);
+				fProps.clear();
+			} finally {
+				if (is != null) {
+					try {
+						is.close();
+					} catch (IOException e) {
+						// ignore exception
+					}
+				}
+			}
+			if (!CACHE_VERSION.equals(fProps.getProperty(KEY_VERSION))) {
+				// Old or unknown format: start with an empty cache
+				fProps.clear();
+			}
+		}
+		return fProps;
+	}
+
+	private void store() {
+		fProps.setProperty(KEY_VERSION, CACHE_VERSION);
+
+		File parent = fCacheFile.getParentFile();
+		if (parent != null && !parent.exists()) {
+			parent.mkdirs();
+		}
+
+		OutputStream os = null;
+		try {
+			os = new FileOutputStream(fCacheFile);
+			fProps.store(os, "avr-gcc MCU cache. Do not edit.");
+		} catch (IOException e) {
+			// Not fatal. The list will be read from the toolchain again at the next start.
+			log("Can't write avr-gcc cache file [" + fCacheFile + "]", e);
+		} finally {
+			if (os != null) {
+				try {
+					os.close();
+				} catch (IOException e) {
+					// ignore exception
+				}
+			}
+		}
+	}
+
+	private static void log(String message, Exception e) {
+		AVRPlugin plugin = AVRPlugin.getDefault();
+		if (plugin != null) {
+			plugin.log(new Status(IStatus.WARNING, AVRPlugin.PLUGIN_ID, message, e));
+		}
+	}
+}
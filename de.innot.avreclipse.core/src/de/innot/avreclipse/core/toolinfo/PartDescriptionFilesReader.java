@@ -12,20 +12,46 @@ package de.innot.avreclipse.core.toolinfo;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
 
 import de.innot.avreclipse.core.paths.AVRPath;
 import de.innot.avreclipse.core.paths.AVRPathProvider;
 import de.innot.avreclipse.core.paths.IPathProvider;
+import de.innot.avreclipse.core.toolinfo.partdescriptionfiles.IPDFStreamReader;
 import de.innot.avreclipse.core.toolinfo.partdescriptionfiles.IPDFreader;
 import de.innot.avreclipse.core.toolinfo.partdescriptionfiles.SignatureReader;
 
 /**
  * This is an utility class to read and parse the Atmel Part Description files.
+ * <p>
+ * Each file is parsed only once and the resulting DOM is passed to all registered
+ * {@link IPDFreader}s. Readers implementing {@link IPDFStreamReader} read the file themselves. If
+ * all readers do so, no DOM is built at all.
+ * </p>
+ * <p>
+ * With {@link #setParserThreads(int)} the files can be parsed concurrently. The parsed documents
+ * are still passed to the readers one after the other and in the same order as in a sequential
+ * run, so the readers do not need to be thread safe and produce the same results.
+ * </p>
  * 
  * @author Thomas Holland
  * @since 2.2
@@ -39,6 +65,12 @@ public class PartDescriptionFilesReader {
 
 	private IPath fDevicesFolder;
 
+	/** The XML parsers, one per thread, reused for all files */
+	private final ThreadLocal<DocumentBuilder> fDocumentBuilder = new ThreadLocal<DocumentBuilder>();
+
+	/** Number of threads parsing the files. <code>1</code> parses in the calling thread. */
+	private int fParserThreads = 1;
+
 	public static PartDescriptionFilesReader getDefault() {
 		if (fInstance == null) {
 			fInstance = new PartDescriptionFilesReader();
@@ -64,6 +96,21 @@ public class PartDescriptionFilesReader {
 		fDevicesFolder = folder;
 	}
 
+	/**
+	 * Set the number of threads used to parse the PartDescriptionFiles.
+	 * <p>
+	 * The default is <code>1</code>, which parses all files in the thread calling
+	 * {@link #parseAllFiles(IProgressMonitor)}.
+	 * </p>
+	 * 
+	 * @param threads
+	 *            number of parser threads, e.g.
+	 *            <code>Runtime.getRuntime().availableProcessors()</code>
+	 */
+	public void setParserThreads(int threads) {
+		fParserThreads = Math.max(1, threads);
+	}
+
 	/**
 	 * Read all PartDescriptionFiles, parse them and pass each document to all
 	 * registered readers for further analysis.
@@ -93,6 +140,8 @@ public class PartDescriptionFilesReader {
 				return false;
 			}
 		});
+		// Always process the files in the same order
+		Arrays.sort(allfiles);
 
 		try {
 			monitor.beginTask("Parsing Atmel Part Description Files",
@@ -104,16 +153,26 @@ public class PartDescriptionFilesReader {
 				reader.start();
 			}
 
-			// Go through all files and call the read() method for each file and
-			// every registered reader
-			for (File pdffile : allfiles) {
-				monitor.subTask("Reading [" + pdffile.getName() + "]");
+			// Only build a DOM if at least one reader needs it
+			boolean needsdocument = false;
+			for (IPDFreader reader : fReaders) {
+				if (!(reader instanceof IPDFStreamReader)) {
+					needsdocument = true;
+				}
+			}
+
+			if (needsdocument && fParserThreads > 1) {
+				parseConcurrently(allfiles, monitor);
+			} else {
+				// Go through all files, parse each file and call the read() method
+				// of every registered reader with the document
+				for (File pdffile : allfiles) {
+					monitor.subTask("Reading [" + pdffile.getName() + "]");
 
-				// Pass the file to all readers
-				for (IPDFreader reader : fReaders) {
-					reader.read(pdffile);
+					Document document = needsdocument ? getDocument(pdffile) : null;
+					readDocument(document, pdffile);
+					monitor.worked(1);
 				}
-				monitor.worked(1);
 			}
 		} finally {
 			monitor.done();
@@ -127,5 +186,130 @@ public class PartDescriptionFilesReader {
 
 	}
 
+	/**
+	 * Parse the given files with {@link #fParserThreads} threads.
+	 * <p>
+	 * The files are parsed in the background while the documents are passed to the readers in the
+	 * calling thread, in the order of the given array. To limit the memory used by the DOMs, only
+	 * a few files more than there are threads are parsed ahead of the readers.
+	 * </p>
+	 * 
+	 * @param allfiles
+	 *            Array with all files to parse.
+	 * @param monitor
+	 *            <code>IProgressMonitor</code>, one tick for every file.
+	 */
+	private void parseConcurrently(File[] allfiles, IProgressMonitor monitor) {
+
+		ExecutorService executor = Executors.newFixedThreadPool(fParserThreads,
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "PartDescriptionFilesReader Parser");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+
+		try {
+			int window = fParserThreads * 2;
+			List<Future<Document>> documents = new ArrayList<Future<Document>>(allfiles.length);
+			for (int i = 0; i < allfiles.length; i++) {
+				// Keep the parsers busy
+				while (documents.size() < allfiles.length && documents.size() < i + window) {
+					final File file = allfiles[documents.size()];
+					documents.add(executor.submit(new Callable<Document>() {
+						public Document call() {
+							return getDocument(file);
+						}
+					}));
+				}
+
+				File pdffile = allfiles[i];
+				monitor.subTask("Reading [" + pdffile.getName() + "]");
+				Document document;
+				try {
+					document = documents.get(i).get();
+				} catch (ExecutionException ee) {
+					ee.getCause().printStackTrace();
+					document = null;
+				}
+				// Release the DOM as soon as all readers are done with it
+				documents.set(i, null);
+
+				readDocument(document, pdffile);
+				monitor.worked(1);
+			}
+		} catch (InterruptedException ie) {
+			// Stop parsing, but let the readers finish with what they have got so far.
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Pass the given document to all registered readers.
+	 * <p>
+	 * {@link IPDFStreamReader}s get the file instead of the document.
+	 * </p>
+	 * 
+	 * @param document
+	 *            The parsed file, or <code>null</code> if the file could not be parsed. Then it is
+	 *            ignored.
+	 * @param pdffile
+	 *            The source file of the document
+	 */
+	private void readDocument(Document document, File pdffile) {
+		for (IPDFreader reader : fReaders) {
+			if (reader instanceof IPDFStreamReader) {
+				((IPDFStreamReader) reader).read(pdffile);
+			} else if (document != null) {
+				reader.read(document, pdffile);
+			}
+		}
+	}
+
+	/**
+	 * Read and parse the given XML file and return an DOM for it.
+	 * <p>
+	 * The <code>DocumentBuilder</code> is created on the first call in each thread and then reused
+	 * for all following files.
+	 * </p>
+	 * 
+	 * @param pdffile
+	 *            <code>File</code> to an XML file.
+	 * @return <code>Document</code> root node of the DOM or <code>null</code> if the file could not
+	 *         be read or parsed.
+	 */
+	private Document getDocument(File pdffile) {
+
+		Document root = null;
+		try {
+			DocumentBuilder builder = fDocumentBuilder.get();
+			if (builder == null) {
+				DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+				builder = factory.newDocumentBuilder();
+				fDocumentBuilder.set(builder);
+			}
+			// Read the xml file
+			root = builder.parse(pdffile);
+
+		} catch (SAXParseException spe) {
+			System.out.println("\n** Parsing error, line " + spe.getLineNumber() + ", uri "
+					+ spe.getSystemId());
+			System.out.println("   " + spe.getMessage());
+			Exception e = (spe.getException() != null) ? spe.getException() : spe;
+			e.printStackTrace();
+		} catch (SAXException sxe) {
+			Exception e = (sxe.getException() != null) ? sxe.getException() : sxe;
+			e.printStackTrace();
+		} catch (ParserConfigurationException pce) {
+			pce.printStackTrace();
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+
+		return root;
+	}
 
 }
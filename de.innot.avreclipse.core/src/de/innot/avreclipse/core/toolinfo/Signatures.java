@@ -15,10 +15,13 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
@@ -54,6 +57,11 @@ import de.innot.avreclipse.core.IMCUProvider;
  * {@link #storeSignatures()} these additional signatures are persisted in the instance state area (<code>.metadata/.plugins/de.innot.avreclipse.core/signatures.properties</core>)
  * and reloaded at the next start.
  * </p>
+ * <p>
+ * For the lookup of MCU ids by signature a reverse index is used. It is created on the first lookup
+ * and replaced after the signatures have been changed, so lookups always see either the old or the
+ * new set of signatures. Use {@link #getMCUs(Collection)} to look up many signatures at once.
+ * </p>
  * @author Thomas Holland
  * @since 2.2
  *
@@ -67,12 +75,18 @@ public class Signatures implements IMCUProvider {
 	// properties are stored as key=mcuid, value=signature
 	private Properties			fProps				= new Properties();
 
+	/**
+	 * Reverse index of the signatures: key=numeric signature, value=mcuid. <code>null</code> if it
+	 * needs to be (re)built.
+	 */
+	private volatile Map<Integer, String>	fReverseIndex		= null;
+
 	private static Signatures	fInstance			= null;
 
 	/**
 	 * Get the default instance of the Signatures class
 	 */
-	public static Signatures getDefault() {
+	public static synchronized Signatures getDefault() {
 		if (fInstance == null)
 			fInstance = new Signatures();
 		return fInstance;
@@ -142,42 +156,34 @@ public class Signatures implements IMCUProvider {
 	 *         is unknown.
 	 */
 	public String getMCU(String signature) {
-		// iterate over all mcuids to find the one with the given signature
-		// I do not use a reverse lookup map because this method will not be
-		// called often and a reverse map would add code complexity.
-		
-		// However there is a problem
-		Enumeration<?> keyset = fProps.propertyNames();
-		List<String> allMCUs = new ArrayList<String>();
-		while (keyset.hasMoreElements()) {
-			Object mcukey = keyset.nextElement();
-			if (mcukey != null && mcukey instanceof String) {
-				String mcuid = (String) mcukey;
-				if (fProps.getProperty(mcuid).equalsIgnoreCase(signature)) {
-					allMCUs.add(mcuid);
-				}
-			}
-		}
-		if (allMCUs.size() == 0) {
-			// No matching MCU found
+		Integer key = parseSignature(signature);
+		if (key == null) {
 			return null;
 		}
-		if (allMCUs.size() == 1) {
-			// Only one found
-			return allMCUs.get(0);
-		}
-		
-		// more than one MCU matched the signature.
-		// find the one with the shortest name and return it.
-		String bestmcu = null;
-		int bestmculength = 99;
-		for (String currmcu : allMCUs) {
-			if (currmcu.length() < bestmculength) {
-				bestmcu = currmcu;
-				bestmculength = currmcu.length();
-			}
+		return getReverseIndex().get(key);
+	}
+
+	/**
+	 * Get the MCU ids for multiple signatures.
+	 * <p>
+	 * This is equivalent to calling {@link #getMCU(String)} for each signature, but all signatures
+	 * are resolved against the same set of known signatures, even if signatures are added
+	 * concurrently.
+	 * </p>
+	 * 
+	 * @param signatures
+	 *            Collection of signatures in hex ("0x123456")
+	 * @return Map with the given signatures as keys and the corresponding MCU ids as values.
+	 *         Unknown signatures are mapped to <code>null</code>.
+	 */
+	public Map<String, String> getMCUs(Collection<String> signatures) {
+		Map<Integer, String> index = getReverseIndex();
+		Map<String, String> result = new LinkedHashMap<String, String>(signatures.size() * 2);
+		for (String signature : signatures) {
+			Integer key = parseSignature(signature);
+			result.put(signature, key != null ? index.get(key) : null);
 		}
-		return bestmcu;
+		return result;
 	}
 
 	/**
@@ -191,13 +197,15 @@ public class Signatures implements IMCUProvider {
 	 * @param signature
 	 *            String with the signature in format "0x123456"
 	 */
-	public void addSignature(String mcuid, String signature) {
+	public synchronized void addSignature(String mcuid, String signature) {
 		Assert.isNotNull(mcuid);
 		Assert.isNotNull(signature);
 
 		String oldsig = fProps.getProperty(mcuid);
 		if (!signature.equalsIgnoreCase(oldsig)) {
 			fProps.setProperty(mcuid, signature);
+			// The reverse index is rebuilt on the next lookup
+			fReverseIndex = null;
 		}
 	}
 
@@ -211,7 +219,7 @@ public class Signatures implements IMCUProvider {
 	 * @throws IOException
 	 *             for any error writing the properties file
 	 */
-	public void storeSignatures() throws IOException {
+	public synchronized void storeSignatures() throws IOException {
 		File propsfile = getInstanceSignatureProperties();
 		FileOutputStream os = null;
 		try {
@@ -270,6 +278,65 @@ public class Signatures implements IMCUProvider {
 		return sig != null ? true : false;
 	}
 
+	/**
+	 * Get the reverse index of all signatures, building it if required.
+	 * <p>
+	 * If multiple MCUs share the same signature (e.g. ATmega169 and ATmega169p), then the one with
+	 * the shortest name is put into the index.
+	 * </p>
+	 * 
+	 * @return Unmodifiable map of signature values to MCU ids.
+	 */
+	private Map<Integer, String> getReverseIndex() {
+		Map<Integer, String> index = fReverseIndex;
+		if (index != null) {
+			return index;
+		}
+
+		synchronized (this) {
+			if (fReverseIndex == null) {
+				Map<Integer, String> newindex = new HashMap<Integer, String>();
+				Enumeration<?> keyset = fProps.propertyNames();
+				while (keyset.hasMoreElements()) {
+					Object mcukey = keyset.nextElement();
+					if (mcukey instanceof String) {
+						String mcuid = (String) mcukey;
+						Integer key = parseSignature(fProps.getProperty(mcuid));
+						if (key == null) {
+							continue;
+						}
+						String othermcu = newindex.get(key);
+						if (othermcu == null || mcuid.length() < othermcu.length()
+								|| (mcuid.length() == othermcu.length() && mcuid
+										.compareTo(othermcu) < 0)) {
+							newindex.put(key, mcuid);
+						}
+					}
+				}
+				fReverseIndex = Collections.unmodifiableMap(newindex);
+			}
+			return fReverseIndex;
+		}
+	}
+
+	/**
+	 * Convert a signature String to its numeric value.
+	 * 
+	 * @param signature
+	 *            String with a signature in hex ("0x123456")
+	 * @return The signature value or <code>null</code> if the String is not a valid number.
+	 */
+	private static Integer parseSignature(String signature) {
+		if (signature == null) {
+			return null;
+		}
+		try {
+			return Integer.decode(signature.trim());
+		} catch (NumberFormatException nfe) {
+			return null;
+		}
+	}
+
 	/**
 	 * @return File pointing to the instance signature properties file
 	 */
@@ -10,7 +10,10 @@
  *******************************************************************************/
 package de.innot.avreclipse.core.toolinfo;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -30,6 +33,10 @@ import de.innot.avreclipse.core.paths.IPathProvider;
  * This class provides some information about the used size tool in the toolchain.
  * 
  * It can return a list of all supported format options.
+ * <p>
+ * The memory usage of a build artifact can be determined without running avr-size with
+ * {@link SizeReport#create(File, String)}.
+ * </p>
  * 
  * @author Thomas Holland
  * @since 2.1
@@ -41,6 +48,12 @@ public class Size extends BaseToolInfo {
 
 	private Map<String, String>	fOptionsMap		= null;
 
+	/** The executable and its modification time the options map was read from */
+	private File				fOptionsFile	= null;
+	private long				fOptionsModified;
+
+	private final static String	FORMAT_OPTION	= "--format={";
+
 	private static Size			instance		= null;
 
 	private final IPathProvider	fPathProvider	= new AVRPathProvider(AVRPath.AVRGCC);
@@ -81,15 +94,27 @@ public class Size extends BaseToolInfo {
 	/**
 	 * @return Map &lt;UI-name, option-name&gt; with all supported size options.
 	 */
-	public Map<String, String> getSizeOptions() {
+	public synchronized Map<String, String> getSizeOptions() {
 
-		if (fOptionsMap != null) {
+		File executable = getExecutable();
+		if (fOptionsMap != null && executable.equals(fOptionsFile)
+				&& executable.lastModified() == fOptionsModified) {
 			return fOptionsMap;
 		}
 
 		fOptionsMap = new HashMap<String, String>();
+		fOptionsFile = executable;
+		fOptionsModified = executable.lastModified();
+
+		// The help text is a string constant of the executable, so first try to find it in the
+		// file instead of starting avr-size
+		String formats = findFormats(executable);
+		if (formats != null) {
+			parseFormats(formats);
+			return fOptionsMap;
+		}
 
-		// Execute avr-gcc with the "--target-help" option and parse the
+		// Execute avr-size with the "--target-help" option and parse the
 		// output
 		String command = getToolPath().toOSString();
 		List<String> argument = new ArrayList<String>(1);
@@ -116,17 +141,7 @@ public class Size extends BaseToolInfo {
 				// extract the format options
 				int start = line.indexOf('{');
 				int end = line.lastIndexOf('}');
-				String options = line.substring(start + 1, end);
-				// next line does not work and i am no regex expert
-				// to know how to split at a "|"
-				// String[] allopts = options.split("|");
-				int splitter = 0;
-				while ((splitter = options.indexOf('|')) != -1) {
-					String opt = options.substring(0, splitter);
-					fOptionsMap.put(convertOption(opt), opt);
-					options = options.substring(splitter + 1);
-				}
-				fOptionsMap.put(convertOption(options), options);
+				parseFormats(line.substring(start + 1, end));
 				break;
 			}
 		}
@@ -134,6 +149,95 @@ public class Size extends BaseToolInfo {
 		return fOptionsMap;
 	}
 
+	/**
+	 * Add the options of the "--format={...}" help text to the options map.
+	 * 
+	 * @param options
+	 *            The text between the braces, e.g. "sysv|berkeley|avr"
+	 */
+	private void parseFormats(String options) {
+		// next line does not work and i am no regex expert
+		// to know how to split at a "|"
+		// String[] allopts = options.split("|");
+		int splitter = 0;
+		while ((splitter = options.indexOf('|')) != -1) {
+			String opt = options.substring(0, splitter);
+			fOptionsMap.put(convertOption(opt), opt);
+			options = options.substring(splitter + 1);
+		}
+		fOptionsMap.put(convertOption(options), options);
+	}
+
+	/**
+	 * @return The avr-size executable file, with the ".exe" extension on Windows.
+	 */
+	private File getExecutable() {
+		File file = getToolPath().toFile();
+		if (!file.isFile()) {
+			File exe = new File(file.getPath() + ".exe");
+			if (exe.isFile()) {
+				return exe;
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * Search the avr-size executable for the "--format={...}" option of the help text.
+	 * 
+	 * @param executable
+	 *            The avr-size executable.
+	 * @return The text between the braces, or <code>null</code> if the text was not found or the
+	 *         file could not be read.
+	 */
+	static String findFormats(File executable) {
+
+		byte[] pattern = FORMAT_OPTION.getBytes();
+		InputStream in = null;
+		try {
+			in = new FileInputStream(executable);
+			byte[] buffer = new byte[65536];
+			int matched = 0;
+			StringBuilder formats = null;
+			int len;
+			while ((len = in.read(buffer)) > 0) {
+				for (int i = 0; i < len; i++) {
+					byte b = buffer[i];
+					if (formats != null) {
+						if (b == '}') {
+							return formats.toString();
+						}
+						if (b < ' ' || formats.length() > 100) {
+							// not the help text, continue the search
+							formats = null;
+						} else {
+							formats.append((char) b);
+						}
+					} else if (b == pattern[matched]) {
+						matched++;
+						if (matched == pattern.length) {
+							formats = new StringBuilder();
+							matched = 0;
+						}
+					} else {
+						matched = b == pattern[0] ? 1 : 0;
+					}
+				}
+			}
+		} catch (IOException ioe) {
+			// Fall back to running avr-size
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * Get a better name for known format options.
 	 * 
@@ -0,0 +1,326 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.toolinfo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import de.innot.avreclipse.core.toolinfo.fuses.Fuses;
+import de.innot.avreclipse.core.util.ElfFile;
+import de.innot.avreclipse.core.util.ElfFile.Section;
+import de.innot.avreclipse.devicedescription.avrio.AVRiohDeviceDescriptionProvider;
+
+/**
+ * The memory usage of a linked AVR program.
+ * <p>
+ * This is the same information as printed by <code>avr-size --format=avr</code>, but it is
+ * read directly from the ELF file without starting avr-size.
+ * </p>
+ * <p>
+ * The capacities of the memories are taken from the <code>.note.gnu.avr.deviceinfo</code>
+ * section, which is added by newer toolchains. If the ELF file does not have this section, the
+ * flash, data and EEPROM sizes are taken from the <code>FLASHEND</code>, <code>RAMSTART</code>,
+ * <code>RAMEND</code> and <code>E2END</code> definitions of the avr-libc header of the MCU, as
+ * used by the {@link AVRiohDeviceDescriptionProvider}. Only the device specific header itself is
+ * read, so memories defined in shared headers remain unknown. The number of fuse and lock bytes is
+ * taken from the fuse descriptions of the plugin.
+ * </p>
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ *
+ */
+public class SizeReport {
+
+	/**
+	 * The memories of an AVR MCU, with the ELF sections that are counted for them.
+	 */
+	public enum Memory {
+		PROGRAM("Program", ".text", ".data", ".bootloader"), //
+		DATA("Data", ".data", ".bss", ".noinit"), //
+		EEPROM("EEPROM", ".eeprom"), //
+		FUSE("Fuse", ".fuse"), //
+		LOCK("Lock", ".lock");
+
+		private final String	fName;
+		private final String[]	fSections;
+
+		private Memory(String name, String... sections) {
+			fName = name;
+			fSections = sections;
+		}
+
+		/** @return the name of the memory as used by avr-size */
+		public String getName() {
+			return fName;
+		}
+
+		/** @return the names of the ELF sections counted for the memory */
+		public String[] getSections() {
+			return fSections.clone();
+		}
+	}
+
+	private final static String			DEVICEINFO_SECTION	= ".note.gnu.avr.deviceinfo";
+
+	/** The memory definitions of the avr-libc headers, e.g. "#define RAMEND 0x8FF" */
+	private final static Pattern		fDefinePattern		= Pattern
+																	.compile("#\\s*define\\s+(FLASHEND|RAMSTART|RAMEND|E2END)\\s+\\(?\\s*(0x[0-9a-fA-F]+|[0-9]+)[uUlL]*\\s*\\)?\\s*(/[/*].*)?");
+
+	private final String				fMCUId;
+
+	private final Map<Memory, Long>		fUsed;
+
+	private final Map<Memory, Long>		fCapacity;
+
+	/**
+	 * Create the size report of an ELF file.
+	 *
+	 * @param elffile
+	 *            The ELF file generated by the linker.
+	 * @param mcuid
+	 *            The MCU id the file was built for, or <code>null</code> if unknown. Only used
+	 *            for the capacities that are not in the ELF file.
+	 * @return The <code>SizeReport</code>
+	 * @throws IOException
+	 *             if the file could not be read or is not an AVR ELF file.
+	 */
+	public static SizeReport create(File elffile, String mcuid) throws IOException {
+
+		ElfFile elf = ElfFile.read(elffile);
+
+		Map<Memory, Long> capacity = readDeviceInfo(elf);
+		if (mcuid != null) {
+			addKnownCapacities(mcuid, capacity);
+		}
+
+		return new SizeReport(mcuid, getUsage(elf), capacity);
+	}
+
+	/**
+	 * Create a new report.
+	 *
+	 * @param mcuid
+	 *            The MCU id, may be <code>null</code>.
+	 * @param used
+	 *            The bytes used per memory.
+	 * @param capacity
+	 *            The capacities of the memories. Memories with unknown capacity are missing.
+	 */
+	SizeReport(String mcuid, Map<Memory, Long> used, Map<Memory, Long> capacity) {
+		fMCUId = mcuid;
+		fUsed = new EnumMap<Memory, Long>(used);
+		fCapacity = new EnumMap<Memory, Long>(capacity);
+	}
+
+	/**
+	 * @return The MCU id, or <code>null</code> if unknown.
+	 */
+	public String getMCUId() {
+		return fMCUId;
+	}
+
+	/**
+	 * Get the number of bytes used in the given memory.
+	 *
+	 * @param memory
+	 * @return The size in bytes, <code>0</code> if the memory is not used.
+	 */
+	public long getUsed(Memory memory) {
+		Long used = fUsed.get(memory);
+		return used != null ? used : 0;
+	}
+
+	/**
+	 * Get the size of the given memory of the MCU.
+	 *
+	 * @param memory
+	 * @return The size in bytes, or <code>-1</code> if unknown.
+	 */
+	public long getCapacity(Memory memory) {
+		Long capacity = fCapacity.get(memory);
+		return capacity != null ? capacity : -1;
+	}
+
+	/**
+	 * Get the used part of the given memory.
+	 *
+	 * @param memory
+	 * @return The percentage of the memory used, or <code>-1</code> if the capacity is unknown.
+	 */
+	public double getPercentage(Memory memory) {
+		long capacity = getCapacity(memory);
+		if (capacity <= 0) {
+			return -1;
+		}
+		return getUsed(memory) * 100.0 / capacity;
+	}
+
+	/**
+	 * @return The report in the format of <code>avr-size --format=avr</code>.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("AVR Memory Usage\n");
+		sb.append("----------------\n");
+		sb.append("Device: ").append(fMCUId != null ? fMCUId : "Unknown").append("\n\n");
+		for (Memory memory : Memory.values()) {
+			if (memory.ordinal() > Memory.DATA.ordinal() && getUsed(memory) == 0) {
+				// like avr-size only show the optional memories if used
+				continue;
+			}
+			String used = String.format("%s:%10d bytes", memory.getName(), getUsed(memory));
+			sb.append(String.format("%-24s", used));
+			double percentage = getPercentage(memory);
+			if (percentage >= 0) {
+				sb.append(String.format(" (%.1f%% Full)", percentage));
+			}
+			sb.append("\n(");
+			String[] sections = memory.getSections();
+			for (int i = 0; i < sections.length; i++) {
+				sb.append(i > 0 ? " + " : "").append(sections[i]);
+			}
+			sb.append(")\n\n");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Sum up the sizes of the ELF sections for each memory.
+	 */
+	static Map<Memory, Long> getUsage(ElfFile elf) {
+		Map<Memory, Long> used = new EnumMap<Memory, Long>(Memory.class);
+		for (Memory memory : Memory.values()) {
+			long sum = 0;
+			for (String name : memory.fSections) {
+				Section section = elf.getSection(name);
+				if (section != null) {
+					sum += section.getSize();
+				}
+			}
+			used.put(memory, sum);
+		}
+		return used;
+	}
+
+	/**
+	 * Read the memory sizes from the AVR device info note of the ELF file.
+	 * <p>
+	 * The note has the name "AVR" and a descriptor with the start and size of the flash, SRAM and
+	 * EEPROM as 32-bit values, followed by a string table which is not used here.
+	 * </p>
+	 *
+	 * @return Map with the capacities found, empty if the file has no device info.
+	 */
+	static Map<Memory, Long> readDeviceInfo(ElfFile elf) throws IOException {
+		Map<Memory, Long> capacity = new EnumMap<Memory, Long>(Memory.class);
+
+		Section section = elf.getSection(DEVICEINFO_SECTION);
+		if (section == null || section.getType() != ElfFile.SHT_NOTE) {
+			return capacity;
+		}
+		ByteBuffer note = elf.getContents(section);
+		if (note.limit() < 12) {
+			return capacity;
+		}
+		int namesz = note.getInt(0);
+		int descsz = note.getInt(4);
+		int desc = 12 + ((namesz + 3) & ~3);
+		if (!"AVR".equals(ElfFile.getString(note, 12)) || descsz < 24
+				|| note.limit() < desc + 24) {
+			return capacity;
+		}
+		capacity.put(Memory.PROGRAM, note.getInt(desc + 4) & 0xffffffffL);
+		capacity.put(Memory.DATA, note.getInt(desc + 12) & 0xffffffffL);
+		capacity.put(Memory.EEPROM, note.getInt(desc + 20) & 0xffffffffL);
+		return capacity;
+	}
+
+	/**
+	 * Add the capacities missing in the device info from the descriptions known to the plugin.
+	 */
+	private static void addKnownCapacities(String mcuid, Map<Memory, Long> capacity) {
+		File header = AVRiohDeviceDescriptionProvider.getDefault().getHeaderFile(mcuid);
+		if (header != null) {
+			try {
+				readIOHeader(header, capacity);
+			} catch (IOException ioe) {
+				// header not readable, the capacities remain unknown
+			}
+		}
+		try {
+			putIfKnown(capacity, Memory.FUSE, Fuses.getDefault().getFuseByteCount(mcuid));
+			putIfKnown(capacity, Memory.LOCK, Fuses.getDefault().getLockbitsByteCount(mcuid));
+		} catch (IOException ioe) {
+			// no fuse description for the MCU, the capacities remain unknown
+		}
+	}
+
+	/**
+	 * Read the memory sizes from the avr-libc header of a MCU.
+	 * <p>
+	 * Capacities already in the given map are not changed.
+	 * </p>
+	 * 
+	 * @param header
+	 *            The device specific header, e.g. <code>avr/iom328p.h</code>.
+	 * @param capacity
+	 *            Map to add the capacities to.
+	 * @throws IOException
+	 *             if the header could not be read.
+	 */
+	static void readIOHeader(File header, Map<Memory, Long> capacity) throws IOException {
+
+		Map<String, Long> values = new HashMap<String, Long>();
+		BufferedReader reader = new BufferedReader(new FileReader(header));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				Matcher m = fDefinePattern.matcher(line.trim());
+				if (m.matches() && !values.containsKey(m.group(1))) {
+					values.put(m.group(1), Long.decode(m.group(2)));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+
+		Long flashend = values.get("FLASHEND");
+		if (flashend != null && !capacity.containsKey(Memory.PROGRAM)) {
+			capacity.put(Memory.PROGRAM, flashend + 1);
+		}
+		Long ramstart = values.get("RAMSTART");
+		Long ramend = values.get("RAMEND");
+		if (ramstart != null && ramend != null && ramend >= ramstart
+				&& !capacity.containsKey(Memory.DATA)) {
+			capacity.put(Memory.DATA, ramend - ramstart + 1);
+		}
+		Long e2end = values.get("E2END");
+		if (e2end != null && e2end > 0 && !capacity.containsKey(Memory.EEPROM)) {
+			capacity.put(Memory.EEPROM, e2end + 1);
+		}
+	}
+
+	private static void putIfKnown(Map<Memory, Long> capacity, Memory memory, long value) {
+		if (value > 0) {
+			capacity.put(memory, value);
+		}
+	}
+}
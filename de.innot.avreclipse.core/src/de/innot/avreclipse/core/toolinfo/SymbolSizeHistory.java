@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.toolinfo;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.eclipse.cdt.managedbuilder.core.IConfiguration;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.ListenerList;
+import org.eclipse.core.runtime.Status;
+
+import de.innot.avreclipse.AVRPlugin;
+import de.innot.avreclipse.core.toolinfo.SizeReport.Memory;
+import de.innot.avreclipse.core.toolinfo.SymbolSizeTable.Entry;
+
+/**
+ * The symbol sizes of the last builds of a build configuration.
+ * <p>
+ * The history is stored as a gzipped text file in the working area of the project (
+ * <code>.metadata/.plugins/org.eclipse.core.resources/.projects/<em>project</em>/de.innot.avreclipse.core/symbolsizes/</code>
+ * ), with one file per build configuration. Only the last {@link #DEFAULT_SIZE} builds are kept.
+ * </p>
+ *
+ * @see SymbolSizeTable
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ *
+ */
+public class SymbolSizeHistory {
+
+	/**
+	 * Listener for changes of any history, e.g. to update a view after a build.
+	 */
+	public interface IHistoryChangeListener {
+		public void historyChanged(SymbolSizeHistory history);
+	}
+
+	/** The number of builds kept in a history */
+	public final static int							DEFAULT_SIZE	= 10;
+
+	private final static String						FOLDERNAME		= "symbolsizes";
+
+	private final static String						BUILD_PREFIX	= "build ";
+
+	private final static Map<File, SymbolSizeHistory>	fHistories		= new HashMap<File, SymbolSizeHistory>();
+
+	private final static ListenerList				fListeners		= new ListenerList();
+
+	/** The history file */
+	private final File								fFile;
+
+	/** The maximum number of builds */
+	private final int								fSize;
+
+	/** The builds, oldest first. <code>null</code> until the file has been loaded */
+	private List<SymbolSizeTable>					fTables			= null;
+
+	/**
+	 * Get the history of the given build configuration.
+	 *
+	 * @param buildcfg
+	 *            The build configuration of an AVR project.
+	 * @return The <code>SymbolSizeHistory</code>
+	 */
+	public static SymbolSizeHistory getHistory(IConfiguration buildcfg) {
+		IProject project = (IProject) buildcfg.getOwner();
+		File folder = project.getWorkingLocation(AVRPlugin.PLUGIN_ID).append(FOLDERNAME).toFile();
+		File file = new File(folder, buildcfg.getId().replaceAll("[^\\w\\.-]", "_") + ".gz");
+		synchronized (fHistories) {
+			SymbolSizeHistory history = fHistories.get(file);
+			if (history == null) {
+				history = new SymbolSizeHistory(file, DEFAULT_SIZE);
+				fHistories.put(file, history);
+			}
+			return history;
+		}
+	}
+
+	/**
+	 * Add a listener that is informed about all changes of any history.
+	 */
+	public static void addHistoryChangeListener(IHistoryChangeListener listener) {
+		fListeners.add(listener);
+	}
+
+	/**
+	 * Remove a listener.
+	 */
+	public static void removeHistoryChangeListener(IHistoryChangeListener listener) {
+		fListeners.remove(listener);
+	}
+
+	/**
+	 * Create a new history backed by the given file.
+	 * <p>
+	 * The file does not need to exist. It is created when the first build is added.
+	 * </p>
+	 *
+	 * @param file
+	 *            The history file.
+	 * @param size
+	 *            The maximum number of builds to keep.
+	 */
+	SymbolSizeHistory(File file, int size) {
+		fFile = file;
+		fSize = size;
+	}
+
+	/**
+	 * @return An unmodifiable list of the builds in the history, oldest first.
+	 */
+	public synchronized List<SymbolSizeTable> getTables() {
+		load();
+		return Collections.unmodifiableList(new ArrayList<SymbolSizeTable>(fTables));
+	}
+
+	/**
+	 * @return The table of the last build, or <code>null</code> if the history is empty.
+	 */
+	public synchronized SymbolSizeTable getLatest() {
+		load();
+		return fTables.isEmpty() ? null : fTables.get(fTables.size() - 1);
+	}
+
+	/**
+	 * Add a build to the history.
+	 * <p>
+	 * The oldest builds are removed if the history is full. A table with the same timestamp as
+	 * the last build is ignored, as it is from the same build artifact.
+	 * </p>
+	 *
+	 * @param table
+	 *            The symbol sizes of the new build.
+	 * @return <code>true</code> if the table has been added.
+	 */
+	public boolean add(SymbolSizeTable table) {
+		synchronized (this) {
+			SymbolSizeTable latest = getLatest();
+			if (latest != null && latest.getTimestamp() == table.getTimestamp()) {
+				return false;
+			}
+			fTables.add(table);
+			while (fTables.size() > fSize) {
+				fTables.remove(0);
+			}
+			save();
+		}
+		fireHistoryChanged();
+		return true;
+	}
+
+	/**
+	 * Remove all builds from the history.
+	 */
+	public void clear() {
+		synchronized (this) {
+			fTables = new ArrayList<SymbolSizeTable>();
+			fFile.delete();
+		}
+		fireHistoryChanged();
+	}
+
+	private void fireHistoryChanged() {
+		for (Object listener : fListeners.getListeners()) {
+			((IHistoryChangeListener) listener).historyChanged(this);
+		}
+	}
+
+	/**
+	 * Load the history file if not already loaded.
+	 * <p>
+	 * The file has one "build <em>timestamp</em>" line per build, followed by one
+	 * "<em>memory</em> <em>size</em> <em>name</em>" line per symbol.
+	 * </p>
+	 */
+	private void load() {
+		if (fTables != null) {
+			return;
+		}
+		fTables = new ArrayList<SymbolSizeTable>();
+		if (!fFile.isFile()) {
+			return;
+		}
+
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(
+					new FileInputStream(fFile)), "UTF-8"));
+			long timestamp = -1;
+			List<Entry> entries = new ArrayList<Entry>();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith(BUILD_PREFIX)) {
+					if (timestamp != -1) {
+						fTables.add(new SymbolSizeTable(timestamp, entries));
+						entries.clear();
+					}
+					timestamp = Long.parseLong(line.substring(BUILD_PREFIX.length()));
+					continue;
+				}
+				String[] parts = line.split(" ", 3);
+				if (timestamp == -1 || parts.length != 3) {
+					throw new IOException("Invalid line: " + line);
+				}
+				entries.add(new Entry(parts[2], Memory.valueOf(parts[0]), Long
+						.parseLong(parts[1])));
+			}
+			if (timestamp != -1) {
+				fTables.add(new SymbolSizeTable(timestamp, entries));
+			}
+		} catch (Exception e) {
+			// IOException or a damaged file (NumberFormatException, IllegalArgumentException).
+			// Start with a new history.
+			IStatus status = new Status(IStatus.WARNING, AVRPlugin.PLUGIN_ID,
+					"Could not read the symbol size history " + fFile, e);
+			AVRPlugin.getDefault().log(status);
+			fTables.clear();
+			fFile.delete();
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	private void save() {
+		Writer writer = null;
+		try {
+			File folder = fFile.getParentFile();
+			if (!folder.isDirectory() && !folder.mkdirs()) {
+				throw new IOException("Could not create folder " + folder);
+			}
+			writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(
+					new FileOutputStream(fFile)), "UTF-8"));
+			for (SymbolSizeTable table : fTables) {
+				writer.write(BUILD_PREFIX + table.getTimestamp() + "\n");
+				for (Entry entry : table.getEntries()) {
+					writer.write(entry.getMemory().name() + " " + entry.getSize() + " "
+							+ entry.getName() + "\n");
+				}
+			}
+		} catch (IOException ioe) {
+			// The history is still available in memory for this session.
+			IStatus status = new Status(IStatus.WARNING, AVRPlugin.PLUGIN_ID,
+					"Could not store the symbol size history " + fFile, ioe);
+			AVRPlugin.getDefault().log(status);
+		} finally {
+			if (writer != null) {
+				try {
+					writer.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+}
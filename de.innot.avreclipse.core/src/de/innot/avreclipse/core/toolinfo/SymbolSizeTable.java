@@ -0,0 +1,328 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.toolinfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.innot.avreclipse.core.toolinfo.SizeReport.Memory;
+import de.innot.avreclipse.core.util.ElfFile;
+import de.innot.avreclipse.core.util.ElfFile.Section;
+import de.innot.avreclipse.core.util.ElfFile.Symbol;
+
+/**
+ * The sizes of all functions and variables of a linked AVR program.
+ * <p>
+ * The table is built from the symbol table of the ELF file. Only functions and data objects with a
+ * size are included. Local symbols are named "<em>sourcefile</em>:<em>symbol</em>", so that
+ * static symbols with the same name in different source files can be told apart.
+ * </p>
+ * <p>
+ * Initialized variables are counted for {@link Memory#DATA}, even though their initial values
+ * also use flash memory.
+ * </p>
+ *
+ * @see SymbolSizeHistory
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ *
+ */
+public class SymbolSizeTable {
+
+	/**
+	 * The size of a single symbol.
+	 */
+	public static class Entry {
+
+		private final String	fName;
+		private final Memory	fMemory;
+		private final long		fSize;
+
+		public Entry(String name, Memory memory, long size) {
+			fName = name;
+			fMemory = memory;
+			fSize = size;
+		}
+
+		/** @return the name of the symbol */
+		public String getName() {
+			return fName;
+		}
+
+		/** @return the memory the symbol is located in */
+		public Memory getMemory() {
+			return fMemory;
+		}
+
+		/** @return the size of the symbol in bytes */
+		public long getSize() {
+			return fSize;
+		}
+	}
+
+	/**
+	 * The change of the size of a symbol between two builds.
+	 */
+	public static class Delta {
+
+		private final String	fName;
+		private final Memory	fMemory;
+		private final long		fOldSize;
+		private final long		fNewSize;
+
+		Delta(String name, Memory memory, long oldsize, long newsize) {
+			fName = name;
+			fMemory = memory;
+			fOldSize = oldsize;
+			fNewSize = newsize;
+		}
+
+		/** @return the name of the symbol */
+		public String getName() {
+			return fName;
+		}
+
+		/** @return the memory the symbol is located in */
+		public Memory getMemory() {
+			return fMemory;
+		}
+
+		/** @return the size in the older build, <code>0</code> if the symbol is new */
+		public long getOldSize() {
+			return fOldSize;
+		}
+
+		/** @return the size in the newer build, <code>0</code> if the symbol has been removed */
+		public long getNewSize() {
+			return fNewSize;
+		}
+
+		/** @return the change of the size, negative if the symbol has shrunk */
+		public long getDelta() {
+			return fNewSize - fOldSize;
+		}
+	}
+
+	/** The memories checked for a section, in this order. DATA before PROGRAM for ".data" */
+	private final static List<Memory>	SYMBOL_MEMORIES	= Arrays.asList(Memory.DATA,
+																Memory.PROGRAM, Memory.EEPROM,
+																Memory.FUSE, Memory.LOCK);
+
+	private final long					fTimestamp;
+
+	private final Map<String, Entry>	fEntries		= new LinkedHashMap<String, Entry>();
+
+	/**
+	 * Create the symbol size table of an ELF file.
+	 *
+	 * @param elffile
+	 *            The ELF file generated by the linker.
+	 * @return The <code>SymbolSizeTable</code> with the modification time of the file as
+	 *         timestamp.
+	 * @throws IOException
+	 *             if the file could not be read or is not an AVR ELF file.
+	 */
+	public static SymbolSizeTable create(File elffile) throws IOException {
+
+		ElfFile elf = ElfFile.read(elffile);
+		List<Entry> entries = new ArrayList<Entry>();
+		for (Symbol symbol : elf.getSymbols()) {
+			if (symbol.getSize() == 0) {
+				continue;
+			}
+			if (symbol.getType() != ElfFile.STT_FUNC && symbol.getType() != ElfFile.STT_OBJECT) {
+				continue;
+			}
+			Section section = elf.getSection(symbol.getSectionIndex());
+			Memory memory = section != null ? getMemory(section.getName()) : null;
+			if (memory == null) {
+				continue;
+			}
+			String name = symbol.getFile() != null ? symbol.getFile() + ":" + symbol.getName()
+					: symbol.getName();
+			entries.add(new Entry(name, memory, symbol.getSize()));
+		}
+		return new SymbolSizeTable(elffile.lastModified(), entries);
+	}
+
+	/**
+	 * Create a new table.
+	 * <p>
+	 * Entries with the same name and memory are added up.
+	 * </p>
+	 *
+	 * @param timestamp
+	 *            The time of the build in milliseconds.
+	 * @param entries
+	 *            The sizes of the symbols.
+	 */
+	public SymbolSizeTable(long timestamp, Collection<Entry> entries) {
+		fTimestamp = timestamp;
+		for (Entry entry : entries) {
+			String key = getKey(entry.getName(), entry.getMemory());
+			Entry old = fEntries.get(key);
+			if (old != null) {
+				entry = new Entry(entry.getName(), entry.getMemory(), old.getSize()
+						+ entry.getSize());
+			}
+			fEntries.put(key, entry);
+		}
+	}
+
+	/**
+	 * @return The time of the build in milliseconds.
+	 */
+	public long getTimestamp() {
+		return fTimestamp;
+	}
+
+	/**
+	 * @return An unmodifiable collection of all entries.
+	 */
+	public Collection<Entry> getEntries() {
+		return Collections.unmodifiableCollection(fEntries.values());
+	}
+
+	/**
+	 * Get the size of a symbol.
+	 *
+	 * @param name
+	 *            The name of the symbol.
+	 * @param memory
+	 *            The memory of the symbol.
+	 * @return The size in bytes, <code>0</code> if the table has no such symbol.
+	 */
+	public long getSize(String name, Memory memory) {
+		Entry entry = fEntries.get(getKey(name, memory));
+		return entry != null ? entry.getSize() : 0;
+	}
+
+	/**
+	 * Get the sum of the sizes of all symbols in the given memory.
+	 *
+	 * @param memory
+	 * @return The size in bytes.
+	 */
+	public long getTotal(Memory memory) {
+		long total = 0;
+		for (Entry entry : fEntries.values()) {
+			if (entry.getMemory() == memory) {
+				total += entry.getSize();
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Get the changes from an older build to this build.
+	 *
+	 * @param older
+	 *            The table of the older build, or <code>null</code> to get all symbols of this
+	 *            table as new.
+	 * @return A list of all symbols that have changed, were added or removed, ordered by the
+	 *         absolute change, biggest change first.
+	 */
+	public List<Delta> getDeltas(SymbolSizeTable older) {
+		return getDeltas(older, false);
+	}
+
+	/**
+	 * Get the changes from an older build to this build.
+	 *
+	 * @param older
+	 *            The table of the older build, or <code>null</code> to get all symbols of this
+	 *            table as new.
+	 * @param unchanged
+	 *            <code>true</code> to include the symbols that have not changed.
+	 * @return A list of the symbols, ordered by the absolute change, biggest change first.
+	 *         Unchanged symbols are ordered by size.
+	 */
+	public List<Delta> getDeltas(SymbolSizeTable older, boolean unchanged) {
+
+		Map<String, Entry> oldentries = older != null ? older.fEntries : Collections
+				.<String, Entry> emptyMap();
+
+		List<Delta> deltas = new ArrayList<Delta>();
+		for (Map.Entry<String, Entry> e : fEntries.entrySet()) {
+			Entry entry = e.getValue();
+			Entry oldentry = oldentries.get(e.getKey());
+			long oldsize = oldentry != null ? oldentry.getSize() : 0;
+			if (unchanged || oldsize != entry.getSize()) {
+				deltas.add(new Delta(entry.getName(), entry.getMemory(), oldsize, entry.getSize()));
+			}
+		}
+		for (Map.Entry<String, Entry> e : oldentries.entrySet()) {
+			if (!fEntries.containsKey(e.getKey())) {
+				Entry oldentry = e.getValue();
+				deltas.add(new Delta(oldentry.getName(), oldentry.getMemory(), oldentry.getSize(),
+						0));
+			}
+		}
+
+		Collections.sort(deltas, new Comparator<Delta>() {
+			public int compare(Delta d1, Delta d2) {
+				long diff = Math.abs(d2.getDelta()) - Math.abs(d1.getDelta());
+				if (diff == 0) {
+					diff = d2.getNewSize() - d1.getNewSize();
+				}
+				if (diff != 0) {
+					return diff > 0 ? 1 : -1;
+				}
+				return d1.getName().compareTo(d2.getName());
+			}
+		});
+		return deltas;
+	}
+
+	/**
+	 * Get the sum of the size changes per memory.
+	 *
+	 * @param older
+	 *            The table of the older build.
+	 * @return Map with the change in bytes for each memory.
+	 */
+	public Map<Memory, Long> getTotalDeltas(SymbolSizeTable older) {
+		Map<Memory, Long> totals = new EnumMap<Memory, Long>(Memory.class);
+		for (Memory memory : Memory.values()) {
+			long oldtotal = older != null ? older.getTotal(memory) : 0;
+			totals.put(memory, getTotal(memory) - oldtotal);
+		}
+		return totals;
+	}
+
+	/**
+	 * Get the memory for the name of an output section.
+	 *
+	 * @return The memory, or <code>null</code> if the section is not in any memory.
+	 */
+	static Memory getMemory(String sectionname) {
+		for (Memory memory : SYMBOL_MEMORIES) {
+			if (Arrays.asList(memory.getSections()).contains(sectionname)) {
+				return memory;
+			}
+		}
+		return null;
+	}
+
+	private static String getKey(String name, Memory memory) {
+		return memory.name() + "/" + name;
+	}
+}
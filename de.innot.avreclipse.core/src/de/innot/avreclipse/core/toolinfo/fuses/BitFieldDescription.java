@@ -10,6 +10,9 @@
  *******************************************************************************/
 package de.innot.avreclipse.core.toolinfo.fuses;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -196,6 +199,33 @@ public class BitFieldDescription {
 		fIndex = Integer.decode(indexnode.getTextContent());
 	}
 
+	/**
+	 * Construct a new BitFieldDescription from its binary form.
+	 * 
+	 * @see #toBinary(DataOutput)
+	 * 
+	 * @param in
+	 *            <code>DataInput</code> positioned at the start of the binary bitfield description.
+	 * @throws IOException
+	 */
+	BitFieldDescription(DataInput in) throws IOException {
+		fIndex = in.readInt();
+		fName = FuseDescriptionIndex.readString(in);
+		fDescription = FuseDescriptionIndex.readString(in);
+		fMask = in.readInt();
+		fDefault = in.readInt();
+
+		int count = in.readInt();
+		if (count == -1) {
+			fValues = null;
+		} else {
+			fValues = new ArrayList<BitFieldValueDescription>(count);
+			for (int i = 0; i < count; i++) {
+				fValues.add(new BitFieldValueDescription(in));
+			}
+		}
+	}
+
 	/**
 	 * Get the byte index of the parent fuse or lockbits byte.
 	 * 
@@ -399,6 +429,33 @@ public class BitFieldDescription {
 		parentnode.appendChild(element);
 	}
 
+	/**
+	 * Convert to the binary form used by the {@link FuseDescriptionIndex}.
+	 * <p>
+	 * Unlike the XML form the binary form includes the index and distinguishes between no values
+	 * and an empty list of values, so the object read back is identical to this one.
+	 * </p>
+	 * 
+	 * @param out
+	 *            <code>DataOutput</code> to write to.
+	 * @throws IOException
+	 */
+	void toBinary(DataOutput out) throws IOException {
+		out.writeInt(fIndex);
+		FuseDescriptionIndex.writeString(out, fName);
+		FuseDescriptionIndex.writeString(out, fDescription);
+		out.writeInt(fMask);
+		out.writeInt(fDefault);
+		if (fValues == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(fValues.size());
+			for (BitFieldValueDescription bfv : fValues) {
+				bfv.toBinary(out);
+			}
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
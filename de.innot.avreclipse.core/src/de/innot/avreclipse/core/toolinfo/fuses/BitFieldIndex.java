@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.toolinfo.fuses;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * An immutable index of all BitFields of one MCU and one {@link FuseType}.
+ * <p>
+ * The index maps the BitField names to their descriptions and also has the BitFields of each byte.
+ * It is built once per MCU description and shared by all {@link ByteValues} objects of the MCU, so
+ * that the lookups in {@link ByteValues#getNamedValue(String)} and
+ * {@link ByteValues#setNamedValue(String, int)} don't allocate anything.
+ * </p>
+ * <p>
+ * The indices are cached with weak references to their MCU description. Once {@link Fuses} has
+ * dropped a description from its cache, the indices of the description are removed as well.
+ * </p>
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ *
+ */
+final class BitFieldIndex {
+
+	/** Index for MCUs without a description */
+	final static BitFieldIndex											EMPTY		= new BitFieldIndex(
+																						0,
+																						new HashMap<String, BitFieldDescription>(),
+																						new BitFieldDescription[0][]);
+
+	private final static BitFieldDescription[]							NO_BITFIELDS	= new BitFieldDescription[0];
+
+	/** Cache of the indices of each MCU description, one index per FuseType. */
+	private final static Map<IMCUDescription, BitFieldIndex[]>	fIndexCache	= new WeakHashMap<IMCUDescription, BitFieldIndex[]>();
+
+	/** The number of bytes, as reported by the MCU description */
+	private final int													fByteCount;
+
+	/** Map of all BitField names to their descriptions */
+	private final Map<String, BitFieldDescription>						fNames;
+
+	/** The BitFields of each byte */
+	private final BitFieldDescription[][]								fBytes;
+
+	private BitFieldIndex(int bytecount, Map<String, BitFieldDescription> names,
+			BitFieldDescription[][] bytes) {
+		fByteCount = bytecount;
+		fNames = Collections.unmodifiableMap(names);
+		fBytes = bytes;
+	}
+
+	/**
+	 * Get the index for the given MCU description and type.
+	 * <p>
+	 * The index is only built on the first call for a description, all further calls return the
+	 * same index.
+	 * </p>
+	 *
+	 * @param description
+	 *            The MCU description.
+	 * @param type
+	 *            The type of the bytes.
+	 * @return The shared index.
+	 */
+	static BitFieldIndex getIndex(IMCUDescription description, FuseType type) {
+		synchronized (fIndexCache) {
+			BitFieldIndex[] indices = fIndexCache.get(description);
+			if (indices == null) {
+				indices = new BitFieldIndex[FuseType.values().length];
+				fIndexCache.put(description, indices);
+			}
+			BitFieldIndex index = indices[type.ordinal()];
+			if (index == null) {
+				index = create(description, type);
+				indices[type.ordinal()] = index;
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Build a new index from the given description.
+	 *
+	 * @param description
+	 *            The MCU description.
+	 * @param type
+	 *            The type of the bytes.
+	 * @return A new index.
+	 */
+	static BitFieldIndex create(IMCUDescription description, FuseType type) {
+
+		int bytecount = description.getByteCount(type);
+		Map<String, BitFieldDescription> names = new HashMap<String, BitFieldDescription>();
+		List<List<BitFieldDescription>> bytes = new ArrayList<List<BitFieldDescription>>();
+
+		// Get all byte descriptions, get the bitfield descriptions from them
+		// and fill the map.
+		List<IFuseObjectDescription> bytedesclist = description.getByteDescriptions(type);
+		for (IFuseObjectDescription bytedesc : bytedesclist) {
+			if (bytedesc != null) {
+				List<BitFieldDescription> bitfieldlist = bytedesc.getBitFieldDescriptions();
+				for (BitFieldDescription desc : bitfieldlist) {
+					names.put(desc.getName(), desc);
+					int index = desc.getIndex();
+					while (bytes.size() <= index) {
+						bytes.add(new ArrayList<BitFieldDescription>());
+					}
+					bytes.get(index).add(desc);
+				}
+			}
+		}
+
+		// Only the BitFields that are actually in the map (the last one of duplicate names)
+		BitFieldDescription[][] bytearray = new BitFieldDescription[Math.max(bytecount, bytes
+				.size())][];
+		for (int i = 0; i < bytearray.length; i++) {
+			List<BitFieldDescription> list = new ArrayList<BitFieldDescription>();
+			if (i < bytes.size()) {
+				for (BitFieldDescription desc : bytes.get(i)) {
+					if (names.get(desc.getName()) == desc) {
+						list.add(desc);
+					}
+				}
+			}
+			bytearray[i] = list.toArray(new BitFieldDescription[list.size()]);
+		}
+
+		return new BitFieldIndex(bytecount, names, bytearray);
+	}
+
+	/**
+	 * @return The number of bytes of the MCU for the type of this index.
+	 */
+	int getByteCount() {
+		return fByteCount;
+	}
+
+	/**
+	 * Get the description of the named BitField.
+	 *
+	 * @param name
+	 *            Name of the BitField.
+	 * @return The description, or <code>null</code> if there is no such BitField.
+	 */
+	BitFieldDescription get(String name) {
+		return fNames.get(name);
+	}
+
+	/**
+	 * @return Unmodifiable map of all BitField names to their descriptions.
+	 */
+	Map<String, BitFieldDescription> getNameMap() {
+		return fNames;
+	}
+
+	/**
+	 * @return Unmodifiable collection of all BitField descriptions.
+	 */
+	Collection<BitFieldDescription> getBitFields() {
+		return fNames.values();
+	}
+
+	/**
+	 * Get the BitFields of a byte.
+	 * <p>
+	 * The returned array is shared and must not be modified.
+	 * </p>
+	 *
+	 * @param byteindex
+	 *            Index of the byte.
+	 * @return Array with the descriptions of all BitFields of the byte. Empty if the index is out
+	 *         of range or the byte is not defined.
+	 */
+	BitFieldDescription[] getBitFields(int byteindex) {
+		if (byteindex < 0 || byteindex >= fBytes.length) {
+			return NO_BITFIELDS;
+		}
+		return fBytes[byteindex];
+	}
+}
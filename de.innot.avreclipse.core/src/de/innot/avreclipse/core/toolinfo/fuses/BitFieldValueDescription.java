@@ -10,6 +10,10 @@
  *******************************************************************************/
 package de.innot.avreclipse.core.toolinfo.fuses;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
@@ -109,6 +113,21 @@ public class BitFieldValueDescription {
 		}
 	}
 
+	/**
+	 * Construct a new BitFieldValueDescription from its binary form.
+	 * 
+	 * @see #toBinary(DataOutput)
+	 * 
+	 * @param in
+	 *            <code>DataInput</code> positioned at the start of the binary value description.
+	 * @throws IOException
+	 */
+	BitFieldValueDescription(DataInput in) throws IOException {
+		fValue = in.readInt();
+		fDescription = FuseDescriptionIndex.readString(in);
+		fName = FuseDescriptionIndex.readString(in);
+	}
+
 	/**
 	 * @return the description of this bitfield value enumeration element
 	 */
@@ -150,6 +169,19 @@ public class BitFieldValueDescription {
 		parentnode.appendChild(element);
 	}
 
+	/**
+	 * Convert to the binary form used by the {@link FuseDescriptionIndex}.
+	 * 
+	 * @param out
+	 *            <code>DataOutput</code> to write to.
+	 * @throws IOException
+	 */
+	void toBinary(DataOutput out) throws IOException {
+		out.writeInt(fValue);
+		FuseDescriptionIndex.writeString(out, fDescription);
+		FuseDescriptionIndex.writeString(out, fName);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -10,6 +10,9 @@
  *******************************************************************************/
 package de.innot.avreclipse.core.toolinfo.fuses;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -170,6 +173,30 @@ public class ByteDescription implements IFuseObjectDescription {
 
 	}
 
+	/**
+	 * Construct a new ByteDescription from its binary form.
+	 * 
+	 * @see #toBinary(DataOutput)
+	 * 
+	 * @param in
+	 *            <code>DataInput</code> positioned at the start of the binary byte description.
+	 * @throws IOException
+	 */
+	ByteDescription(DataInput in) throws IOException {
+		fType = FuseType.values()[in.readByte()];
+		fName = FuseDescriptionIndex.readString(in);
+		fDescription = FuseDescriptionIndex.readString(in);
+		fIndex = in.readInt();
+		fSize = in.readInt();
+		fDefaultValue = in.readInt();
+
+		int count = in.readInt();
+		fBitFieldList = new ArrayList<BitFieldDescription>(count);
+		for (int i = 0; i < count; i++) {
+			fBitFieldList.add(new BitFieldDescription(in));
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see de.innot.avreclipse.core.toolinfo.fuses.IByteDescription#getBitFieldDescriptions()
@@ -293,6 +320,27 @@ public class ByteDescription implements IFuseObjectDescription {
 		parentnode.appendChild(bytenode);
 	}
 
+	/**
+	 * Convert this ByteDescription Object to the binary form used by the
+	 * {@link FuseDescriptionIndex}.
+	 * 
+	 * @param out
+	 *            <code>DataOutput</code> to write to.
+	 * @throws IOException
+	 */
+	void toBinary(DataOutput out) throws IOException {
+		out.writeByte(fType.ordinal());
+		FuseDescriptionIndex.writeString(out, fName);
+		FuseDescriptionIndex.writeString(out, fDescription);
+		out.writeInt(fIndex);
+		out.writeInt(fSize);
+		out.writeInt(fDefaultValue);
+		out.writeInt(fBitFieldList.size());
+		for (BitFieldDescription bfd : fBitFieldList) {
+			bfd.toBinary(out);
+		}
+	}
+
 	/**
 	 * Format the given integer to a String with the format "0xXX".
 	 * <p>
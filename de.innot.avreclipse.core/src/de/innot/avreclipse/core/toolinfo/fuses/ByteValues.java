@@ -12,9 +12,7 @@ package de.innot.avreclipse.core.toolinfo.fuses;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.IStatus;
@@ -54,8 +52,11 @@ public class ByteValues {
 	/** The actual byte values. */
 	private int[]								fValues;
 
-	/** Map of all bitfield descriptions mapped to their name for easy access */
-	private Map<String, BitFieldDescription>	fBitFieldNames;
+	/**
+	 * Index of all bitfield descriptions for easy access. Shared with all other ByteValues of the
+	 * same MCU.
+	 */
+	private BitFieldIndex						fIndex;
 
 	/** A user provided comment for this ByteValue object. */
 	private String								fComment;
@@ -90,7 +91,7 @@ public class ByteValues {
 		Assert.isNotNull(mcuid);
 		fType = type;
 		fMCUId = mcuid;
-		fByteCount = loadByteCount();
+		fByteCount = getIndex().getByteCount();
 		fValues = new int[fByteCount];
 		clearValues();
 		fComment = null;
@@ -114,6 +115,7 @@ public class ByteValues {
 		fType = source.fType;
 		fMCUId = source.fMCUId;
 		fByteCount = source.fByteCount;
+		fIndex = source.fIndex;
 		fValues = new int[fByteCount];
 		System.arraycopy(source.fValues, 0, fValues, 0, fByteCount);
 		fComment = source.fComment;
@@ -165,16 +167,17 @@ public class ByteValues {
 		}
 
 		fMCUId = mcuid;
-		fByteCount = loadByteCount();
+		fIndex = null;
+		fByteCount = getIndex().getByteCount();
 		fValues = new int[fByteCount];
-		fBitFieldNames = null;
 
 		// First inform all listeners that we have a new MCU
 		fireBitFieldChangedEvent(MCU_CHANGE_EVENT, 0, 0, 0);
 
 		// and then set the new values (about which the listeners will be informed as well.
 		if (conversioncopy != null) {
-			setValues(conversioncopy.getValues());
+			// The copy is private, so its values need not be copied again
+			setValues(conversioncopy.fValues);
 		} else {
 			clearValues();
 		}
@@ -222,12 +225,8 @@ public class ByteValues {
 		fValues[index] = value;
 
 		if (fConversionResults != null) {
-			IMCUDescription desc = getDescription(fMCUId);
-			IFuseObjectDescription bytedesc = desc.getByteDescription(fType, index);
-			List<BitFieldDescription> allbfds = bytedesc.getBitFieldDescriptions();
-			for (BitFieldDescription bfd : allbfds) {
-				String name = bfd.getName();
-				fConversionResults.setModified(name);
+			for (BitFieldDescription bfd : getIndex().getBitFields(index)) {
+				fConversionResults.setModified(bfd.getName());
 			}
 		}
 
@@ -303,8 +302,7 @@ public class ByteValues {
 	 *             if the name of the bitfield is not valid.
 	 */
 	public int getNamedValue(String name) {
-		initBitFieldNames();
-		BitFieldDescription desc = fBitFieldNames.get(name);
+		BitFieldDescription desc = getIndex().get(name);
 		if (desc == null) {
 			throw new IllegalArgumentException("Bitfield name [" + name + "] is not known.");
 		}
@@ -327,9 +325,8 @@ public class ByteValues {
 	 *             maxValue).
 	 */
 	public void setNamedValue(String name, int value) {
-		initBitFieldNames();
 
-		BitFieldDescription desc = fBitFieldNames.get(name);
+		BitFieldDescription desc = getIndex().get(name);
 		if (desc == null) {
 			throw new IllegalArgumentException("Bitfield name [" + name + "] is not known.");
 		}
@@ -382,8 +379,7 @@ public class ByteValues {
 	 * 
 	 */
 	public String getNamedValueText(String name) {
-		initBitFieldNames();
-		BitFieldDescription desc = fBitFieldNames.get(name);
+		BitFieldDescription desc = getIndex().get(name);
 		int value = getNamedValue(name);
 		if (value == -1) {
 			return "undefined";
@@ -405,8 +401,7 @@ public class ByteValues {
 	 *            The name of the BitField.
 	 */
 	public void setNamedValueToDefault(String name) {
-		initBitFieldNames();
-		BitFieldDescription desc = fBitFieldNames.get(name);
+		BitFieldDescription desc = getIndex().get(name);
 
 		int defaultvalue = desc.getDefaultValue();
 		if (defaultvalue != -1) {
@@ -492,8 +487,7 @@ public class ByteValues {
 	 * @return <code>List&lt;String&gt;</code> with the names.
 	 */
 	public List<String> getBitfieldNames() {
-		initBitFieldNames();
-		return new ArrayList<String>(fBitFieldNames.keySet());
+		return new ArrayList<String>(getIndex().getNameMap().keySet());
 	}
 
 	/**
@@ -505,8 +499,7 @@ public class ByteValues {
 	 * @return <code>List&lt;IBitFieldDescription&gt;</code>.
 	 */
 	public List<BitFieldDescription> getBitfieldDescriptions() {
-		initBitFieldNames();
-		return new ArrayList<BitFieldDescription>(fBitFieldNames.values());
+		return new ArrayList<BitFieldDescription>(getIndex().getBitFields());
 	}
 
 	/**
@@ -518,8 +511,7 @@ public class ByteValues {
 	 *         given name exists.
 	 */
 	public BitFieldDescription getBitFieldDescription(String name) {
-		initBitFieldNames();
-		return fBitFieldNames.get(name);
+		return getIndex().get(name);
 	}
 
 	/**
@@ -578,51 +570,37 @@ public class ByteValues {
 	}
 
 	/**
-	 * Initialize the Map of Bitfield names to their corresponding description objects.
+	 * Get the index of the Bitfield names to their corresponding description objects.
+	 * <p>
+	 * The index is shared by all <code>ByteValues</code> of the current MCU. If the description
+	 * of the MCU could not be read, an empty index is returned.
+	 * </p>
 	 * 
+	 * @return The <code>BitFieldIndex</code> for the current MCU and type.
 	 */
-	private void initBitFieldNames() {
-
-		if (fBitFieldNames != null) {
-			// return if the map has already been initialized
-			return;
-		}
-
-		fBitFieldNames = new HashMap<String, BitFieldDescription>();
-		IMCUDescription fusedescription = getDescription(fMCUId);
-		if (fusedescription == null) {
-			// If the fusedescription could not be read we leave the map empty.
-			return;
-		}
-
-		// Get all byte descriptions, get the bitfield descriptions from them
-		// and fill the map.
-		List<IFuseObjectDescription> bytedesclist = fusedescription.getByteDescriptions(fType);
-
-		for (IFuseObjectDescription bytedesc : bytedesclist) {
-			if (bytedesc != null) {
-				List<BitFieldDescription> bitfieldlist = bytedesc.getBitFieldDescriptions();
-				for (BitFieldDescription desc : bitfieldlist) {
-					fBitFieldNames.put(desc.getName(), desc);
-				}
+	private BitFieldIndex getIndex() {
+		if (fIndex == null) {
+			IMCUDescription fusedescription = getDescription(fMCUId);
+			if (fusedescription == null) {
+				fIndex = BitFieldIndex.EMPTY;
+			} else {
+				fIndex = BitFieldIndex.getIndex(fusedescription, fType);
 			}
 		}
+		return fIndex;
 	}
 
 	/**
-	 * Determine the bytecount for the mcu from the description object.
-	 * <p>
-	 * In case of errors determining the actual bytecount <code>0</code> is returned.
-	 * </p>
+	 * Get the plan to convert the values of the current MCU to the given MCU.
 	 * 
-	 * @return Number of bytes supported by the MCU. Between <code>0</code> and <code>6</code>.
+	 * @param mcuid
+	 *            The target MCU id.
+	 * @return The (cached) <code>ConversionPlan</code>.
 	 */
-	private int loadByteCount() {
-		IMCUDescription fusedescription = getDescription(fMCUId);
-		if (fusedescription == null) {
-			return 0;
-		}
-		return fusedescription.getByteCount(fType);
+	private ConversionPlan getConversionPlan(String mcuid) {
+		IMCUDescription ourdesc = getDescription(fMCUId);
+		IMCUDescription targetdesc = getDescription(mcuid);
+		return ConversionPlan.getPlan(ourdesc, targetdesc, fType);
 	}
 
 	/**
@@ -667,12 +645,7 @@ public class ByteValues {
 	 * 
 	 */
 	public boolean isCompatibleWith(String mcuid) {
-		IMCUDescription ourdesc = getDescription(fMCUId);
-		IMCUDescription targetdesc = getDescription(mcuid);
-		if (ourdesc == null || targetdesc == null) {
-			return false;
-		}
-		return ourdesc.isCompatibleWith(targetdesc, fType);
+		return getConversionPlan(mcuid).isCompatible();
 	}
 
 	/**
@@ -701,13 +674,13 @@ public class ByteValues {
 		if (forceMCU) {
 			// Change our MCU to that of the source values
 			setMCUId(sourcevalues.getMCUId(), false);
-			setValues(sourcevalues.getValues());
+			setValues(sourcevalues.fValues);
 			return;
 		}
 
 		if (isCompatibleWith(sourcevalues.getMCUId())) {
 			// Compatible mcu -> just copy the values and we're done
-			setValues(sourcevalues.getValues());
+			setValues(sourcevalues.fValues);
 			return;
 		}
 
@@ -715,7 +688,7 @@ public class ByteValues {
 		// resulting values as our values.
 		ConversionResults results = new ConversionResults();
 		ByteValues converted = sourcevalues.convertTo(getMCUId(), results);
-		setValues(converted.getValues());
+		setValues(converted.fValues);
 		fConversionResults = results;
 
 	}
@@ -729,6 +702,9 @@ public class ByteValues {
 	 * ByteValues object.
 	 * </p>
 	 * <p>
+	 * The matching is only done once for each pair of MCUs, see {@link ConversionPlan}.
+	 * </p>
+	 * <p>
 	 * All BitFields of the newly created target <code>ByteValues</code>, which do not have a
 	 * matching BitField in this <code>ByteValues</code> object, are set to their default value (if
 	 * defined) or to all <code>1</code>s.
@@ -744,7 +720,7 @@ public class ByteValues {
 	 */
 	public ByteValues convertTo(String mcuid, ConversionResults results) {
 
-		initBitFieldNames();
+		ConversionPlan plan = getConversionPlan(mcuid);
 
 		// Create a new ByteValues Object for the target mcu
 		ByteValues target = new ByteValues(fType, mcuid);
@@ -754,34 +730,9 @@ public class ByteValues {
 		// results of this method to this object, effectively making the target the source.
 		results.init(new ByteValues(this), target);
 
-		List<String> targetbfdnames = target.getBitfieldNames();
-
-		for (String name : targetbfdnames) {
-
-			// Check if the name matches.
-			if (fBitFieldNames.containsKey(name)) {
-				// OK, we have a matching name. Now check if the size of the BitField matches
-				BitFieldDescription targetbfd = target.getBitFieldDescription(name);
-				BitFieldDescription ourbfd = fBitFieldNames.get(name);
-				if (targetbfd.getMaxValue() == ourbfd.getMaxValue()) {
-					// identical BitField sizes: now copy the value
-					int ourvalue = getNamedValue(name);
-					if (ourvalue == -1) {
-						// If the value is undefined we do not copy
-						results.addUnset(ourbfd);
-						continue;
-					}
-					target.setNamedValue(name, ourvalue);
-					// mark the BitField as success and skip over the no-match parts
-					results.addSuccess(targetbfd);
-					results.removeNotCopied(ourbfd);
-					continue;
-				}
-			}
-			// no match found. Set to default value and add to the list
-			target.setNamedValueToDefault(name);
-			results.addUnset(target.getBitFieldDescription(name));
-		}
+		// The plan copies all matching BitFields and sets all others to their defaults. The
+		// target is new, so there are no listeners to inform.
+		plan.convert(fValues, target.fValues, results);
 
 		results.setReady();
 
@@ -867,18 +818,15 @@ public class ByteValues {
 			return;
 		}
 
-		List<ByteValueChangeEvent> allevents = new ArrayList<ByteValueChangeEvent>();
-		initBitFieldNames();
-		for (BitFieldDescription bfd : fBitFieldNames.values()) {
-			if (bfd.getIndex() == byteindex) {
-				String name = bfd.getName();
-				int value = bfd.byteToBitField(bytevalue);
-				ByteValueChangeEvent event = createEvent(name, value, byteindex, bytevalue);
-				allevents.add(event);
-			}
+		BitFieldDescription[] bfds = getIndex().getBitFields(byteindex);
+		ByteValueChangeEvent[] allevents = new ByteValueChangeEvent[bfds.length];
+		for (int i = 0; i < bfds.length; i++) {
+			BitFieldDescription bfd = bfds[i];
+			int value = bfd.byteToBitField(bytevalue);
+			allevents[i] = createEvent(bfd.getName(), value, byteindex, bytevalue);
 		}
 
-		fireEvents(allevents.toArray(new ByteValueChangeEvent[allevents.size()]));
+		fireEvents(allevents);
 	}
 
 	/**
@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.toolinfo.fuses;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A precomputed plan to convert byte values from one MCU to another.
+ * <p>
+ * The plan is built once for each source MCU, target MCU and {@link FuseType} by matching the
+ * BitFields of both MCUs: a BitField is copied if the target has a BitField with the same name and
+ * the same size. All other BitFields of the target are set to their default value. The plan
+ * stores the byte indices, masks and shifts of the matching BitFields, so that
+ * {@link ByteValues#convertTo(String, ConversionResults)} is just a loop over a few arrays.
+ * </p>
+ * <p>
+ * The plan also knows whether the two MCUs are compatible (see
+ * {@link IMCUDescription#isCompatibleWith(IMCUDescription, FuseType)}).
+ * </p>
+ * <p>
+ * Plans are immutable and cached with weak references to both MCU descriptions.
+ * </p>
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ *
+ */
+final class ConversionPlan {
+
+	/** Cache of all plans by source and target description, one plan per FuseType. */
+	private final static Map<IMCUDescription, Map<IMCUDescription, ConversionPlan[]>>	fPlanCache	= new WeakHashMap<IMCUDescription, Map<IMCUDescription, ConversionPlan[]>>();
+
+	/** <code>true</code> if the source MCU is compatible with the target MCU. */
+	private final boolean									fCompatible;
+
+	/**
+	 * The initial value of each target byte: <code>-1</code> or <code>0xff</code> with the default
+	 * values of all BitFields not in the source.
+	 */
+	private final int[]										fBaseValues;
+
+	/** Source byte index of each copied BitField. */
+	private final int[]										fSourceIndex;
+
+	/** Source mask of each copied BitField. */
+	private final int[]										fSourceMask;
+
+	/** Target byte index of each copied BitField. */
+	private final int[]										fTargetIndex;
+
+	/** Target mask of each copied BitField. */
+	private final int[]										fTargetMask;
+
+	/** Left shift (or right shift if negative) from the source to the target position. */
+	private final int[]										fShift;
+
+	/** The source and target BitField descriptions of each copied BitField. */
+	private final BitFieldDescription[]						fSourceBitFields;
+	private final BitFieldDescription[]						fTargetBitFields;
+
+	/** The source BitFields without a match in the target. */
+	private final List<BitFieldDescription>					fNotInTarget;
+
+	/** The target BitFields without a match in the source. */
+	private final List<BitFieldDescription>					fNotInSource;
+
+	/**
+	 * Get the plan to convert the byte values of the source MCU to the target MCU.
+	 * <p>
+	 * The plan is only built on the first call for a pair of descriptions, all further calls return
+	 * the same plan.
+	 * </p>
+	 *
+	 * @param source
+	 *            The description of the source MCU, or <code>null</code> if it is not known.
+	 * @param target
+	 *            The description of the target MCU, or <code>null</code> if it is not known.
+	 * @param type
+	 *            The type of the bytes.
+	 * @return The plan for the conversion.
+	 */
+	static ConversionPlan getPlan(IMCUDescription source, IMCUDescription target, FuseType type) {
+
+		if (source == null || target == null) {
+			// Unknown MCUs are not cached. They are not compatible with anything.
+			BitFieldIndex sourceindex = source != null ? BitFieldIndex.getIndex(source, type)
+					: BitFieldIndex.EMPTY;
+			BitFieldIndex targetindex = target != null ? BitFieldIndex.getIndex(target, type)
+					: BitFieldIndex.EMPTY;
+			return new ConversionPlan(sourceindex, targetindex, false);
+		}
+
+		synchronized (fPlanCache) {
+			Map<IMCUDescription, ConversionPlan[]> targetmap = fPlanCache.get(source);
+			if (targetmap == null) {
+				targetmap = new WeakHashMap<IMCUDescription, ConversionPlan[]>();
+				fPlanCache.put(source, targetmap);
+			}
+			ConversionPlan[] plans = targetmap.get(target);
+			if (plans == null) {
+				plans = new ConversionPlan[FuseType.values().length];
+				targetmap.put(target, plans);
+			}
+			ConversionPlan plan = plans[type.ordinal()];
+			if (plan == null) {
+				plan = new ConversionPlan(BitFieldIndex.getIndex(source, type), BitFieldIndex
+						.getIndex(target, type), source.isCompatibleWith(target, type));
+				plans[type.ordinal()] = plan;
+			}
+			return plan;
+		}
+	}
+
+	/**
+	 * Build a new plan from the BitField indices of the source and the target.
+	 *
+	 * @param source
+	 *            Index of the source BitFields.
+	 * @param target
+	 *            Index of the target BitFields.
+	 * @param compatible
+	 *            <code>true</code> if the source is compatible with the target.
+	 */
+	ConversionPlan(BitFieldIndex source, BitFieldIndex target, boolean compatible) {
+
+		fCompatible = compatible;
+
+		fBaseValues = new int[target.getByteCount()];
+		Arrays.fill(fBaseValues, -1);
+
+		List<BitFieldDescription> sourcebfds = new ArrayList<BitFieldDescription>();
+		List<BitFieldDescription> targetbfds = new ArrayList<BitFieldDescription>();
+		List<BitFieldDescription> notinsource = new ArrayList<BitFieldDescription>();
+
+		for (BitFieldDescription targetbfd : target.getBitFields()) {
+
+			// Check if the name and the size of the BitField match.
+			BitFieldDescription sourcebfd = source.get(targetbfd.getName());
+			if (sourcebfd != null && sourcebfd.getMaxValue() == targetbfd.getMaxValue()) {
+				sourcebfds.add(sourcebfd);
+				targetbfds.add(targetbfd);
+				continue;
+			}
+
+			// no match found. The BitField is set to its default value (or all 1s).
+			notinsource.add(targetbfd);
+			int index = targetbfd.getIndex();
+			if (index < fBaseValues.length) {
+				int value = targetbfd.getDefaultValue();
+				if (value == -1) {
+					value = targetbfd.getMaxValue();
+				}
+				int base = fBaseValues[index] == -1 ? 0xff : fBaseValues[index];
+				fBaseValues[index] = (base & ~targetbfd.getMask())
+						| (targetbfd.bitFieldToByte(value) & targetbfd.getMask());
+			}
+		}
+
+		int count = sourcebfds.size();
+		fSourceBitFields = sourcebfds.toArray(new BitFieldDescription[count]);
+		fTargetBitFields = targetbfds.toArray(new BitFieldDescription[count]);
+		fSourceIndex = new int[count];
+		fSourceMask = new int[count];
+		fTargetIndex = new int[count];
+		fTargetMask = new int[count];
+		fShift = new int[count];
+		for (int i = 0; i < count; i++) {
+			BitFieldDescription sourcebfd = fSourceBitFields[i];
+			BitFieldDescription targetbfd = fTargetBitFields[i];
+			fSourceIndex[i] = sourcebfd.getIndex();
+			fSourceMask[i] = sourcebfd.getMask();
+			fTargetIndex[i] = targetbfd.getIndex();
+			fTargetMask[i] = targetbfd.getMask();
+			fShift[i] = Integer.numberOfTrailingZeros(targetbfd.getMask())
+					- Integer.numberOfTrailingZeros(sourcebfd.getMask());
+		}
+
+		List<BitFieldDescription> notintarget = new ArrayList<BitFieldDescription>();
+		for (BitFieldDescription sourcebfd : source.getBitFields()) {
+			if (!sourcebfds.contains(sourcebfd)) {
+				notintarget.add(sourcebfd);
+			}
+		}
+
+		fNotInTarget = Collections.unmodifiableList(notintarget);
+		fNotInSource = Collections.unmodifiableList(notinsource);
+	}
+
+	/**
+	 * @return <code>true</code> if the source MCU is compatible with the target MCU, i.e. all
+	 *         BitFields have the same name and mask.
+	 */
+	boolean isCompatible() {
+		return fCompatible;
+	}
+
+	/**
+	 * @return The number of bytes of the target MCU.
+	 */
+	int getTargetByteCount() {
+		return fBaseValues.length;
+	}
+
+	/**
+	 * Convert the given source values.
+	 * <p>
+	 * All copied BitFields are moved from the source to the target position. If the source byte
+	 * of a BitField is not set (<code>-1</code>), the BitField is not copied. Target bytes without
+	 * any copied or default BitField are set to <code>-1</code>.
+	 * </p>
+	 *
+	 * @param sourcevalues
+	 *            The byte values of the source MCU.
+	 * @param targetvalues
+	 *            Array for the converted values. Bytes beyond the target byte count of this plan
+	 *            are left untouched.
+	 * @param results
+	 *            The conversion results to fill, or <code>null</code>. The results must have been
+	 *            initialized already.
+	 */
+	void convert(int[] sourcevalues, int[] targetvalues, ConversionResults results) {
+
+		int count = Math.min(fBaseValues.length, targetvalues.length);
+		System.arraycopy(fBaseValues, 0, targetvalues, 0, count);
+
+		List<BitFieldDescription> success = new ArrayList<BitFieldDescription>(fShift.length);
+		List<BitFieldDescription> notcopied = new ArrayList<BitFieldDescription>(fNotInTarget);
+		List<BitFieldDescription> unset = new ArrayList<BitFieldDescription>(fNotInSource);
+
+		for (int i = 0; i < fShift.length; i++) {
+			int sourceindex = fSourceIndex[i];
+			int sourcevalue = sourceindex < sourcevalues.length ? sourcevalues[sourceindex] : -1;
+			if (sourcevalue == -1) {
+				// If the value is undefined we do not copy
+				notcopied.add(fSourceBitFields[i]);
+				unset.add(fSourceBitFields[i]);
+				continue;
+			}
+
+			int targetindex = fTargetIndex[i];
+			if (targetindex < count) {
+				int bits = sourcevalue & fSourceMask[i];
+				int shift = fShift[i];
+				bits = shift >= 0 ? bits << shift : bits >> -shift;
+				int targetvalue = targetvalues[targetindex] == -1 ? 0xff
+						: targetvalues[targetindex];
+				targetvalues[targetindex] = (targetvalue & ~fTargetMask[i])
+						| (bits & fTargetMask[i]);
+			}
+			success.add(fTargetBitFields[i]);
+		}
+
+		if (results != null) {
+			results.setResults(success, notcopied, unset);
+		}
+	}
+}
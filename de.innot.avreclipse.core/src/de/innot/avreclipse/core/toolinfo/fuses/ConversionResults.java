@@ -126,10 +126,31 @@ public class ConversionResults {
 		fTarget = target;
 		fSuccessList.clear();
 		fNotCopiedList.clear();
-		fNotCopiedList.clear();
+		fUnsetFieldsList.clear();
 		fNotCopiedList.addAll(fSource.getBitfieldDescriptions());
 	}
 
+	/**
+	 * Called by {@link ByteValues#convertTo(String, ConversionResults)} to set all three lists at
+	 * once from a precomputed {@link ConversionPlan}.
+	 * 
+	 * @param success
+	 *            The target BitFields successfully copied.
+	 * @param notcopied
+	 *            The source BitFields which could not be converted.
+	 * @param unset
+	 *            The BitFields which were set to the default value.
+	 */
+	protected void setResults(List<BitFieldDescription> success,
+			List<BitFieldDescription> notcopied, List<BitFieldDescription> unset) {
+		fSuccessList.clear();
+		fSuccessList.addAll(success);
+		fNotCopiedList.clear();
+		fNotCopiedList.addAll(notcopied);
+		fUnsetFieldsList.clear();
+		fUnsetFieldsList.addAll(unset);
+	}
+
 	/**
 	 * Called by {@link ByteValues#convertTo(String, ConversionResults)} to add a successful
 	 * BitField conversion to the list.
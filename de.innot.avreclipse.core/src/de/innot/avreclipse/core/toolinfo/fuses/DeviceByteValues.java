@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.toolinfo.fuses;
+
+/**
+ * Container for the fuse bytes and lockbits read from a device in a single avrdude run.
+ * <p>
+ * Both {@link ByteValues} objects belong to the MCU that has been identified by its signature
+ * during the read, which is available with {@link #getMCUId()}.
+ * </p>
+ *
+ * @see de.innot.avreclipse.core.toolinfo.AVRDude#getDeviceByteValues(de.innot.avreclipse.core.avrdude.ProgrammerConfig,
+ *      org.eclipse.core.runtime.IProgressMonitor)
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ */
+public class DeviceByteValues {
+
+	private final String		fMCUId;
+
+	private final ByteValues	fFuses;
+
+	private final ByteValues	fLockbits;
+
+	/**
+	 * Create a new container for the given values.
+	 *
+	 * @param mcuid
+	 *            The id of the MCU the values were read from.
+	 * @param fuses
+	 *            <code>ByteValues</code> of type {@link FuseType#FUSE}
+	 * @param lockbits
+	 *            <code>ByteValues</code> of type {@link FuseType#LOCKBITS}
+	 */
+	public DeviceByteValues(String mcuid, ByteValues fuses, ByteValues lockbits) {
+		fMCUId = mcuid;
+		fFuses = fuses;
+		fLockbits = lockbits;
+	}
+
+	/**
+	 * @return the id of the MCU as identified by its signature.
+	 */
+	public String getMCUId() {
+		return fMCUId;
+	}
+
+	/**
+	 * @return the fuse byte values of the device.
+	 */
+	public ByteValues getFuseValues() {
+		return fFuses;
+	}
+
+	/**
+	 * @return the lockbit byte values of the device.
+	 */
+	public ByteValues getLockbitValues() {
+		return fLockbits;
+	}
+
+	/**
+	 * Get the values of the given type.
+	 *
+	 * @param type
+	 *            Either {@link FuseType#FUSE} or {@link FuseType#LOCKBITS}
+	 * @return <code>ByteValues</code> of the requested type.
+	 */
+	public ByteValues getValues(FuseType type) {
+		switch (type) {
+			case FUSE:
+				return fFuses;
+			case LOCKBITS:
+				return fLockbits;
+			default:
+				return null;
+		}
+	}
+}
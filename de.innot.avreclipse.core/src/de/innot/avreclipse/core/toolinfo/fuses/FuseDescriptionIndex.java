@@ -0,0 +1,312 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.toolinfo.fuses;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * A compact binary index of all <code>MCUDescription</code> objects in a fuse description folder.
+ * <p>
+ * The index is a single file (<code>fusedesc.index</code>) next to the <code>.desc</code> files
+ * it was created from. It is memory mapped and each <code>MCUDescription</code> is only decoded
+ * when it is requested, which is much faster than parsing its <code>.desc</code> XML file.
+ * </p>
+ * <p>
+ * The index contains a key derived from the names and the content of all <code>.desc</code> files
+ * in the folder. If the files have been changed since the index was created, the index is ignored
+ * and the <code>.desc</code> files are used instead.
+ * </p>
+ *
+ * @see Fuses
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ */
+public class FuseDescriptionIndex {
+
+	/** Name of the index file within the fuse description folder */
+	public final static String			INDEX_FILENAME			= "fusedesc.index";
+
+	private final static String			DESCRIPTION_EXTENSION	= ".desc";
+
+	private final static int			MAGIC					= 0x46444958;	// "FDIX"
+
+	private final static int			FORMAT_VERSION			= 2;
+
+	/** The content of the index file. Only duplicates of it are used to read. */
+	private final ByteBuffer			fBuffer;
+
+	/** Position of the first MCUDescription within the buffer */
+	private final int					fDataStart;
+
+	/** Map of all MCU ids to the offset of their description */
+	private final Map<String, Integer>	fOffsets;
+
+	/**
+	 * A minimal <code>InputStream</code> to read from a <code>ByteBuffer</code>.
+	 */
+	private static class ByteBufferInputStream extends InputStream {
+
+		private final ByteBuffer	fSource;
+
+		public ByteBufferInputStream(ByteBuffer source) {
+			fSource = source;
+		}
+
+		@Override
+		public int read() {
+			if (!fSource.hasRemaining()) {
+				return -1;
+			}
+			return fSource.get() & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (!fSource.hasRemaining()) {
+				return -1;
+			}
+			int count = Math.min(len, fSource.remaining());
+			fSource.get(b, off, count);
+			return count;
+		}
+	}
+
+	private FuseDescriptionIndex(ByteBuffer buffer, int datastart, Map<String, Integer> offsets) {
+		fBuffer = buffer;
+		fDataStart = datastart;
+		fOffsets = offsets;
+	}
+
+	/**
+	 * Open the index of the given fuse description folder.
+	 *
+	 * @param folder
+	 *            Folder with <code>.desc</code> files
+	 * @return The index or <code>null</code> if the folder has no index or the index does not
+	 *         match the current <code>.desc</code> files.
+	 * @throws IOException
+	 *             if the index exists, but can not be read.
+	 */
+	public static FuseDescriptionIndex open(File folder) throws IOException {
+
+		File indexfile = new File(folder, INDEX_FILENAME);
+		if (!indexfile.canRead()) {
+			return null;
+		}
+
+		ByteBuffer buffer;
+		RandomAccessFile file = new RandomAccessFile(indexfile, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			// The mapping stays valid after the file is closed
+			file.close();
+		}
+
+		ByteBuffer header = buffer.duplicate();
+		DataInputStream in = new DataInputStream(new ByteBufferInputStream(header));
+		if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+			return null;
+		}
+		if (!in.readUTF().equals(getKey(folder))) {
+			// .desc files have been added, removed or modified
+			return null;
+		}
+
+		int count = in.readInt();
+		Map<String, Integer> offsets = new HashMap<String, Integer>(count * 2);
+		for (int i = 0; i < count; i++) {
+			String mcuid = in.readUTF();
+			offsets.put(mcuid, in.readInt());
+		}
+
+		return new FuseDescriptionIndex(buffer, header.position(), offsets);
+	}
+
+	/**
+	 * Create the index for the given fuse description folder.
+	 * <p>
+	 * This must be called after the <code>.desc</code> files for all descriptions have been written
+	 * to the folder, as the index is only valid for the files present at this time.
+	 * </p>
+	 *
+	 * @param folder
+	 *            Folder with <code>.desc</code> files
+	 * @param descriptions
+	 *            All <code>MCUDescription</code>s stored in the folder.
+	 * @throws IOException
+	 *             if the index file can not be written.
+	 */
+	public static void createIndex(File folder, Collection<MCUDescription> descriptions)
+			throws IOException {
+
+		// Sort the descriptions by MCU id, so that the same descriptions always produce the same
+		// index file.
+		Map<String, MCUDescription> sorted = new TreeMap<String, MCUDescription>();
+		for (MCUDescription desc : descriptions) {
+			sorted.put(desc.getMCUId(), desc);
+		}
+
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		DataOutputStream dataout = new DataOutputStream(data);
+		Map<String, Integer> offsets = new TreeMap<String, Integer>();
+		for (MCUDescription desc : sorted.values()) {
+			offsets.put(desc.getMCUId(), dataout.size());
+			desc.toBinary(dataout);
+		}
+		dataout.close();
+
+		// Write to a temporary file first, so that an incomplete index is never used.
+		File indexfile = new File(folder, INDEX_FILENAME);
+		File tmpfile = new File(folder, INDEX_FILENAME + ".tmp");
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(tmpfile));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(getKey(folder));
+			out.writeInt(offsets.size());
+			for (Map.Entry<String, Integer> entry : offsets.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeInt(entry.getValue());
+			}
+			data.writeTo(out);
+		} finally {
+			out.close();
+		}
+
+		// File.renameTo() does not replace existing files on all platforms
+		indexfile.delete();
+		if (!tmpfile.renameTo(indexfile)) {
+			tmpfile.delete();
+			throw new IOException("Could not create the fuse description index " + indexfile);
+		}
+	}
+
+	/**
+	 * @return Set with the MCU ids of all descriptions in the index.
+	 */
+	public Set<String> getMCUIds() {
+		return Collections.unmodifiableSet(fOffsets.keySet());
+	}
+
+	/**
+	 * Get the description for the given MCU.
+	 * <p>
+	 * The description is decoded from the index on every call. Callers should cache the result.
+	 * </p>
+	 *
+	 * @param mcuid
+	 *            A MCU id value.
+	 * @return New <code>MCUDescription</code> or <code>null</code> if the index has no
+	 *         description for the MCU.
+	 * @throws IOException
+	 *             if the index is corrupt.
+	 */
+	public MCUDescription getDescription(String mcuid) throws IOException {
+		Integer offset = fOffsets.get(mcuid);
+		if (offset == null) {
+			return null;
+		}
+		ByteBuffer buffer = fBuffer.duplicate();
+		buffer.position(fDataStart + offset);
+		return new MCUDescription(new DataInputStream(new ByteBufferInputStream(buffer)));
+	}
+
+	/**
+	 * Get the key for the current content of the given folder.
+	 * <p>
+	 * The key is build from the names and a checksum of the content of all <code>.desc</code>
+	 * files, so that edits which do not change the file size are detected as well. The file dates
+	 * are not used, because they are not preserved when the plugin is installed.
+	 * </p>
+	 *
+	 * @param folder
+	 *            Folder with <code>.desc</code> files
+	 * @return <code>String</code> key
+	 * @throws IOException
+	 *             if one of the <code>.desc</code> files can not be read.
+	 */
+	private static String getKey(File folder) throws IOException {
+		File[] allfiles = folder.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.endsWith(DESCRIPTION_EXTENSION);
+			}
+		});
+		if (allfiles == null) {
+			return "";
+		}
+		Arrays.sort(allfiles);
+
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[8192];
+		for (File file : allfiles) {
+			crc.update((file.getName() + ":" + file.length() + ";").getBytes());
+			InputStream in = new FileInputStream(file);
+			try {
+				int count;
+				while ((count = in.read(buffer)) != -1) {
+					crc.update(buffer, 0, count);
+				}
+			} finally {
+				in.close();
+			}
+		}
+		return allfiles.length + ":" + Long.toHexString(crc.getValue());
+	}
+
+	/**
+	 * Write a String which may be <code>null</code>.
+	 *
+	 * @param out
+	 * @param value
+	 * @throws IOException
+	 */
+	static void writeString(DataOutput out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	/**
+	 * Read a String written with {@link #writeString(DataOutput, String)}.
+	 *
+	 * @param in
+	 * @return The String or <code>null</code>
+	 * @throws IOException
+	 */
+	static String readString(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+}
@@ -13,11 +13,19 @@ package de.innot.avreclipse.core.toolinfo.fuses;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -25,7 +33,9 @@ import javax.xml.parsers.ParserConfigurationException;
 
 import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
 import org.osgi.framework.Bundle;
 import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
@@ -63,6 +73,16 @@ import de.innot.avreclipse.core.IMCUProvider;
  * objects as xml files. This class also has a cache of all descriptions already 
  * requested to reduce disk access.
  * </p>
+ * <p>
+ * The cache is bounded and evicts the least recently used descriptions once more than
+ * {@link #setCacheSize(int) the cache size} descriptions have been loaded. It is safe to use from
+ * multiple threads, and concurrent requests for the same MCU will load its description only once.
+ * </p>
+ * <p>
+ * The default folder also contains a {@link FuseDescriptionIndex} with all descriptions in a compact
+ * binary format. If the index matches the xml files it is used instead of them. Descriptions in the
+ * instance folder are always read from their xml files and take precedence over the index.
+ * </p>
  * @author Thomas Holland
  * @since 2.2
  *
@@ -76,18 +96,42 @@ public class Fuses implements IMCUProvider {
 	/** File name extension for <code>IMCUDescription</code> objects. */
 	private final static String					DESCRIPTION_EXTENSION	= ".desc";
 
-	/** Cache of accessed <code>IMCUDescription</code> objects */
+	/** Default maximum number of descriptions in the cache */
+	public final static int						DEFAULT_CACHE_SIZE		= 32;
+
+	/**
+	 * Cache of accessed <code>IMCUDescription</code> objects in least recently used order. All
+	 * access to the cache and to {@link #fPendingLoads} must be synchronized on the cache.
+	 */
 	private final Map<String, IMCUDescription>	fCache;
 
+	/** Maximum number of entries in the cache */
+	private int									fCacheSize				= DEFAULT_CACHE_SIZE;
+
+	/** Descriptions currently loaded by some thread */
+	private final Map<String, FutureTask<IMCUDescription>>	fPendingLoads;
+
+	// Cache statistics
+	private final AtomicLong					fCacheHits				= new AtomicLong();
+	private final AtomicLong					fCacheMisses			= new AtomicLong();
+	private final AtomicLong					fLoads					= new AtomicLong();
+	private final AtomicLong					fLoadTime				= new AtomicLong();
+
 	/** List of all MCU id values for which Descriptions exist */
 	private Set<String>							fMCUList				= null;
 
+	/** Index of the default descriptions. <code>null</code> if the default folder has no valid index */
+	private FuseDescriptionIndex				fDefaultIndex			= null;
+
+	/** <code>true</code> once the default index has been opened (or failed to open) */
+	private boolean								fDefaultIndexLoaded		= false;
+
 	private static Fuses						fInstance				= null;
 
 	/**
 	 * Get the default instance of the Fuses class
 	 */
-	public static Fuses getDefault() {
+	public static synchronized Fuses getDefault() {
 		if (fInstance == null)
 			fInstance = new Fuses();
 		return fInstance;
@@ -96,7 +140,78 @@ public class Fuses implements IMCUProvider {
 	// protected constructor to prevent outside instantiation.
 	protected Fuses() {
 		// Init the cache
-		fCache = new HashMap<String, IMCUDescription>();
+		fCache = new LinkedHashMap<String, IMCUDescription>(16, 0.75f, true) {
+			private static final long	serialVersionUID	= 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, IMCUDescription> eldest) {
+				return size() > fCacheSize;
+			}
+		};
+		fPendingLoads = new HashMap<String, FutureTask<IMCUDescription>>();
+	}
+
+	/**
+	 * Set the maximum number of descriptions kept in the cache.
+	 * <p>
+	 * If the cache contains more descriptions, the least recently used ones are removed.
+	 * </p>
+	 * 
+	 * @param size
+	 *            Maximum number of cached descriptions. <code>0</code> disables the cache.
+	 */
+	public void setCacheSize(int size) {
+		if (size < 0) {
+			throw new IllegalArgumentException("Cache size must not be negative: " + size);
+		}
+		synchronized (fCache) {
+			fCacheSize = size;
+			Iterator<String> iter = fCache.keySet().iterator();
+			while (fCache.size() > size && iter.hasNext()) {
+				iter.next();
+				iter.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return The number of {@link #getDescription(String)} calls answered from the cache.
+	 */
+	public long getCacheHits() {
+		return fCacheHits.get();
+	}
+
+	/**
+	 * @return The number of {@link #getDescription(String)} calls not answered from the cache.
+	 *         This includes calls which waited for a description loaded by another thread.
+	 */
+	public long getCacheMisses() {
+		return fCacheMisses.get();
+	}
+
+	/**
+	 * @return The number of times a description has been loaded from the storage locations.
+	 */
+	public long getLoadCount() {
+		return fLoads.get();
+	}
+
+	/**
+	 * @return The total time in milliseconds spent loading descriptions from the storage
+	 *         locations.
+	 */
+	public long getLoadTime() {
+		return TimeUnit.NANOSECONDS.toMillis(fLoadTime.get());
+	}
+
+	/**
+	 * Reset the cache hit, miss and load counters to zero.
+	 */
+	public void resetCacheStatistics() {
+		fCacheHits.set(0);
+		fCacheMisses.set(0);
+		fLoads.set(0);
+		fLoadTime.set(0);
 	}
 
 	/**
@@ -110,17 +225,78 @@ public class Fuses implements IMCUProvider {
 	 *             if either the storage locations can't be accessed or a file exists, but can't be
 	 *             accessed.
 	 */
-	public IMCUDescription getDescription(String mcuid) throws IOException {
+	public IMCUDescription getDescription(final String mcuid) throws IOException {
 
 		if (mcuid == null || (mcuid.length() == 0)) {
 			return null;
 		}
 
-		// Check the cache first
-		if (fCache.containsKey(mcuid)) {
-			return fCache.get(mcuid);
+		FutureTask<IMCUDescription> load;
+		boolean loader = false;
+
+		// Check the cache first. If another thread is already loading the description wait for it
+		// instead of loading it again.
+		synchronized (fCache) {
+			IMCUDescription desc = fCache.get(mcuid);
+			if (desc != null) {
+				fCacheHits.incrementAndGet();
+				return desc;
+			}
+			fCacheMisses.incrementAndGet();
+
+			load = fPendingLoads.get(mcuid);
+			if (load == null) {
+				load = new FutureTask<IMCUDescription>(new Callable<IMCUDescription>() {
+					public IMCUDescription call() throws IOException {
+						return loadDescription(mcuid);
+					}
+				});
+				fPendingLoads.put(mcuid, load);
+				loader = true;
+			}
 		}
 
+		if (!loader) {
+			return getLoadResult(load);
+		}
+
+		IMCUDescription desc = null;
+		long start = System.nanoTime();
+		try {
+			load.run();
+			desc = getLoadResult(load);
+		} finally {
+			fLoads.incrementAndGet();
+			fLoadTime.addAndGet(System.nanoTime() - start);
+			synchronized (fCache) {
+				fPendingLoads.remove(mcuid);
+				// If a description was found enter it to the cache
+				if (desc != null && fCacheSize > 0) {
+					fCache.put(mcuid, desc);
+				}
+			}
+		}
+
+		return desc; // will still be null if nothing was found
+	}
+
+	/**
+	 * Load the description for the given MCU from the storage locations.
+	 * <p>
+	 * This is called by {@link #getDescription(String)} for every cache miss and is never called
+	 * concurrently for the same MCU id.
+	 * </p>
+	 * 
+	 * @param mcuid
+	 *            <code>String</code> with a valid MCU id
+	 * @return <code>IMCUDescription</code> for the MCU or <code>null</code> if the given MCU id
+	 *         is unknown.
+	 * @throws IOException
+	 *             if either the storage locations can't be accessed or a file exists, but can't be
+	 *             accessed.
+	 */
+	protected IMCUDescription loadDescription(String mcuid) throws IOException {
+
 		// Look in the instance location first,
 		// then in the defaults location
 		IPath instancelocation = getInstanceStorageLocation();
@@ -133,23 +309,48 @@ public class Fuses implements IMCUProvider {
 			// with something reasonable: The Instance location
 			defaultlocation = getInstanceStorageLocation();
 		}
-		IPath[] allpaths = new IPath[] { instancelocation, defaultlocation };
 
-		IMCUDescription desc = null;
+		IMCUDescription desc = getDescriptionFromLocation(mcuid, instancelocation);
 
-		for (IPath path : allpaths) {
-			desc = getDescriptionFromLocation(mcuid, path);
-			if (desc != null) {
-				break;
+		if (desc == null) {
+			FuseDescriptionIndex index = getDefaultIndex();
+			if (index != null) {
+				desc = index.getDescription(mcuid);
+			} else {
+				desc = getDescriptionFromLocation(mcuid, defaultlocation);
 			}
 		}
 
-		// If a description was found enter it to the cache
-		if (desc != null) {
-			fCache.put(mcuid, desc);
-		}
+		return desc;
+	}
 
-		return desc; // will still be null if nothing was found
+	/**
+	 * Wait for the given load to finish and return its result.
+	 * 
+	 * @param load
+	 *            A load started by {@link #getDescription(String)}
+	 * @return The loaded description or <code>null</code>
+	 * @throws IOException
+	 *             if the load failed with an IOException or the thread was interrupted while
+	 *             waiting.
+	 */
+	private IMCUDescription getLoadResult(FutureTask<IMCUDescription> load) throws IOException {
+		try {
+			return load.get();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while loading a fuse description");
+		} catch (ExecutionException ee) {
+			Throwable cause = ee.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause.getMessage());
+		}
 	}
 
 	/**
@@ -231,7 +432,7 @@ public class Fuses implements IMCUProvider {
 	 * 
 	 * @see de.innot.avreclipse.core.IMCUProvider#getMCUList()
 	 */
-	public Set<String> getMCUList() {
+	public synchronized Set<String> getMCUList() {
 
 		if (fMCUList != null) {
 			return fMCUList;
@@ -253,6 +454,13 @@ public class Fuses implements IMCUProvider {
 		IPath instancelocation = getInstanceStorageLocation();
 		IPath[] allpaths = new IPath[] { defaultlocation, instancelocation };
 
+		FuseDescriptionIndex index = getDefaultIndex();
+		if (index != null) {
+			// The index has all default descriptions. Only the instance location needs to be read.
+			fMCUList.addAll(index.getMCUIds());
+			allpaths = new IPath[] { instancelocation };
+		}
+
 		for (IPath path : allpaths) {
 			File currfolder = path.toFile();
 			String[] allfiles = currfolder.list(new FilenameFilter() {
@@ -284,7 +492,7 @@ public class Fuses implements IMCUProvider {
 	 * 
 	 * @see de.innot.avreclipse.core.IMCUProvider#hasMCU(java.lang.String)
 	 */
-	public boolean hasMCU(String mcuid) {
+	public synchronized boolean hasMCU(String mcuid) {
 		if (fMCUList == null) {
 			getMCUList();
 		}
@@ -354,6 +562,31 @@ public class Fuses implements IMCUProvider {
 		return null;
 	}
 
+	/**
+	 * Get the index of the build-in fuse descriptions.
+	 * <p>
+	 * The index is opened on the first call. If the default location has no index or the index is
+	 * out of date <code>null</code> is returned and the xml files are used instead.
+	 * </p>
+	 * 
+	 * @return The <code>FuseDescriptionIndex</code> or <code>null</code>
+	 */
+	private synchronized FuseDescriptionIndex getDefaultIndex() {
+
+		if (!fDefaultIndexLoaded) {
+			fDefaultIndexLoaded = true;
+			try {
+				fDefaultIndex = FuseDescriptionIndex.open(getDefaultStorageLocation().toFile());
+			} catch (IOException ioe) {
+				IStatus status = new Status(IStatus.WARNING, AVRPlugin.PLUGIN_ID,
+						"Could not read the fuse description index, using the description files",
+						ioe);
+				AVRPlugin.getDefault().log(status);
+			}
+		}
+		return fDefaultIndex;
+	}
+
 	/**
 	 * Get the folder for the instance fuse description files.
 	 * <p>
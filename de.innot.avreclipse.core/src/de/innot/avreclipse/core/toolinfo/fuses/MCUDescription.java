@@ -10,6 +10,9 @@
  *******************************************************************************/
 package de.innot.avreclipse.core.toolinfo.fuses;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -128,6 +131,22 @@ public class MCUDescription implements IMCUDescription {
 		}
 	}
 
+	/**
+	 * Construct a new MCUDescription from its binary form.
+	 * 
+	 * @see #toBinary(DataOutput)
+	 * 
+	 * @param in
+	 *            <code>DataInput</code> positioned at the start of the binary description.
+	 * @throws IOException
+	 */
+	MCUDescription(DataInput in) throws IOException {
+		fMCUid = in.readUTF();
+		fBuildVersion = in.readInt();
+		fFuseByteDescList = readByteDescriptions(in);
+		fLockbitsByteDescList = readByteDescriptions(in);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see de.innot.avreclipse.core.toolinfo.fuses.IMCUDescription#getMCUId()
@@ -323,6 +342,42 @@ public class MCUDescription implements IMCUDescription {
 		}
 	}
 
+	/**
+	 * Convert this MCUDescription Object to the binary form used by the
+	 * {@link FuseDescriptionIndex}.
+	 * 
+	 * @param out
+	 *            <code>DataOutput</code> to write to.
+	 * @throws IOException
+	 */
+	void toBinary(DataOutput out) throws IOException {
+		out.writeUTF(fMCUid);
+		out.writeInt(fBuildVersion);
+		writeByteDescriptions(out, fFuseByteDescList);
+		writeByteDescriptions(out, fLockbitsByteDescList);
+	}
+
+	private static void writeByteDescriptions(DataOutput out, List<ByteDescription> list)
+			throws IOException {
+		// The list may contain null entries for unused byte indices
+		out.writeInt(list.size());
+		for (ByteDescription bd : list) {
+			out.writeBoolean(bd != null);
+			if (bd != null) {
+				bd.toBinary(out);
+			}
+		}
+	}
+
+	private static List<ByteDescription> readByteDescriptions(DataInput in) throws IOException {
+		int count = in.readInt();
+		List<ByteDescription> list = new ArrayList<ByteDescription>(count);
+		for (int i = 0; i < count; i++) {
+			list.add(in.readBoolean() ? new ByteDescription(in) : null);
+		}
+		return list;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see
@@ -11,18 +11,11 @@
 package de.innot.avreclipse.core.toolinfo.partdescriptionfiles;
 
 import java.io.File;
-import java.io.IOException;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
-import org.xml.sax.SAXParseException;
 
 import de.innot.avreclipse.core.util.AVRMCUidConverter;
 
@@ -49,11 +42,10 @@ public abstract class BaseReader implements IPDFreader {
 	/*
 	 * (non-Javadoc)
 	 * @see
-	 * de.innot.avreclipse.core.toolinfo.partdescriptionfiles.IPDFreader#read(org.w3c.dom.Document)
+	 * de.innot.avreclipse.core.toolinfo.partdescriptionfiles.IPDFreader#read(org.w3c.dom.Document,
+	 * java.io.File)
 	 */
-	public void read(File xmlfile) {
-
-		Document document = getDocument(xmlfile);
+	public void read(Document document, File xmlfile) {
 
 		// Get the MCU name from the <device> element
 		NodeList nodes = document.getElementsByTagName(ELEM_DEVICE);
@@ -87,39 +79,4 @@ public abstract class BaseReader implements IPDFreader {
 	 */
 	abstract protected void parse(Document document, File sourcefile);
 
-	/**
-	 * Read and parse the given XML file and return an DOM for it.
-	 * 
-	 * @param pdffile
-	 *            <code>File</code> to an XML file.
-	 * @return <code>Document</code> root node of the DOM or <code>null</code> if the file could not
-	 *         be read or parsed.
-	 */
-	private Document getDocument(File pdffile) {
-
-		Document root = null;
-		try {
-			// Read the xml file
-			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-			DocumentBuilder builder = factory.newDocumentBuilder();
-			root = builder.parse(pdffile);
-
-		} catch (SAXParseException spe) {
-			System.out.println("\n** Parsing error, line " + spe.getLineNumber() + ", uri "
-					+ spe.getSystemId());
-			System.out.println("   " + spe.getMessage());
-			Exception e = (spe.getException() != null) ? spe.getException() : spe;
-			e.printStackTrace();
-		} catch (SAXException sxe) {
-			Exception e = (sxe.getException() != null) ? sxe.getException() : sxe;
-			e.printStackTrace();
-		} catch (ParserConfigurationException pce) {
-			pce.printStackTrace();
-		} catch (IOException ioe) {
-			ioe.printStackTrace();
-		}
-
-		return root;
-	}
-
 }
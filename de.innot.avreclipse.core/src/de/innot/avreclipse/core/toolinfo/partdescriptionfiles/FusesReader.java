@@ -45,6 +45,7 @@ import de.innot.avreclipse.AVRPlugin;
 import de.innot.avreclipse.core.toolinfo.fuses.BitFieldDescription;
 import de.innot.avreclipse.core.toolinfo.fuses.BitFieldValueDescription;
 import de.innot.avreclipse.core.toolinfo.fuses.ByteDescription;
+import de.innot.avreclipse.core.toolinfo.fuses.FuseDescriptionIndex;
 import de.innot.avreclipse.core.toolinfo.fuses.FuseType;
 import de.innot.avreclipse.core.toolinfo.fuses.Fuses;
 import de.innot.avreclipse.core.toolinfo.fuses.IMCUDescription;
@@ -146,10 +147,26 @@ public class FusesReader extends BaseReader {
 
 		// Add the description object to the internal list of all
 		// descriptions.
-		fFuseDescriptions.put(fMCUid, desc);
+		storeDescription(fMCUid, desc);
 
 	}
 
+	/**
+	 * Add the description to the list of descriptions to write.
+	 * <p>
+	 * This method can be overridden to store the description to somewhere else. The default is to
+	 * keep it in an internal list, which is written to the storage path in {@link #finish()}.
+	 * </p>
+	 * 
+	 * @param mcuid
+	 *            The MCU id value
+	 * @param desc
+	 *            The fuses / lockbits description for the MCU
+	 */
+	protected void storeDescription(String mcuid, MCUDescription desc) {
+		fFuseDescriptions.put(mcuid, desc);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see de.innot.avreclipse.core.toolinfo.partdescriptionfiles.IPDFreader#finish()
@@ -270,6 +287,15 @@ public class FusesReader extends BaseReader {
 			}
 		} // for loop
 
+		// Finally create the binary index of all descriptions, which is used instead of the
+		// individual files once the files have been copied to the plugin.
+		try {
+			FuseDescriptionIndex.createIndex(folder, fFuseDescriptions.values());
+		} catch (IOException ioe) {
+			IStatus status = new Status(Status.ERROR, AVRPlugin.PLUGIN_ID,
+					"Could not write the fuse description index", ioe);
+			AVRPlugin.getDefault().log(status);
+		}
 	}
 
 	/**
@@ -363,12 +389,11 @@ public class FusesReader extends BaseReader {
 		// Get the Attributes of the <bitfield> node
 		NamedNodeMap attrs = node.getAttributes();
 		String name = attrs.getNamedItem(ATTR_NAME).getTextContent();
-		Long mask = Long.decode(attrs.getNamedItem(ATTR_MASK).getTextContent());
+		String mask = attrs.getNamedItem(ATTR_MASK).getTextContent();
 
-		// The caption attribute is optional. If it is not set then take the name of the value as
-		// its description.
+		// The caption attribute is optional.
 		Node descriptionNode = attrs.getNamedItem(ATTR_CAPTION);
-		String description = descriptionNode != null ? descriptionNode.getNodeValue() : name;
+		String caption = descriptionNode != null ? descriptionNode.getNodeValue() : null;
 
 		// The values attribute is optional as well. It contains the name of a <values-group>
 		// element.
@@ -385,14 +410,40 @@ public class FusesReader extends BaseReader {
 			}
 		}
 
+		desc.addBitFieldDescription(createBitFieldDescription(index, name, mask, caption,
+				valuesList));
+	}
+
+	/**
+	 * Create a new <code>BitFieldDescription</code> from the attributes of a &lt;bitfield&gt;
+	 * element.
+	 * 
+	 * @param index
+	 *            the fuse byte index this bitfield is for.
+	 * @param name
+	 *            the "name" attribute
+	 * @param mask
+	 *            the "mask" attribute
+	 * @param caption
+	 *            the optional "caption" attribute or <code>null</code>
+	 * @param valuesList
+	 *            the values of the referenced &lt;value-group&gt; or <code>null</code>
+	 * @return new <code>BitFieldDescription</code>
+	 */
+	BitFieldDescription createBitFieldDescription(int index, String name, String mask,
+			String caption, List<BitFieldValueDescription> valuesList) {
+
+		long maskvalue = Long.decode(mask);
+
+		// If the caption is not set then take the name of the value as its description.
+		String description = caption != null ? caption : name;
+
 		// Check if this bitfield is one that contains errors in the part description files and fix
 		// the errors.
-		name = bitfieldNameFixer(name, mask, description);
+		String fixedname = bitfieldNameFixer(name, maskvalue, description);
 
-		BitFieldDescription bitfield = new BitFieldDescription(index, name, description,
-				mask.intValue(), -1, valuesList);
-
-		desc.addBitFieldDescription(bitfield);
+		return new BitFieldDescription(index, fixedname, description, (int) maskvalue, -1,
+				valuesList);
 	}
 
 	/**
@@ -441,19 +492,42 @@ public class FusesReader extends BaseReader {
 		NamedNodeMap attrs = node.getAttributes();
 
 		String name = attrs.getNamedItem(ATTR_NAME).getNodeValue();
-		int value = Integer.decode(attrs.getNamedItem(ATTR_VALUE).getNodeValue());
+		String value = attrs.getNamedItem(ATTR_VALUE).getNodeValue();
+		Node descriptionNode = attrs.getNamedItem(ATTR_CAPTION);
+		Node textNode = attrs.getNamedItem(ATTR_TEXT);
+
+		return createValueDescription(name, value,
+				descriptionNode != null ? descriptionNode.getNodeValue() : null,
+				textNode != null ? textNode.getNodeValue() : null);
+	}
+
+	/**
+	 * Create a new BitFieldValueDescription from the attributes of a &lt;value&gt; element.
+	 * 
+	 * @param name
+	 *            the "name" attribute
+	 * @param value
+	 *            the "value" attribute
+	 * @param caption
+	 *            the optional "caption" attribute or <code>null</code>
+	 * @param text
+	 *            the optional "text" attribute or <code>null</code>
+	 * @return new <code>BitFieldValueDescription</code>
+	 */
+	BitFieldValueDescription createValueDescription(String name, String value, String caption,
+			String text) {
+
+		int intvalue = Integer.decode(value);
 
 		// The caption attribute is optional. If it is not set then take the name of the value as
 		// its description.
-		Node descriptionNode = attrs.getNamedItem(ATTR_CAPTION);
-		String description = descriptionNode != null ? descriptionNode.getNodeValue() : name;
+		String description = caption != null ? caption : name;
 
 		// The same goes for the text attribute, which is used by the AVR32 files instead of the
 		// caption attribute.
-		Node textNode = attrs.getNamedItem(ATTR_TEXT);
-		description = textNode != null ? textNode.getNodeValue() : description;
+		description = text != null ? text : description;
 
-		return new BitFieldValueDescription(value, description, name);
+		return new BitFieldValueDescription(intvalue, description, name);
 	}
 
 	/**
@@ -465,7 +539,7 @@ public class FusesReader extends BaseReader {
 	 * @param desc
 	 *            The MCUDescription
 	 */
-	private void setVersion(File sourcefile, MCUDescription desc) {
+	void setVersion(File sourcefile, MCUDescription desc) {
 
 		// get the file date and store it as the version number
 		long lastmodified = sourcefile.lastModified();
@@ -531,7 +605,7 @@ public class FusesReader extends BaseReader {
 	 *            of the &lt;value-group&gt; element.
 	 * @return name used by the value attribute.
 	 */
-	private String valueGroupNameFixer(MCUDescription desc, String name) {
+	String valueGroupNameFixer(MCUDescription desc, String name) {
 
 		String mcuid = desc.getMCUId();
 
@@ -565,7 +639,7 @@ public class FusesReader extends BaseReader {
 	 * @param hex
 	 * @return
 	 */
-	private int hex2int(String hex) {
+	int hex2int(String hex) {
 		String value = hex.toLowerCase();
 		if (value.startsWith("0x")) {
 			value = value.substring(2);
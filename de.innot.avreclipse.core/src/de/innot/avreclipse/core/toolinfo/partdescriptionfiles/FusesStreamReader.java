@@ -0,0 +1,307 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.toolinfo.partdescriptionfiles;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import de.innot.avreclipse.core.toolinfo.fuses.BitFieldValueDescription;
+import de.innot.avreclipse.core.toolinfo.fuses.ByteDescription;
+import de.innot.avreclipse.core.toolinfo.fuses.FuseType;
+import de.innot.avreclipse.core.toolinfo.fuses.MCUDescription;
+import de.innot.avreclipse.core.util.AVRMCUidConverter;
+
+/**
+ * Streaming Fuses info reader.
+ * <p>
+ * This reader produces the same <code>MCUDescription</code> objects as the {@link FusesReader},
+ * but reads the Atmel Device XML file with a StAX parser instead of working on a DOM. Only the
+ * &lt;device&gt; element, the fuse and lockbit &lt;register-group&gt; elements and the
+ * &lt;value-group&gt; elements are looked at, everything else is skipped without creating any
+ * objects for it.
+ * </p>
+ * <p>
+ * The &lt;value-group&gt; elements usually follow the &lt;register-group&gt; elements that
+ * reference them, so the registers are collected first and the complete
+ * <code>MCUDescription</code> is assembled at the end of the file.
+ * </p>
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ */
+public class FusesStreamReader extends FusesReader implements IPDFStreamReader {
+
+	private final static String			ELEM_DEVICE			= "device";
+	private final static String			ELEM_REGISTER_GROUP	= "register-group";
+	private final static String			ELEM_REGISTER		= "register";
+	private final static String			ELEM_BITFIELD		= "bitfield";
+	private final static String			ELEM_VALUE_GROUP	= "value-group";
+	private final static String			ELEM_VALUE			= "value";
+
+	private final static String			ATTR_CAPTION		= "caption";
+	private final static String			ATTR_TEXT			= "text";
+	private final static String			ATTR_OFFSET			= "offset";
+	private final static String			ATTR_SIZE			= "size";
+	private final static String			ATTR_MASK			= "mask";
+	private final static String			ATTR_VALUES			= "values";
+	private final static String			ATTR_VALUE			= "value";
+
+	private final XMLInputFactory		fFactory;
+
+	/** The attributes of a &lt;register&gt; element and its &lt;bitfield&gt; children */
+	private static class RegisterInfo {
+		String				caption;
+		String				name;
+		String				offset;
+		String				size;
+		List<BitfieldInfo>	bitfields	= new ArrayList<BitfieldInfo>();
+	}
+
+	/** The attributes of a &lt;bitfield&gt; element */
+	private static class BitfieldInfo {
+		String	name;
+		String	mask;
+		String	caption;
+		String	values;
+	}
+
+	/** The attributes of a &lt;value&gt; element */
+	private static class ValueInfo {
+		String	name;
+		String	value;
+		String	caption;
+		String	text;
+	}
+
+	/** The attributes of a &lt;value-group&gt; element and its &lt;value&gt; children */
+	private static class ValueGroupInfo {
+		String			name;
+		List<ValueInfo>	values	= new ArrayList<ValueInfo>();
+	}
+
+	public FusesStreamReader() {
+		fFactory = XMLInputFactory.newInstance();
+		fFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * de.innot.avreclipse.core.toolinfo.partdescriptionfiles.IPDFStreamReader#read(java.io.File)
+	 */
+	public void read(File xmlfile) {
+
+		InputStream in = null;
+		XMLStreamReader reader = null;
+		try {
+			in = new BufferedInputStream(new FileInputStream(xmlfile));
+			reader = fFactory.createXMLStreamReader(in);
+			parse(reader, xmlfile);
+		} catch (XMLStreamException xse) {
+			System.out.println("\n** Parsing error, " + xse.getMessage() + ", file "
+					+ xmlfile.getName());
+			xse.printStackTrace();
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		} finally {
+			try {
+				if (reader != null) {
+					reader.close();
+				}
+				if (in != null) {
+					in.close();
+				}
+			} catch (XMLStreamException xse) {
+				// can't do anything
+			} catch (IOException ioe) {
+				// can't do anything
+			}
+		}
+	}
+
+	/**
+	 * Read the relevant elements from the stream and build the <code>MCUDescription</code>.
+	 *
+	 * @param reader
+	 *            StAX reader for the part description file
+	 * @param sourcefile
+	 *            The file the stream is read from.
+	 * @throws XMLStreamException
+	 */
+	private void parse(XMLStreamReader reader, File sourcefile) throws XMLStreamException {
+
+		String partname = null;
+
+		// All relevant registers in document order. A register group with both "FUSE" and
+		// "LOCKBIT" in its name is read twice, just like the DOM based reader does.
+		List<FuseType> registerTypes = new ArrayList<FuseType>();
+		List<RegisterInfo> registers = new ArrayList<RegisterInfo>();
+		List<ValueGroupInfo> valueGroups = new ArrayList<ValueGroupInfo>();
+
+		// The state of the parser. Only direct children of the register and value groups are read.
+		int depth = 0;
+		int groupDepth = -1;
+		List<FuseType> groupTypes = new ArrayList<FuseType>(2);
+		List<RegisterInfo> groupRegisters = new ArrayList<RegisterInfo>();
+		RegisterInfo register = null;
+		ValueGroupInfo valueGroup = null;
+
+		while (reader.hasNext()) {
+			int event = reader.next();
+
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+				String element = reader.getLocalName();
+
+				if (partname == null && ELEM_DEVICE.equals(element)) {
+					partname = reader.getAttributeValue(null, ATTR_NAME);
+					if (partname.endsWith("comp")) {
+						// ignore entries ending with "comp", see BaseReader.
+						return;
+					}
+
+				} else if (ELEM_REGISTER_GROUP.equals(element)) {
+					groupTypes.clear();
+					String name = reader.getAttributeValue(null, ATTR_NAME);
+					if (name != null && name.contains("FUSE")) {
+						groupTypes.add(FuseType.FUSE);
+					}
+					if (name != null && name.contains("LOCKBIT")) {
+						groupTypes.add(FuseType.LOCKBITS);
+					}
+					if (!groupTypes.isEmpty()) {
+						groupDepth = depth;
+					}
+
+				} else if (groupDepth != -1 && depth == groupDepth + 1
+						&& ELEM_REGISTER.equalsIgnoreCase(element)) {
+					register = new RegisterInfo();
+					register.caption = reader.getAttributeValue(null, ATTR_CAPTION);
+					register.name = reader.getAttributeValue(null, ATTR_NAME);
+					register.offset = reader.getAttributeValue(null, ATTR_OFFSET);
+					register.size = reader.getAttributeValue(null, ATTR_SIZE);
+					groupRegisters.add(register);
+
+				} else if (register != null && depth == groupDepth + 2
+						&& ELEM_BITFIELD.equals(element)) {
+					BitfieldInfo bitfield = new BitfieldInfo();
+					bitfield.name = reader.getAttributeValue(null, ATTR_NAME);
+					bitfield.mask = reader.getAttributeValue(null, ATTR_MASK);
+					bitfield.caption = reader.getAttributeValue(null, ATTR_CAPTION);
+					bitfield.values = reader.getAttributeValue(null, ATTR_VALUES);
+					register.bitfields.add(bitfield);
+
+				} else if (ELEM_VALUE_GROUP.equals(element)) {
+					valueGroup = new ValueGroupInfo();
+					valueGroup.name = reader.getAttributeValue(null, ATTR_NAME);
+					valueGroups.add(valueGroup);
+
+				} else if (valueGroup != null && ELEM_VALUE.equals(element)) {
+					ValueInfo value = new ValueInfo();
+					value.name = reader.getAttributeValue(null, ATTR_NAME);
+					value.value = reader.getAttributeValue(null, ATTR_VALUE);
+					value.caption = reader.getAttributeValue(null, ATTR_CAPTION);
+					value.text = reader.getAttributeValue(null, ATTR_TEXT);
+					valueGroup.values.add(value);
+				}
+
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				String element = reader.getLocalName();
+				if (depth == groupDepth) {
+					// end of a relevant register group
+					for (FuseType type : groupTypes) {
+						for (RegisterInfo info : groupRegisters) {
+							registerTypes.add(type);
+							registers.add(info);
+						}
+					}
+					groupRegisters.clear();
+					groupDepth = -1;
+				} else if (depth == groupDepth + 1 && ELEM_REGISTER.equalsIgnoreCase(element)) {
+					register = null;
+				} else if (ELEM_VALUE_GROUP.equals(element)) {
+					valueGroup = null;
+				}
+				depth--;
+			}
+		}
+
+		if (partname == null) {
+			// Not a device file
+			return;
+		}
+
+		fMCUid = AVRMCUidConverter.name2id(partname);
+
+		// initialize the description object we will fill with data
+		MCUDescription desc = new MCUDescription(fMCUid);
+
+		Map<String, ValueGroupInfo> valueGroupMap = new HashMap<String, ValueGroupInfo>();
+		for (ValueGroupInfo info : valueGroups) {
+			valueGroupMap.put(valueGroupNameFixer(desc, info.name), info);
+		}
+
+		for (int i = 0; i < registers.size(); i++) {
+			RegisterInfo info = registers.get(i);
+
+			// Sanity check
+			if (info.caption == null || info.name == null || info.size == null
+					|| info.offset == null) {
+				System.err.println("Missing attribute in the XML for MCU " + desc.getMCUId());
+				continue;
+			}
+
+			int offset = hex2int(info.offset);
+			int size = Integer.parseInt(info.size);
+			ByteDescription bytedesc = new ByteDescription(registerTypes.get(i), info.caption,
+					info.name, offset, size, -1);
+
+			for (BitfieldInfo bitfield : info.bitfields) {
+				List<BitFieldValueDescription> valuesList = null;
+				if (bitfield.values != null) {
+					ValueGroupInfo valueGroupInfo = valueGroupMap.get(bitfield.values);
+					if (valueGroupInfo != null) {
+						valuesList = new ArrayList<BitFieldValueDescription>();
+						for (ValueInfo value : valueGroupInfo.values) {
+							valuesList.add(createValueDescription(value.name, value.value,
+									value.caption, value.text));
+						}
+					} else {
+						System.out.println(sourcefile.getName()
+								+ " Found non-existing <value-group> reference: "
+								+ bitfield.values);
+					}
+				}
+				bytedesc.addBitFieldDescription(createBitFieldDescription(offset, bitfield.name,
+						bitfield.mask, bitfield.caption, valuesList));
+			}
+
+			desc.addByteDescription(registerTypes.get(i), bytedesc);
+		}
+
+		// and the build version and the status
+		setVersion(sourcefile, desc);
+
+		storeDescription(fMCUid, desc);
+	}
+}
@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.toolinfo.partdescriptionfiles;
+
+import java.io.File;
+
+import de.innot.avreclipse.core.toolinfo.PartDescriptionFilesReader;
+
+/**
+ * Part Description File reader which reads the files itself.
+ * <p>
+ * Readers implementing this interface do not need a DOM of the part description file. The
+ * {@link PartDescriptionFilesReader} calls {@link #read(File)} instead of
+ * {@link #read(org.w3c.dom.Document, File)} and only builds a DOM if there are other readers
+ * requiring it. This allows readers to use a streaming parser which only looks at the parts of the
+ * file they are interested in.
+ * </p>
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ *
+ */
+public interface IPDFStreamReader extends IPDFreader {
+
+	/**
+	 * Read the given file and extract any relevant information.
+	 * <p>
+	 * This is called for every Atmel part description file found.
+	 * </p>
+	 *
+	 * @param xmlfile
+	 *            The xml file with the description of the MCU.
+	 */
+	public void read(File xmlfile);
+
+}
@@ -28,7 +28,7 @@ import de.innot.avreclipse.core.toolinfo.PartDescriptionFilesReader;
  * <ul>
  * <li>{@link #start()}: This is called before the reading of files begin. Implementations can set
  * up their property stores in this method.</li>
- * <li>{@link #read(Document)}: This is called for every part description file.</li>
+ * <li>{@link #read(Document, File)}: This is called for every part description file.</li>
  * <li>{@link #finish()}: This is called after all files have been read. Implementations can persist
  * the read properties here.</li>
  * </p>
@@ -48,15 +48,19 @@ public interface IPDFreader {
 	public void start();
 
 	/**
-	 * Read the given file and extract any relevant information.
+	 * Read the given document and extract any relevant information.
 	 * <p>
-	 * This is called for every Atmel part description file found.
+	 * This is called for every Atmel part description file found. The file is only parsed once and
+	 * the same <code>Document</code> is passed to all readers, so implementations must not modify
+	 * it.
 	 * </p>
 	 * 
+	 * @param document
+	 *            XML DOM with the content of the part description file.
 	 * @param xmlfile
 	 *            The xml file with the description of the MCU.
 	 */
-	public void read(File xmlfile);
+	public void read(Document document, File xmlfile);
 
 	/**
 	 * Close the reader.
@@ -0,0 +1,449 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.util;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Minimal reader for the ELF files generated by the AVR toolchain.
+ * <p>
+ * Only 32-bit little endian files for the AVR architecture are supported. The reader reads the
+ * section headers when the file is opened. The contents of a section are only read on request.
+ * </p>
+ * <p>
+ * The reader supports the section headers and the symbol table, which is all the plugin needs to
+ * determine the memory usage of a program.
+ * </p>
+ * <p>
+ * The file is read with positional reads of a <code>FileChannel</code> and is closed again before
+ * any method returns, so the file is never locked while the linker wants to rewrite it.
+ * </p>
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ *
+ */
+public class ElfFile {
+
+	/** Section type: Symbol table */
+	public final static int		SHT_SYMTAB		= 2;
+
+	/** Section type: String table */
+	public final static int		SHT_STRTAB		= 3;
+
+	/** Section type: Note */
+	public final static int		SHT_NOTE		= 7;
+
+	/** Section type: Occupies no space in the file, e.g. <code>.bss</code> */
+	public final static int		SHT_NOBITS		= 8;
+
+	/** Section flag: Occupies memory during execution */
+	public final static int		SHF_ALLOC		= 0x2;
+
+	/** Symbol type: Variable or other data object */
+	public final static int		STT_OBJECT		= 1;
+
+	/** Symbol type: Function */
+	public final static int		STT_FUNC		= 2;
+
+	/** Symbol type: Name of the source file of the following local symbols */
+	public final static int		STT_FILE		= 4;
+
+	/** Symbol binding: Local symbol, not visible outside of its object file */
+	public final static int		STB_LOCAL		= 0;
+
+	private final static int	EM_AVR			= 83;
+
+	private final static int	HEADER_SIZE		= 52;
+
+	private final static int	SECTION_SIZE	= 40;
+
+	private final static int	SYMBOL_SIZE		= 16;
+
+	/**
+	 * A section of an ELF file.
+	 */
+	public static class Section {
+
+		private final String	fName;
+		private final int		fType;
+		private final int		fFlags;
+		private final long		fAddress;
+		private final long		fOffset;
+		private final long		fSize;
+		private final int		fLink;
+
+		Section(String name, int type, int flags, long address, long offset, long size, int link) {
+			fName = name;
+			fType = type;
+			fFlags = flags;
+			fAddress = address;
+			fOffset = offset;
+			fSize = size;
+			fLink = link;
+		}
+
+		/** @return the name of the section, e.g. ".text" */
+		public String getName() {
+			return fName;
+		}
+
+		/** @return the section type, one of the <code>SHT_</code> constants */
+		public int getType() {
+			return fType;
+		}
+
+		/** @return the section flags, a combination of the <code>SHF_</code> constants */
+		public int getFlags() {
+			return fFlags;
+		}
+
+		/** @return <code>true</code> if the section occupies memory of the target */
+		public boolean isAlloc() {
+			return (fFlags & SHF_ALLOC) != 0;
+		}
+
+		/** @return the address of the section in the target memory */
+		public long getAddress() {
+			return fAddress;
+		}
+
+		/** @return the size of the section in bytes */
+		public long getSize() {
+			return fSize;
+		}
+
+		/** @return the index of the associated section, e.g. the string table of a symbol table */
+		public int getLink() {
+			return fLink;
+		}
+
+		long getOffset() {
+			return fOffset;
+		}
+
+		@Override
+		public String toString() {
+			return fName + " (" + fSize + " bytes at 0x" + Long.toHexString(fAddress) + ")";
+		}
+	}
+
+	/**
+	 * A symbol of the symbol table of an ELF file.
+	 */
+	public static class Symbol {
+
+		private final String	fName;
+		private final String	fFile;
+		private final long		fValue;
+		private final long		fSize;
+		private final int		fInfo;
+		private final int		fSectionIndex;
+
+		Symbol(String name, String file, long value, long size, int info, int sectionindex) {
+			fName = name;
+			fFile = file;
+			fValue = value;
+			fSize = size;
+			fInfo = info;
+			fSectionIndex = sectionindex;
+		}
+
+		/** @return the name of the symbol */
+		public String getName() {
+			return fName;
+		}
+
+		/**
+		 * @return the name of the source file of a local symbol, or <code>null</code> for global
+		 *         symbols or if the file is unknown.
+		 */
+		public String getFile() {
+			return fFile;
+		}
+
+		/** @return the value of the symbol, usually the address */
+		public long getValue() {
+			return fValue;
+		}
+
+		/** @return the size of the symbol in bytes, <code>0</code> if the size is unknown */
+		public long getSize() {
+			return fSize;
+		}
+
+		/** @return the symbol type, one of the <code>STT_</code> constants */
+		public int getType() {
+			return fInfo & 0x0f;
+		}
+
+		/** @return the symbol binding, e.g. <code>STB_LOCAL</code> */
+		public int getBinding() {
+			return fInfo >> 4;
+		}
+
+		/** @return the index of the section the symbol is defined in */
+		public int getSectionIndex() {
+			return fSectionIndex;
+		}
+
+		@Override
+		public String toString() {
+			return (fFile != null ? fFile + ":" : "") + fName + " (" + fSize + " bytes at 0x"
+					+ Long.toHexString(fValue) + ")";
+		}
+	}
+
+	private final File			fFile;
+
+	private final List<Section>	fSections;
+
+	/**
+	 * Read the section headers of the given ELF file.
+	 *
+	 * @param file
+	 *            The ELF file.
+	 * @return The <code>ElfFile</code>
+	 * @throws IOException
+	 *             if the file could not be read or is not an AVR ELF file.
+	 */
+	public static ElfFile read(File file) throws IOException {
+
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+
+			ByteBuffer header = read(channel, 0, HEADER_SIZE);
+			if (header.getInt(0) != 0x464c457f) {
+				throw new IOException(file + " is not an ELF file");
+			}
+			if (header.get(4) != 1 || header.get(5) != 1) {
+				throw new IOException(file + " is not a 32-bit little endian ELF file");
+			}
+			if (header.getShort(18) != EM_AVR) {
+				throw new IOException(file + " is not an AVR ELF file");
+			}
+
+			long shoff = header.getInt(32) & 0xffffffffL;
+			int shentsize = header.getShort(46) & 0xffff;
+			int shnum = header.getShort(48) & 0xffff;
+			int shstrndx = header.getShort(50) & 0xffff;
+			if (shnum == 0) {
+				return new ElfFile(file, Collections.<Section> emptyList());
+			}
+			if (shentsize < SECTION_SIZE || shstrndx >= shnum) {
+				throw new IOException(file + " has an invalid section header table");
+			}
+
+			ByteBuffer headers = read(channel, shoff, (long) shentsize * shnum);
+
+			// The section names are in the section header string table
+			int strbase = shstrndx * shentsize;
+			ByteBuffer names = read(channel, headers.getInt(strbase + 16) & 0xffffffffL,
+					headers.getInt(strbase + 20) & 0xffffffffL);
+
+			List<Section> sections = new ArrayList<Section>(shnum);
+			for (int i = 0; i < shnum; i++) {
+				int base = i * shentsize;
+				String name = getString(names, headers.getInt(base));
+				sections.add(new Section(name, headers.getInt(base + 4),
+						headers.getInt(base + 8), headers.getInt(base + 12) & 0xffffffffL,
+						headers.getInt(base + 16) & 0xffffffffL,
+						headers.getInt(base + 20) & 0xffffffffL, headers.getInt(base + 24)));
+			}
+			return new ElfFile(file, Collections.unmodifiableList(sections));
+		} finally {
+			in.close();
+		}
+	}
+
+	private ElfFile(File file, List<Section> sections) {
+		fFile = file;
+		fSections = sections;
+	}
+
+	/**
+	 * @return The ELF file.
+	 */
+	public File getFile() {
+		return fFile;
+	}
+
+	/**
+	 * @return An unmodifiable list of all sections, in the order of the section header table.
+	 */
+	public List<Section> getSections() {
+		return fSections;
+	}
+
+	/**
+	 * Get a section by name.
+	 *
+	 * @param name
+	 *            The name of the section, e.g. ".text".
+	 * @return The first section with the given name, or <code>null</code> if the file has no such
+	 *         section.
+	 */
+	public Section getSection(String name) {
+		for (Section section : fSections) {
+			if (section.getName().equals(name)) {
+				return section;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get a section by its index in the section header table.
+	 *
+	 * @param index
+	 *            The section index, e.g. from {@link Symbol#getSectionIndex()}.
+	 * @return The section, or <code>null</code> for an index outside of the table, including the
+	 *         special section indices like <code>SHN_ABS</code>.
+	 */
+	public Section getSection(int index) {
+		if (index <= 0 || index >= fSections.size()) {
+			return null;
+		}
+		return fSections.get(index);
+	}
+
+	/**
+	 * Read the symbol table of the file.
+	 * <p>
+	 * Local symbols get the name of the source file they belong to, which is taken from the
+	 * preceding <code>STT_FILE</code> symbol.
+	 * </p>
+	 *
+	 * @return A list of all symbols in the order of the symbol table, without the null symbol.
+	 *         Empty if the file has no symbol table, e.g. because it has been stripped.
+	 * @throws IOException
+	 *             if the file could not be read.
+	 */
+	public List<Symbol> getSymbols() throws IOException {
+
+		Section symtab = null;
+		for (Section section : fSections) {
+			if (section.getType() == SHT_SYMTAB) {
+				symtab = section;
+				break;
+			}
+		}
+		Section strtab = symtab != null ? getSection(symtab.getLink()) : null;
+		if (strtab == null) {
+			return Collections.emptyList();
+		}
+
+		ByteBuffer symbols = getContents(symtab);
+		ByteBuffer names = getContents(strtab);
+
+		int count = symbols.limit() / SYMBOL_SIZE;
+		List<Symbol> result = new ArrayList<Symbol>(count);
+		String file = null;
+		for (int i = 1; i < count; i++) {
+			int base = i * SYMBOL_SIZE;
+			String name = getString(names, symbols.getInt(base));
+			int info = symbols.get(base + 12) & 0xff;
+			if ((info & 0x0f) == STT_FILE) {
+				file = name;
+			}
+			String symbolfile = (info >> 4) == STB_LOCAL && (info & 0x0f) != STT_FILE ? file
+					: null;
+			result.add(new Symbol(name, symbolfile, symbols.getInt(base + 4) & 0xffffffffL,
+					symbols.getInt(base + 8) & 0xffffffffL, info, symbols.getShort(base + 14) & 0xffff));
+		}
+		return result;
+	}
+
+	/**
+	 * Read the contents of a section from the file.
+	 *
+	 * @param section
+	 *            A section of this file.
+	 * @return A little endian <code>ByteBuffer</code> with the contents. Empty for
+	 *         <code>SHT_NOBITS</code> sections.
+	 * @throws IOException
+	 *             if the file could not be read or the section is not within the file.
+	 */
+	public ByteBuffer getContents(Section section) throws IOException {
+		if (section.getType() == SHT_NOBITS) {
+			return ByteBuffer.allocate(0).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		FileInputStream in = new FileInputStream(fFile);
+		try {
+			return read(in.getChannel(), section.getOffset(), section.getSize());
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Get a null terminated string from a string table.
+	 *
+	 * @param table
+	 *            The contents of the string table section.
+	 * @param offset
+	 *            The offset of the string in the table.
+	 * @return The string, or an empty string if the offset is outside of the table.
+	 */
+	public static String getString(ByteBuffer table, int offset) {
+		if (offset < 0 || offset >= table.limit()) {
+			return "";
+		}
+		int end = offset;
+		while (end < table.limit() && table.get(end) != 0) {
+			end++;
+		}
+		byte[] bytes = new byte[end - offset];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = table.get(offset + i);
+		}
+		try {
+			return new String(bytes, "ISO-8859-1");
+		} catch (UnsupportedEncodingException e) {
+			// ISO-8859-1 is always supported
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Read a part of the file.
+	 * <p>
+	 * The offsets and sizes come from the file itself, so they are checked against the size of
+	 * the file first. A corrupt or truncated file causes an <code>IOException</code>.
+	 * </p>
+	 */
+	private static ByteBuffer read(FileChannel channel, long position, long length)
+			throws IOException {
+		if (position < 0 || length < 0 || position + length > channel.size()) {
+			throw new IOException("Invalid ELF file: " + length + " bytes at offset " + position
+					+ " are beyond the end of the file");
+		}
+		ByteBuffer buffer = ByteBuffer.allocate((int) length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException("Unexpected end of the ELF file");
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+}
@@ -0,0 +1,402 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.core.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.BitSet;
+
+/**
+ * A memory image as read from or written to an Intel HEX file.
+ * <p>
+ * The image is sparse: only the bytes actually defined in the HEX file are used. All other bytes
+ * read as <code>-1</code>. When comparing images, unused bytes are treated like erased flash
+ * memory, i.e. as <code>0xFF</code>.
+ * </p>
+ * <p>
+ * The reader supports the data, end of file, extended segment address and extended linear
+ * address records. The start address records are ignored, as they have no meaning for AVR
+ * processors.
+ * </p>
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ *
+ */
+public class IntelHexImage {
+
+	/** The value of an erased byte */
+	public final static int		ERASED				= 0xFF;
+
+	private final static int	TYPE_DATA			= 0x00;
+	private final static int	TYPE_EOF			= 0x01;
+	private final static int	TYPE_EXT_SEGMENT	= 0x02;
+	private final static int	TYPE_START_SEGMENT	= 0x03;
+	private final static int	TYPE_EXT_LINEAR		= 0x04;
+	private final static int	TYPE_START_LINEAR	= 0x05;
+
+	/** Number of data bytes per record in written files. */
+	private final static int	BYTES_PER_RECORD	= 16;
+
+	/** The byte values. Grows as required. */
+	private byte[]				fData				= new byte[0];
+
+	/** Flags for all used bytes. */
+	private final BitSet		fUsed				= new BitSet();
+
+	/**
+	 * Read an Intel HEX file.
+	 *
+	 * @param file
+	 *            The HEX file.
+	 * @return A new image with the content of the file.
+	 * @throws IOException
+	 *             if the file could not be read or is not a valid Intel HEX file.
+	 */
+	public static IntelHexImage read(File file) throws IOException {
+		Reader reader = new FileReader(file);
+		try {
+			return read(reader);
+		} catch (IOException ioe) {
+			throw new IOException(file.getPath() + ": " + ioe.getMessage());
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Read Intel HEX records from a reader.
+	 * <p>
+	 * The reader is not closed.
+	 * </p>
+	 *
+	 * @param reader
+	 *            The source of the HEX records.
+	 * @return A new image with the content.
+	 * @throws IOException
+	 *             if the reader fails or the content is not valid Intel HEX.
+	 */
+	public static IntelHexImage read(Reader reader) throws IOException {
+
+		IntelHexImage image = new IntelHexImage();
+		BufferedReader br = new BufferedReader(reader);
+
+		int baseaddress = 0;
+		int linenumber = 0;
+		String line;
+		while ((line = br.readLine()) != null) {
+			linenumber++;
+			line = line.trim();
+			if (line.length() == 0) {
+				continue;
+			}
+			if (line.charAt(0) != ':' || line.length() < 11 || (line.length() & 1) == 0) {
+				throw new IOException("Line " + linenumber + ": not an Intel HEX record");
+			}
+
+			// Decode the complete record and check the checksum
+			int[] record = new int[(line.length() - 1) / 2];
+			int checksum = 0;
+			for (int i = 0; i < record.length; i++) {
+				int high = Character.digit(line.charAt(1 + i * 2), 16);
+				int low = Character.digit(line.charAt(2 + i * 2), 16);
+				if (high < 0 || low < 0) {
+					throw new IOException("Line " + linenumber + ": invalid hex digit");
+				}
+				record[i] = (high << 4) | low;
+				checksum += record[i];
+			}
+			int length = record[0];
+			if (record.length != length + 5) {
+				throw new IOException("Line " + linenumber + ": wrong record length");
+			}
+			if ((checksum & 0xFF) != 0) {
+				throw new IOException("Line " + linenumber + ": checksum error");
+			}
+
+			int offset = (record[1] << 8) | record[2];
+			int type = record[3];
+			switch (type) {
+				case TYPE_DATA:
+					for (int i = 0; i < length; i++) {
+						image.setByte(baseaddress + ((offset + i) & 0xFFFF), record[4 + i]);
+					}
+					break;
+				case TYPE_EOF:
+					return image;
+				case TYPE_EXT_SEGMENT:
+					checkLength(length, 2, linenumber);
+					baseaddress = ((record[4] << 8) | record[5]) << 4;
+					break;
+				case TYPE_EXT_LINEAR:
+					checkLength(length, 2, linenumber);
+					baseaddress = ((record[4] << 8) | record[5]) << 16;
+					break;
+				case TYPE_START_SEGMENT:
+				case TYPE_START_LINEAR:
+					// no meaning for AVR processors
+					break;
+				default:
+					throw new IOException("Line " + linenumber + ": unknown record type " + type);
+			}
+		}
+
+		// Some tools omit the end of file record. Accept the image anyway.
+		return image;
+	}
+
+	private static void checkLength(int length, int expected, int linenumber) throws IOException {
+		if (length != expected) {
+			throw new IOException("Line " + linenumber + ": wrong record length");
+		}
+	}
+
+	/**
+	 * Get the value of the byte at the given address.
+	 *
+	 * @param address
+	 *            Address of the byte.
+	 * @return The byte value (0-255) or <code>-1</code> if the byte is not used by the image.
+	 */
+	public int getByte(int address) {
+		if (address < 0 || !fUsed.get(address)) {
+			return -1;
+		}
+		return fData[address] & 0xFF;
+	}
+
+	/**
+	 * Set the value of the byte at the given address.
+	 *
+	 * @param address
+	 *            Address of the byte.
+	 * @param value
+	 *            The byte value (0-255) or <code>-1</code> to remove the byte from the image.
+	 * @throws IllegalArgumentException
+	 *             if the address is negative or the value out of range.
+	 */
+	public void setByte(int address, int value) {
+		if (address < 0) {
+			throw new IllegalArgumentException("Address [" + address + "] is negative");
+		}
+		if (value < -1 || 255 < value) {
+			throw new IllegalArgumentException("Value [" + value + "] out of range (-1...255)");
+		}
+		if (value == -1) {
+			fUsed.clear(address);
+			return;
+		}
+		if (address >= fData.length) {
+			int newlength = Math.max(address + 1, fData.length * 2);
+			byte[] newdata = new byte[newlength];
+			System.arraycopy(fData, 0, newdata, 0, fData.length);
+			fData = newdata;
+		}
+		fData[address] = (byte) value;
+		fUsed.set(address);
+	}
+
+	/**
+	 * Get the value of the byte as it would be in the memory after the image has been written to
+	 * an erased device.
+	 *
+	 * @param address
+	 *            Address of the byte.
+	 * @return The byte value, {@link #ERASED} if the byte is not used by the image.
+	 */
+	public int getEffectiveByte(int address) {
+		int value = getByte(address);
+		return value == -1 ? ERASED : value;
+	}
+
+	/**
+	 * @return <code>true</code> if the image does not contain any bytes.
+	 */
+	public boolean isEmpty() {
+		return fUsed.isEmpty();
+	}
+
+	/**
+	 * @return The number of bytes used by the image.
+	 */
+	public int getUsedCount() {
+		return fUsed.cardinality();
+	}
+
+	/**
+	 * @return The address after the last used byte, or <code>0</code> for an empty image.
+	 */
+	public int getEndAddress() {
+		return fUsed.length();
+	}
+
+	/**
+	 * Get all pages with a different content in this and the given image.
+	 * <p>
+	 * The contents are compared as they would be on a device: unused bytes count as erased bytes.
+	 * So a page that is only used in one of the images is still unchanged if it only contains
+	 * <code>0xFF</code> bytes.
+	 * </p>
+	 *
+	 * @param other
+	 *            The image to compare with.
+	 * @param pagesize
+	 *            The size of a page in bytes.
+	 * @return <code>BitSet</code> with one bit set for each changed page. Empty if both images
+	 *         have the same content.
+	 */
+	public BitSet getChangedPages(IntelHexImage other, int pagesize) {
+		if (pagesize <= 0) {
+			throw new IllegalArgumentException("Page size [" + pagesize + "] must be positive");
+		}
+
+		BitSet changed = new BitSet();
+		int end = Math.max(getEndAddress(), other.getEndAddress());
+
+		// Only bytes used in at least one of the images can differ
+		BitSet used = (BitSet) fUsed.clone();
+		used.or(other.fUsed);
+		for (int address = used.nextSetBit(0); address >= 0 && address < end; address = used
+				.nextSetBit(address + 1)) {
+			if (getEffectiveByte(address) != other.getEffectiveByte(address)) {
+				int page = address / pagesize;
+				changed.set(page);
+				// No need to compare the rest of the page
+				address = (page + 1) * pagesize - 1;
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Test if this and the given image have the same content on a device.
+	 *
+	 * @see #getChangedPages(IntelHexImage, int)
+	 *
+	 * @param other
+	 *            The image to compare with.
+	 * @return <code>true</code> if there are no changed bytes.
+	 */
+	public boolean hasSameContent(IntelHexImage other) {
+		return getChangedPages(other, 1).isEmpty();
+	}
+
+	/**
+	 * Create a new image with the complete content of the given pages.
+	 * <p>
+	 * All bytes of the pages are used in the new image, unused bytes of this image are filled with
+	 * {@link #ERASED}. Writing the new image to a device without erasing it first has the same
+	 * effect on the pages as writing this image to an erased device.
+	 * </p>
+	 *
+	 * @param pages
+	 *            The pages to copy.
+	 * @param pagesize
+	 *            The size of a page in bytes.
+	 * @return New <code>IntelHexImage</code>.
+	 */
+	public IntelHexImage getPages(BitSet pages, int pagesize) {
+		IntelHexImage result = new IntelHexImage();
+		for (int page = pages.nextSetBit(0); page >= 0; page = pages.nextSetBit(page + 1)) {
+			int start = page * pagesize;
+			for (int address = start; address < start + pagesize; address++) {
+				result.setByte(address, getEffectiveByte(address));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Write the image to the given file in the Intel HEX format.
+	 *
+	 * @param file
+	 *            The target file. Will be overwritten if it exists.
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException {
+		Writer writer = new BufferedWriter(new FileWriter(file));
+		try {
+			write(writer);
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Write the image in the Intel HEX format.
+	 * <p>
+	 * Data records have up to 16 bytes and never cross a gap of unused bytes or a 64K boundary.
+	 * The writer is not closed.
+	 * </p>
+	 *
+	 * @param writer
+	 *            The target of the records.
+	 * @throws IOException
+	 */
+	public void write(Writer writer) throws IOException {
+
+		int segment = 0;
+		int address = fUsed.nextSetBit(0);
+		while (address >= 0) {
+			int newsegment = address >>> 16;
+			if (newsegment != segment) {
+				segment = newsegment;
+				writeRecord(writer, TYPE_EXT_LINEAR, 0, new int[] { segment >> 8, segment & 0xFF });
+			}
+
+			// Collect up to 16 consecutive bytes within the current segment
+			int count = 0;
+			int[] data = new int[BYTES_PER_RECORD];
+			while (count < BYTES_PER_RECORD && fUsed.get(address + count)
+					&& ((address + count) >>> 16) == segment) {
+				data[count] = fData[address + count] & 0xFF;
+				count++;
+			}
+			int[] recorddata = new int[count];
+			System.arraycopy(data, 0, recorddata, 0, count);
+			writeRecord(writer, TYPE_DATA, address & 0xFFFF, recorddata);
+
+			address = fUsed.nextSetBit(address + count);
+		}
+
+		writeRecord(writer, TYPE_EOF, 0, new int[0]);
+		writer.flush();
+	}
+
+	private static void writeRecord(Writer writer, int type, int offset, int[] data)
+			throws IOException {
+		StringBuilder sb = new StringBuilder(11 + data.length * 2);
+		sb.append(':');
+		int checksum = data.length + (offset >> 8) + (offset & 0xFF) + type;
+		appendHex(sb, data.length);
+		appendHex(sb, offset >> 8);
+		appendHex(sb, offset & 0xFF);
+		appendHex(sb, type);
+		for (int value : data) {
+			appendHex(sb, value);
+			checksum += value;
+		}
+		appendHex(sb, (-checksum) & 0xFF);
+		sb.append('\n');
+		writer.write(sb.toString());
+	}
+
+	private static void appendHex(StringBuilder sb, int value) {
+		sb.append(Character.toUpperCase(Character.forDigit((value >> 4) & 0xF, 16)));
+		sb.append(Character.toUpperCase(Character.forDigit(value & 0xF, 16)));
+	}
+}
@@ -11,35 +11,50 @@
  *******************************************************************************/
 package de.innot.avreclipse.devicedescription.avrio;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.preference.IPreferenceStore;
 import org.eclipse.jface.util.IPropertyChangeListener;
 import org.eclipse.jface.util.PropertyChangeEvent;
 
+import de.innot.avreclipse.AVRPlugin;
 import de.innot.avreclipse.core.paths.AVRPath;
 import de.innot.avreclipse.core.paths.AVRPathProvider;
 import de.innot.avreclipse.core.paths.IPathProvider;
 import de.innot.avreclipse.core.preferences.AVRPathsPreferences;
 import de.innot.avreclipse.core.util.AVRMCUidConverter;
-import de.innot.avreclipse.devicedescription.ICategory;
 import de.innot.avreclipse.devicedescription.IDeviceDescription;
 import de.innot.avreclipse.devicedescription.IDeviceDescriptionProvider;
-import de.innot.avreclipse.devicedescription.IEntry;
 import de.innot.avreclipse.devicedescription.IProviderChangeListener;
 
 /**
@@ -53,6 +68,18 @@ import de.innot.avreclipse.devicedescription.IProviderChangeListener;
  * as parsing io.h would require an understanding of <code>#ifdef</code>, which the simple parser
  * in this class has not.
  * </p>
+ * <p>
+ * Each header file is parsed only once into a {@link HeaderFragment}, which is shared by all devices
+ * including the header. The fragments are also stored in the plugin state area (one folder per
+ * include directory), so the headers do not need to be parsed again after a restart. A stored
+ * fragment is only used if the modification time and size of its header file are unchanged.
+ * </p>
+ * <p>
+ * This class is thread safe. Multiple devices can be built concurrently, see
+ * {@link DeviceDescriptionPrefetchJob}. Each header file is parsed by only one thread, all other
+ * threads requiring the same header wait for its fragment. When the include path changes, running
+ * prefetch Jobs are cancelled and descriptions built from the old path are discarded.
+ * </p>
  * 
  * @author Thomas Holland
  * @author Manuel Stahl
@@ -62,10 +89,30 @@ public class AVRiohDeviceDescriptionProvider implements IDeviceDescriptionProvid
 
 	private static AVRiohDeviceDescriptionProvider	instance			= null;
 
-	private Map<String, String>						fMCUNamesMap		= null;
-	private Map<String, DeviceDescription>			fCache				= null;
+	private volatile Map<String, String>			fMCUNamesMap		= null;
+	private final ConcurrentMap<String, DeviceDescription>	fCache		= new ConcurrentHashMap<String, DeviceDescription>();
+
+	/** The already parsed header files. Key is the header file name relative to the include path */
+	private final Map<String, HeaderFragment>		fFragments			= new ConcurrentHashMap<String, HeaderFragment>();
+
+	/**
+	 * The header files currently loaded. Key is the absolute path of the header file, so loads for
+	 * different include paths are never mixed up
+	 */
+	private final ConcurrentMap<String, FutureTask<HeaderFragment>>	fLoading	= new ConcurrentHashMap<String, FutureTask<HeaderFragment>>();
+
+	/** Incremented whenever the caches are cleared, to detect results of an outdated include path */
+	private final AtomicInteger						fGeneration			= new AtomicInteger();
+
+	/** The folder in the plugin state area for the fragments stored on disk */
+	private final static String						FRAGMENTSFOLDER		= "avrioh";
 
-	private String									fInternalErrorMsg	= null;
+	private final static String						FRAGMENT_EXTENSION	= ".frag";
+
+	/** Resolves included header files to their fragments */
+	private final HeaderFragment.IResolver			fResolver;
+
+	private volatile String							fInternalErrorMsg	= null;
 
 	private final List<IProviderChangeListener>		fChangeListeners	= new ArrayList<IProviderChangeListener>(
 																				0);
@@ -76,7 +123,7 @@ public class AVRiohDeviceDescriptionProvider implements IDeviceDescriptionProvid
 	/**
 	 * Get an instance of this DeviceModelProvider.
 	 */
-	public static AVRiohDeviceDescriptionProvider getDefault() {
+	public static synchronized AVRiohDeviceDescriptionProvider getDefault() {
 		if (instance == null)
 			instance = new AVRiohDeviceDescriptionProvider();
 		return instance;
@@ -93,6 +140,12 @@ public class AVRiohDeviceDescriptionProvider implements IDeviceDescriptionProvid
 		// Add ourself as a listener to Path Preference change events
 		IPreferenceStore store = AVRPathsPreferences.getPreferenceStore();
 		store.addPropertyChangeListener(this);
+
+		fResolver = new HeaderFragment.IResolver() {
+			public HeaderFragment getFragment(String headerfile) throws IOException {
+				return AVRiohDeviceDescriptionProvider.this.getFragment(headerfile);
+			}
+		};
 	}
 
 	/*
@@ -101,14 +154,13 @@ public class AVRiohDeviceDescriptionProvider implements IDeviceDescriptionProvid
 	 * @see de.innot.avreclipse.devicedescription.IDeviceDescriptionProvider#getDeviceList()
 	 */
 	public Set<String> getMCUList() {
-		if (fMCUNamesMap == null) {
-			try {
-				loadDevices();
-			} catch (IOException ioe) {
-				return null;
-			}
+		Map<String, String> mcunames;
+		try {
+			mcunames = getMCUNamesMap();
+		} catch (IOException ioe) {
+			return null;
 		}
-		Set<String> devs = new HashSet<String>(fMCUNamesMap.keySet());
+		Set<String> devs = new HashSet<String>(mcunames.keySet());
 		return devs;
 
 	}
@@ -156,42 +208,96 @@ public class AVRiohDeviceDescriptionProvider implements IDeviceDescriptionProvid
 		if (name == null)
 			return null;
 
-		if (fMCUNamesMap == null) {
-			try {
-				loadDevices();
-			} catch (IOException ioe) {
-				// return null on errors
-				return null;
-			}
+		int generation = fGeneration.get();
+
+		Map<String, String> mcunames;
+		try {
+			mcunames = getMCUNamesMap();
+		} catch (IOException ioe) {
+			// return null on errors
+			return null;
 		}
 
 		// check if the name actually exists (and has a headerfile to load its
 		// properties from)
-		String headerfile = fMCUNamesMap.get(name);
+		String headerfile = mcunames.get(name);
 		if (headerfile == null)
 			return null;
 
 		// Test if we already have this device in the cache
-		if (fCache == null) {
-			fCache = new HashMap<String, DeviceDescription>();
-		}
 		DeviceDescription currdev = fCache.get(name);
 		if (currdev == null) {
 			// No: create a new DeviceDescription
 			currdev = new DeviceDescription(name);
 
 			try {
-				readDeviceHeader(currdev, headerfile);
+				getFragment(headerfile).addTo(currdev, fResolver);
 			} catch (IOException e) {
 				return null;
 			}
-			// Add the DeviceDescription to the cache
-			fCache.put(name, currdev);
+			fInternalErrorMsg = null;
+			synchronized (this) {
+				if (generation != fGeneration.get()) {
+					// The include path has changed while the description was built. Don't cache
+					// the outdated description, but build it again from the new path.
+					currdev = null;
+				} else {
+					// Add the DeviceDescription to the cache. If another thread has been faster use
+					// its description, so that all callers get the same object.
+					DeviceDescription otherdev = fCache.putIfAbsent(name, currdev);
+					if (otherdev != null) {
+						currdev = otherdev;
+					}
+				}
+			}
+			if (currdev == null) {
+				return getDeviceDescription(name);
+			}
 		}
 
 		return currdev;
 	}
 
+	/**
+	 * Get the device specific header file of the given MCU, e.g. <code>avr/iom328p.h</code>.
+	 * 
+	 * @param name
+	 *            String with a MCU id
+	 * @return The header file, or <code>null</code> if the MCU id is not known or
+	 *         &lt;avr/io.h&gt; could not be read.
+	 */
+	public File getHeaderFile(String name) {
+		if (name == null) {
+			return null;
+		}
+		Map<String, String> mcunames;
+		try {
+			mcunames = getMCUNamesMap();
+		} catch (IOException ioe) {
+			return null;
+		}
+		String headerfile = mcunames.get(name);
+		if (headerfile == null) {
+			return null;
+		}
+		return new File(getAVRIncludePath() + "/" + headerfile);
+	}
+
+	/**
+	 * Test if the description for the given MCU has already been built.
+	 * <p>
+	 * If this returns <code>true</code>, {@link #getDeviceDescription(String)} will return
+	 * immediately without any file access.
+	 * </p>
+	 * 
+	 * @param name
+	 *            String with a MCU id
+	 * @return <code>true</code> if the description is cached.
+	 */
+	public boolean isCached(String name) {
+		return name != null && fCache.containsKey(name);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -210,6 +316,18 @@ public class AVRiohDeviceDescriptionProvider implements IDeviceDescriptionProvid
 		return fInternalErrorMsg + " Check the preferences for a correct path setting";
 	}
 
+	/**
+	 * Get the map of all MCU ids to their header files, loading it if required.
+	 * 
+	 * throws IOException if there was an error opening or reading the &lt;avr/io.h&gt; file.
+	 */
+	private synchronized Map<String, String> getMCUNamesMap() throws IOException {
+		if (fMCUNamesMap == null) {
+			loadDevices();
+		}
+		return fMCUNamesMap;
+	}
+
 	/**
 	 * Initialize the list of fMCUNamesMap by opening the <avr/io.h> file and parsing it for all
 	 * defined MCUs.
@@ -226,7 +344,7 @@ public class AVRiohDeviceDescriptionProvider implements IDeviceDescriptionProvid
 			throw fnfe;
 		}
 
-		fMCUNamesMap = new HashMap<String, String>();
+		Map<String, String> mcunames = new HashMap<String, String>();
 		List<String> curDev = new ArrayList<String>();
 
 		String line;
@@ -244,7 +362,7 @@ public class AVRiohDeviceDescriptionProvider implements IDeviceDescriptionProvid
 				m = incPat.matcher(line);
 				if (m.matches() && curDev.size() != 0) {
 					for (String dev : curDev) {
-						fMCUNamesMap.put(AVRMCUidConverter.name2id(dev), m.group(1));
+						mcunames.put(AVRMCUidConverter.name2id(dev), m.group(1));
 					}
 					curDev.clear();
 				}
@@ -255,172 +373,234 @@ public class AVRiohDeviceDescriptionProvider implements IDeviceDescriptionProvid
 		}
 		fInternalErrorMsg = null;
 		in.close();
+		fMCUNamesMap = mcunames;
 	}
 
-	private void readDeviceHeader(DeviceDescription device, String headerfile) throws IOException {
-		String line;
+	/**
+	 * Get the fragment for the given header file.
+	 * <p>
+	 * The fragment is taken from memory or the plugin state area if the header file has not been
+	 * modified since. Otherwise the header file is parsed and the new fragment is stored.
+	 * </p>
+	 * <p>
+	 * If another thread is already loading the header file, this method waits for its result
+	 * instead of loading the header file again.
+	 * </p>
+	 * 
+	 * @param headerfile
+	 *            Name of the header file relative to the include path.
+	 * @return The <code>HeaderFragment</code> for the header file.
+	 * @throws IOException
+	 *             if the header file can not be read or the thread was interrupted while waiting
+	 *             for another thread.
+	 */
+	private HeaderFragment getFragment(final String headerfile) throws IOException {
 
-		device.addHeaderFile(headerfile);
+		final int generation = fGeneration.get();
+		final File hfile = new File(getAVRIncludePath() + "/" + headerfile);
 
-		BufferedReader in;
+		HeaderFragment fragment = fFragments.get(headerfile);
+		if (fragment != null && fragment.isCurrent(hfile)) {
+			return fragment;
+		}
 
-		File hfile = new File(getAVRIncludePath() + "/" + headerfile);
+		FutureTask<HeaderFragment> task = new FutureTask<HeaderFragment>(
+				new Callable<HeaderFragment>() {
+					public HeaderFragment call() throws IOException {
+						return loadFragment(headerfile, hfile, generation);
+					}
+				});
+		String key = hfile.getAbsolutePath();
+		FutureTask<HeaderFragment> running = fLoading.putIfAbsent(key, task);
+		if (running == null) {
+			// Nobody else is loading this header: do it in this thread
+			running = task;
+			try {
+				task.run();
+			} finally {
+				fLoading.remove(key, task);
+			}
+		}
 
 		try {
-			// Open a reader on the given header file and fail
-			// if it can't be opened
-			in = new BufferedReader(new FileReader(hfile));
-		} catch (FileNotFoundException fnfe) {
-			fInternalErrorMsg = "Cannot open source header file \"" + hfile.getAbsolutePath()
-					+ "\".";
-			throw fnfe;
+			return running.get();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for " + headerfile);
+		} catch (ExecutionException ee) {
+			Throwable cause = ee.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause.toString());
 		}
+	}
 
-		Pattern incPat = Pattern.compile("^#include <(.+)>.*");
-		Pattern descPat = Pattern.compile("/\\* (?:RegDef\\:  )?(.+) \\*/.*");
-
-		Pattern ivecPatNew = Pattern.compile("^#define ([A-Z0-9_]+_vect)\\s+_VECTOR\\((\\d+)\\).*");
-		Pattern ivecPatOld = Pattern.compile("^#define (SIG_[A-Z0-9_]+)\\s+_VECTOR\\((\\d+)\\).*");
-		Pattern portPat = Pattern
-				.compile("^#define ((?:PORT|PIN|DDR)[A-Z])\\s+_SFR_IO(\\d+)\\s*\\((0[xX].*)\\).*");
-		Pattern regPat = Pattern
-				.compile("^#define ([A-Z0-9]+)\\s+_SFR_(IO|MEM)(\\d+)\\s*\\((0[xX].*)\\).*");
+	/**
+	 * Load the fragment for the given header file, either from the plugin state area or by parsing
+	 * the header file.
+	 * 
+	 * @param headerfile
+	 *            Name of the header file relative to the include path.
+	 * @param hfile
+	 *            The header file.
+	 * @param generation
+	 *            The generation of the caches when the load was started. The fragment is only
+	 *            added to the cache if the caches have not been cleared since.
+	 * @return The <code>HeaderFragment</code> for the header file.
+	 * @throws IOException
+	 *             if the header file can not be read.
+	 */
+	private HeaderFragment loadFragment(String headerfile, File hfile, int generation)
+			throws IOException {
 
-		Matcher m;
+		HeaderFragment fragment = readStoredFragment(headerfile, hfile);
+		if (fragment == null) {
+			try {
+				fragment = HeaderFragment.parse(headerfile, hfile);
+			} catch (FileNotFoundException fnfe) {
+				fInternalErrorMsg = "Cannot open source header file \"" + hfile.getAbsolutePath()
+						+ "\".";
+				throw fnfe;
+			} catch (IOException ioe) {
+				fInternalErrorMsg = "Cannot read source header file \"" + hfile.getAbsolutePath()
+						+ "\".";
+				throw ioe;
+			}
+			storeFragment(fragment);
+		}
 
-		List<ICategory> categories = device.getCategories();
-		ICategory regCategory = categories.get(0);
-		ICategory portCategory = categories.get(1);
-		ICategory ivecCategory = categories.get(2);
+		synchronized (this) {
+			if (generation == fGeneration.get()) {
+				fFragments.put(headerfile, fragment);
+			}
+		}
+		return fragment;
+	}
 
-		// Stores the last comment in the source code
-		String activeDesc = "";
+	/**
+	 * Read the fragment for the given header file from the plugin state area.
+	 * 
+	 * @param headerfile
+	 *            Name of the header file relative to the include path.
+	 * @param hfile
+	 *            The header file.
+	 * @return The stored fragment or <code>null</code> if there is no stored fragment or it is
+	 *         outdated.
+	 */
+	private HeaderFragment readStoredFragment(String headerfile, File hfile) {
+		File fragmentfile = getFragmentFile(headerfile);
+		if (fragmentfile == null || !fragmentfile.canRead()) {
+			return null;
+		}
 
+		DataInputStream in = null;
 		try {
-			while ((line = in.readLine()) != null) {
-
-				// Test if current line contains an #include directive
-				m = incPat.matcher(line);
-				if (m.matches()) {
-					// Yes: Recurse into this file if its not <avr/sfr_defs.h>
-					// or
-					// outside the <avr/*> directory
-					// (<avr/sfr_defs.h> because this file has some comments
-					// that
-					// are picked up as
-					// register definitions)
-					String incfilename = m.group(1);
-					if (!("avr/sfr_defs.h").equals(incfilename)) {
-						if (incfilename.startsWith("avr")) {
-							readDeviceHeader(device, m.group(1));
-						}
-					}
-					continue;
-				}
-
-				// Test if current line contains a descriptive comment
-				m = descPat.matcher(line);
-				if (m.matches()) {
-					// Yes: remember it and add it as a description to all
-					// following
-					// items
-					activeDesc = m.group(1);
-					continue;
-				}
-
-				if (line.trim().equals("")) {
-					// but don't carry activeDesc over empty lines
-					activeDesc = "";
-					continue;
-				}
-
-				// Test if current line defines a Interrupt vector (new style)
-				m = ivecPatNew.matcher(line);
-				if (m.matches()) {
-					// Yes: Add it to the interrupt vectors list
-					InterruptVector ivec = null;
-					String name = m.group(1);
-					String vector = m.group(2);
-					// test if an ivec with the old style name has already been
-					// created
-					List<IEntry> children = ivecCategory.getChildren();
-					if (children != null) {
-						for (IEntry child : children) {
-							if (child.getColumnData(IVecsCategory.IDX_VECTOR).equals(vector)) {
-								ivec = (InterruptVector) child;
-								break;
-							}
-						}
-					}
-					if (ivec == null) {
-						ivec = new InterruptVector(ivecCategory);
-					}
-					ivec.setName(name);
-					ivec.setDescription(activeDesc);
-					ivec.setVector(vector);
-					continue;
-				}
-
-				// Test if current line defines a Interrupt vector (old style)
-				m = ivecPatOld.matcher(line);
-				if (m.matches()) {
-					// Yes: Add it to the interrupt vectors list (but only as
-					// SIGname)
-					InterruptVector ivec = null;
-					String signame = m.group(1);
-					String vector = m.group(2);
-					// test if an ivec with the new style name has already been
-					// created (same vector number)
-					List<IEntry> children = ivecCategory.getChildren();
-					if (children != null) {
-						for (IEntry child : children) {
-							if (child.getColumnData(IVecsCategory.IDX_VECTOR).equals(vector)) {
-								ivec = (InterruptVector) child;
-								break;
-							}
-						}
-					}
-					if (ivec == null) {
-						ivec = new InterruptVector(ivecCategory);
-					}
-					ivec.setSIGName(signame);
-					ivec.setDescription(activeDesc);
-					ivec.setVector(vector);
-					continue;
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(fragmentfile)));
+			HeaderFragment fragment = HeaderFragment.read(in);
+			if (headerfile.equals(fragment.getHeaderFile()) && fragment.isCurrent(hfile)) {
+				return fragment;
+			}
+		} catch (IOException ioe) {
+			// Unreadable or incomplete file. Just parse the header again, which will overwrite it.
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// can't do anything
 				}
+			}
+		}
+		return null;
+	}
 
-				// Test if current line defines a Port Register
-				m = portPat.matcher(line);
-				if (m.matches()) {
-					// Yes: Add it to the Ports list
-					Port port = new Port(portCategory);
-					port.setName(m.group(1));
-					port.setDescription(activeDesc);
-					port.setBits(m.group(2));
-					port.setAddr(m.group(3));
-					continue;
-				}
+	/**
+	 * Store the given fragment in the plugin state area.
+	 * <p>
+	 * Errors are logged but otherwise ignored, as the header file can always be parsed again.
+	 * </p>
+	 * <p>
+	 * The fragment is written to a temporary file first, which is then renamed. This way other
+	 * threads never read an incomplete fragment file.
+	 * </p>
+	 * 
+	 * @param fragment
+	 *            The fragment to store.
+	 */
+	private void storeFragment(HeaderFragment fragment) {
+		File fragmentfile = getFragmentFile(fragment.getHeaderFile());
+		if (fragmentfile == null) {
+			return;
+		}
+		File folder = fragmentfile.getParentFile();
+		if (!folder.isDirectory() && !folder.mkdirs()) {
+			return;
+		}
 
-				// Test if current line defines a Register
-				m = regPat.matcher(line);
-				if (m.matches()) {
-					// Yes: Add it to the Register list
-					Register register = new Register(regCategory);
-					register.setName(m.group(1));
-					register.setDescription(activeDesc);
-					register.setAddrType(m.group(2));
-					register.setBits(m.group(3));
-					register.setAddr(m.group(4));
+		File tmpfile = null;
+		DataOutputStream out = null;
+		try {
+			tmpfile = File.createTempFile(fragmentfile.getName(), ".tmp", folder);
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpfile)));
+			fragment.write(out);
+			out.close();
+			out = null;
+			if (!tmpfile.renameTo(fragmentfile)) {
+				// Some systems (Windows) can't rename to an existing file
+				fragmentfile.delete();
+				if (!tmpfile.renameTo(fragmentfile)) {
+					throw new IOException("Could not rename " + tmpfile + " to " + fragmentfile);
 				}
 			}
+			tmpfile = null;
 		} catch (IOException ioe) {
-			fInternalErrorMsg = "Cannot read source header file \"" + hfile.getAbsolutePath()
-					+ "\".";
-			throw ioe;
+			AVRPlugin.getDefault().log(
+					new Status(IStatus.WARNING, AVRPlugin.PLUGIN_ID,
+							"Could not store the parsed header file " + fragment.getHeaderFile(),
+							ioe));
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					// can't do anything
+				}
+			}
+			if (tmpfile != null) {
+				// Don't leave an incomplete file behind
+				tmpfile.delete();
+			}
 		}
-		in.close();
-		fInternalErrorMsg = null;
+	}
 
+	/**
+	 * Get the file in the plugin state area for the fragment of the given header file.
+	 * <p>
+	 * The fragments of each include directory are stored in their own folder, so switching between
+	 * multiple toolchains does not require parsing their headers again.
+	 * </p>
+	 * 
+	 * @param headerfile
+	 *            Name of the header file relative to the include path.
+	 * @return The <code>File</code> or <code>null</code> if the plugin is not running.
+	 */
+	private File getFragmentFile(String headerfile) {
+		AVRPlugin plugin = AVRPlugin.getDefault();
+		if (plugin == null) {
+			return null;
+		}
+		String includepath = getAVRIncludePath();
+		String foldername = Integer.toHexString(includepath.hashCode());
+		String filename = headerfile.replace('/', '_').replace('\\', '_') + FRAGMENT_EXTENSION;
+		return plugin.getStateLocation().append(FRAGMENTSFOLDER).append(foldername).append(
+				filename).toFile();
 	}
 
 	/**
@@ -450,11 +630,29 @@ public class AVRiohDeviceDescriptionProvider implements IDeviceDescriptionProvid
 		if (event.getProperty().equals(AVRPath.AVRINCLUDE.name())) {
 			// Yes: reset the devicelist and fire an event to all of our
 			// own listeners
-			fMCUNamesMap = null;
+			reset();
 			fireProviderChangeEvent();
 		}
 	}
 
+	/**
+	 * Clear all cached descriptions and fragments.
+	 * <p>
+	 * Running {@link DeviceDescriptionPrefetchJob}s are cancelled. Descriptions and fragments
+	 * that are still being built by other threads are not added to the caches.
+	 * </p>
+	 */
+	void reset() {
+		synchronized (this) {
+			fGeneration.incrementAndGet();
+			fMCUNamesMap = null;
+			fCache.clear();
+			fFragments.clear();
+			fLoading.clear();
+		}
+		Job.getJobManager().cancel(DeviceDescriptionPrefetchJob.FAMILY);
+	}
+
 	private void fireProviderChangeEvent() {
 		for (IProviderChangeListener pcl : fChangeListeners) {
 			if (pcl != null) {
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.devicedescription.avrio;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Background Job to build the descriptions of all devices known to the
+ * {@link AVRiohDeviceDescriptionProvider}.
+ * <p>
+ * Once the Job has finished all descriptions are in the cache of the provider and
+ * {@link AVRiohDeviceDescriptionProvider#getDeviceDescription(String)} returns without any file
+ * access. The descriptions are built in parallel by a small pool of worker threads. Devices already
+ * in the cache are skipped.
+ * </p>
+ * <p>
+ * The Job can be cancelled with its progress monitor. All Jobs of this class belong to the
+ * {@link #FAMILY} family, so they can be cancelled with
+ * <code>Job.getJobManager().cancel(DeviceDescriptionPrefetchJob.FAMILY)</code>.
+ * </p>
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ */
+public class DeviceDescriptionPrefetchJob extends Job {
+
+	/** The Job family of all prefetch Jobs */
+	public final static Object						FAMILY			= new Object();
+
+	/** The maximum number of worker threads used by default */
+	public final static int							MAX_THREADS		= 4;
+
+	/** Interval in milliseconds to check the progress monitor for cancel requests */
+	private final static int						CANCEL_POLL		= 100;
+
+	private final AVRiohDeviceDescriptionProvider	fProvider;
+
+	private final int								fThreads;
+
+	/**
+	 * Create a new Job to build all descriptions of the given provider with the default number of
+	 * threads.
+	 * <p>
+	 * The default is one thread per processor, but not more than {@value #MAX_THREADS}.
+	 * </p>
+	 *
+	 * @param provider
+	 *            The <code>AVRiohDeviceDescriptionProvider</code> to prefetch.
+	 */
+	public DeviceDescriptionPrefetchJob(AVRiohDeviceDescriptionProvider provider) {
+		this(provider, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * Create a new Job to build all descriptions of the given provider.
+	 *
+	 * @param provider
+	 *            The <code>AVRiohDeviceDescriptionProvider</code> to prefetch.
+	 * @param threads
+	 *            Number of worker threads.
+	 */
+	public DeviceDescriptionPrefetchJob(AVRiohDeviceDescriptionProvider provider, int threads) {
+		super("Loading AVR device descriptions");
+		fProvider = provider;
+		fThreads = Math.max(1, threads);
+		setPriority(Job.DECORATE);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.runtime.jobs.Job#belongsTo(java.lang.Object)
+	 */
+	@Override
+	public boolean belongsTo(Object family) {
+		return family == FAMILY;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.runtime.jobs.Job#run(org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	@Override
+	protected IStatus run(final IProgressMonitor monitor) {
+
+		Set<String> allmcus = fProvider.getMCUList();
+		if (allmcus == null) {
+			// The provider could not read <avr/io.h>. Nothing to prefetch
+			return Status.OK_STATUS;
+		}
+
+		List<String> mcus = new ArrayList<String>(allmcus.size());
+		for (String mcuid : allmcus) {
+			if (!fProvider.isCached(mcuid)) {
+				mcus.add(mcuid);
+			}
+		}
+
+		monitor.beginTask(getName(), mcus.size());
+
+		ExecutorService pool = Executors.newFixedThreadPool(fThreads, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "AVR device description prefetch");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		try {
+			CompletionService<String> completion = new ExecutorCompletionService<String>(pool);
+			for (final String mcuid : mcus) {
+				completion.submit(new Callable<String>() {
+					public String call() {
+						if (!monitor.isCanceled()) {
+							fProvider.getDeviceDescription(mcuid);
+						}
+						return mcuid;
+					}
+				});
+			}
+
+			for (int i = 0; i < mcus.size(); i++) {
+				while (completion.poll(CANCEL_POLL, TimeUnit.MILLISECONDS) == null) {
+					if (monitor.isCanceled()) {
+						return Status.CANCEL_STATUS;
+					}
+				}
+				monitor.worked(1);
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			return Status.CANCEL_STATUS;
+		} finally {
+			// The descriptions already built remain in the cache of the provider.
+			pool.shutdownNow();
+			monitor.done();
+		}
+
+		return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+	}
+}
@@ -0,0 +1,378 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.devicedescription.avrio;
+
+import java.io.BufferedReader;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import de.innot.avreclipse.devicedescription.ICategory;
+import de.innot.avreclipse.devicedescription.IEntry;
+
+/**
+ * The parsed content of a single &lt;avr/io*.h&gt; header file.
+ * <p>
+ * A fragment contains the registers, ports and interrupt vectors defined in one header file and
+ * the other headers it includes, in the order they appear in the file. Many headers are included
+ * by multiple devices, so each header is parsed only once and its fragment is then added to all
+ * <code>DeviceDescription</code>s using it.
+ * </p>
+ * <p>
+ * Fragments can be written to and read from a compact binary form. The modification time and the
+ * size of the header file are stored with the fragment, so that outdated fragments can be
+ * detected with {@link #isCurrent(File)}.
+ * </p>
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ */
+class HeaderFragment {
+
+	/**
+	 * Resolves included header files to their fragments.
+	 */
+	interface IResolver {
+		/**
+		 * @param headerfile
+		 *            Name of the header file relative to the include directory, e.g.
+		 *            "avr/iom16.h".
+		 * @return The fragment for the header file.
+		 * @throws IOException
+		 *             if the header file can not be read.
+		 */
+		public HeaderFragment getFragment(String headerfile) throws IOException;
+	}
+
+	private final static int		FORMAT_VERSION	= 1;
+
+	// The types of the entries
+	private final static int		INCLUDE			= 0;
+	private final static int		REGISTER		= 1;
+	private final static int		PORT			= 2;
+	private final static int		IVEC			= 3;
+	private final static int		SIGNAL			= 4;
+
+	// The patterns are immutable and thread safe, so they are compiled only once
+	private final static Pattern	INCPAT			= Pattern.compile("^#include <(.+)>.*");
+	private final static Pattern	DESCPAT			= Pattern
+															.compile("/\\* (?:RegDef\\:  )?(.+) \\*/.*");
+	private final static Pattern	IVECPATNEW		= Pattern
+															.compile("^#define ([A-Z0-9_]+_vect)\\s+_VECTOR\\((\\d+)\\).*");
+	private final static Pattern	IVECPATOLD		= Pattern
+															.compile("^#define (SIG_[A-Z0-9_]+)\\s+_VECTOR\\((\\d+)\\).*");
+	private final static Pattern	PORTPAT			= Pattern
+															.compile("^#define ((?:PORT|PIN|DDR)[A-Z])\\s+_SFR_IO(\\d+)\\s*\\((0[xX].*)\\).*");
+	private final static Pattern	REGPAT			= Pattern
+															.compile("^#define ([A-Z0-9]+)\\s+_SFR_(IO|MEM)(\\d+)\\s*\\((0[xX].*)\\).*");
+
+	/** A single include, register, port or interrupt vector definition */
+	private static class Entry {
+		int		type;
+		String	name;
+		String	description;
+		String	addrtype;
+		String	bits;
+		String	value;
+	}
+
+	private final String			fHeaderFile;
+	private final long				fModified;
+	private final long				fLength;
+	private final List<Entry>		fEntries;
+
+	private HeaderFragment(String headerfile, long modified, long length, List<Entry> entries) {
+		fHeaderFile = headerfile;
+		fModified = modified;
+		fLength = length;
+		fEntries = entries;
+	}
+
+	/**
+	 * Parse the given header file.
+	 * <p>
+	 * Included files are not parsed, only the include directives are stored in the fragment.
+	 * &lt;avr/sfr_defs.h&gt; and all files outside the &lt;avr/*&gt; directory are ignored, because
+	 * they have some comments that are picked up as register definitions.
+	 * </p>
+	 *
+	 * @param headerfile
+	 *            Name of the header file relative to the include directory.
+	 * @param file
+	 *            The header file.
+	 * @return New fragment with the content of the file.
+	 * @throws IOException
+	 *             if the file can not be read.
+	 */
+	static HeaderFragment parse(String headerfile, File file) throws IOException {
+
+		// Get the file attributes before reading, so that a concurrent modification is not missed
+		long modified = file.lastModified();
+		long length = file.length();
+
+		List<Entry> entries = new ArrayList<Entry>();
+		BufferedReader in = new BufferedReader(new FileReader(file));
+
+		// Stores the last comment in the source code
+		String activeDesc = "";
+		String line;
+		Matcher m;
+
+		try {
+			while ((line = in.readLine()) != null) {
+
+				// Test if current line contains an #include directive
+				m = INCPAT.matcher(line);
+				if (m.matches()) {
+					String incfilename = m.group(1);
+					if (!("avr/sfr_defs.h").equals(incfilename) && incfilename.startsWith("avr")) {
+						entries.add(createEntry(INCLUDE, incfilename, null));
+					}
+					continue;
+				}
+
+				// Test if current line contains a descriptive comment
+				m = DESCPAT.matcher(line);
+				if (m.matches()) {
+					// Yes: remember it and add it as a description to all following items
+					activeDesc = m.group(1);
+					continue;
+				}
+
+				if (line.trim().equals("")) {
+					// but don't carry activeDesc over empty lines
+					activeDesc = "";
+					continue;
+				}
+
+				// Test if current line defines a Interrupt vector (new style)
+				m = IVECPATNEW.matcher(line);
+				if (m.matches()) {
+					Entry entry = createEntry(IVEC, m.group(1), activeDesc);
+					entry.value = m.group(2);
+					entries.add(entry);
+					continue;
+				}
+
+				// Test if current line defines a Interrupt vector (old style)
+				m = IVECPATOLD.matcher(line);
+				if (m.matches()) {
+					Entry entry = createEntry(SIGNAL, m.group(1), activeDesc);
+					entry.value = m.group(2);
+					entries.add(entry);
+					continue;
+				}
+
+				// Test if current line defines a Port Register
+				m = PORTPAT.matcher(line);
+				if (m.matches()) {
+					Entry entry = createEntry(PORT, m.group(1), activeDesc);
+					entry.bits = m.group(2);
+					entry.value = m.group(3);
+					entries.add(entry);
+					continue;
+				}
+
+				// Test if current line defines a Register
+				m = REGPAT.matcher(line);
+				if (m.matches()) {
+					Entry entry = createEntry(REGISTER, m.group(1), activeDesc);
+					entry.addrtype = m.group(2);
+					entry.bits = m.group(3);
+					entry.value = m.group(4);
+					entries.add(entry);
+				}
+			}
+		} finally {
+			in.close();
+		}
+
+		return new HeaderFragment(headerfile, modified, length, entries);
+	}
+
+	/**
+	 * Read a fragment written with {@link #write(DataOutput)}.
+	 *
+	 * @param in
+	 *            <code>DataInput</code> positioned at the start of the fragment.
+	 * @return The fragment.
+	 * @throws IOException
+	 *             if the fragment could not be read or has an unknown format.
+	 */
+	static HeaderFragment read(DataInput in) throws IOException {
+		if (in.readInt() != FORMAT_VERSION) {
+			throw new IOException("Unknown header fragment format");
+		}
+		String headerfile = in.readUTF();
+		long modified = in.readLong();
+		long length = in.readLong();
+		int count = in.readInt();
+		List<Entry> entries = new ArrayList<Entry>(count);
+		for (int i = 0; i < count; i++) {
+			Entry entry = new Entry();
+			entry.type = in.readByte();
+			entry.name = in.readUTF();
+			entry.description = readString(in);
+			entry.addrtype = readString(in);
+			entry.bits = readString(in);
+			entry.value = readString(in);
+			entries.add(entry);
+		}
+		return new HeaderFragment(headerfile, modified, length, entries);
+	}
+
+	/**
+	 * Write this fragment in a compact binary form.
+	 *
+	 * @param out
+	 *            <code>DataOutput</code> to write to.
+	 * @throws IOException
+	 */
+	void write(DataOutput out) throws IOException {
+		out.writeInt(FORMAT_VERSION);
+		out.writeUTF(fHeaderFile);
+		out.writeLong(fModified);
+		out.writeLong(fLength);
+		out.writeInt(fEntries.size());
+		for (Entry entry : fEntries) {
+			out.writeByte(entry.type);
+			out.writeUTF(entry.name);
+			writeString(out, entry.description);
+			writeString(out, entry.addrtype);
+			writeString(out, entry.bits);
+			writeString(out, entry.value);
+		}
+	}
+
+	/**
+	 * @return The name of the header file relative to the include directory.
+	 */
+	String getHeaderFile() {
+		return fHeaderFile;
+	}
+
+	/**
+	 * Test if this fragment still matches the given header file.
+	 *
+	 * @param file
+	 *            The header file this fragment has been created from.
+	 * @return <code>true</code> if the modification time and the size of the file are unchanged.
+	 */
+	boolean isCurrent(File file) {
+		return file.lastModified() == fModified && file.length() == fLength;
+	}
+
+	/**
+	 * Add the content of this fragment and all included fragments to the given device.
+	 *
+	 * @param device
+	 *            The device description to fill.
+	 * @param resolver
+	 *            Used to get the fragments of included header files.
+	 * @throws IOException
+	 *             if an included header file can not be read.
+	 */
+	void addTo(DeviceDescription device, IResolver resolver) throws IOException {
+
+		device.addHeaderFile(fHeaderFile);
+
+		List<ICategory> categories = device.getCategories();
+		ICategory regCategory = categories.get(0);
+		ICategory portCategory = categories.get(1);
+		ICategory ivecCategory = categories.get(2);
+
+		for (Entry entry : fEntries) {
+			switch (entry.type) {
+				case INCLUDE:
+					resolver.getFragment(entry.name).addTo(device, resolver);
+					break;
+
+				case IVEC: {
+					// test if an ivec with the old style name has already been created
+					InterruptVector ivec = getVector(ivecCategory, entry.value);
+					ivec.setName(entry.name);
+					ivec.setDescription(entry.description);
+					ivec.setVector(entry.value);
+					break;
+				}
+
+				case SIGNAL: {
+					// test if an ivec with the new style name has already been created (same
+					// vector number)
+					InterruptVector ivec = getVector(ivecCategory, entry.value);
+					ivec.setSIGName(entry.name);
+					ivec.setDescription(entry.description);
+					ivec.setVector(entry.value);
+					break;
+				}
+
+				case PORT: {
+					Port port = new Port(portCategory);
+					port.setName(entry.name);
+					port.setDescription(entry.description);
+					port.setBits(entry.bits);
+					port.setAddr(entry.value);
+					break;
+				}
+
+				case REGISTER: {
+					Register register = new Register(regCategory);
+					register.setName(entry.name);
+					register.setDescription(entry.description);
+					register.setAddrType(entry.addrtype);
+					register.setBits(entry.bits);
+					register.setAddr(entry.value);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the interrupt vector with the given number, creating it if required.
+	 */
+	private static InterruptVector getVector(ICategory ivecCategory, String vector) {
+		List<IEntry> children = ivecCategory.getChildren();
+		if (children != null) {
+			for (IEntry child : children) {
+				if (child.getColumnData(IVecsCategory.IDX_VECTOR).equals(vector)) {
+					return (InterruptVector) child;
+				}
+			}
+		}
+		return new InterruptVector(ivecCategory);
+	}
+
+	private static Entry createEntry(int type, String name, String description) {
+		Entry entry = new Entry();
+		entry.type = type;
+		entry.name = name;
+		entry.description = description;
+		return entry;
+	}
+
+	private static void writeString(DataOutput out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.mbs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.cdt.managedbuilder.core.IConfiguration;
+import org.eclipse.cdt.managedbuilder.core.IManagedBuildInfo;
+import org.eclipse.cdt.managedbuilder.core.ManagedBuildManager;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import de.innot.avreclipse.AVRPlugin;
+import de.innot.avreclipse.PluginIDs;
+import de.innot.avreclipse.core.toolinfo.SymbolSizeHistory;
+import de.innot.avreclipse.core.toolinfo.SymbolSizeTable;
+
+/**
+ * Records the symbol sizes of the build artifact after each build of an AVR project.
+ * <p>
+ * The listener is registered for <code>POST_BUILD</code> events by the plugin activator. For
+ * every AVR project touched by the build the ELF file of the active build configuration is read
+ * and added to the {@link SymbolSizeHistory} of the configuration, unless it has not changed
+ * since the last build.
+ * </p>
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ *
+ */
+public class SymbolSizeRecorder implements IResourceChangeListener {
+
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * org.eclipse.core.resources.IResourceChangeListener#resourceChanged(org.eclipse.core.resources
+	 * .IResourceChangeEvent)
+	 */
+	public void resourceChanged(IResourceChangeEvent event) {
+
+		IResourceDelta delta = event.getDelta();
+		if (delta == null) {
+			return;
+		}
+
+		final List<IProject> projects = new ArrayList<IProject>();
+		for (IResourceDelta child : delta.getAffectedChildren()) {
+			IProject project = child.getResource().getProject();
+			try {
+				if (project != null && project.isOpen() && project.hasNature(PluginIDs.NATURE_ID)) {
+					projects.add(project);
+				}
+			} catch (CoreException e) {
+				// not an AVR project
+			}
+		}
+		if (projects.isEmpty()) {
+			return;
+		}
+
+		// Reading the ELF files is done outside of the resource change notification
+		Job job = new Job("Recording AVR symbol sizes") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				for (IProject project : projects) {
+					record(project);
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		job.setSystem(true);
+		job.setPriority(Job.DECORATE);
+		job.schedule();
+	}
+
+	/**
+	 * Add the current build artifact of the active build configuration of the project to its
+	 * history.
+	 *
+	 * @param project
+	 *            An AVR project.
+	 */
+	public static void record(IProject project) {
+
+		IManagedBuildInfo buildinfo = ManagedBuildManager.getBuildInfo(project);
+		if (buildinfo == null) {
+			return;
+		}
+		IConfiguration buildcfg = buildinfo.getDefaultConfiguration();
+		if (buildcfg == null) {
+			return;
+		}
+
+		File elffile = getBuildArtifact(buildcfg);
+		if (!elffile.isFile()) {
+			return;
+		}
+
+		SymbolSizeHistory history = SymbolSizeHistory.getHistory(buildcfg);
+		SymbolSizeTable latest = history.getLatest();
+		if (latest != null && latest.getTimestamp() == elffile.lastModified()) {
+			// Not linked again
+			return;
+		}
+
+		try {
+			history.add(SymbolSizeTable.create(elffile));
+		} catch (IOException ioe) {
+			IStatus status = new Status(IStatus.WARNING, AVRPlugin.PLUGIN_ID,
+					"Could not read the symbol sizes of " + elffile, ioe);
+			AVRPlugin.getDefault().log(status);
+		}
+	}
+
+	/**
+	 * Get the ELF file generated by the build configuration.
+	 *
+	 * @param buildcfg
+	 * @return <code>File</code> of the build artifact, which may not exist yet.
+	 */
+	public static File getBuildArtifact(IConfiguration buildcfg) {
+		String cwd = BuildMacro.resolveMacros(buildcfg, buildcfg.getBuildData().getBuilderCWD()
+				.toString());
+		String artifact = BuildMacro.resolveMacros(buildcfg, buildcfg.getArtifactName());
+		String extension = buildcfg.getArtifactExtension();
+		if (extension != null && extension.length() > 0) {
+			artifact += "." + extension;
+		}
+		return new File(cwd, artifact);
+	}
+}
@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.ui.actions;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.eclipse.cdt.managedbuilder.core.IConfiguration;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.dialogs.IDialogSettings;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.window.Window;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.ui.PlatformUI;
+import org.eclipse.ui.console.MessageConsole;
+import org.eclipse.ui.console.MessageConsoleStream;
+import org.eclipse.ui.dialogs.ListSelectionDialog;
+
+import de.innot.avreclipse.AVRPlugin;
+import de.innot.avreclipse.core.avrdude.GangUpload;
+import de.innot.avreclipse.core.avrdude.GangUploadReport;
+import de.innot.avreclipse.core.avrdude.ProgrammerConfig;
+import de.innot.avreclipse.core.avrdude.ProgrammerConfigManager;
+import de.innot.avreclipse.core.avrdude.GangUploadReport.Result;
+import de.innot.avreclipse.core.properties.AVRDudeProperties;
+import de.innot.avreclipse.core.properties.AVRProjectProperties;
+import de.innot.avreclipse.ui.AVRUIPlugin;
+
+/**
+ * Uploads the project to multiple boards at the same time (gang programming).
+ * <p>
+ * The project is checked like for the normal upload. Then the user selects the programmers of
+ * all boards and the project is uploaded with each of them. Boards on different ports are
+ * programmed concurrently. Once all boards are finished a report with the result of each board is
+ * written to the AVRDude console.
+ * </p>
+ * <p>
+ * The last selection of programmers is remembered in the dialog settings.
+ * </p>
+ *
+ * @see GangUpload
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ *
+ */
+public class GangUploadProjectAction extends UploadProjectAction {
+
+	private final static String	TITLE_GANGUPLOAD	= "AVRDude Gang Upload";
+
+	private final static String	MSG_SELECT			= "Select the programmers of all boards to upload to.\n"
+															+ "Boards on different ports are programmed at the same time.";
+
+	private final static String	MSG_FAILED			= "{0} of {1} boards have not been programmed.\n\n"
+															+ "See the AVRDude console for details.";
+
+	private final static String	SETTINGS_SECTION	= "GangUploadProjectAction";
+	private final static String	KEY_PROGRAMMERS		= "programmers";
+
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * de.innot.avreclipse.ui.actions.UploadProjectAction#runAVRDude(org.eclipse.cdt.managedbuilder
+	 * .core.IConfiguration, de.innot.avreclipse.core.properties.AVRProjectProperties)
+	 */
+	@Override
+	protected void runAVRDude(IConfiguration buildcfg, AVRProjectProperties props) {
+
+		AVRDudeProperties avrdudeprops = props.getAVRDudeProperties();
+
+		List<ProgrammerConfig> programmers = selectProgrammers(avrdudeprops.getProgrammer());
+		if (programmers == null || programmers.size() == 0) {
+			return;
+		}
+
+		// The actions are the same for all boards, but each board has its own programmer options
+		List<String> actionargs = avrdudeprops.getActionArguments(buildcfg, true);
+		IPath cwd = getWorkingDirectory(buildcfg);
+
+		GangUpload gang = new GangUpload(TITLE_GANGUPLOAD, cwd);
+		for (ProgrammerConfig programmer : programmers) {
+			List<String> arguments = avrdudeprops.getArguments(programmer);
+			arguments.addAll(actionargs);
+			gang.addBoard(programmer, arguments);
+		}
+
+		// No scheduling rule for this Job: the uploads to the single boards are Jobs with their
+		// own rules, which would conflict with it.
+		Job gangjob = new GangUploadJob(gang);
+		gangjob.setPriority(Job.LONG);
+		gangjob.setUser(true);
+		gangjob.schedule();
+	}
+
+	/**
+	 * Let the user select the programmers of the boards.
+	 *
+	 * @param projectprogrammer
+	 *            The programmer of the project, preselected if there is no previous selection.
+	 * @return The selected programmers, or <code>null</code> if the user has cancelled.
+	 */
+	private List<ProgrammerConfig> selectProgrammers(ProgrammerConfig projectprogrammer) {
+
+		ProgrammerConfigManager manager = ProgrammerConfigManager.getDefault();
+		List<ProgrammerConfig> allconfigs = new ArrayList<ProgrammerConfig>();
+		for (String id : manager.getAllConfigIDs()) {
+			ProgrammerConfig config = manager.getConfig(id);
+			if (config != null) {
+				allconfigs.add(config);
+			}
+		}
+		Collections.sort(allconfigs, new Comparator<ProgrammerConfig>() {
+			public int compare(ProgrammerConfig o1, ProgrammerConfig o2) {
+				return o1.getName().compareToIgnoreCase(o2.getName());
+			}
+		});
+
+		// Preselect the programmers of the last gang upload
+		IDialogSettings settings = getDialogSettings();
+		String[] lastids = settings.getArray(KEY_PROGRAMMERS);
+		List<ProgrammerConfig> preselect = new ArrayList<ProgrammerConfig>();
+		if (lastids != null) {
+			for (String id : lastids) {
+				ProgrammerConfig config = manager.getConfig(id);
+				if (config != null) {
+					preselect.add(config);
+				}
+			}
+		}
+		if (preselect.size() == 0 && projectprogrammer != null) {
+			// The dialog compares the elements, so use the cached instance
+			ProgrammerConfig config = manager.getConfig(projectprogrammer.getId());
+			if (config != null) {
+				preselect.add(config);
+			}
+		}
+
+		ListSelectionDialog dialog = new ListSelectionDialog(getShell(), allconfigs,
+				new ArrayContentProvider(), new LabelProvider() {
+					@Override
+					public String getText(Object element) {
+						ProgrammerConfig config = (ProgrammerConfig) element;
+						String port = config.getPort();
+						return config.getName() + " [" + config.getProgrammer() + ", "
+								+ (port.length() > 0 ? port : "default port") + "]";
+					}
+				}, MSG_SELECT);
+		dialog.setTitle(TITLE_GANGUPLOAD);
+		dialog.setInitialElementSelections(preselect);
+
+		if (dialog.open() != Window.OK) {
+			return null;
+		}
+
+		Object[] result = dialog.getResult();
+		List<ProgrammerConfig> selected = new ArrayList<ProgrammerConfig>(result.length);
+		String[] ids = new String[result.length];
+		for (int i = 0; i < result.length; i++) {
+			selected.add((ProgrammerConfig) result[i]);
+			ids[i] = ((ProgrammerConfig) result[i]).getId();
+		}
+		settings.put(KEY_PROGRAMMERS, ids);
+
+		return selected;
+	}
+
+	private IDialogSettings getDialogSettings() {
+		IDialogSettings pluginsettings = AVRUIPlugin.getDefault().getDialogSettings();
+		IDialogSettings settings = pluginsettings.getSection(SETTINGS_SECTION);
+		if (settings == null) {
+			settings = pluginsettings.addNewSection(SETTINGS_SECTION);
+		}
+		return settings;
+	}
+
+	/**
+	 * The background Job to run the gang upload and to show the report.
+	 */
+	private static class GangUploadJob extends Job {
+
+		private final GangUpload	fGangUpload;
+
+		public GangUploadJob(GangUpload gangupload) {
+			super(TITLE_GANGUPLOAD);
+			fGangUpload = gangupload;
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+
+			// init console. Clears the console and puts it on top.
+			MessageConsole console = AVRPlugin.getDefault().getConsole("AVRDude");
+			console.clearConsole();
+			console.activate();
+
+			final GangUploadReport report = fGangUpload.run(monitor);
+
+			MessageConsoleStream stream = console.newMessageStream();
+			stream.println();
+			stream.print(report.toString());
+
+			if (!report.isSuccess()) {
+				final Display display = PlatformUI.getWorkbench().getDisplay();
+				if (display != null && !display.isDisposed()) {
+					display.asyncExec(new Runnable() {
+						public void run() {
+							int failed = report.getBoards().size()
+									- report.getCount(Result.PASSED);
+							String message = MessageFormat.format(MSG_FAILED, failed,
+									report.getBoards().size());
+							MessageDialog.openWarning(display.getActiveShell(), TITLE_GANGUPLOAD,
+									message);
+						}
+					});
+				}
+			}
+
+			return Status.OK_STATUS;
+		}
+	}
+}
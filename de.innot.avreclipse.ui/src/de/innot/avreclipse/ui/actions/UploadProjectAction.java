@@ -42,6 +42,7 @@ import org.eclipse.ui.IWorkbenchWindowActionDelegate;
 import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.actions.ActionDelegate;
 import org.eclipse.ui.console.MessageConsole;
+import org.eclipse.ui.console.MessageConsoleStream;
 import org.eclipse.ui.progress.UIJob;
 
 import de.innot.avreclipse.AVRPlugin;
@@ -49,11 +50,13 @@ import de.innot.avreclipse.core.avrdude.AVRDudeAction;
 import de.innot.avreclipse.core.avrdude.AVRDudeException;
 import de.innot.avreclipse.core.avrdude.AVRDudeSchedulingRule;
 import de.innot.avreclipse.core.avrdude.BaseBytesProperties;
+import de.innot.avreclipse.core.avrdude.IncrementalUpload;
 import de.innot.avreclipse.core.avrdude.ProgrammerConfig;
 import de.innot.avreclipse.core.properties.AVRDudeProperties;
 import de.innot.avreclipse.core.properties.AVRProjectProperties;
 import de.innot.avreclipse.core.properties.ProjectPropertyManager;
 import de.innot.avreclipse.core.toolinfo.AVRDude;
+import de.innot.avreclipse.core.toolinfo.ExternalCommandLauncher;
 import de.innot.avreclipse.core.toolinfo.fuses.FuseType;
 import de.innot.avreclipse.core.util.AVRMCUidConverter;
 import de.innot.avreclipse.mbs.BuildMacro;
@@ -311,13 +314,16 @@ public class UploadProjectAction extends ActionDelegate implements IWorkbenchWin
 
 	/**
 	 * Start the AVRDude UploadJob.
+	 * <p>
+	 * Subclasses may override this to upload the checked project in a different way.
+	 * </p>
 	 * 
 	 * @param buildcfg
 	 *            The build configuration for resolving macros.
 	 * @param props
 	 *            The AVR properties for the project / the current configuration
 	 */
-	private void runAVRDude(IConfiguration buildcfg, AVRProjectProperties props) {
+	protected void runAVRDude(IConfiguration buildcfg, AVRProjectProperties props) {
 
 		AVRDudeProperties avrdudeprops = props.getAVRDudeProperties();
 
@@ -331,11 +337,12 @@ public class UploadProjectAction extends ActionDelegate implements IWorkbenchWin
 		// message
 		ProgrammerConfig programmer = avrdudeprops.getProgrammer();
 
-		// Set the working directory to the CWD of the active build config, so that
-		// relative paths are resolved correctly.
-		IPath cwdunresolved = buildcfg.getBuildData().getBuilderCWD();
-		IPath cwd = new Path(BuildMacro.resolveMacros(buildcfg, cwdunresolved.toString()));
-		Job uploadjob = new UploadJob(optionargs, actionargs, cwd, programmer);
+		IPath cwd = getWorkingDirectory(buildcfg);
+
+		// The MCU for the incremental upload, if enabled
+		String incrementalmcuid = avrdudeprops.getIncrementalUpload() ? props.getMCUId() : null;
+
+		Job uploadjob = new UploadJob(optionargs, actionargs, cwd, programmer, incrementalmcuid);
 
 		uploadjob.setRule(new AVRDudeSchedulingRule(programmer));
 		uploadjob.setPriority(Job.LONG);
@@ -345,6 +352,21 @@ public class UploadProjectAction extends ActionDelegate implements IWorkbenchWin
 
 	}
 
+	/**
+	 * Get the working directory for avrdude.
+	 * <p>
+	 * This is the CWD of the given build config, so that relative paths are resolved correctly.
+	 * </p>
+	 * 
+	 * @param buildcfg
+	 *            The build configuration
+	 * @return The resolved working directory.
+	 */
+	protected IPath getWorkingDirectory(IConfiguration buildcfg) {
+		IPath cwdunresolved = buildcfg.getBuildData().getBuilderCWD();
+		return new Path(BuildMacro.resolveMacros(buildcfg, cwdunresolved.toString()));
+	}
+
 	/**
 	 * The background Job to execute the requested avrdude commands.
 	 * 
@@ -355,19 +377,23 @@ public class UploadProjectAction extends ActionDelegate implements IWorkbenchWin
 		private final List<String>		fActions;
 		private final IPath				fCwd;
 		private final ProgrammerConfig	fProgrammerConfig;
+		private final String			fIncrementalMCUId;
 
 		public UploadJob(List<String> options, List<String> actions, IPath cwd,
-				ProgrammerConfig programmer) {
+				ProgrammerConfig programmer, String incrementalmcuid) {
 			super("AVRDude Upload");
 			fOptions = options;
 			fActions = actions;
 			fCwd = cwd;
 			fProgrammerConfig = programmer;
+			fIncrementalMCUId = incrementalmcuid;
 		}
 
 		@Override
 		public IStatus run(IProgressMonitor monitor) {
 
+			IncrementalUpload incremental = null;
+			boolean success = false;
 			try {
 				monitor.beginTask("Running AVRDude", fActions.size());
 
@@ -387,12 +413,35 @@ public class UploadProjectAction extends ActionDelegate implements IWorkbenchWin
 				// However some users complained that this slows the whole upload process down.
 				// So now we sent all actions in one go, as the user can monitor the progress
 				// in the console anyway.
-				fOptions.addAll(fActions);
+				List<String> arguments;
+				if (fIncrementalMCUId != null) {
+					// Only upload the memories that have changed, if any.
+					incremental = IncrementalUpload.create(fProgrammerConfig,
+							fIncrementalMCUId, fCwd);
+					arguments = incremental.prepare(fOptions, fActions);
+				} else {
+					// The device is written without the incremental upload, so anything
+					// remembered about the device is no longer valid.
+					IncrementalUpload.invalidate(fProgrammerConfig);
+					fOptions.addAll(fActions);
+					arguments = fOptions;
+				}
 				monitor.subTask("Running AVRDude");
 
 				// Now avrdude can be started.
-				avrdude.runCommand(fOptions, new SubProgressMonitor(monitor, 1), true, fCwd,
-						fProgrammerConfig);
+				// The output is only shown on the console, so it is not buffered. A verbose upload
+				// of a large flash image would otherwise keep the complete output in memory.
+				if (arguments != null) {
+					avrdude.runCommand(arguments, new SubProgressMonitor(monitor, 1), true, fCwd,
+							fProgrammerConfig, ExternalCommandLauncher.BUFFER_NONE);
+				}
+				success = true;
+
+				// What has been saved is only reported once avrdude has finished successfully
+				if (incremental != null && incremental.getSummary() != null) {
+					MessageConsoleStream stream = console.newMessageStream();
+					stream.println(incremental.getSummary());
+				}
 
 			} catch (AVRDudeException ade) {
 				// Show an Error message and exit
@@ -409,6 +458,9 @@ public class UploadProjectAction extends ActionDelegate implements IWorkbenchWin
 					}
 				}
 			} finally {
+				if (incremental != null) {
+					incremental.finished(success);
+				}
 				monitor.done();
 			}
 
@@ -421,7 +473,7 @@ public class UploadProjectAction extends ActionDelegate implements IWorkbenchWin
 	 * 
 	 * @return <code>Shell</code> of the active Workbench window.
 	 */
-	private Shell getShell() {
+	protected Shell getShell() {
 		return PlatformUI.getWorkbench().getActiveWorkbenchWindow().getShell();
 	}
 
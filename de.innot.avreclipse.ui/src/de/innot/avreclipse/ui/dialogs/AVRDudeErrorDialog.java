@@ -231,6 +231,13 @@ public class AVRDudeErrorDialog extends ErrorDialog {
 							+ "permission problem."
 							+ "http://avr-eclipse.sourceforge.net/wiki/index.php/Known_Issues#.22Operation_not_permitted.22_error";
 					break;
+
+				case EXIT_CODE:
+					source = "AVRDude has reported an error with programmer {0}.\n\n"
+							+ "The operation has probably not been completed.\n"
+							+ "See below and in the AVRDude console for details.";
+					message = MessageFormat.format(source, programmer);
+					break;
 					
 				default:
 					message = "An unhandled Error occured while accessing AVRDude.\n\n"
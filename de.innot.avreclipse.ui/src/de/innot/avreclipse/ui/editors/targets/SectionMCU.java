@@ -15,6 +15,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -30,9 +31,12 @@ import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Combo;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.forms.widgets.FormToolkit;
 
 import de.innot.avreclipse.core.targets.ITargetConfigConstants;
+import de.innot.avreclipse.core.targets.ITargetConfigurationTool;
+import de.innot.avreclipse.core.targets.IToolQueryListener;
 import de.innot.avreclipse.core.util.AVRMCUidConverter;
 
 /**
@@ -48,6 +52,12 @@ public class SectionMCU extends AbstractTCSectionPart implements ITargetConfigCo
 	final private Map<String, String>	fMCUList		= new HashMap<String, String>();
 	final private List<String>			fMCUNames		= new ArrayList<String>();
 
+	/** The MCUs supported by each tool that has answered, mapped to the tool id */
+	final private Map<String, Set<String>>	fToolMCUs	= new HashMap<String, Set<String>>();
+
+	/** Incremented with each refresh to detect answers for an outdated refresh */
+	private int							fRefreshCount	= 0;
+
 	private final static String[]		PART_ATTRS		= new String[] { ATTR_MCU, ATTR_FCPU };
 	private final static String[]		PART_DEPENDS	= new String[] { ATTR_PROGRAMMER_TOOL_ID,
 			ATTR_GDBSERVER_ID							};
@@ -165,10 +175,64 @@ public class SectionMCU extends AbstractTCSectionPart implements ITargetConfigCo
 	 */
 	@Override
 	protected void refreshSectionContent() {
+		// The tools are queried in the background. Until they answer only the current MCU is shown
+		// in the combo. The list is extended as soon as each tool has answered, so a slow tool does
+		// not block the editor.
+		final int refresh = ++fRefreshCount;
+		fToolMCUs.clear();
+		updateMCUCombo();
+
+		final Display display = fMCUcombo.getDisplay();
+		getTargetConfiguration().getSupportedMCUs(true, new IToolQueryListener<Set<String>>() {
+			public void toolAnswered(final ITargetConfigurationTool tool, final Set<String> result) {
+				if (display.isDisposed()) {
+					return;
+				}
+				display.asyncExec(new Runnable() {
+					public void run() {
+						// Ignore answers for an outdated refresh
+						if (refresh != fRefreshCount || fMCUcombo.isDisposed()) {
+							return;
+						}
+						fToolMCUs.put(tool.getId(), result);
+						updateMCUCombo();
+						refreshMessages();
+					}
+				});
+			}
+		});
+
+		// For the FCPU we can take the value directly from the target configuration.
+		fFCPUcombo.setText(Integer.toString(getTargetConfiguration().getFCPU()));
+
+		// Finally show an error if the MCU is not supported by the tools.
+		refreshMessages();
+	}
+
+	/**
+	 * Fill the MCU combo with all MCUs supported by the tools that have answered so far.
+	 */
+	private void updateMCUCombo() {
+		// Like getSupportedMCUs(true) use only the MCUs supported by all tools. Tools that could
+		// not be executed are ignored.
+		Set<String> allmcuset = null;
+		for (Set<String> toolmcus : fToolMCUs.values()) {
+			if (toolmcus == null) {
+				continue;
+			}
+			if (allmcuset == null) {
+				allmcuset = new HashSet<String>(toolmcus);
+			} else {
+				allmcuset.retainAll(toolmcus);
+			}
+		}
+		if (allmcuset == null) {
+			allmcuset = new HashSet<String>();
+		}
+
 		// Get the list of valid MCUs, sort them, convert to MCU name and fill the internal cache
 		fMCUList.clear();
 		fMCUNames.clear();
-		Set<String> allmcuset = getTargetConfiguration().getSupportedMCUs(true);
 		List<String> allmcuids = new ArrayList<String>(allmcuset);
 		Collections.sort(allmcuids);
 
@@ -193,12 +257,6 @@ public class SectionMCU extends AbstractTCSectionPart implements ITargetConfigCo
 
 		String currentMCUName = AVRMCUidConverter.id2name(currentmcu);
 		fMCUcombo.setText(currentMCUName);
-
-		// For the FCPU we can take the value directly from the target configuration.
-		fFCPUcombo.setText(Integer.toString(getTargetConfiguration().getFCPU()));
-
-		// Finally show an error if the MCU is not supported by the tools.
-		refreshMessages();
 	}
 
 	/*
@@ -31,6 +31,7 @@ import de.innot.avreclipse.core.properties.AVRDudeProperties;
  * <li>The Signature check</li>
  * <li>Enable the no-Write / Simulation mode</li>
  * <li>Inhibit the auto flash erase</li>
+ * <li>Upload only the memories that have changed</li>
  * </ul>
  * </p>
  * 
@@ -64,6 +65,13 @@ public class TabAVRDudeAdvanced extends AbstractAVRDudePropertyTab {
 															+ "Enable this to inhibit the auto chip erase.";
 	private final static String	TEXT_NOCHIPERASE	= "Inhibit auto chip erase";
 
+	// incremental upload group
+	private final static String	GROUP_INCREMENTAL	= "Incremental Upload";
+	private final static String	LABEL_INCREMENTAL	= "Skips flash, EEPROM, fuses and lockbits that have not changed since the last upload with the same programmer.\n"
+															+ "Bootloaders (arduino, avr109, butterfly, wiring) with avrdude 6.1 or later only get the changed flash pages.\n"
+															+ "Do not enable this if the board is also programmed by other means or replaced with another board.";
+	private final static String	TEXT_INCREMENTAL	= "Upload only the memories that have changed";
+
 	// The GUI widgets
 	private Button				fNoVerifyButton;
 
@@ -73,6 +81,8 @@ public class TabAVRDudeAdvanced extends AbstractAVRDudePropertyTab {
 
 	private Button				fNoChipEraseCheck;
 
+	private Button				fIncrementalCheck;
+
 	/** The Properties that this page works with */
 	private AVRDudeProperties	fTargetProps;
 
@@ -93,6 +103,8 @@ public class TabAVRDudeAdvanced extends AbstractAVRDudePropertyTab {
 
 		addNoChipEraseSection(parent);
 
+		addIncrementalSection(parent);
+
 	}
 
 	/**
@@ -161,6 +173,21 @@ public class TabAVRDudeAdvanced extends AbstractAVRDudePropertyTab {
 		fNoChipEraseCheck = setupCheck(group, TEXT_NOCHIPERASE, 1, SWT.CHECK);
 	}
 
+	/**
+	 * Add the Incremental Upload check button.
+	 * 
+	 * @param parent
+	 *            <code>Composite</code>
+	 */
+	private void addIncrementalSection(Composite parent) {
+
+		Group group = setupGroup(parent, GROUP_INCREMENTAL, 1, SWT.NONE);
+		group.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, false, 1, 1));
+
+		setupLabel(group, LABEL_INCREMENTAL, 1, SWT.NONE);
+		fIncrementalCheck = setupCheck(group, TEXT_INCREMENTAL, 1, SWT.CHECK);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -194,6 +221,11 @@ public class TabAVRDudeAdvanced extends AbstractAVRDudePropertyTab {
 			boolean newvalue = fNoChipEraseCheck.getSelection();
 			fTargetProps.setNoChipErase(newvalue);
 
+		} else if (source.equals(fIncrementalCheck)) {
+			// "Incremental Upload" checkbox selected
+			boolean newvalue = fIncrementalCheck.getSelection();
+			fTargetProps.setIncrementalUpload(newvalue);
+
 		}
 
 		updateAVRDudePreview(fTargetProps);
@@ -220,6 +252,7 @@ public class TabAVRDudeAdvanced extends AbstractAVRDudePropertyTab {
 		dstprops.setNoSigCheck(fTargetProps.getNoSigCheck());
 		dstprops.setNoWrite(fTargetProps.getNoWrite());
 		dstprops.setNoChipErase(fTargetProps.getNoChipErase());
+		dstprops.setIncrementalUpload(fTargetProps.getIncrementalUpload());
 	}
 
 	/*
@@ -235,6 +268,7 @@ public class TabAVRDudeAdvanced extends AbstractAVRDudePropertyTab {
 		fTargetProps.setNoSigCheck(srcprops.getNoSigCheck());
 		fTargetProps.setNoWrite(srcprops.getNoWrite());
 		fTargetProps.setNoChipErase(srcprops.getNoChipErase());
+		fTargetProps.setIncrementalUpload(srcprops.getIncrementalUpload());
 		updateData(fTargetProps);
 	}
 
@@ -253,6 +287,7 @@ public class TabAVRDudeAdvanced extends AbstractAVRDudePropertyTab {
 		fNoSigCheckButton.setSelection(fTargetProps.getNoSigCheck());
 		fNoWriteCheck.setSelection(fTargetProps.getNoWrite());
 		fNoChipEraseCheck.setSelection(fTargetProps.getNoChipErase());
+		fIncrementalCheck.setSelection(fTargetProps.getIncrementalUpload());
 	}
 
 }
@@ -32,6 +32,8 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.action.Action;
+import org.eclipse.jface.action.IAction;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.text.ITextSelection;
 import org.eclipse.jface.viewers.ComboViewer;
@@ -51,6 +53,7 @@ import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.layout.RowLayout;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Listener;
@@ -75,6 +78,7 @@ import de.innot.avreclipse.devicedescription.IDeviceDescription;
 import de.innot.avreclipse.devicedescription.IDeviceDescriptionProvider;
 import de.innot.avreclipse.devicedescription.IProviderChangeListener;
 import de.innot.avreclipse.devicedescription.avrio.AVRiohDeviceDescriptionProvider;
+import de.innot.avreclipse.devicedescription.avrio.DeviceDescriptionPrefetchJob;
 
 /**
  * This is the main part of the AVR Device Explorer View.
@@ -106,6 +110,12 @@ public class AVRDeviceView extends ViewPart {
 	private IProviderChangeListener			fProviderChangeListener;
 	private ISelectionListener				fWorkbenchSelectionListener;
 
+	/** Memento key for the state of the prefetch action */
+	private final static String				MEMENTO_PREFETCH	= "prefetch";
+
+	/** Toggle to load all device descriptions in the background */
+	private IAction							fPrefetchAction;
+
 	/**
 	 * The constructor.
 	 * 
@@ -130,6 +140,8 @@ public class AVRDeviceView extends ViewPart {
 		// Save the current state of the viewer
 		super.saveState(memento);
 
+		memento.putString(MEMENTO_PREFETCH, Boolean.toString(fPrefetchAction.isChecked()));
+
 		// TODO: Save the Column Layout for each category
 
 	}
@@ -193,6 +205,23 @@ public class AVRDeviceView extends ViewPart {
 		fCombo.addSelectionChangedListener(new ComboSelectionChangedListener());
 		fTabFolder.addSelectionListener(new TabFolderSelectionListener());
 
+		// The background loading of all devices is optional, as it will parse all header files
+		// the first time it is used.
+		fPrefetchAction = new Action("Load all devices in background", IAction.AS_CHECK_BOX) {
+			@Override
+			public void run() {
+				if (isChecked()) {
+					schedulePrefetch();
+				} else {
+					Job.getJobManager().cancel(DeviceDescriptionPrefetchJob.FAMILY);
+				}
+			}
+		};
+		if (fMemento != null) {
+			fPrefetchAction.setChecked(Boolean.valueOf(fMemento.getString(MEMENTO_PREFETCH)));
+		}
+		getViewSite().getActionBars().getMenuManager().add(fPrefetchAction);
+
 		// This will -in turn- cause all the data sub-widgets to be
 		// initialized and displayed
 		providerChanged();
@@ -223,6 +252,8 @@ public class AVRDeviceView extends ViewPart {
 	 */
 	@Override
 	public void dispose() {
+		Job.getJobManager().cancel(DeviceDescriptionPrefetchJob.FAMILY);
+
 		// remove the listeners from their objects
 		dmprovider.removeProviderChangeListener(fProviderChangeListener);
 		getSite().getWorkbenchWindow().getSelectionService()
@@ -473,6 +504,12 @@ public class AVRDeviceView extends ViewPart {
 		// DeviceListContentProvider
 		fCombo.setInput(dmprovider);
 
+		if (fPrefetchAction.isChecked()) {
+			// The old Job may still be working on the previous devices
+			Job.getJobManager().cancel(DeviceDescriptionPrefetchJob.FAMILY);
+			schedulePrefetch();
+		}
+
 		String show = null;
 		if (fMemento != null)
 			show = fMemento.getString("combovalue");
@@ -487,6 +524,53 @@ public class AVRDeviceView extends ViewPart {
 
 	}
 
+	// Load all device descriptions of the provider in the background
+	private void schedulePrefetch() {
+		if (dmprovider instanceof AVRiohDeviceDescriptionProvider) {
+			Job job = new DeviceDescriptionPrefetchJob((AVRiohDeviceDescriptionProvider) dmprovider);
+			job.setSystem(true);
+			job.schedule();
+		}
+	}
+
+	// Get the device from the provider outside of the UI thread, as it may need to read the header
+	// files, and show it when it is available.
+	private void showDevice(final String deviceid) {
+		final Display display = fViewParent.getDisplay();
+		Job loadjob = new Job("AVR Device Explorer") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				final IDeviceDescription device = dmprovider.getDeviceDescription(deviceid);
+				if (display.isDisposed()) {
+					return Status.OK_STATUS;
+				}
+				display.asyncExec(new Runnable() {
+					public void run() {
+						if (fCombo.getControl().isDisposed()) {
+							return;
+						}
+						// Ignore the device if another one has been selected in the meantime
+						String current = (String) ((IStructuredSelection) fCombo.getSelection())
+								.getFirstElement();
+						if (current == null || !deviceid.equals(AVRMCUidConverter.name2id(current))) {
+							return;
+						}
+						if (device == null) {
+							showMessage(dmprovider.getErrorMessage());
+						} else {
+							updateSourcelist(fSourcesComposite, device);
+							updateTabs(fTabFolder, device);
+						}
+					}
+				}); // Runnable
+				return Status.OK_STATUS;
+			}
+		};
+		loadjob.setSystem(true);
+		loadjob.setPriority(Job.SHORT);
+		loadjob.schedule();
+	}
+
 	// When a different MCU Type is selected do the following:
 	// - get the new device from the provider
 	// - update the sources text elements
@@ -514,14 +598,7 @@ public class AVRDeviceView extends ViewPart {
 				fMemento.putString("combovalue", devicename);
 			}
 			String deviceid = AVRMCUidConverter.name2id(devicename);
-			IDeviceDescription device = dmprovider.getDeviceDescription(deviceid);
-			if (device == null) {
-				showMessage(dmprovider.getErrorMessage());
-			} else {
-				updateSourcelist(fSourcesComposite, device);
-				updateTabs(fTabFolder, device);
-				// setFocus();
-			}
+			showDevice(deviceid);
 		}
 	}
 
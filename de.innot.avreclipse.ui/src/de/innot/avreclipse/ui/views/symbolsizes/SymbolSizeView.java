@@ -0,0 +1,345 @@
+/*******************************************************************************
+ * Copyright (c) 2008, 2011 Thomas Holland (thomas@innot.de) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Thomas Holland - initial API and implementation
+ *******************************************************************************/
+package de.innot.avreclipse.ui.views.symbolsizes;
+
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.cdt.managedbuilder.core.IConfiguration;
+import org.eclipse.cdt.managedbuilder.core.IManagedBuildInfo;
+import org.eclipse.cdt.managedbuilder.core.ManagedBuildManager;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IAdaptable;
+import org.eclipse.jface.action.Action;
+import org.eclipse.jface.layout.GridDataFactory;
+import org.eclipse.jface.layout.TableColumnLayout;
+import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.ColumnLabelProvider;
+import org.eclipse.jface.viewers.ColumnWeightData;
+import org.eclipse.jface.viewers.ISelection;
+import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.TableViewerColumn;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Combo;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.ui.ISelectionListener;
+import org.eclipse.ui.ISharedImages;
+import org.eclipse.ui.IWorkbenchPart;
+import org.eclipse.ui.PlatformUI;
+import org.eclipse.ui.part.ViewPart;
+
+import de.innot.avreclipse.PluginIDs;
+import de.innot.avreclipse.core.toolinfo.SizeReport.Memory;
+import de.innot.avreclipse.core.toolinfo.SymbolSizeHistory;
+import de.innot.avreclipse.core.toolinfo.SymbolSizeHistory.IHistoryChangeListener;
+import de.innot.avreclipse.core.toolinfo.SymbolSizeTable;
+import de.innot.avreclipse.core.toolinfo.SymbolSizeTable.Delta;
+
+/**
+ * View of the symbol sizes of the last build of an AVR project.
+ * <p>
+ * The view shows the size of every function and variable of the active build configuration of
+ * the selected project, together with the change to one of the previous builds. The symbols
+ * with the biggest changes are shown first.
+ * </p>
+ *
+ * @see SymbolSizeHistory
+ *
+ * @author Thomas Holland
+ * @since 2.5
+ */
+public class SymbolSizeView extends ViewPart implements IHistoryChangeListener {
+
+	private Composite			fViewParent;
+
+	private Label				fInfoLabel;
+
+	private Combo				fCompareCombo;
+
+	private TableViewer			fTable;
+
+	private ISelectionListener	fWorkbenchSelectionListener;
+
+	/** The history shown, <code>null</code> if no AVR project has been selected */
+	private SymbolSizeHistory	fHistory;
+
+	private String				fHistoryName;
+
+	/** The builds of the history, newest first */
+	private List<SymbolSizeTable>	fTables	= Collections.emptyList();
+
+	/**
+	 * Create, layout and initialize the controls of this viewer
+	 */
+	@Override
+	public void createPartControl(Composite parent) {
+
+		fViewParent = parent;
+		parent.setLayout(new GridLayout(3, false));
+
+		fInfoLabel = new Label(parent, SWT.NONE);
+		GridDataFactory.fillDefaults().grab(true, false).align(SWT.FILL, SWT.CENTER).applyTo(
+				fInfoLabel);
+
+		Label label = new Label(parent, SWT.NONE);
+		label.setText("Compare with:");
+
+		fCompareCombo = new Combo(parent, SWT.READ_ONLY);
+		fCompareCombo.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				updateTable();
+			}
+		});
+
+		Composite tablecomposite = new Composite(parent, SWT.NONE);
+		GridDataFactory.fillDefaults().grab(true, true).span(3, 1).applyTo(tablecomposite);
+		TableColumnLayout tcl = new TableColumnLayout();
+		tablecomposite.setLayout(tcl);
+
+		fTable = new TableViewer(tablecomposite, SWT.BORDER | SWT.FULL_SELECTION | SWT.MULTI);
+		fTable.setContentProvider(new ArrayContentProvider());
+		fTable.getTable().setHeaderVisible(true);
+		fTable.getTable().setLinesVisible(true);
+
+		addColumn(tcl, "Symbol", SWT.LEFT, 50, new ColumnLabelProvider() {
+			@Override
+			public String getText(Object element) {
+				return ((Delta) element).getName();
+			}
+		});
+		addColumn(tcl, "Memory", SWT.LEFT, 15, new ColumnLabelProvider() {
+			@Override
+			public String getText(Object element) {
+				return ((Delta) element).getMemory().getName();
+			}
+		});
+		addColumn(tcl, "Size", SWT.RIGHT, 10, new ColumnLabelProvider() {
+			@Override
+			public String getText(Object element) {
+				return Long.toString(((Delta) element).getNewSize());
+			}
+		});
+		addColumn(tcl, "Before", SWT.RIGHT, 10, new ColumnLabelProvider() {
+			@Override
+			public String getText(Object element) {
+				return Long.toString(((Delta) element).getOldSize());
+			}
+		});
+		addColumn(tcl, "Change", SWT.RIGHT, 10, new ColumnLabelProvider() {
+			@Override
+			public String getText(Object element) {
+				return formatDelta(((Delta) element).getDelta());
+			}
+		});
+
+		Action clearaction = new Action("Clear History") {
+			@Override
+			public void run() {
+				if (fHistory != null) {
+					fHistory.clear();
+				}
+			}
+		};
+		clearaction.setToolTipText("Remove all builds from the history of this configuration");
+		clearaction.setImageDescriptor(PlatformUI.getWorkbench().getSharedImages()
+				.getImageDescriptor(ISharedImages.IMG_ETOOL_CLEAR));
+		getViewSite().getActionBars().getToolBarManager().add(clearaction);
+
+		SymbolSizeHistory.addHistoryChangeListener(this);
+
+		fWorkbenchSelectionListener = new WorkbenchSelectionListener();
+		getSite().getWorkbenchWindow().getSelectionService().addPostSelectionListener(
+				fWorkbenchSelectionListener);
+
+		updateHistory();
+	}
+
+	private void addColumn(TableColumnLayout tcl, String name, int style, int weight,
+			ColumnLabelProvider labelprovider) {
+		TableViewerColumn column = new TableViewerColumn(fTable, style);
+		column.getColumn().setText(name);
+		column.setLabelProvider(labelprovider);
+		tcl.setColumnData(column.getColumn(), new ColumnWeightData(weight));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.ui.part.WorkbenchPart#setFocus()
+	 */
+	@Override
+	public void setFocus() {
+		fTable.getControl().setFocus();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.ui.part.WorkbenchPart#dispose()
+	 */
+	@Override
+	public void dispose() {
+		SymbolSizeHistory.removeHistoryChangeListener(this);
+		getSite().getWorkbenchWindow().getSelectionService().removePostSelectionListener(
+				fWorkbenchSelectionListener);
+		super.dispose();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * de.innot.avreclipse.core.toolinfo.SymbolSizeHistory.IHistoryChangeListener#historyChanged(
+	 * de.innot.avreclipse.core.toolinfo.SymbolSizeHistory)
+	 */
+	public void historyChanged(final SymbolSizeHistory history) {
+		// Called from the build, so update the view in the UI thread
+		if (fViewParent == null || fViewParent.isDisposed()) {
+			return;
+		}
+		fViewParent.getDisplay().asyncExec(new Runnable() {
+			public void run() {
+				if (!fViewParent.isDisposed() && history == fHistory) {
+					updateHistory();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Show the given project.
+	 *
+	 * @param project
+	 *            An AVR project.
+	 */
+	private void setProject(IProject project) {
+		IManagedBuildInfo buildinfo = ManagedBuildManager.getBuildInfo(project);
+		IConfiguration buildcfg = buildinfo != null ? buildinfo.getDefaultConfiguration() : null;
+		if (buildcfg == null) {
+			return;
+		}
+		SymbolSizeHistory history = SymbolSizeHistory.getHistory(buildcfg);
+		if (history != fHistory) {
+			fHistory = history;
+			fHistoryName = project.getName() + " [" + buildcfg.getName() + "]";
+			updateHistory();
+		}
+	}
+
+	/**
+	 * Reload the builds from the history and update the compare combo and the table.
+	 */
+	private void updateHistory() {
+		if (fHistory == null) {
+			fTables = Collections.emptyList();
+			fInfoLabel.setText("Select an AVR project to show the symbol sizes of its last build");
+		} else {
+			fTables = new ArrayList<SymbolSizeTable>(fHistory.getTables());
+			Collections.reverse(fTables);
+		}
+
+		DateFormat format = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.MEDIUM);
+		fCompareCombo.removeAll();
+		for (int i = 1; i < fTables.size(); i++) {
+			String date = format.format(new Date(fTables.get(i).getTimestamp()));
+			fCompareCombo.add((i == 1 ? "Previous build" : i + " builds before") + " (" + date
+					+ ")");
+		}
+		fCompareCombo.add("Nothing");
+		fCompareCombo.select(0);
+		fCompareCombo.getParent().layout(true);
+
+		updateTable();
+	}
+
+	/**
+	 * Show the deltas between the last build and the build selected in the compare combo.
+	 */
+	private void updateTable() {
+		if (fTables.isEmpty()) {
+			if (fHistory != null) {
+				fInfoLabel.setText(fHistoryName + ": Not built yet");
+			}
+			fTable.setInput(new Object[0]);
+			return;
+		}
+
+		SymbolSizeTable latest = fTables.get(0);
+		int index = fCompareCombo.getSelectionIndex() + 1;
+		SymbolSizeTable older = index > 0 && index < fTables.size() ? fTables.get(index) : null;
+
+		StringBuilder info = new StringBuilder(fHistoryName);
+		Map<Memory, Long> totals = latest.getTotalDeltas(older);
+		for (Memory memory : new Memory[] { Memory.PROGRAM, Memory.DATA, Memory.EEPROM }) {
+			long total = latest.getTotal(memory);
+			if (total == 0 && totals.get(memory) == 0) {
+				continue;
+			}
+			info.append("  ").append(memory.getName()).append(": ").append(total);
+			if (older != null) {
+				info.append(" (").append(formatDelta(totals.get(memory))).append(")");
+			}
+		}
+		fInfoLabel.setText(info.toString());
+
+		fTable.setInput(latest.getDeltas(older, true).toArray());
+	}
+
+	private static String formatDelta(long delta) {
+		return delta > 0 ? "+" + delta : Long.toString(delta);
+	}
+
+	/**
+	 * Handle Selection Change Events.
+	 * <p>
+	 * If an AVR project has been selected on the workbench the symbol sizes of its active build
+	 * configuration are shown.
+	 * </p>
+	 */
+	private class WorkbenchSelectionListener implements ISelectionListener {
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.ui.ISelectionListener#selectionChanged(org.eclipse.ui.IWorkbenchPart,
+		 * org.eclipse.jface.viewers.ISelection)
+		 */
+		public void selectionChanged(IWorkbenchPart part, ISelection selection) {
+			// we ignore our own selections
+			if (part == SymbolSizeView.this || !(selection instanceof IStructuredSelection)) {
+				return;
+			}
+
+			Object item = ((IStructuredSelection) selection).getFirstElement();
+			IProject project = null;
+			if (item instanceof IProject) {
+				project = (IProject) item;
+			} else if (item instanceof IAdaptable) {
+				project = (IProject) ((IAdaptable) item).getAdapter(IProject.class);
+			}
+
+			try {
+				if (project != null && project.isOpen() && project.hasNature(PluginIDs.NATURE_ID)) {
+					setProject(project);
+				}
+			} catch (CoreException e) {
+				// not an AVR project
+			}
+		}
+	}
+}
@@ -84,6 +84,7 @@ public class GenerateMCULists implements IApplication {
 				readers);
 
 		pdreader.setDevicesFolder(folder);
+		pdreader.setParserThreads(Runtime.getRuntime().availableProcessors());
 		pdreader.parseAllFiles(new NullProgressMonitor());
 
 		return null;